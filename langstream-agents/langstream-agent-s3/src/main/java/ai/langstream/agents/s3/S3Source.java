@@ -20,12 +20,14 @@ import ai.langstream.api.runner.code.AgentSource;
 import ai.langstream.api.runner.code.Header;
 import ai.langstream.api.runner.code.Record;
 import io.minio.BucketExistsArgs;
+import io.minio.CloseableIterator;
 import io.minio.GetObjectArgs;
 import io.minio.GetObjectResponse;
 import io.minio.ListObjectsArgs;
+import io.minio.ListenBucketNotificationArgs;
 import io.minio.MakeBucketArgs;
 import io.minio.MinioClient;
-import io.minio.RemoveObjectArgs;
+import io.minio.RemoveObjectsArgs;
 import io.minio.Result;
 import io.minio.errors.ErrorResponseException;
 import io.minio.errors.InsufficientDataException;
@@ -33,16 +35,32 @@ import io.minio.errors.InternalException;
 import io.minio.errors.InvalidResponseException;
 import io.minio.errors.ServerException;
 import io.minio.errors.XmlParserException;
+import io.minio.messages.DeleteError;
+import io.minio.messages.DeleteObject;
+import io.minio.messages.Event;
 import io.minio.messages.Item;
+import io.minio.messages.NotificationRecords;
 import java.io.IOException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Deque;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 import lombok.AllArgsConstructor;
 import lombok.ToString;
 import lombok.extern.slf4j.Slf4j;
@@ -53,9 +71,41 @@ public class S3Source extends AbstractAgentCode implements AgentSource {
     private MinioClient minioClient;
     private final Set<String> objectsToCommit = ConcurrentHashMap.newKeySet();
     private int idleTime;
+    private int maxConcurrentDownloads;
+    private int listPageSize;
+    private long rangeSize;
+    private ExecutorService downloads;
+
+    /**
+     * The downloads in progress, in listing order. They are only accessed by the thread that calls
+     * read().
+     */
+    private final Deque<Download> inFlight = new ArrayDeque<>();
+
+    /** The current listing of the bucket, it goes on from one call of read() to the next. */
+    private Iterator<Result<Item>> listing;
+
+    /** The last object of the current listing, to resume it after an error. */
+    private String lastListedObject;
+
+    /**
+     * The objects created in the bucket, received from the bucket notifications. Null if the bucket
+     * is only polled.
+     */
+    private BlockingQueue<NewObject> notifications;
+
+    private long reconciliationInterval;
+
+    /** When the next listing of the bucket is due, in notification mode. */
+    private volatile long nextReconciliation;
+
+    private Thread notificationListener;
+    private volatile CloseableIterator<Result<NotificationRecords>> notificationStream;
+    private volatile boolean closed;
 
     public static final String ALL_FILES = "*";
     public static final String DEFAULT_EXTENSIONS_FILTER = "pdf,docx,html,htm,md,txt";
+    private static final int MAX_RANGE_ATTEMPTS = 3;
     private Set<String> extensions = Set.of();
 
     @Override
@@ -69,6 +119,23 @@ public class S3Source extends AbstractAgentCode implements AgentSource {
         String password = configuration.getOrDefault("secret-key", "minioadmin").toString();
         String region = configuration.getOrDefault("region", "").toString();
         idleTime = Integer.parseInt(configuration.getOrDefault("idle-time", 5).toString());
+        maxConcurrentDownloads =
+                Integer.parseInt(
+                        configuration.getOrDefault("max-concurrent-downloads", 4).toString());
+        listPageSize =
+                Integer.parseInt(configuration.getOrDefault("list-page-size", 1000).toString());
+        rangeSize =
+                Long.parseLong(
+                        configuration.getOrDefault("range-size", 8 * 1024 * 1024).toString());
+        boolean bucketNotifications =
+                Boolean.parseBoolean(
+                        configuration.getOrDefault("bucket-notifications", false).toString());
+        reconciliationInterval =
+                Long.parseLong(
+                                configuration
+                                        .getOrDefault("reconciliation-interval-seconds", 300)
+                                        .toString())
+                        * 1000;
         extensions =
                 Set.of(
                         configuration
@@ -82,6 +149,10 @@ public class S3Source extends AbstractAgentCode implements AgentSource {
                 region,
                 username);
         log.info("Getting files with extensions {} (use '*' to no filter)", extensions);
+        log.info(
+                "Downloading up to {} objects at a time, in ranges of {} bytes",
+                maxConcurrentDownloads,
+                rangeSize);
 
         MinioClient.Builder builder =
                 MinioClient.builder().endpoint(endpoint).credentials(username, password);
@@ -89,6 +160,13 @@ public class S3Source extends AbstractAgentCode implements AgentSource {
             builder.region(region);
         }
         minioClient = builder.build();
+        downloads = Executors.newFixedThreadPool(maxConcurrentDownloads);
+        if (bucketNotifications) {
+            log.info(
+                    "Listening to the bucket notifications, listing the bucket every {} seconds",
+                    reconciliationInterval / 1000);
+            notifications = new LinkedBlockingQueue<>();
+        }
 
         makeBucketIfNotExists(bucketName);
     }
@@ -111,58 +189,207 @@ public class S3Source extends AbstractAgentCode implements AgentSource {
         }
     }
 
+    @Override
+    public void start() throws Exception {
+        if (notifications != null) {
+            notificationListener =
+                    new Thread(this::listenNotifications, "s3-source-notifications-" + bucketName);
+            notificationListener.setDaemon(true);
+            notificationListener.start();
+        }
+    }
+
+    private void listenNotifications() {
+        while (!closed) {
+            try (CloseableIterator<Result<NotificationRecords>> stream =
+                    minioClient.listenBucketNotification(
+                            ListenBucketNotificationArgs.builder()
+                                    .bucket(bucketName)
+                                    .prefix("")
+                                    .suffix("")
+                                    .events(new String[] {"s3:ObjectCreated:*"})
+                                    .build())) {
+                notificationStream = stream;
+                while (stream.hasNext()) {
+                    for (Event event : stream.next().get().events()) {
+                        // the object names are url encoded in the events
+                        String name = URLDecoder.decode(event.objectName(), StandardCharsets.UTF_8);
+                        log.debug("Received notification for object {}", name);
+                        notifications.add(new NewObject(name, event.objectSize()));
+                    }
+                }
+            } catch (Exception e) {
+                if (closed) {
+                    return;
+                }
+                log.warn("Error listening to the notifications of bucket {}", bucketName, e);
+                // the notifications sent in the meantime are lost
+                nextReconciliation = 0;
+                try {
+                    Thread.sleep(idleTime * 1000L);
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+            }
+        }
+    }
+
     @Override
     public List<Record> read() throws Exception {
+        startDownloads();
+        if (inFlight.isEmpty()) {
+            if (notifications != null) {
+                // wake up as soon as an object is created
+                NewObject object = notifications.poll(idleTime, TimeUnit.SECONDS);
+                if (object != null) {
+                    startDownload(object.name(), object.size());
+                }
+            } else {
+                log.info("Nothing found, sleeping for {} seconds", idleTime);
+                Thread.sleep(idleTime * 1000L);
+            }
+            if (inFlight.isEmpty()) {
+                return List.of();
+            }
+        }
+
+        // wait for the first download, then take the ones that are already done, in order
         List<Record> records = new ArrayList<>();
-        Iterable<Result<Item>> results;
-        try {
-            results = minioClient.listObjects(ListObjectsArgs.builder().bucket(bucketName).build());
-        } catch (Exception e) {
-            log.error("Error listing objects on bucket {}", bucketName, e);
-            throw e;
+        do {
+            Download download = inFlight.poll();
+            try {
+                records.add(download.future().get());
+            } catch (ExecutionException e) {
+                objectsToCommit.remove(download.name());
+                if (e.getCause() instanceof ErrorResponseException error
+                        && "NoSuchKey".equals(error.errorResponse().code())) {
+                    log.info("Object {} has been removed, skipping it", download.name());
+                    continue;
+                }
+                log.error("Error reading object {}", download.name(), e.getCause());
+                if (e.getCause() instanceof Exception cause) {
+                    throw cause;
+                }
+                throw e;
+            }
+        } while (!inFlight.isEmpty() && inFlight.peek().future().isDone());
+        processed(0, records.size());
+        return records;
+    }
+
+    private void startDownloads() throws Exception {
+        if (notifications != null) {
+            NewObject object;
+            while (inFlight.size() < maxConcurrentDownloads
+                    && (object = notifications.poll()) != null) {
+                startDownload(object.name(), object.size());
+            }
+            if (listing == null) {
+                long now = System.currentTimeMillis();
+                if (now < nextReconciliation) {
+                    return;
+                }
+                // the listing is only a safety net for the missed notifications
+                log.info("Listing the bucket {} to find the missed objects", bucketName);
+                nextReconciliation = now + reconciliationInterval;
+            }
         }
-        boolean somethingFound = false;
-        for (Result<Item> object : results) {
-            Item item = object.get();
+        boolean restarted = false;
+        while (inFlight.size() < maxConcurrentDownloads) {
+            if (listing == null) {
+                listing = listObjects();
+                restarted = lastListedObject == null;
+            }
+            if (!listing.hasNext()) {
+                // the end of the bucket, the next listing starts from the beginning
+                listing = null;
+                lastListedObject = null;
+                if (restarted || !inFlight.isEmpty() || notifications != null) {
+                    return;
+                }
+                // look for the objects added before the position of the listing
+                continue;
+            }
+            Item item;
+            try {
+                item = listing.next().get();
+            } catch (Exception e) {
+                log.error("Error listing objects on bucket {}", bucketName, e);
+                // resume after the last listed object
+                listing = null;
+                throw e;
+            }
             String name = item.objectName();
+            lastListedObject = name;
             if (item.isDir()) {
                 log.debug("Skipping directory {}", name);
                 continue;
             }
-            boolean extensionAllowed = isExtensionAllowed(name, extensions);
-            if (!extensionAllowed) {
-                log.debug("Skipping file with bad extension {}", name);
-                continue;
+            startDownload(name, item.size());
+        }
+    }
+
+    private void startDownload(String name, long size) {
+        boolean extensionAllowed = isExtensionAllowed(name, extensions);
+        if (!extensionAllowed) {
+            log.debug("Skipping file with bad extension {}", name);
+            return;
+        }
+        if (!objectsToCommit.add(name)) {
+            log.info("Skipping already processed object {}", name);
+            return;
+        }
+        log.info("Found new object {}, size {} KB", name, size / 1024);
+        inFlight.add(new Download(name, downloads.submit(() -> download(name, size))));
+    }
+
+    private Iterator<Result<Item>> listObjects() {
+        ListObjectsArgs.Builder args =
+                ListObjectsArgs.builder().bucket(bucketName).maxKeys(listPageSize);
+        if (lastListedObject != null) {
+            args.startAfter(lastListedObject);
+        }
+        // the pages are fetched lazily by the iterator
+        return minioClient.listObjects(args.build()).iterator();
+    }
+
+    private Record download(String name, long size) throws Exception {
+        if (size <= rangeSize || size > Integer.MAX_VALUE - 8) {
+            try (GetObjectResponse objectResponse =
+                    minioClient.getObject(
+                            GetObjectArgs.builder().bucket(bucketName).object(name).build())) {
+                return new S3SourceRecord(objectResponse.readAllBytes(), name);
             }
-            if (!objectsToCommit.contains(name)) {
-                log.info("Found new object {}, size {} KB", item.objectName(), item.size() / 1024);
-                try {
-                    GetObjectResponse objectResponse =
-                            minioClient.getObject(
-                                    GetObjectArgs.builder()
-                                            .bucket(bucketName)
-                                            .object(name)
-                                            .build());
-                    objectsToCommit.add(name);
-                    byte[] read = objectResponse.readAllBytes();
-                    records.add(new S3SourceRecord(read, name));
-                    somethingFound = true;
-                } catch (Exception e) {
-                    log.error("Error reading object {}", name, e);
-                    throw e;
+        }
+        // large objects are read in ranges directly into the final buffer, a failed range is
+        // requested again instead of the whole object
+        byte[] content = new byte[(int) size];
+        for (long offset = 0; offset < size; offset += rangeSize) {
+            int length = (int) Math.min(rangeSize, size - offset);
+            for (int attempt = 1; ; attempt++) {
+                try (GetObjectResponse objectResponse =
+                        minioClient.getObject(
+                                GetObjectArgs.builder()
+                                        .bucket(bucketName)
+                                        .object(name)
+                                        .offset(offset)
+                                        .length((long) length)
+                                        .build())) {
+                    int read = objectResponse.readNBytes(content, (int) offset, length);
+                    if (read != length) {
+                        throw new IOException(
+                                "Object " + name + " changed while reading it, size " + size);
+                    }
+                    break;
+                } catch (IOException e) {
+                    if (attempt >= MAX_RANGE_ATTEMPTS) {
+                        throw e;
+                    }
+                    log.info("Error reading object {} at offset {}, retrying", name, offset, e);
                 }
-                break;
-            } else {
-                log.info("Skipping already processed object {}", name);
             }
         }
-        if (!somethingFound) {
-            log.info("Nothing found, sleeping for {} seconds", idleTime);
-            Thread.sleep(idleTime * 1000L);
-        } else {
-            processed(0, 1);
-        }
-        return records;
+        return new S3SourceRecord(content, name);
     }
 
     static boolean isExtensionAllowed(String name, Set<String> extensions) {
@@ -186,16 +413,46 @@ public class S3Source extends AbstractAgentCode implements AgentSource {
 
     @Override
     public void commit(List<Record> records) throws Exception {
+        if (records.isEmpty()) {
+            return;
+        }
+        List<String> names = new ArrayList<>(records.size());
+        List<DeleteObject> objects = new ArrayList<>(records.size());
         for (Record record : records) {
             S3SourceRecord s3SourceRecord = (S3SourceRecord) record;
-            String objectName = s3SourceRecord.name;
-            log.info("Removing object {}", objectName);
-            minioClient.removeObject(
-                    RemoveObjectArgs.builder().bucket(bucketName).object(objectName).build());
-            objectsToCommit.remove(objectName);
+            names.add(s3SourceRecord.name);
+            objects.add(new DeleteObject(s3SourceRecord.name));
+        }
+        log.info("Removing {} objects", objects.size());
+        // the deletion is lazy, it happens while iterating the results
+        for (Result<DeleteError> result :
+                minioClient.removeObjects(
+                        RemoveObjectsArgs.builder().bucket(bucketName).objects(objects).build())) {
+            DeleteError error = result.get();
+            log.error("Error removing object {}: {}", error.objectName(), error.message());
         }
+        names.forEach(objectsToCommit::remove);
     }
 
+    @Override
+    public void close() throws Exception {
+        closed = true;
+        if (notificationListener != null) {
+            notificationListener.interrupt();
+            CloseableIterator<Result<NotificationRecords>> stream = notificationStream;
+            if (stream != null) {
+                stream.close();
+            }
+        }
+        if (downloads != null) {
+            downloads.shutdownNow();
+        }
+    }
+
+    private record Download(String name, Future<Record> future) {}
+
+    private record NewObject(String name, long size) {}
+
     private static class S3SourceRecord implements Record {
         private final byte[] read;
         private final String name;
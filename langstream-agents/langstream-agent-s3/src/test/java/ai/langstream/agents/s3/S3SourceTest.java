@@ -70,7 +70,7 @@ public class S3SourceTest {
     @Test
     void testRead() throws Exception {
         String bucket = "langstream-test-" + UUID.randomUUID();
-        AgentSource agentSource = buildAgentSource(bucket);
+        AgentSource agentSource = buildAgentSource(bucket, Map.of("max-concurrent-downloads", 1));
         String content = "test-content-";
         for (int i = 0; i < 10; i++) {
             String s = content + i;
@@ -129,6 +129,80 @@ public class S3SourceTest {
         agentSource.commit(List.of());
     }
 
+    @Test
+    void testReadConcurrently() throws Exception {
+        String bucket = "langstream-test-" + UUID.randomUUID();
+        // small pages and ranges to exercise the paginated listing and the ranged reads
+        AgentSource agentSource =
+                buildAgentSource(
+                        bucket,
+                        Map.of(
+                                "max-concurrent-downloads", 4,
+                                "list-page-size", 3,
+                                "range-size", 10));
+        for (int i = 0; i < 10; i++) {
+            String s = "test-content-" + "x".repeat(i * 5);
+            minioClient.putObject(
+                    PutObjectArgs.builder().bucket(bucket).object("test-" + i + ".txt").stream(
+                                    new ByteArrayInputStream(s.getBytes(StandardCharsets.UTF_8)),
+                                    s.length(),
+                                    -1)
+                            .build());
+        }
+
+        List<Record> all = new ArrayList<>();
+        for (int i = 0; i < 10 && all.size() < 10; i++) {
+            all.addAll(agentSource.read());
+        }
+        assertEquals(10, all.size());
+        for (int i = 0; i < 10; i++) {
+            // the records are returned in the listing order
+            assertEquals("test-" + i + ".txt", all.get(i).key());
+            assertArrayEquals(
+                    ("test-content-" + "x".repeat(i * 5)).getBytes(StandardCharsets.UTF_8),
+                    (byte[]) all.get(i).value());
+        }
+
+        agentSource.commit(all);
+        assertFalse(
+                minioClient
+                        .listObjects(ListObjectsArgs.builder().bucket(bucket).build())
+                        .iterator()
+                        .hasNext());
+        assertTrue(agentSource.read().isEmpty());
+        agentSource.close();
+    }
+
+    @Test
+    void testReconciliationWithNotifications() throws Exception {
+        String bucket = "langstream-test-" + UUID.randomUUID();
+        // localstack does not send the MinIO notifications, the objects are found by the
+        // reconciliation listing
+        AgentSource agentSource =
+                buildAgentSource(
+                        bucket,
+                        Map.of(
+                                "bucket-notifications", true,
+                                "reconciliation-interval-seconds", 1,
+                                "idle-time", 1));
+        assertTrue(agentSource.read().isEmpty());
+        String content = "test-content";
+        minioClient.putObject(
+                PutObjectArgs.builder().bucket(bucket).object("test.txt").stream(
+                                new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)),
+                                content.length(),
+                                -1)
+                        .build());
+        List<Record> read = new ArrayList<>();
+        for (int i = 0; i < 10 && read.isEmpty(); i++) {
+            read.addAll(agentSource.read());
+        }
+        assertEquals(1, read.size());
+        assertEquals("test.txt", read.get(0).key());
+        agentSource.commit(read);
+        agentSource.close();
+    }
+
     @Test
     void emptyBucket() throws Exception {
         String bucket = "langstream-test-" + UUID.randomUUID();
@@ -168,9 +242,14 @@ public class S3SourceTest {
     }
 
     private AgentSource buildAgentSource(String bucket) throws Exception {
+        return buildAgentSource(bucket, Map.of());
+    }
+
+    private AgentSource buildAgentSource(String bucket, Map<String, Object> additionalConfigs)
+            throws Exception {
         AgentSource agentSource =
                 (AgentSource) AGENT_CODE_REGISTRY.getAgentCode("s3-source").agentCode();
-        Map<String, Object> configs = new HashMap<>();
+        Map<String, Object> configs = new HashMap<>(additionalConfigs);
         String endpoint = localstack.getEndpointOverride(S3).toString();
         configs.put("endpoint", endpoint);
         configs.put("bucketName", bucket);
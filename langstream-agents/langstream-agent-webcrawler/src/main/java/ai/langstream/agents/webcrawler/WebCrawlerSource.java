@@ -31,12 +31,15 @@ import ai.langstream.api.runner.code.AgentSource;
 import ai.langstream.api.runner.code.Header;
 import ai.langstream.api.runner.code.Record;
 import ai.langstream.api.runner.code.SimpleRecord;
+import ai.langstream.api.runner.code.TextValue;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import io.minio.BucketExistsArgs;
 import io.minio.GetObjectArgs;
 import io.minio.GetObjectResponse;
 import io.minio.MakeBucketArgs;
 import io.minio.MinioClient;
+import io.minio.PutObjectArgs;
+import io.minio.RemoveObjectArgs;
 import io.minio.errors.ErrorResponseException;
 import io.minio.errors.InsufficientDataException;
 import io.minio.errors.InternalException;
@@ -45,7 +48,6 @@ import io.minio.errors.ServerException;
 import io.minio.errors.XmlParserException;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 import java.util.Collection;
@@ -67,6 +69,7 @@ public class WebCrawlerSource extends AbstractAgentCode implements AgentSource {
     private Set<String> seedUrls;
     private MinioClient minioClient;
     private int idleTime;
+    private int reindexIntervalSeconds;
 
     private String statusFileName;
 
@@ -91,15 +94,25 @@ public class WebCrawlerSource extends AbstractAgentCode implements AgentSource {
         allowedDomains = getSet("allowed-domains", configuration);
         seedUrls = getSet("seed-urls", configuration);
         idleTime = getInt("idle-time", 1, configuration);
+        reindexIntervalSeconds = getInt("reindex-interval-seconds", 0, configuration);
         maxUnflushedPages = getInt("max-unflushed-pages", 100, configuration);
 
         flushNext.set(maxUnflushedPages);
         int minTimeBetweenRequests = getInt("min-time-between-requests", 100, configuration);
+        int maxConcurrentRequests = getInt("max-concurrent-requests", 4, configuration);
+        int maxConcurrentRequestsPerHost =
+                getInt("max-concurrent-requests-per-host", 2, configuration);
         String userAgent = getString("user-agent", "langstream.ai-webcrawler/1.0", configuration);
         int maxErrorCount = getInt("max-error-count", 5, configuration);
         int httpTimeout = getInt("http-timeout", 10000, configuration);
 
         boolean handleCookies = getBoolean("handle-cookies", true, configuration);
+        boolean emitDeletedPages = getBoolean("emit-deleted-pages", false, configuration);
+        int maxUrlsInMemory =
+                getInt(
+                        "max-urls-in-memory",
+                        WebCrawlerStatus.DEFAULT_MAX_URLS_IN_MEMORY,
+                        configuration);
 
         log.info(
                 "Connecting to S3 Bucket at {} in region {} with user {}",
@@ -111,6 +124,11 @@ public class WebCrawlerSource extends AbstractAgentCode implements AgentSource {
         log.info("user-agent: {}", userAgent);
         log.info("max-unflushed-pages: {}", maxUnflushedPages);
         log.info("min-time-between-requests: {}", minTimeBetweenRequests);
+        log.info("max-concurrent-requests: {}", maxConcurrentRequests);
+        log.info("max-concurrent-requests-per-host: {}", maxConcurrentRequestsPerHost);
+        log.info("max-urls-in-memory: {}", maxUrlsInMemory);
+        log.info("reindex-interval-seconds: {}", reindexIntervalSeconds);
+        log.info("emit-deleted-pages: {}", emitDeletedPages);
 
         MinioClient.Builder builder =
                 MinioClient.builder().endpoint(endpoint).credentials(username, password);
@@ -125,13 +143,16 @@ public class WebCrawlerSource extends AbstractAgentCode implements AgentSource {
                 WebCrawlerConfiguration.builder()
                         .allowedDomains(allowedDomains)
                         .minTimeBetweenRequests(minTimeBetweenRequests)
+                        .maxConcurrentRequests(maxConcurrentRequests)
+                        .maxConcurrentRequestsPerHost(maxConcurrentRequestsPerHost)
                         .userAgent(userAgent)
                         .handleCookies(handleCookies)
                         .httpTimeout(httpTimeout)
                         .maxErrorCount(maxErrorCount)
+                        .emitDeletedPages(emitDeletedPages)
                         .build();
 
-        WebCrawlerStatus status = new WebCrawlerStatus();
+        WebCrawlerStatus status = new WebCrawlerStatus(maxUrlsInMemory);
         crawler = new WebCrawler(webCrawlerConfiguration, status, foundDocuments::add);
     }
 
@@ -180,13 +201,19 @@ public class WebCrawlerSource extends AbstractAgentCode implements AgentSource {
     @Override
     public List<Record> read() throws Exception {
         if (finished) {
-            return sleepForNoResults();
+            if (!isReindexTime()) {
+                return sleepForNoResults();
+            }
+            log.info("Crawling again the web site");
+            finished = false;
+            crawler.recrawl(seedUrls);
         }
         if (foundDocuments.isEmpty()) {
             boolean somethingDone = crawler.runCycle();
             if (!somethingDone) {
                 finished = true;
                 log.info("No more documents found.");
+                crawler.getStatus().crawlCompleted(System.currentTimeMillis());
                 flushStatus();
             } else {
                 // we did something but no new documents were found (for instance a redirection has
@@ -203,9 +230,14 @@ public class WebCrawlerSource extends AbstractAgentCode implements AgentSource {
         }
 
         Document document = foundDocuments.remove();
-        return List.of(
-                new WebCrawlerSourceRecord(
-                        document.content().getBytes(StandardCharsets.UTF_8), document.url()));
+        return List.of(new WebCrawlerSourceRecord(document));
+    }
+
+    private boolean isReindexTime() {
+        return reindexIntervalSeconds > 0
+                && System.currentTimeMillis()
+                        >= crawler.getStatus().getCrawlCompletedAt()
+                                + reindexIntervalSeconds * 1000L;
     }
 
     private List<Record> sleepForNoResults() throws Exception {
@@ -241,12 +273,17 @@ public class WebCrawlerSource extends AbstractAgentCode implements AgentSource {
     }
 
     private static class WebCrawlerSourceRecord implements Record {
-        private final byte[] read;
+        private final TextValue read;
         private final String url;
-
-        public WebCrawlerSourceRecord(byte[] read, String url) {
-            this.read = read;
-            this.url = url;
+        private final boolean updated;
+        private final boolean deleted;
+
+        public WebCrawlerSourceRecord(Document document) {
+            // the deleted pages are sent with a null value, like a tombstone
+            this.read = document.deleted() ? null : TextValue.of(document.content());
+            this.url = document.url();
+            this.updated = document.updated();
+            this.deleted = document.deleted();
         }
 
         /**
@@ -277,6 +314,18 @@ public class WebCrawlerSource extends AbstractAgentCode implements AgentSource {
 
         @Override
         public Collection<Header> headers() {
+            if (deleted) {
+                // the page has been processed by a previous crawl and does not exist anymore
+                return List.of(
+                        new SimpleRecord.SimpleHeader("url", url),
+                        new SimpleRecord.SimpleHeader("deleted", "true"));
+            }
+            if (updated) {
+                // the page has been processed by a previous crawl
+                return List.of(
+                        new SimpleRecord.SimpleHeader("url", url),
+                        new SimpleRecord.SimpleHeader("updated", "true"));
+            }
             return List.of(new SimpleRecord.SimpleHeader("url", url));
         }
 
@@ -291,33 +340,72 @@ public class WebCrawlerSource extends AbstractAgentCode implements AgentSource {
 
         @Override
         public void storeStatus(Map<String, Object> metadata) throws Exception {
-            byte[] content = MAPPER.writeValueAsBytes(metadata);
-            log.info("Storing status in {}, {} bytes", statusFileName, content.length);
+            putObject(statusFileName, MAPPER.writeValueAsBytes(metadata));
+        }
+
+        @Override
+        public Map<String, Object> getCurrentStatus() throws Exception {
+            byte[] content = getObject(statusFileName);
+            if (content == null) {
+                log.info("No status file found, starting from scratch");
+                return Map.of();
+            }
+            return MAPPER.readValue(content, Map.class);
+        }
+
+        @Override
+        public boolean supportsStatusLog() {
+            return true;
+        }
+
+        @Override
+        public void storeStatusPart(String name, List<String> values) throws Exception {
+            putObject(statusPartFileName(name), MAPPER.writeValueAsBytes(values));
+        }
+
+        @Override
+        public List<String> getStatusPart(String name) throws Exception {
+            byte[] content = getObject(statusPartFileName(name));
+            return content != null ? MAPPER.readValue(content, List.class) : null;
+        }
+
+        @Override
+        public void deleteStatusPart(String name) throws Exception {
+            minioClient.removeObject(
+                    RemoveObjectArgs.builder()
+                            .bucket(bucketName)
+                            .object(statusPartFileName(name))
+                            .build());
+        }
+
+        private String statusPartFileName(String name) {
+            return statusFileName + "." + name;
+        }
+
+        private void putObject(String objectName, byte[] content) throws Exception {
+            log.info("Storing status in {}, {} bytes", objectName, content.length);
             minioClient.putObject(
-                    io.minio.PutObjectArgs.builder()
+                    PutObjectArgs.builder()
                             .bucket(bucketName)
-                            .object(statusFileName)
+                            .object(objectName)
                             .contentType("text/json")
                             .stream(new ByteArrayInputStream(content), content.length, -1)
                             .build());
         }
 
-        @Override
-        public Map<String, Object> getCurrentStatus() throws Exception {
-            try {
-                GetObjectResponse result =
-                        minioClient.getObject(
-                                GetObjectArgs.builder()
-                                        .bucket(bucketName)
-                                        .object(statusFileName)
-                                        .build());
+        private byte[] getObject(String objectName) throws Exception {
+            try (GetObjectResponse result =
+                    minioClient.getObject(
+                            GetObjectArgs.builder()
+                                    .bucket(bucketName)
+                                    .object(objectName)
+                                    .build())) {
                 byte[] content = result.readAllBytes();
-                log.info("Restoring status from {}, {} bytes", statusFileName, content.length);
-                return MAPPER.readValue(content, Map.class);
+                log.info("Restoring status from {}, {} bytes", objectName, content.length);
+                return content;
             } catch (ErrorResponseException e) {
                 if (e.errorResponse().code().equals("NoSuchKey")) {
-                    log.info("No status file found, starting from scratch");
-                    return Map.of();
+                    return null;
                 }
                 throw e;
             }
@@ -15,4 +15,25 @@
  */
 package ai.langstream.agents.webcrawler.crawler;
 
-public record Document(String url, String content) {}
+/**
+ * A page found by the crawler.
+ *
+ * @param content the content of the page, null if the page has been deleted
+ * @param updated true if the page has already been processed by a previous crawl and its content
+ *     changed
+ * @param deleted true if the page has been processed by a previous crawl and does not exist anymore
+ */
+public record Document(String url, String content, boolean updated, boolean deleted) {
+
+    public Document(String url, String content) {
+        this(url, content, false);
+    }
+
+    public Document(String url, String content, boolean updated) {
+        this(url, content, updated, false);
+    }
+
+    public static Document deleted(String url) {
+        return new Document(url, null, false, true);
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.langstream.agents.webcrawler.crawler;
+
+/**
+ * What is known about a page that has been processed, it is used to detect the changes when the
+ * page is crawled again.
+ *
+ * @param etag the ETag header of the response, or null
+ * @param lastModified the Last-Modified header of the response, or null
+ * @param contentHash the hash of the content of the page
+ * @param fetchedAt when the page has been fetched
+ */
+public record PageInfo(String etag, String lastModified, String contentHash, long fetchedAt) {
+
+    String encode() {
+        return nullToEmpty(etag)
+                + '\t'
+                + nullToEmpty(lastModified)
+                + '\t'
+                + contentHash
+                + '\t'
+                + fetchedAt;
+    }
+
+    static PageInfo decode(String encoded) {
+        String[] parts = encoded.split("\t", -1);
+        return new PageInfo(
+                emptyToNull(parts[0]), emptyToNull(parts[1]), parts[2], Long.parseLong(parts[3]));
+    }
+
+    private static String nullToEmpty(String value) {
+        return value == null ? "" : value;
+    }
+
+    private static String emptyToNull(String value) {
+        return value.isEmpty() ? null : value;
+    }
+}
@@ -15,10 +15,51 @@
  */
 package ai.langstream.agents.webcrawler.crawler;
 
+import java.util.List;
 import java.util.Map;
 
 public interface StatusStorage {
     void storeStatus(Map<String, Object> metadata) throws Exception;
 
     Map<String, Object> getCurrentStatus() throws Exception;
+
+    /**
+     * Stores a part of the status that is kept out of the status document because it can be large,
+     * like a chunk of the urls to crawl.
+     */
+    void storeStatusPart(String name, List<String> values) throws Exception;
+
+    /**
+     * @return the values of the part, or null if the part does not exist
+     */
+    List<String> getStatusPart(String name) throws Exception;
+
+    void deleteStatusPart(String name) throws Exception;
+
+    /**
+     * If the storage can keep a log of the changes since the last full status, then the status is
+     * stored incrementally and the full status is only rewritten from time to time.
+     */
+    default boolean supportsStatusLog() {
+        return false;
+    }
+
+    default void storeStatusLog(long segment, List<String> events) throws Exception {
+        storeStatusPart(statusLogPartName(segment), events);
+    }
+
+    /**
+     * @return the events of the segment, or null if the segment does not exist
+     */
+    default List<String> getStatusLog(long segment) throws Exception {
+        return getStatusPart(statusLogPartName(segment));
+    }
+
+    default void deleteStatusLog(long segment) throws Exception {
+        deleteStatusPart(statusLogPartName(segment));
+    }
+
+    private static String statusLogPartName(long segment) {
+        return "log." + segment;
+    }
 }
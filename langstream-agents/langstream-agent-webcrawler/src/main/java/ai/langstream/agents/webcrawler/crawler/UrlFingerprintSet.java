@@ -0,0 +1,154 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.langstream.agents.webcrawler.crawler;
+
+import java.nio.ByteBuffer;
+import java.util.Base64;
+
+/**
+ * A set of URLs that only keeps a 64 bits fingerprint of each URL, in an open addressing table of
+ * longs. With 64 bits the probability of a collision stays negligible for the number of pages of a
+ * web site, a collision would only make the crawler skip a page.
+ */
+public final class UrlFingerprintSet {
+
+    private static final int MIN_CAPACITY = 16;
+
+    // 0 marks the free slots, no fingerprint is 0
+    private long[] table = new long[MIN_CAPACITY];
+    private int size;
+
+    public static long fingerprint(String url) {
+        // FNV-1a on the chars, followed by the splitmix64 finalizer to spread the bits
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < url.length(); i++) {
+            hash ^= url.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash = (hash ^ (hash >>> 30)) * 0xbf58476d1ce4e5b9L;
+        hash = (hash ^ (hash >>> 27)) * 0x94d049bb133111ebL;
+        hash = hash ^ (hash >>> 31);
+        return hash == 0 ? 1 : hash;
+    }
+
+    public boolean contains(String url) {
+        return containsFingerprint(fingerprint(url));
+    }
+
+    public boolean add(String url) {
+        return addFingerprint(fingerprint(url));
+    }
+
+    public boolean remove(String url) {
+        return removeFingerprint(fingerprint(url));
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        table = new long[MIN_CAPACITY];
+        size = 0;
+    }
+
+    boolean containsFingerprint(long fingerprint) {
+        long[] t = table;
+        int mask = t.length - 1;
+        for (int i = slot(fingerprint, mask); t[i] != 0; i = (i + 1) & mask) {
+            if (t[i] == fingerprint) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    boolean addFingerprint(long fingerprint) {
+        if ((size + 1) * 2 > table.length) {
+            resize(table.length * 2);
+        }
+        long[] t = table;
+        int mask = t.length - 1;
+        int i = slot(fingerprint, mask);
+        while (t[i] != 0) {
+            if (t[i] == fingerprint) {
+                return false;
+            }
+            i = (i + 1) & mask;
+        }
+        t[i] = fingerprint;
+        size++;
+        return true;
+    }
+
+    boolean removeFingerprint(long fingerprint) {
+        long[] t = table;
+        int mask = t.length - 1;
+        int i = slot(fingerprint, mask);
+        while (t[i] != fingerprint) {
+            if (t[i] == 0) {
+                return false;
+            }
+            i = (i + 1) & mask;
+        }
+        // backward shift deletion, no tombstones
+        int free = i;
+        for (int j = (i + 1) & mask; t[j] != 0; j = (j + 1) & mask) {
+            int home = slot(t[j], mask);
+            // move the entry if its home slot is not in the cyclic range (free, j]
+            if (((j - home) & mask) >= ((j - free) & mask)) {
+                t[free] = t[j];
+                free = j;
+            }
+        }
+        t[free] = 0;
+        size--;
+        return true;
+    }
+
+    /** Encodes the fingerprints, 8 bytes per URL. */
+    public String toBase64() {
+        ByteBuffer buffer = ByteBuffer.allocate(size * Long.BYTES);
+        for (long fingerprint : table) {
+            if (fingerprint != 0) {
+                buffer.putLong(fingerprint);
+            }
+        }
+        return Base64.getEncoder().encodeToString(buffer.array());
+    }
+
+    public void addAllFromBase64(String encoded) {
+        ByteBuffer buffer = ByteBuffer.wrap(Base64.getDecoder().decode(encoded));
+        while (buffer.remaining() >= Long.BYTES) {
+            addFingerprint(buffer.getLong());
+        }
+    }
+
+    private void resize(int capacity) {
+        long[] old = table;
+        table = new long[capacity];
+        size = 0;
+        for (long fingerprint : old) {
+            if (fingerprint != 0) {
+                addFingerprint(fingerprint);
+            }
+        }
+    }
+
+    private static int slot(long fingerprint, int mask) {
+        return (int) (fingerprint ^ (fingerprint >>> 32)) & mask;
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.langstream.agents.webcrawler.crawler;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.function.Consumer;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * A FIFO queue of URLs that keeps at most {@code maxInMemory} URLs on the heap. When the limit is
+ * reached the following URLs are appended to a local file, they are read back in order when the
+ * URLs in memory have been consumed.
+ */
+@Slf4j
+public final class UrlQueue implements AutoCloseable {
+
+    private static final int READ_BLOCK_SIZE = 64 * 1024;
+
+    private final int maxInMemory;
+    private final Deque<String> memory = new ArrayDeque<>();
+
+    private Path spillFile;
+    private DataOutputStream spillWriter;
+    private long readPosition;
+    private long spilled;
+
+    public UrlQueue(int maxInMemory) {
+        if (maxInMemory <= 0) {
+            throw new IllegalArgumentException("maxInMemory must be positive");
+        }
+        this.maxInMemory = maxInMemory;
+    }
+
+    public void add(String url) {
+        if (spilled == 0 && memory.size() < maxInMemory) {
+            memory.add(url);
+            return;
+        }
+        try {
+            if (spillWriter == null) {
+                spillFile = Files.createTempFile("webcrawler-frontier", ".bin");
+                spillWriter =
+                        new DataOutputStream(
+                                new BufferedOutputStream(Files.newOutputStream(spillFile)));
+                readPosition = 0;
+                log.info("Spilling the frontier to {}", spillFile);
+            }
+            byte[] bytes = url.getBytes(StandardCharsets.UTF_8);
+            spillWriter.writeInt(bytes.length);
+            spillWriter.write(bytes);
+            spilled++;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public String poll() {
+        if (memory.isEmpty() && spilled > 0) {
+            readSpilled(maxInMemory, memory::add);
+            if (spilled == 0) {
+                deleteSpillFile();
+            }
+        }
+        return memory.poll();
+    }
+
+    public int size() {
+        return (int) Math.min(Integer.MAX_VALUE, memory.size() + spilled);
+    }
+
+    public boolean isEmpty() {
+        return memory.isEmpty() && spilled == 0;
+    }
+
+    /** Visits the URLs in order, without consuming them. */
+    public void forEach(Consumer<String> consumer) {
+        memory.forEach(consumer);
+        if (spilled > 0) {
+            long position = readPosition;
+            long remaining = spilled;
+            readSpilled(Long.MAX_VALUE, consumer);
+            readPosition = position;
+            spilled = remaining;
+        }
+    }
+
+    public void clear() {
+        memory.clear();
+        deleteSpillFile();
+    }
+
+    @Override
+    public void close() {
+        clear();
+    }
+
+    private void readSpilled(long max, Consumer<String> consumer) {
+        try {
+            spillWriter.flush();
+            try (RandomAccessFile file = new RandomAccessFile(spillFile.toFile(), "r")) {
+                byte[] block = new byte[READ_BLOCK_SIZE];
+                long read = 0;
+                while (read < max && spilled > 0) {
+                    file.seek(readPosition);
+                    int length = file.read(block);
+                    if (length <= 0) {
+                        throw new IOException("Unexpected end of " + spillFile);
+                    }
+                    int offset = 0;
+                    while (read < max && spilled > 0 && offset + Integer.BYTES <= length) {
+                        int size =
+                                ((block[offset] & 0xff) << 24)
+                                        | ((block[offset + 1] & 0xff) << 16)
+                                        | ((block[offset + 2] & 0xff) << 8)
+                                        | (block[offset + 3] & 0xff);
+                        if (offset + Integer.BYTES + size > length) {
+                            if (offset == 0) {
+                                // longer than the block
+                                block = new byte[Integer.BYTES + size];
+                            }
+                            break;
+                        }
+                        consumer.accept(
+                                new String(
+                                        block,
+                                        offset + Integer.BYTES,
+                                        size,
+                                        StandardCharsets.UTF_8));
+                        offset += Integer.BYTES + size;
+                        read++;
+                        spilled--;
+                    }
+                    readPosition += offset;
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void deleteSpillFile() {
+        spilled = 0;
+        readPosition = 0;
+        if (spillWriter != null) {
+            try (OutputStream ignored = spillWriter) {
+                spillWriter = null;
+                Files.deleteIfExists(spillFile);
+            } catch (IOException e) {
+                log.warn("Cannot delete {}", spillFile, e);
+            }
+            spillFile = null;
+        }
+    }
+}
@@ -15,20 +15,76 @@
  */
 package ai.langstream.agents.webcrawler.crawler;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.net.CookieManager;
 import java.net.CookieStore;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayDeque;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
-import org.jsoup.Connection;
-import org.jsoup.HttpStatusException;
 import org.jsoup.Jsoup;
-import org.jsoup.UnsupportedMimeTypeException;
 import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.select.Elements;
 
+/**
+ * Crawls the allowed domains. The pages are fetched asynchronously, up to {@code
+ * maxConcurrentRequests} at the same time and up to {@code maxConcurrentRequestsPerHost} for each
+ * host, two requests to the same host start at least {@code minTimeBetweenRequests} ms apart. The
+ * hosts are served in the order they become available, so a slow or throttled host does not stall
+ * the others. The HTTP client keeps the connections open and reuses them. Only the bodies of the
+ * HTML and XML pages are read, up to {@link #MAX_BODY_SIZE} bytes.
+ *
+ * <p>The status and the {@link DocumentVisitor} are only accessed by the thread that calls {@link
+ * #runCycle()}, the requests complete in the background while the documents are processed.
+ *
+ * <p>When a page is crawled again, the request carries the ETag and the Last-Modified date of the
+ * previous response and the page is only visited if its content changed. The pages that a sitemap
+ * reports as not modified since they have been fetched are not requested at all.
+ */
 @Slf4j
 @Getter
 public class WebCrawler {
 
+    // the content types that Jsoup accepts
+    private static final Pattern XML_CONTENT_TYPE =
+            Pattern.compile("(?i)(application|text)/\\w*\\+?xml.*");
+    private static final Pattern CHARSET = Pattern.compile("(?i)\\bcharset=\\s*\"?([^\\s;\"]*)");
+
+    // how many urls are taken from the status while all their hosts are busy
+    private static final int MAX_WAITING_URLS = 1000;
+
+    // the bodies are truncated to this size, like Jsoup does by default
+    static final int MAX_BODY_SIZE = 2 * 1024 * 1024;
+
     private final WebCrawlerConfiguration configuration;
 
     private final WebCrawlerStatus status;
@@ -37,6 +93,23 @@ public class WebCrawler {
 
     private final CookieStore cookieStore;
 
+    private final HttpClient httpClient;
+
+    private final Map<String, Host> hosts = new HashMap<>();
+
+    // the hosts that have urls waiting and can accept a request, by the time they can start it
+    private final PriorityQueue<Host> readyHosts =
+            new PriorityQueue<>((a, b) -> Long.compare(a.nextRequestAt, b.nextRequestAt));
+
+    private final BlockingQueue<FetchResult> completed = new LinkedBlockingQueue<>();
+
+    // the last modification dates found in the sitemaps during this crawl
+    private final Map<String, Long> sitemapLastModified = new HashMap<>();
+
+    private int inFlight;
+
+    private int waitingUrls;
+
     public WebCrawler(
             WebCrawlerConfiguration configuration,
             WebCrawlerStatus status,
@@ -48,6 +121,15 @@ public class WebCrawler {
         CookieManager cookieManager = new CookieManager();
         cookieManager.setCookiePolicy(java.net.CookiePolicy.ACCEPT_ALL);
         this.cookieStore = cookieManager.getCookieStore();
+
+        HttpClient.Builder builder =
+                HttpClient.newBuilder()
+                        .followRedirects(HttpClient.Redirect.NEVER)
+                        .connectTimeout(Duration.ofMillis(configuration.getHttpTimeout()));
+        if (configuration.isHandleCookies()) {
+            builder.cookieHandler(cookieManager);
+        }
+        this.httpClient = builder.build();
     }
 
     public void crawl(String startUrl) {
@@ -57,109 +139,445 @@ public class WebCrawler {
         status.addUrl(startUrl, true);
     }
 
+    /**
+     * Crawls again the web site from the seed urls, all the pages that have been processed are
+     * fetched again to detect their changes.
+     */
+    public void recrawl(Collection<String> seedUrls) {
+        status.startCrawl();
+        sitemapLastModified.clear();
+        seedUrls.forEach(this::crawl);
+        status.forEachKnownUrl(url -> status.addUrl(url, true));
+    }
+
+    /**
+     * Starts the requests that are allowed by the limits, then processes the completed requests. It
+     * waits for at least one request to complete.
+     *
+     * @return false if there is nothing more to crawl
+     */
     public boolean runCycle() throws Exception {
-        String current = status.nextUrl();
-        if (current == null) {
-            return false;
+        startRequests();
+        if (inFlight == 0) {
+            Host next = readyHosts.peek();
+            if (next == null) {
+                return false;
+            }
+            // all the hosts with urls are waiting for the politeness delay
+            long wait = next.nextRequestAt - System.currentTimeMillis();
+            if (wait > 0) {
+                Thread.sleep(wait);
+            }
+            startRequests();
         }
-        log.info("Crawling url: {}", current);
-        Connection connect = Jsoup.connect(current);
-        connect.cookieStore(cookieStore);
-        connect.followRedirects(false);
-        if (configuration.getUserAgent() != null) {
-            connect.userAgent(configuration.getUserAgent());
+        FetchResult first = completed.poll(configuration.getHttpTimeout(), TimeUnit.MILLISECONDS);
+        if (first == null) {
+            // the requests in flight time out on their own, let the caller do its work meanwhile
+            return true;
+        }
+        handle(first);
+        FetchResult result;
+        while ((result = completed.poll()) != null) {
+            handle(result);
         }
-        connect.timeout(configuration.getHttpTimeout());
+        return true;
+    }
 
-        boolean redirectedToForbiddenDomain = false;
-        Document document;
-        try {
-            document = connect.get();
-            Connection.Response response = connect.response();
-            int statusCode = response.statusCode();
-            if (statusCode >= 300 && statusCode < 400) {
-                String location = response.header("Location");
-                if (!location.equals(current)) {
-                    if (!configuration.isAllowedDomain(location)) {
-                        redirectedToForbiddenDomain = true;
-                        log.warn(
-                                "A redirection to a forbidden domain happened (from {} to {})",
-                                current,
-                                location);
-                    } else {
-                        log.info("A redirection happened from {} to {}", current, location);
-                        status.addUrl(location, true);
-                        return true;
-                    }
+    private void startRequests() {
+        long now = System.currentTimeMillis();
+        while (inFlight < configuration.getMaxConcurrentRequests()) {
+            Host host = readyHosts.peek();
+            if (host != null) {
+                if (host.nextRequestAt > now) {
+                    // the politeness delay of the host is not elapsed
+                    return;
                 }
+                readyHosts.poll();
+                host.queued = false;
+                startRequest(host, host.urls.poll(), now);
+                schedule(host);
+                continue;
             }
-        } catch (HttpStatusException e) {
-            int code = e.getStatusCode();
-            log.info("Error while crawling url: {}, HTTP code {}", current, code);
-
-            if (code >= 400 && code < 500) {
-                // not found, forbidden...this is a fatal error
-                log.info("Skipping the url {}", current);
-            } else if (code < 400 || (code >= 500 && code < 600)) {
-                // 1xx, 2xx, 3xx...this is not expected as it is not an "ERROR"
-                // 5xx errors are server side errors, we can retry
-
-                int currentCount = status.temporaryErrorOnUrl(current);
-                if (currentCount >= configuration.getMaxErrorCount()) {
-                    log.info("Too many errors ({}) on url {}, skipping it", currentCount, current);
-                    status.addUrl(current, false);
-                } else {
-                    log.info("Putting back the url {} into the backlog", current);
-                    status.addUrl(current, true);
+            // all the hosts with urls are busy, look for urls of other hosts in the frontier
+            if (waitingUrls >= MAX_WAITING_URLS) {
+                return;
+            }
+            String url = status.nextUrl();
+            if (url == null) {
+                return;
+            }
+            if (notModifiedInSitemap(url)) {
+                log.info("Url {} not modified according to the sitemap", url);
+                status.urlProcessed(url);
+                continue;
+            }
+            Host urlHost = hosts.computeIfAbsent(hostOf(url), name -> new Host());
+            urlHost.urls.add(url);
+            waitingUrls++;
+            schedule(urlHost);
+        }
+    }
+
+    private void schedule(Host host) {
+        if (!host.queued
+                && !host.urls.isEmpty()
+                && host.inFlight < configuration.getMaxConcurrentRequestsPerHost()) {
+            readyHosts.add(host);
+            host.queued = true;
+        }
+    }
+
+    private void startRequest(Host host, String url, long now) {
+        waitingUrls--;
+        host.inFlight++;
+        host.nextRequestAt = now + configuration.getMinTimeBetweenRequests();
+        inFlight++;
+        log.info("Crawling url: {}", url);
+        HttpRequest request;
+        try {
+            HttpRequest.Builder builder =
+                    HttpRequest.newBuilder(URI.create(url))
+                            .timeout(Duration.ofMillis(configuration.getHttpTimeout()))
+                            .GET();
+            if (configuration.getUserAgent() != null) {
+                builder.header("User-Agent", configuration.getUserAgent());
+            }
+            PageInfo previous = status.getPageInfo(url);
+            if (previous != null) {
+                if (previous.etag() != null) {
+                    builder.header("If-None-Match", previous.etag());
+                }
+                if (previous.lastModified() != null) {
+                    builder.header("If-Modified-Since", previous.lastModified());
                 }
             }
+            request = builder.build();
+        } catch (IllegalArgumentException invalidUrl) {
+            completed.add(new FetchResult(host, url, null, invalidUrl));
+            return;
+        }
+        httpClient
+                .sendAsync(request, WebCrawler::bodyHandler)
+                // the timeout of the request only covers the headers, not the body
+                .orTimeout(2L * configuration.getHttpTimeout(), TimeUnit.MILLISECONDS)
+                .whenComplete(
+                        (response, error) ->
+                                completed.add(new FetchResult(host, url, response, error)));
+    }
+
+    /**
+     * Reads the body only for the successful responses with a supported content type, up to {@link
+     * #MAX_BODY_SIZE} bytes. The other bodies are discarded while they are received.
+     */
+    private static HttpResponse.BodySubscriber<byte[]> bodyHandler(
+            HttpResponse.ResponseInfo responseInfo) {
+        int statusCode = responseInfo.statusCode();
+        String contentType = responseInfo.headers().firstValue("Content-Type").orElse(null);
+        if (statusCode < 200 || statusCode >= 300 || !isSupportedContentType(contentType)) {
+            return HttpResponse.BodySubscribers.mapping(
+                    HttpResponse.BodySubscribers.discarding(), ignored -> null);
+        }
+        long contentLength = responseInfo.headers().firstValueAsLong("Content-Length").orElse(-1);
+        return new LimitedBodySubscriber(MAX_BODY_SIZE, contentLength);
+    }
+
+    private static boolean isSupportedContentType(String contentType) {
+        return contentType == null
+                || contentType.startsWith("text/")
+                || XML_CONTENT_TYPE.matcher(contentType).matches();
+    }
 
-            // prevent from being banned for flooding
-            if (configuration.getMinTimeBetweenRequests() > 0) {
-                Thread.sleep(configuration.getMinTimeBetweenRequests());
+    private void handle(FetchResult result) {
+        inFlight--;
+        Host host = result.host();
+        host.inFlight--;
+        schedule(host);
+        String current = result.url();
+        if (result.error() != null) {
+            if (result.error() instanceof IllegalArgumentException) {
+                log.info("Invalid url {}, skipping it: {}", current, result.error() + "");
+                status.addUrl(current, false);
+                status.urlProcessed(current);
+            } else {
+                log.info("Error while crawling url: {}: {}", current, result.error() + "");
+                temporaryError(current);
+            }
+            return;
+        }
+        HttpResponse<byte[]> response = result.response();
+        int statusCode = response.statusCode();
+        if (statusCode == 304) {
+            log.info("Url {} not modified", current);
+            status.urlProcessed(current);
+            return;
+        } else if (statusCode >= 300 && statusCode < 400) {
+            String location = response.headers().firstValue("Location").orElse(null);
+            if (location != null) {
+                location = URI.create(current).resolve(location).toString();
+            }
+            if (location == null || location.equals(current)) {
+                // the body of a redirection is not read, there is nothing to parse
+                log.info(
+                        "Invalid redirection from {} to {}, HTTP code {}, skipping the url",
+                        current,
+                        location,
+                        statusCode);
+            } else if (!configuration.isAllowedDomain(location)) {
+                log.warn(
+                        "A redirection to a forbidden domain happened (from {} to {})",
+                        current,
+                        location);
+            } else {
+                log.info("A redirection happened from {} to {}", current, location);
+                status.addUrl(location, true);
+            }
+            status.urlProcessed(current);
+            return;
+        } else if ((statusCode == 404 || statusCode == 410)
+                && status.getPageInfo(current) != null) {
+            // the page has been processed by a previous crawl
+            log.info("Url {} has been removed, HTTP code {}", current, statusCode);
+            status.pageRemoved(current);
+            if (configuration.isEmitDeletedPages()) {
+                // it must be deleted downstream, the page is forgotten when it is committed
+                visitor.visit(ai.langstream.agents.webcrawler.crawler.Document.deleted(current));
+            } else {
+                status.urlProcessed(current);
             }
+            return;
+        } else if (statusCode >= 400 && statusCode < 500) {
+            // not found, forbidden...this is a fatal error
+            log.info("Error while crawling url: {}, HTTP code {}", current, statusCode);
+            log.info("Skipping the url {}", current);
+            status.urlProcessed(current);
+            return;
+        } else if (statusCode < 200 || statusCode >= 500) {
+            // 1xx are not expected, 5xx errors are server side errors, we can retry
+            log.info("Error while crawling url: {}, HTTP code {}", current, statusCode);
+            temporaryError(current);
+            return;
+        }
 
-            // we did something
-            return true;
-        } catch (UnsupportedMimeTypeException notHtml) {
-            log.info(
-                    "Url {} lead to a {} content-type document. Skipping",
-                    current,
-                    notHtml.getMimeType());
+        String contentType = response.headers().firstValue("Content-Type").orElse(null);
+        if (!isSupportedContentType(contentType)) {
+            log.info("Url {} lead to a {} content-type document. Skipping", current, contentType);
             status.addUrl(current, false);
+            status.urlProcessed(current);
+            return;
+        }
+        Document document;
+        try {
+            document =
+                    Jsoup.parse(
+                            new ByteArrayInputStream(response.body()),
+                            charsetOf(contentType),
+                            current);
+        } catch (IOException e) {
+            log.info("Cannot parse the document at {}: {}", current, e + "");
+            status.addUrl(current, false);
+            status.urlProcessed(current);
+            return;
+        }
+
+        Elements sitemapEntries = document.select("urlset > url, sitemapindex > sitemap");
+        if (!sitemapEntries.isEmpty()) {
+            handleSitemap(current, sitemapEntries);
+            status.urlProcessed(current);
+            return;
+        }
 
-            // prevent from being banned for flooding
-            if (configuration.getMinTimeBetweenRequests() > 0) {
-                Thread.sleep(configuration.getMinTimeBetweenRequests());
+        document.getElementsByAttribute("href")
+                .forEach(
+                        element -> {
+                            if (configuration.isAllowedTag(element.tagName())) {
+                                String url = element.absUrl("href");
+                                if (configuration.isAllowedDomain(url)) {
+                                    status.addUrl(url, true);
+                                } else {
+                                    log.info("Ignoring not allowed url: {}", url);
+                                    status.addUrl(url, false);
+                                }
+                            }
+                        });
+
+        PageInfo previous = status.getPageInfo(current);
+        PageInfo info =
+                new PageInfo(
+                        response.headers().firstValue("ETag").orElse(null),
+                        response.headers().firstValue("Last-Modified").orElse(null),
+                        contentHash(response.body()),
+                        System.currentTimeMillis());
+        status.pageFetched(current, info);
+        if (previous != null && previous.contentHash().equals(info.contentHash())) {
+            log.info("Url {} has not changed", current);
+            status.urlProcessed(current);
+            return;
+        }
+        visitor.visit(
+                new ai.langstream.agents.webcrawler.crawler.Document(
+                        current, document.html(), previous != null));
+    }
+
+    private void handleSitemap(String current, Elements entries) {
+        log.info("Found a sitemap with {} entries at {}", entries.size(), current);
+        for (Element entry : entries) {
+            Element loc = entry.selectFirst("loc");
+            if (loc == null) {
+                continue;
+            }
+            String url;
+            try {
+                url = URI.create(current).resolve(loc.text().trim()).toString();
+            } catch (IllegalArgumentException e) {
+                log.info("Invalid url {} in the sitemap {}", loc.text(), current);
+                continue;
             }
+            if (!configuration.isAllowedDomain(url)) {
+                log.info("Ignoring not allowed url: {}", url);
+                continue;
+            }
+            Element lastmod = entry.selectFirst("lastmod");
+            Long lastModified = lastmod != null ? parseLastModified(lastmod.text().trim()) : null;
+            if (lastModified != null) {
+                sitemapLastModified.put(url, lastModified);
+            }
+            status.addUrl(url, true);
+        }
+    }
 
-            // we did something
-            return true;
+    private boolean notModifiedInSitemap(String url) {
+        Long lastModified = sitemapLastModified.get(url);
+        if (lastModified == null) {
+            return false;
         }
+        PageInfo info = status.getPageInfo(url);
+        return info != null && lastModified <= info.fetchedAt();
+    }
 
-        if (!redirectedToForbiddenDomain) {
-            document.getElementsByAttribute("href")
-                    .forEach(
-                            element -> {
-                                if (configuration.isAllowedTag(element.tagName())) {
-                                    String url = element.absUrl("href");
-                                    if (configuration.isAllowedDomain(url)) {
-                                        status.addUrl(url, true);
-                                    } else {
-                                        log.info("Ignoring not allowed url: {}", url);
-                                        status.addUrl(url, false);
-                                    }
-                                }
-                            });
-            visitor.visit(
-                    new ai.langstream.agents.webcrawler.crawler.Document(current, document.html()));
+    private static Long parseLastModified(String value) {
+        // W3C datetime, with or without the time
+        try {
+            return OffsetDateTime.parse(value).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            try {
+                return LocalDate.parse(value)
+                        .atStartOfDay(ZoneOffset.UTC)
+                        .toInstant()
+                        .toEpochMilli();
+            } catch (DateTimeParseException invalid) {
+                return null;
+            }
         }
+    }
 
-        // prevent from being banned for flooding
-        if (configuration.getMinTimeBetweenRequests() > 0) {
-            Thread.sleep(configuration.getMinTimeBetweenRequests());
+    private static String contentHash(byte[] content) {
+        try {
+            return Base64.getEncoder()
+                    .encodeToString(MessageDigest.getInstance("SHA-256").digest(content));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
         }
+    }
 
-        return true;
+    private void temporaryError(String current) {
+        int currentCount = status.temporaryErrorOnUrl(current);
+        if (currentCount >= configuration.getMaxErrorCount()) {
+            log.info("Too many errors ({}) on url {}, skipping it", currentCount, current);
+            status.addUrl(current, false);
+            status.urlProcessed(current);
+        } else {
+            log.info("Putting back the url {} into the backlog", current);
+            status.addUrl(current, true);
+        }
+    }
+
+    private static String hostOf(String url) {
+        try {
+            String host = URI.create(url).getHost();
+            return host != null ? host.toLowerCase() : "";
+        } catch (IllegalArgumentException e) {
+            return "";
+        }
+    }
+
+    private static String charsetOf(String contentType) {
+        if (contentType == null) {
+            return null;
+        }
+        Matcher matcher = CHARSET.matcher(contentType);
+        return matcher.find() && !matcher.group(1).isEmpty() ? matcher.group(1) : null;
+    }
+
+    private static class Host {
+        private final Deque<String> urls = new ArrayDeque<>();
+        private long nextRequestAt;
+        private int inFlight;
+        private boolean queued;
+    }
+
+    /**
+     * Collects the body up to a maximum size, then cancels the subscription so that the rest of the
+     * body is not received.
+     */
+    private static class LimitedBodySubscriber implements HttpResponse.BodySubscriber<byte[]> {
+        private final CompletableFuture<byte[]> body = new CompletableFuture<>();
+        private final ByteArrayOutputStream buffer;
+        private final int maxSize;
+        private Flow.Subscription subscription;
+
+        LimitedBodySubscriber(int maxSize, long contentLength) {
+            this.maxSize = maxSize;
+            this.buffer =
+                    new ByteArrayOutputStream(
+                            contentLength > 0 ? (int) Math.min(contentLength, maxSize) : 8192);
+        }
+
+        @Override
+        public CompletionStage<byte[]> getBody() {
+            return body;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(List<ByteBuffer> items) {
+            if (body.isDone()) {
+                return;
+            }
+            for (ByteBuffer item : items) {
+                int length = Math.min(item.remaining(), maxSize - buffer.size());
+                if (item.hasArray()) {
+                    buffer.write(item.array(), item.arrayOffset() + item.position(), length);
+                } else {
+                    byte[] bytes = new byte[length];
+                    item.get(bytes);
+                    buffer.writeBytes(bytes);
+                }
+                if (buffer.size() >= maxSize) {
+                    // complete the body first, the client fails the response when the
+                    // subscription is cancelled before
+                    body.complete(buffer.toByteArray());
+                    subscription.cancel();
+                    return;
+                }
+            }
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            body.completeExceptionally(error);
+        }
+
+        @Override
+        public void onComplete() {
+            body.complete(buffer.toByteArray());
+        }
     }
+
+    private record FetchResult(
+            Host host, String url, HttpResponse<byte[]> response, Throwable error) {}
 }
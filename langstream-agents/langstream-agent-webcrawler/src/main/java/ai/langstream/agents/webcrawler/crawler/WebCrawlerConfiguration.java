@@ -28,11 +28,16 @@ public class WebCrawlerConfiguration {
     @Builder.Default private Set<String> allowedDomains = Set.of();
     @Builder.Default private String userAgent = null;
     @Builder.Default private int minTimeBetweenRequests = 100;
+    @Builder.Default private int maxConcurrentRequests = 1;
+    @Builder.Default private int maxConcurrentRequestsPerHost = 1;
     @Builder.Default private int httpTimeout = 10000;
     @Builder.Default private int maxErrorCount = 5;
     @Builder.Default private boolean handleCookies = true;
     @Builder.Default private Set<String> allowedTags = Set.of("a");
 
+    // send a deleted document when a page processed by a previous crawl does not exist anymore
+    @Builder.Default private boolean emitDeletedPages = false;
+
     public boolean isAllowedDomain(String url) {
         final String domainOnly;
         try {
@@ -15,79 +15,345 @@
  */
 package ai.langstream.agents.webcrawler.crawler;
 
-import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Consumer;
 import lombok.Getter;
+import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
 
-@Getter
 @Slf4j
 public class WebCrawlerStatus {
+
+    public static final int DEFAULT_MAX_URLS_IN_MEMORY = 10000;
+
+    public static final int DEFAULT_MAX_VALIDATORS = 100000;
+
+    /** Number of log segments written before the full status is rewritten. */
+    private static final int MAX_LOG_SEGMENTS = 50;
+
     /**
-     * List of all URLs discovered and to be processed. An URL is removed from here on
-     * Source.commit()
+     * Number of entries in each part of the frontier and of the pages stored with the full status,
+     * only one part at a time is on the heap.
      */
-    private final Deque<String> remainingUrls = new ArrayDeque<>();
+    static final int PART_SIZE = 10000;
+
+    // events of the status log
+    private static final char EVENT_ADDED = '+';
+    private static final char EVENT_VISITED = '~';
+    private static final char EVENT_FORGOTTEN = '-';
+    private static final char EVENT_PROCESSED = '=';
+    private static final char EVENT_PAGE = '!';
+    private static final char EVENT_PAGE_REMOVED = '/';
+    private static final char EVENT_CRAWL_STARTED = '*';
+    private static final char EVENT_CRAWL_COMPLETED = '$';
 
     /**
-     * List of the URLs that are to be processed, this Deque is used to keep track of the urls that
+     * List of the URLs that are to be processed, this queue is used to keep track of the urls that
      * have not been returned by the Source yet. An Url is removed from here on Source.read()
      */
-    private final Deque<String> pendingUrls = new ArrayDeque<>();
+    @Getter private final UrlQueue pendingUrls;
+
+    /**
+     * The URLs that have been returned by the Source but that are not processed yet. An URL is
+     * removed from here on Source.commit(). The URLs to process after a restart are these URLs
+     * followed by the pending URLs.
+     */
+    private final Set<String> inProgressUrls = new LinkedHashSet<>();
 
     /**
      * Memory of all the URLs that have been seen by the Crawler in order to prevent cycles. This
      * structure only grows and is never cleared.
      */
-    private final Set<String> visitedUrls = new HashSet<>();
+    @Getter private final UrlFingerprintSet visitedUrls = new UrlFingerprintSet();
 
     /**
      * Map of the URLs that have been seen by the Crawler and that have returned a temporary error.
      * This status is not persisted.
      */
-    private final Map<String, Integer> errorCount = new HashMap<>();
+    @Getter private final Map<String, Integer> errorCount = new HashMap<>();
+
+    /**
+     * The pages that have been processed, by fingerprint of their url, with what is needed to
+     * detect their changes. The validators of the pages are kept in {@link #validators}.
+     */
+    private final Map<Long, PageInfo> pages = new HashMap<>();
+
+    /**
+     * The urls of the pages that have been processed, they are only needed to crawl again the pages
+     * and to store them, so they spill to disk like the pending urls. The urls of the removed pages
+     * are dropped when a new crawl starts.
+     */
+    private UrlQueue knownUrls;
+
+    /**
+     * The ETag and Last-Modified headers of the pages most recently used, by fingerprint of their
+     * url. The pages without validators are fetched again in full.
+     */
+    private final Map<Long, Validators> validators;
+
+    /** The pages fetched but not processed yet. This status is not persisted. */
+    private final Map<String, PageInfo> fetchedPages = new HashMap<>();
+
+    /**
+     * The pages that do not exist anymore but are not processed yet. This status is not persisted.
+     */
+    private final Set<String> removedPages = new HashSet<>();
+
+    /** When the last crawl has completed, 0 if the crawl is in progress. */
+    @Getter private long crawlCompletedAt;
+
+    /** The changes since the last persist, null if the storage does not support a status log. */
+    private List<String> statusLog;
+
+    /** The segment of the log covered by the last full status. */
+    private long snapshotSegment;
+
+    private long lastSegment;
+
+    private final int maxUrlsInMemory;
+
+    /** The full status that wrote the parts of the frontier and of the pages. */
+    private long partsSnapshot;
+
+    private int frontierParts;
+
+    private int pagesParts;
+
+    public WebCrawlerStatus() {
+        this(DEFAULT_MAX_URLS_IN_MEMORY);
+    }
+
+    public WebCrawlerStatus(int maxUrlsInMemory) {
+        this(maxUrlsInMemory, DEFAULT_MAX_VALIDATORS);
+    }
+
+    public WebCrawlerStatus(int maxUrlsInMemory, int maxValidators) {
+        this.maxUrlsInMemory = maxUrlsInMemory;
+        this.pendingUrls = new UrlQueue(maxUrlsInMemory);
+        this.knownUrls = new UrlQueue(maxUrlsInMemory);
+        this.validators =
+                new LinkedHashMap<>(16, 0.75f, true) {
+                    @Override
+                    protected boolean removeEldestEntry(Map.Entry<Long, Validators> eldest) {
+                        return size() > maxValidators;
+                    }
+                };
+    }
+
+    public int getRemainingUrlsCount() {
+        return inProgressUrls.size() + pendingUrls.size();
+    }
 
     public void reloadFrom(StatusStorage statusStorage) throws Exception {
+        statusLog = statusStorage.supportsStatusLog() ? new ArrayList<>() : null;
         Map<String, Object> currentStatus = statusStorage.getCurrentStatus();
-        if (currentStatus != null) {
-            log.info("Found a saved status, reloading...");
-            pendingUrls.clear();
-            remainingUrls.clear();
-            visitedUrls.clear();
-
-            // please note that the order here is important
-            // we want to visit the initial urls first
-            List<String> remainingUrls = (List<String>) currentStatus.get("remainingUrls");
-
-            if (remainingUrls != null) {
-                log.info("Reloaded {} remaining urls", remainingUrls.size());
-                remainingUrls.forEach(u -> log.info("Remaining {}", u));
-                this.pendingUrls.addAll(remainingUrls);
-                this.remainingUrls.addAll(remainingUrls);
+        if (currentStatus == null) {
+            log.info("No saved status found, starting from scratch");
+            return;
+        }
+        log.info("Found a saved status, reloading...");
+        pendingUrls.clear();
+        inProgressUrls.clear();
+        visitedUrls.clear();
+        pages.clear();
+        knownUrls.clear();
+        validators.clear();
+
+        String visitedFingerprints = (String) currentStatus.get("visitedFingerprints");
+        if (visitedFingerprints != null) {
+            visitedUrls.addAllFromBase64(visitedFingerprints);
+        }
+        // status written by the previous versions
+        List<String> visitedUrls = (List<String>) currentStatus.get("visitedUrls");
+        if (visitedUrls != null) {
+            visitedUrls.forEach(this.visitedUrls::add);
+        }
+        List<String> pages = (List<String>) currentStatus.get("pages");
+        if (pages != null) {
+            pages.forEach(this::putPage);
+        }
+        Number completedAt = (Number) currentStatus.get("crawlCompletedAt");
+        crawlCompletedAt = completedAt != null ? completedAt.longValue() : 0;
+        Number segment = (Number) currentStatus.get("lastSegment");
+        snapshotSegment = segment != null ? segment.longValue() : 0;
+        lastSegment = snapshotSegment;
+        Number snapshot = (Number) currentStatus.get("partsSnapshot");
+        partsSnapshot = snapshot != null ? snapshot.longValue() : 0;
+        Number parts = (Number) currentStatus.get("frontierParts");
+        frontierParts = parts != null ? parts.intValue() : 0;
+        parts = (Number) currentStatus.get("pagesParts");
+        pagesParts = parts != null ? parts.intValue() : 0;
+        for (int part = 0; part < pagesParts; part++) {
+            getPart(statusStorage, "pages", part).forEach(this::putPage);
+        }
+
+        // the log is replayed on the urls that are added or processed after the full status,
+        // these sets are only as large as the log
+        Set<String> added = new LinkedHashSet<>();
+        Set<String> processed = new HashSet<>();
+        if (statusLog != null) {
+            List<String> events;
+            while ((events = statusStorage.getStatusLog(lastSegment + 1)) != null) {
+                lastSegment++;
+                for (String event : events) {
+                    replay(event, added, processed);
+                }
             }
+        }
 
-            List<String> visitedUrls = (List<String>) currentStatus.get("visitedUrls");
-            if (visitedUrls != null) {
-                log.info("Reloaded {} visited urls", visitedUrls.size());
-                visitedUrls.forEach(u -> log.info("Visited {}", u));
-                this.visitedUrls.addAll(visitedUrls);
+        // please note that the order here is important
+        // we want to visit the initial urls first
+        for (int part = 0; part < frontierParts; part++) {
+            addRemainingUrls(getPart(statusStorage, "frontier", part), processed);
+        }
+        // status written by the previous versions
+        List<String> remainingUrls = (List<String>) currentStatus.get("remainingUrls");
+        if (remainingUrls != null) {
+            addRemainingUrls(remainingUrls, processed);
+        }
+        added.forEach(pendingUrls::add);
+        log.info(
+                "Reloaded {} remaining urls, {} visited urls and {} pages, {} log segments",
+                pendingUrls.size(),
+                this.visitedUrls.size(),
+                this.pages.size(),
+                lastSegment - snapshotSegment);
+    }
+
+    private void addRemainingUrls(List<String> urls, Set<String> processed) {
+        for (String url : urls) {
+            if (!processed.remove(url)) {
+                pendingUrls.add(url);
             }
-        } else {
-            log.info("No saved status found, starting from scratch");
+        }
+    }
+
+    private List<String> getPart(StatusStorage statusStorage, String type, int part)
+            throws Exception {
+        List<String> values = statusStorage.getStatusPart(partName(type, partsSnapshot, part));
+        if (values == null) {
+            throw new IllegalStateException(
+                    "Missing part " + part + " of the " + type + " of the status " + partsSnapshot);
+        }
+        return values;
+    }
+
+    private static String partName(String type, long snapshot, int part) {
+        return type + "." + snapshot + "." + part;
+    }
+
+    private void replay(String event, Set<String> added, Set<String> processed) {
+        String url = event.substring(1);
+        switch (event.charAt(0)) {
+            case EVENT_PAGE:
+                putPage(url);
+                break;
+            case EVENT_PAGE_REMOVED:
+                removePage(url);
+                break;
+            case EVENT_CRAWL_STARTED:
+                visitedUrls.clear();
+                crawlCompletedAt = 0;
+                break;
+            case EVENT_CRAWL_COMPLETED:
+                crawlCompletedAt = Long.parseLong(url);
+                break;
+            case EVENT_ADDED:
+                visitedUrls.add(url);
+                added.add(url);
+                break;
+            case EVENT_VISITED:
+                visitedUrls.add(url);
+                break;
+            case EVENT_FORGOTTEN:
+                visitedUrls.remove(url);
+                break;
+            case EVENT_PROCESSED:
+                if (!added.remove(url)) {
+                    processed.add(url);
+                }
+                break;
+            default:
+                throw new IllegalStateException("Invalid status log event " + event);
         }
     }
 
     public void persist(StatusStorage statusStorage) throws Exception {
+        if (statusLog != null
+                && statusStorage.supportsStatusLog()
+                && lastSegment - snapshotSegment < MAX_LOG_SEGMENTS) {
+            if (statusLog.isEmpty()) {
+                return;
+            }
+            statusStorage.storeStatusLog(lastSegment + 1, statusLog);
+            lastSegment++;
+            statusLog.clear();
+            return;
+        }
+
+        // the frontier and the pages are written in parts, the parts of the previous full status
+        // are kept until the new one is stored
+        long snapshot = partsSnapshot + 1;
+        PartWriter frontier = new PartWriter(statusStorage, "frontier", snapshot);
+        inProgressUrls.forEach(frontier::add);
+        pendingUrls.forEach(frontier::add);
+        frontier.flush();
+        PartWriter pages = new PartWriter(statusStorage, "pages", snapshot);
+        forEachKnownUrl(url -> pages.add(url + '\t' + getPageInfo(url).encode()));
+        pages.flush();
         statusStorage.storeStatus(
                 Map.of(
-                        "remainingUrls", new ArrayList<>(remainingUrls),
-                        "visitedUrls", new ArrayList<>(visitedUrls)));
+                        "partsSnapshot",
+                        snapshot,
+                        "frontierParts",
+                        frontier.parts,
+                        "pagesParts",
+                        pages.parts,
+                        "visitedFingerprints",
+                        visitedUrls.toBase64(),
+                        "crawlCompletedAt",
+                        crawlCompletedAt,
+                        "lastSegment",
+                        lastSegment));
+        if (statusLog != null) {
+            statusLog.clear();
+        }
+        deleteParts(statusStorage, "frontier", frontierParts);
+        deleteParts(statusStorage, "pages", pagesParts);
+        partsSnapshot = snapshot;
+        frontierParts = frontier.parts;
+        pagesParts = pages.parts;
+        // the segments are now part of the full status
+        for (long segment = snapshotSegment + 1; segment <= lastSegment; segment++) {
+            try {
+                statusStorage.deleteStatusLog(segment);
+            } catch (Exception e) {
+                log.warn("Cannot delete the status log segment {}", segment, e);
+            }
+        }
+        snapshotSegment = lastSegment;
+    }
+
+    private void deleteParts(StatusStorage statusStorage, String type, int parts) {
+        for (int part = 0; part < parts; part++) {
+            try {
+                statusStorage.deleteStatusPart(partName(type, partsSnapshot, part));
+            } catch (Exception e) {
+                log.warn(
+                        "Cannot delete the part {} of the {} of the status {}",
+                        part,
+                        type,
+                        partsSnapshot,
+                        e);
+            }
+        }
     }
 
     public void addUrl(String url, boolean toScan) {
@@ -96,14 +362,19 @@ public class WebCrawlerStatus {
         // we have to remove it to avoid duplicates
         url = removeFragment(url);
 
-        if (visitedUrls.contains(url)) {
+        if (!visitedUrls.add(url)) {
             return;
         }
-        visitedUrls.add(url);
         if (toScan) {
             log.info("adding url {} to list", url);
+            if (inProgressUrls.remove(url)) {
+                // the url is put back in the backlog
+                logEvent(EVENT_PROCESSED, url);
+            }
             pendingUrls.add(url);
-            remainingUrls.add(url);
+            logEvent(EVENT_ADDED, url);
+        } else {
+            logEvent(EVENT_VISITED, url);
         }
     }
 
@@ -115,24 +386,152 @@ public class WebCrawlerStatus {
         return url;
     }
 
+    private void putPage(String encoded) {
+        int tab = encoded.indexOf('\t');
+        putPage(encoded.substring(0, tab), PageInfo.decode(encoded.substring(tab + 1)));
+    }
+
+    private void putPage(String url, PageInfo info) {
+        long fingerprint = UrlFingerprintSet.fingerprint(url);
+        PageInfo page = new PageInfo(null, null, info.contentHash(), info.fetchedAt());
+        if (pages.put(fingerprint, page) == null) {
+            knownUrls.add(url);
+        }
+        if (info.etag() != null || info.lastModified() != null) {
+            validators.put(fingerprint, new Validators(info.etag(), info.lastModified()));
+        } else {
+            validators.remove(fingerprint);
+        }
+    }
+
+    private void removePage(String url) {
+        long fingerprint = UrlFingerprintSet.fingerprint(url);
+        pages.remove(fingerprint);
+        validators.remove(fingerprint);
+    }
+
+    private void logEvent(char type, String url) {
+        if (statusLog != null) {
+            statusLog.add(type + url);
+        }
+    }
+
     public String nextUrl() {
-        return pendingUrls.poll();
+        String url = pendingUrls.poll();
+        if (url != null) {
+            inProgressUrls.add(url);
+        }
+        return url;
     }
 
     public void urlProcessed(String url) {
         // this method is called on "commit()", then the page has been successfully processed
         // downstream (for instance stored in the Vector database)
+        // or when the crawler skips the page
         log.info("Url {} completely processed", url);
-        remainingUrls.remove(url);
+        url = removeFragment(url);
+        if (inProgressUrls.remove(url)) {
+            logEvent(EVENT_PROCESSED, url);
+        }
+        PageInfo info = fetchedPages.remove(url);
+        if (info != null) {
+            putPage(url, info);
+            logEvent(EVENT_PAGE, url + '\t' + info.encode());
+        }
+        if (removedPages.remove(url)) {
+            removePage(url);
+            logEvent(EVENT_PAGE_REMOVED, url);
+        }
 
         // forget the errors about the page
-        url = removeFragment(url);
         errorCount.remove(url);
     }
 
+    public PageInfo getPageInfo(String url) {
+        long fingerprint = UrlFingerprintSet.fingerprint(removeFragment(url));
+        PageInfo page = pages.get(fingerprint);
+        if (page == null) {
+            return null;
+        }
+        Validators pageValidators = validators.get(fingerprint);
+        if (pageValidators == null) {
+            return page;
+        }
+        return new PageInfo(
+                pageValidators.etag(),
+                pageValidators.lastModified(),
+                page.contentHash(),
+                page.fetchedAt());
+    }
+
+    /**
+     * Records the new state of a page, it will be saved when the page is processed.
+     *
+     * @see #urlProcessed(String)
+     */
+    public void pageFetched(String url, PageInfo info) {
+        fetchedPages.put(removeFragment(url), info);
+    }
+
+    /**
+     * Records that the page does not exist anymore, it will be forgotten when the deletion is
+     * processed.
+     *
+     * @see #urlProcessed(String)
+     */
+    public void pageRemoved(String url) {
+        removedPages.add(removeFragment(url));
+    }
+
+    /** Visits the urls of all the pages that have been processed. */
+    public void forEachKnownUrl(Consumer<String> consumer) {
+        knownUrls.forEach(
+                url -> {
+                    if (pages.containsKey(UrlFingerprintSet.fingerprint(url))) {
+                        consumer.accept(url);
+                    }
+                });
+    }
+
+    public int getKnownPagesCount() {
+        return pages.size();
+    }
+
+    /**
+     * Forgets the visited urls, in order to crawl again the web site. The pages that have been
+     * processed are kept to detect their changes.
+     */
+    public void startCrawl() {
+        log.info("Starting a new crawl, {} known pages", pages.size());
+        // drop the urls of the removed pages
+        UrlQueue compacted = new UrlQueue(maxUrlsInMemory);
+        UrlFingerprintSet seen = new UrlFingerprintSet();
+        forEachKnownUrl(
+                url -> {
+                    if (seen.add(url)) {
+                        compacted.add(url);
+                    }
+                });
+        knownUrls.close();
+        knownUrls = compacted;
+        visitedUrls.clear();
+        errorCount.clear();
+        crawlCompletedAt = 0;
+        logEvent(EVENT_CRAWL_STARTED, "");
+    }
+
+    public void crawlCompleted(long now) {
+        if (crawlCompletedAt == 0) {
+            crawlCompletedAt = now;
+            logEvent(EVENT_CRAWL_COMPLETED, Long.toString(now));
+        }
+    }
+
     public int temporaryErrorOnUrl(String url) {
         url = removeFragment(url);
-        visitedUrls.remove(url);
+        if (visitedUrls.remove(url)) {
+            logEvent(EVENT_FORGOTTEN, url);
+        }
         return errorCount.compute(
                 url,
                 (u, current) -> {
@@ -143,4 +542,35 @@ public class WebCrawlerStatus {
                     }
                 });
     }
+
+    private record Validators(String etag, String lastModified) {}
+
+    private static class PartWriter {
+        private final StatusStorage statusStorage;
+        private final String type;
+        private final long snapshot;
+        private List<String> values = new ArrayList<>();
+        private int parts;
+
+        PartWriter(StatusStorage statusStorage, String type, long snapshot) {
+            this.statusStorage = statusStorage;
+            this.type = type;
+            this.snapshot = snapshot;
+        }
+
+        @SneakyThrows
+        void add(String value) {
+            values.add(value);
+            if (values.size() >= PART_SIZE) {
+                flush();
+            }
+        }
+
+        void flush() throws Exception {
+            if (!values.isEmpty()) {
+                statusStorage.storeStatusPart(partName(type, snapshot, parts++), values);
+                values = new ArrayList<>();
+            }
+        }
+    }
 }
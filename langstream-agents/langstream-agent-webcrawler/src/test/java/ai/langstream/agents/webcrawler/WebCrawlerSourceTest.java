@@ -117,7 +117,7 @@ public class WebCrawlerSourceTest {
                 log.info("read: {}", read);
                 for (Record r : read) {
                     String docUrl = r.key().toString();
-                    log.info("content: {}", new String((byte[]) r.value()));
+                    log.info("content: {}", r.value().toString());
                     assertTrue(urls.add(docUrl), "Read twice the same url: " + docUrl);
                 }
                 agentSource.commit(read);
@@ -172,7 +172,7 @@ public class WebCrawlerSourceTest {
             for (Record r : read) {
                 String docUrl = r.key().toString();
                 String pageName = docUrl.substring(docUrl.lastIndexOf('/') + 1);
-                pages.put(pageName, new String((byte[]) r.value()));
+                pages.put(pageName, r.value().toString());
                 assertTrue(urls.add(docUrl), "Read twice the same url: " + docUrl);
             }
             agentSource.commit(read);
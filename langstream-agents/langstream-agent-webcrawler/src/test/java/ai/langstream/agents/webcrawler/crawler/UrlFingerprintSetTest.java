@@ -0,0 +1,55 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.langstream.agents.webcrawler.crawler;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+class UrlFingerprintSetTest {
+
+    @Test
+    public void testAddRemove() {
+        UrlFingerprintSet set = new UrlFingerprintSet();
+        for (int i = 0; i < 10000; i++) {
+            assertTrue(set.add("https://site/page" + i));
+            assertFalse(set.add("https://site/page" + i));
+        }
+        assertEquals(10000, set.size());
+        for (int i = 0; i < 10000; i += 2) {
+            assertTrue(set.remove("https://site/page" + i));
+        }
+        assertEquals(5000, set.size());
+        for (int i = 0; i < 10000; i++) {
+            assertEquals(i % 2 == 1, set.contains("https://site/page" + i));
+        }
+    }
+
+    @Test
+    public void testSerialization() {
+        UrlFingerprintSet set = new UrlFingerprintSet();
+        for (int i = 0; i < 1000; i++) {
+            set.add("https://site/page" + i);
+        }
+        UrlFingerprintSet copy = new UrlFingerprintSet();
+        copy.addAllFromBase64(set.toBase64());
+        assertEquals(1000, copy.size());
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(copy.contains("https://site/page" + i));
+        }
+        assertFalse(copy.contains("https://site/page1000"));
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.langstream.agents.webcrawler.crawler;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class UrlQueueTest {
+
+    @Test
+    public void testSpillToDisk() {
+        try (UrlQueue queue = new UrlQueue(10)) {
+            List<String> expected = new ArrayList<>();
+            for (int i = 0; i < 1000; i++) {
+                // some urls longer than the read blocks
+                String url = "https://site/page" + i + (i % 100 == 0 ? "x".repeat(100000) : "");
+                queue.add(url);
+                expected.add(url);
+            }
+            assertEquals(1000, queue.size());
+
+            List<String> visited = new ArrayList<>();
+            queue.forEach(visited::add);
+            assertEquals(expected, visited);
+            assertEquals(1000, queue.size());
+
+            for (int i = 0; i < 500; i++) {
+                assertEquals(expected.get(i), queue.poll());
+            }
+            // the new urls go after the spilled ones
+            queue.add("https://site/last");
+            expected.add("https://site/last");
+            for (int i = 500; i < expected.size(); i++) {
+                assertEquals(expected.get(i), queue.poll());
+            }
+            assertTrue(queue.isEmpty());
+            assertNull(queue.poll());
+
+            queue.add("https://site/again");
+            assertEquals("https://site/again", queue.poll());
+        }
+    }
+}
@@ -17,7 +17,9 @@ package ai.langstream.agents.webcrawler.crawler;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import org.junit.jupiter.api.Test;
 
@@ -108,15 +110,234 @@ class WebCrawlerStatusTest {
         verify(status, 2, 0, 0);
     }
 
+    @Test
+    public void testReloadFromLog() throws Exception {
+        LogStorage storage = new LogStorage();
+
+        WebCrawlerStatus status = new WebCrawlerStatus();
+        status.reloadFrom(storage);
+        status.addUrl(URL1, true);
+        status.addUrl(URL2, true);
+        status.persist(storage);
+        // only the log has been written
+        assertNull(storage.lastMetadata);
+        assertEquals(1, storage.segments.size());
+
+        String url = status.nextUrl();
+        assertEquals(URL1, url);
+        status.urlProcessed(url);
+        url = status.nextUrl();
+        assertEquals(URL2, url);
+        // temporary error, the url is put back in the backlog
+        status.temporaryErrorOnUrl(url);
+        status.addUrl(url, true);
+        status.addUrl("https://site/page3", false);
+        status.persist(storage);
+        assertEquals(2, storage.segments.size());
+
+        status = new WebCrawlerStatus();
+        status.reloadFrom(storage);
+        verify(status, 3, 1, 1);
+        assertEquals(URL2, status.nextUrl());
+        verify(status, 3, 0, 1);
+
+        // rewrite the full status until the log is compacted
+        while (storage.lastMetadata == null) {
+            status.addUrl("https://site/other" + storage.segments.size(), false);
+            status.persist(storage);
+        }
+        assertTrue(storage.segments.isEmpty());
+
+        status = new WebCrawlerStatus();
+        status.reloadFrom(storage);
+        int visited = status.getVisitedUrls().size();
+        verify(status, visited, 1, 1);
+        assertEquals(URL2, status.nextUrl());
+        status.urlProcessed(URL2);
+        status.persist(storage);
+
+        status = new WebCrawlerStatus();
+        status.reloadFrom(storage);
+        verify(status, visited, 0, 0);
+    }
+
+    @Test
+    public void testReloadPages() throws Exception {
+        LogStorage storage = new LogStorage();
+        WebCrawlerStatus status = new WebCrawlerStatus();
+        status.reloadFrom(storage);
+        status.addUrl(URL1, true);
+        String url = status.nextUrl();
+        PageInfo info = new PageInfo("\"etag\"", null, "hash", 1000);
+        status.pageFetched(url, info);
+        // the page is only known when it is processed
+        assertNull(status.getPageInfo(url));
+        status.urlProcessed(url);
+        assertEquals(info, status.getPageInfo(url));
+        status.crawlCompleted(2000);
+        status.persist(storage);
+
+        status = new WebCrawlerStatus();
+        status.reloadFrom(storage);
+        assertEquals(info, status.getPageInfo(URL1));
+        assertEquals(2000, status.getCrawlCompletedAt());
+
+        status.startCrawl();
+        verify(status, 0, 0, 0);
+        status.persist(storage);
+
+        status = new WebCrawlerStatus();
+        status.reloadFrom(storage);
+        assertEquals(0, status.getCrawlCompletedAt());
+        List<String> knownUrls = new ArrayList<>();
+        status.forEachKnownUrl(knownUrls::add);
+        assertEquals(List.of(URL1), knownUrls);
+    }
+
+    @Test
+    public void testPagesValidatorsAreBounded() throws Exception {
+        DummyStorage storage = new DummyStorage();
+        WebCrawlerStatus status = new WebCrawlerStatus(10, 1);
+        status.addUrl(URL1, true);
+        status.addUrl(URL2, true);
+        PageInfo info1 = new PageInfo("\"etag1\"", null, "hash1", 1000);
+        PageInfo info2 = new PageInfo("\"etag2\"", "yesterday", "hash2", 1000);
+        status.pageFetched(status.nextUrl(), info1);
+        status.urlProcessed(URL1);
+        status.pageFetched(status.nextUrl(), info2);
+        status.urlProcessed(URL2);
+
+        // only the validators of the last page are kept
+        assertEquals(new PageInfo(null, null, "hash1", 1000), status.getPageInfo(URL1));
+        assertEquals(info2, status.getPageInfo(URL2));
+        assertEquals(2, status.getKnownPagesCount());
+
+        status.persist(storage);
+        // the pages are stored in parts, out of the status document
+        assertFalse(storage.lastMetadata.containsKey("pages"));
+        status = new WebCrawlerStatus(10, 1);
+        status.reloadFrom(storage);
+        assertEquals(new PageInfo(null, null, "hash1", 1000), status.getPageInfo(URL1));
+        assertEquals(info2, status.getPageInfo(URL2));
+    }
+
+    @Test
+    public void testRemovePages() throws Exception {
+        LogStorage storage = new LogStorage();
+        WebCrawlerStatus status = new WebCrawlerStatus();
+        status.reloadFrom(storage);
+        status.addUrl(URL1, true);
+        status.addUrl(URL2, true);
+        status.pageFetched(status.nextUrl(), new PageInfo(null, null, "hash1", 1000));
+        status.urlProcessed(URL1);
+        status.pageFetched(status.nextUrl(), new PageInfo(null, null, "hash2", 1000));
+        status.urlProcessed(URL2);
+        status.persist(storage);
+
+        status.startCrawl();
+        status.addUrl(URL1, true);
+        assertEquals(URL1, status.nextUrl());
+        status.pageRemoved(URL1);
+        // the page is only forgotten when it is processed
+        assertNotNull(status.getPageInfo(URL1));
+        status.urlProcessed(URL1);
+        assertNull(status.getPageInfo(URL1));
+        status.persist(storage);
+
+        status = new WebCrawlerStatus();
+        status.reloadFrom(storage);
+        assertNull(status.getPageInfo(URL1));
+        assertEquals(1, status.getKnownPagesCount());
+
+        status.startCrawl();
+        List<String> knownUrls = new ArrayList<>();
+        status.forEachKnownUrl(knownUrls::add);
+        assertEquals(List.of(URL2), knownUrls);
+    }
+
+    @Test
+    public void testSpillPendingUrls() throws Exception {
+        int count = WebCrawlerStatus.PART_SIZE * 2 + 100;
+        DummyStorage storage = new DummyStorage();
+        WebCrawlerStatus status = new WebCrawlerStatus(10);
+        for (int i = 0; i < count; i++) {
+            status.addUrl("https://site/page" + i, true);
+        }
+        verify(status, count, count, count);
+        assertEquals("https://site/page0", status.nextUrl());
+        status.persist(storage);
+        // the frontier is stored in parts, out of the status document
+        assertFalse(storage.lastMetadata.containsKey("remainingUrls"));
+        assertEquals(3, storage.parts.size());
+        // the parts of the previous status are deleted
+        status.persist(storage);
+        assertEquals(3, storage.parts.size());
+
+        status = new WebCrawlerStatus(10);
+        status.reloadFrom(storage);
+        verify(status, count, count, count);
+        for (int i = 0; i < count; i++) {
+            String url = status.nextUrl();
+            assertEquals("https://site/page" + i, url);
+            status.urlProcessed(url);
+        }
+        verify(status, count, 0, 0);
+        status.persist(storage);
+        assertTrue(storage.parts.isEmpty());
+    }
+
+    @Test
+    public void testReloadRemainingUrlsOfPreviousVersions() throws Exception {
+        DummyStorage storage = new DummyStorage();
+        storage.storeStatus(Map.of("remainingUrls", List.of(URL1, URL2), "visitedUrls", List.of()));
+        WebCrawlerStatus status = new WebCrawlerStatus();
+        status.reloadFrom(storage);
+        verify(status, 0, 2, 2);
+        assertEquals(URL1, status.nextUrl());
+    }
+
     private static void verify(WebCrawlerStatus status, int visited, int pending, int remaining) {
         assertEquals(pending, status.getPendingUrls().size());
         assertEquals(visited, status.getVisitedUrls().size());
-        assertEquals(remaining, status.getRemainingUrls().size());
+        assertEquals(remaining, status.getRemainingUrlsCount());
     }
 
     private static class DummyStorage implements StatusStorage {
 
         private Map<String, Object> lastMetadata;
+        private final Map<String, List<String>> parts = new HashMap<>();
+
+        @Override
+        public void storeStatus(Map<String, Object> metadata) {
+            lastMetadata = new HashMap<>(metadata);
+        }
+
+        @Override
+        public Map<String, Object> getCurrentStatus() {
+            return lastMetadata != null ? new HashMap<>(lastMetadata) : Map.of();
+        }
+
+        @Override
+        public void storeStatusPart(String name, List<String> values) {
+            parts.put(name, new ArrayList<>(values));
+        }
+
+        @Override
+        public List<String> getStatusPart(String name) {
+            return parts.get(name);
+        }
+
+        @Override
+        public void deleteStatusPart(String name) {
+            parts.remove(name);
+        }
+    }
+
+    private static class LogStorage implements StatusStorage {
+
+        private Map<String, Object> lastMetadata;
+        private final Map<Long, List<String>> segments = new HashMap<>();
+        private final Map<String, List<String>> parts = new HashMap<>();
 
         @Override
         public void storeStatus(Map<String, Object> metadata) {
@@ -127,5 +348,40 @@ class WebCrawlerStatusTest {
         public Map<String, Object> getCurrentStatus() {
             return lastMetadata != null ? new HashMap<>(lastMetadata) : Map.of();
         }
+
+        @Override
+        public void storeStatusPart(String name, List<String> values) {
+            parts.put(name, new ArrayList<>(values));
+        }
+
+        @Override
+        public List<String> getStatusPart(String name) {
+            return parts.get(name);
+        }
+
+        @Override
+        public void deleteStatusPart(String name) {
+            parts.remove(name);
+        }
+
+        @Override
+        public boolean supportsStatusLog() {
+            return true;
+        }
+
+        @Override
+        public void storeStatusLog(long segment, List<String> events) {
+            segments.put(segment, new ArrayList<>(events));
+        }
+
+        @Override
+        public List<String> getStatusLog(long segment) {
+            return segments.get(segment);
+        }
+
+        @Override
+        public void deleteStatusLog(long segment) {
+            segments.remove(segment);
+        }
     }
 }
@@ -15,12 +15,16 @@
  */
 package ai.langstream.agents.webcrawler.crawler;
 
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.equalTo;
 import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
 import static com.github.tomakehurst.wiremock.client.WireMock.notFound;
 import static com.github.tomakehurst.wiremock.client.WireMock.okForContentType;
 import static com.github.tomakehurst.wiremock.client.WireMock.serviceUnavailable;
 import static com.github.tomakehurst.wiremock.client.WireMock.stubFor;
 import static com.github.tomakehurst.wiremock.client.WireMock.temporaryRedirect;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
 import static org.junit.jupiter.api.Assertions.*;
 
 import com.github.tomakehurst.wiremock.junit5.WireMockRuntimeInfo;
@@ -28,6 +32,7 @@ import com.github.tomakehurst.wiremock.junit5.WireMockTest;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
+import org.jsoup.Jsoup;
 import org.junit.jupiter.api.Test;
 
 @WireMockTest
@@ -216,4 +221,337 @@ class WebCrawlerTest {
         // nothing to do
         assertFalse(crawler.runCycle());
     }
+
+    @Test
+    void testInvalidRedirects(WireMockRuntimeInfo vmRuntimeInfo) throws Exception {
+        stubFor(
+                get("/index.html")
+                        .willReturn(
+                                okForContentType(
+                                        "text/html",
+                                        """
+                                  <a href="noLocation.html">link</a>
+                                  <a href="redirectToItself.html">link</a>
+                              """)));
+        stubFor(
+                get("/noLocation.html")
+                        .willReturn(
+                                aResponse()
+                                        .withStatus(302)
+                                        .withHeader("Content-Type", "text/html")
+                                        .withBody("moved")));
+        stubFor(
+                get("/redirectToItself.html")
+                        .willReturn(
+                                aResponse()
+                                        .withStatus(301)
+                                        .withHeader("Location", "redirectToItself.html")));
+
+        WebCrawlerConfiguration configuration =
+                WebCrawlerConfiguration.builder()
+                        .allowedDomains(Set.of(vmRuntimeInfo.getHttpBaseUrl()))
+                        .minTimeBetweenRequests(0)
+                        .build();
+        WebCrawlerStatus status = new WebCrawlerStatus();
+        List<Document> documents = new ArrayList<>();
+        WebCrawler crawler = new WebCrawler(configuration, status, documents::add);
+        crawler.crawl(vmRuntimeInfo.getHttpBaseUrl() + "/index.html");
+        crawlAndCommit(crawler, documents);
+
+        // the invalid redirections are skipped, their bodies are not parsed
+        assertEquals(1, documents.size());
+        assertEquals(vmRuntimeInfo.getHttpBaseUrl() + "/index.html", documents.get(0).url());
+        assertEquals(0, status.getPendingUrls().size());
+        assertEquals(3, status.getVisitedUrls().size());
+        vmRuntimeInfo.getWireMock().verifyThat(1, getRequestedFor(urlEqualTo("/noLocation.html")));
+        vmRuntimeInfo
+                .getWireMock()
+                .verifyThat(1, getRequestedFor(urlEqualTo("/redirectToItself.html")));
+    }
+
+    @Test
+    void testConcurrentRequests(WireMockRuntimeInfo vmRuntimeInfo) throws Exception {
+        StringBuilder index = new StringBuilder();
+        for (int i = 0; i < 8; i++) {
+            index.append("<a href=\"page%d.html\">link</a>\n".formatted(i));
+            stubFor(
+                    get("/page%d.html".formatted(i))
+                            .willReturn(
+                                    aResponse()
+                                            .withHeader("Content-Type", "text/html")
+                                            .withBody("page " + i)
+                                            .withFixedDelay(500)));
+        }
+        stubFor(get("/index.html").willReturn(okForContentType("text/html", index.toString())));
+
+        WebCrawlerConfiguration configuration =
+                WebCrawlerConfiguration.builder()
+                        .allowedDomains(Set.of(vmRuntimeInfo.getHttpBaseUrl()))
+                        .minTimeBetweenRequests(0)
+                        .maxConcurrentRequests(4)
+                        .maxConcurrentRequestsPerHost(4)
+                        .build();
+        WebCrawlerStatus status = new WebCrawlerStatus();
+        List<Document> documents = new ArrayList<>();
+        WebCrawler crawler = new WebCrawler(configuration, status, documents::add);
+        crawler.crawl(vmRuntimeInfo.getHttpBaseUrl() + "/index.html");
+
+        long start = System.currentTimeMillis();
+        while (crawler.runCycle()) {
+            // the documents are processed while the other requests are in flight
+        }
+        long elapsed = System.currentTimeMillis() - start;
+
+        assertEquals(9, documents.size());
+        assertEquals(0, status.getPendingUrls().size());
+        // 8 pages of 500 ms would take 4 seconds one after the other
+        assertTrue(elapsed < 3000, "elapsed " + elapsed);
+    }
+
+    @Test
+    void testBodiesAreLimited(WireMockRuntimeInfo vmRuntimeInfo) throws Exception {
+        stubFor(
+                get("/index.html")
+                        .willReturn(
+                                okForContentType(
+                                        "text/html",
+                                        """
+                                  <a href="large.html">link</a>
+                                  <a href="image.png">link</a>
+                              """)));
+        stubFor(
+                get("/large.html")
+                        .willReturn(
+                                okForContentType(
+                                        "text/html", "a".repeat(WebCrawler.MAX_BODY_SIZE * 2))));
+        stubFor(
+                get("/image.png")
+                        .willReturn(
+                                aResponse()
+                                        .withHeader("Content-Type", "image/png")
+                                        .withBody(new byte[1024])));
+
+        WebCrawlerConfiguration configuration =
+                WebCrawlerConfiguration.builder()
+                        .allowedDomains(Set.of(vmRuntimeInfo.getHttpBaseUrl()))
+                        .minTimeBetweenRequests(0)
+                        .build();
+        WebCrawlerStatus status = new WebCrawlerStatus();
+        List<Document> documents = new ArrayList<>();
+        WebCrawler crawler = new WebCrawler(configuration, status, documents::add);
+        crawler.crawl(vmRuntimeInfo.getHttpBaseUrl() + "/index.html");
+        while (crawler.runCycle()) {
+            // crawl everything
+        }
+
+        // the image is not a document, the large page is truncated
+        assertEquals(2, documents.size());
+        assertEquals(vmRuntimeInfo.getHttpBaseUrl() + "/large.html", documents.get(1).url());
+        int length = documents.get(1).content().length();
+        assertTrue(length < WebCrawler.MAX_BODY_SIZE + 1000, "length " + length);
+        assertEquals(0, status.getPendingUrls().size());
+    }
+
+    @Test
+    void testRecrawl(WireMockRuntimeInfo vmRuntimeInfo) throws Exception {
+        stubFor(
+                get("/index.html")
+                        .willReturn(
+                                okForContentType(
+                                        "text/html",
+                                        """
+                                  <a href="page1.html">link</a>
+                                  <a href="page2.html">link</a>
+                                  <a href="page3.html">link</a>
+                              """)));
+        stubFor(
+                get("/page1.html")
+                        .willReturn(
+                                okForContentType("text/html", "page 1")
+                                        .withHeader("ETag", "\"v1\"")));
+        stubFor(get("/page2.html").willReturn(okForContentType("text/html", "page 2")));
+        stubFor(get("/page3.html").willReturn(okForContentType("text/html", "page 3")));
+
+        WebCrawlerConfiguration configuration =
+                WebCrawlerConfiguration.builder()
+                        .allowedDomains(Set.of(vmRuntimeInfo.getHttpBaseUrl()))
+                        .minTimeBetweenRequests(0)
+                        .build();
+        WebCrawlerStatus status = new WebCrawlerStatus();
+        List<Document> documents = new ArrayList<>();
+        WebCrawler crawler = new WebCrawler(configuration, status, documents::add);
+        crawler.crawl(vmRuntimeInfo.getHttpBaseUrl() + "/index.html");
+        crawlAndCommit(crawler, documents);
+        assertEquals(4, documents.size());
+        assertTrue(documents.stream().noneMatch(Document::updated));
+        assertEquals(4, status.getKnownPagesCount());
+
+        // page 1 is not modified, page 3 changed
+        stubFor(
+                get("/page1.html")
+                        .withHeader("If-None-Match", equalTo("\"v1\""))
+                        .willReturn(aResponse().withStatus(304)));
+        stubFor(get("/page3.html").willReturn(okForContentType("text/html", "page 3 changed")));
+
+        documents.clear();
+        crawler.recrawl(List.of(vmRuntimeInfo.getHttpBaseUrl() + "/index.html"));
+        crawlAndCommit(crawler, documents);
+        assertEquals(1, documents.size());
+        assertEquals(vmRuntimeInfo.getHttpBaseUrl() + "/page3.html", documents.get(0).url());
+        assertEquals("page 3 changed", Jsoup.parse(documents.get(0).content()).text());
+        assertTrue(documents.get(0).updated());
+        assertEquals(0, status.getRemainingUrlsCount());
+    }
+
+    @Test
+    void testRecrawlRemovedPage(WireMockRuntimeInfo vmRuntimeInfo) throws Exception {
+        stubFor(
+                get("/index.html")
+                        .willReturn(
+                                okForContentType(
+                                        "text/html",
+                                        """
+                                  <a href="page1.html">link</a>
+                                  <a href="page2.html">link</a>
+                              """)));
+        stubFor(get("/page1.html").willReturn(okForContentType("text/html", "page 1")));
+        stubFor(get("/page2.html").willReturn(okForContentType("text/html", "page 2")));
+
+        WebCrawlerConfiguration configuration =
+                WebCrawlerConfiguration.builder()
+                        .allowedDomains(Set.of(vmRuntimeInfo.getHttpBaseUrl()))
+                        .minTimeBetweenRequests(0)
+                        .emitDeletedPages(true)
+                        .build();
+        WebCrawlerStatus status = new WebCrawlerStatus();
+        List<Document> documents = new ArrayList<>();
+        WebCrawler crawler = new WebCrawler(configuration, status, documents::add);
+        crawler.crawl(vmRuntimeInfo.getHttpBaseUrl() + "/index.html");
+        crawlAndCommit(crawler, documents);
+        assertEquals(3, documents.size());
+
+        // page 1 is gone, the index does not link it anymore
+        stubFor(
+                get("/index.html")
+                        .willReturn(
+                                okForContentType(
+                                        "text/html",
+                                        """
+                                  <a href="page2.html">link</a>
+                              """)));
+        stubFor(get("/page1.html").willReturn(aResponse().withStatus(410)));
+
+        documents.clear();
+        crawler.recrawl(List.of(vmRuntimeInfo.getHttpBaseUrl() + "/index.html"));
+        crawlAndCommit(crawler, documents);
+        // the index changed, page 1 is deleted
+        assertEquals(2, documents.size());
+        Document deleted = documents.stream().filter(Document::deleted).findFirst().orElseThrow();
+        assertEquals(vmRuntimeInfo.getHttpBaseUrl() + "/page1.html", deleted.url());
+        assertNull(deleted.content());
+        assertNull(status.getPageInfo(vmRuntimeInfo.getHttpBaseUrl() + "/page1.html"));
+        assertEquals(2, status.getKnownPagesCount());
+
+        // the next crawl does not request the page again
+        documents.clear();
+        crawler.recrawl(List.of(vmRuntimeInfo.getHttpBaseUrl() + "/index.html"));
+        crawlAndCommit(crawler, documents);
+        assertEquals(0, documents.size());
+        vmRuntimeInfo.getWireMock().verifyThat(2, getRequestedFor(urlEqualTo("/page1.html")));
+    }
+
+    @Test
+    void testRemovedPageIsNotEmittedByDefault(WireMockRuntimeInfo vmRuntimeInfo) throws Exception {
+        stubFor(
+                get("/index.html")
+                        .willReturn(
+                                okForContentType(
+                                        "text/html",
+                                        """
+                                  <a href="page1.html">link</a>
+                              """)));
+        stubFor(get("/page1.html").willReturn(okForContentType("text/html", "page 1")));
+
+        WebCrawlerConfiguration configuration =
+                WebCrawlerConfiguration.builder()
+                        .allowedDomains(Set.of(vmRuntimeInfo.getHttpBaseUrl()))
+                        .minTimeBetweenRequests(0)
+                        .build();
+        WebCrawlerStatus status = new WebCrawlerStatus();
+        List<Document> documents = new ArrayList<>();
+        WebCrawler crawler = new WebCrawler(configuration, status, documents::add);
+        crawler.crawl(vmRuntimeInfo.getHttpBaseUrl() + "/index.html");
+        crawlAndCommit(crawler, documents);
+        assertEquals(2, documents.size());
+
+        stubFor(get("/page1.html").willReturn(aResponse().withStatus(404)));
+
+        documents.clear();
+        crawler.recrawl(List.of(vmRuntimeInfo.getHttpBaseUrl() + "/index.html"));
+        crawlAndCommit(crawler, documents);
+        // the page is forgotten without sending a deleted document
+        assertEquals(0, documents.size());
+        assertNull(status.getPageInfo(vmRuntimeInfo.getHttpBaseUrl() + "/page1.html"));
+        assertEquals(1, status.getKnownPagesCount());
+        assertEquals(0, status.getRemainingUrlsCount());
+    }
+
+    @Test
+    void testRecrawlWithSitemap(WireMockRuntimeInfo vmRuntimeInfo) throws Exception {
+        stubFor(
+                get("/sitemap.xml")
+                        .willReturn(
+                                okForContentType(
+                                        "application/xml",
+                                        """
+                                  <?xml version="1.0" encoding="UTF-8"?>
+                                  <urlset xmlns="http://www.sitemaps.org/schemas/sitemap/0.9">
+                                    <url>
+                                      <loc>%s/old.html</loc>
+                                      <lastmod>2000-01-01</lastmod>
+                                    </url>
+                                    <url>
+                                      <loc>%s/new.html</loc>
+                                      <lastmod>2100-01-01T00:00:00+00:00</lastmod>
+                                    </url>
+                                  </urlset>
+                              """
+                                                .formatted(
+                                                        vmRuntimeInfo.getHttpBaseUrl(),
+                                                        vmRuntimeInfo.getHttpBaseUrl()))));
+        stubFor(get("/old.html").willReturn(okForContentType("text/html", "old page")));
+        stubFor(get("/new.html").willReturn(okForContentType("text/html", "new page")));
+
+        WebCrawlerConfiguration configuration =
+                WebCrawlerConfiguration.builder()
+                        .allowedDomains(Set.of(vmRuntimeInfo.getHttpBaseUrl()))
+                        .minTimeBetweenRequests(0)
+                        .build();
+        WebCrawlerStatus status = new WebCrawlerStatus();
+        List<Document> documents = new ArrayList<>();
+        WebCrawler crawler = new WebCrawler(configuration, status, documents::add);
+        crawler.crawl(vmRuntimeInfo.getHttpBaseUrl() + "/sitemap.xml");
+        crawlAndCommit(crawler, documents);
+        // the sitemap is not a document
+        assertEquals(2, documents.size());
+
+        documents.clear();
+        crawler.recrawl(List.of(vmRuntimeInfo.getHttpBaseUrl() + "/sitemap.xml"));
+        crawlAndCommit(crawler, documents);
+        assertEquals(0, documents.size());
+        // the old page has not been requested again
+        vmRuntimeInfo.getWireMock().verifyThat(1, getRequestedFor(urlEqualTo("/old.html")));
+        vmRuntimeInfo.getWireMock().verifyThat(2, getRequestedFor(urlEqualTo("/new.html")));
+    }
+
+    private static void crawlAndCommit(WebCrawler crawler, List<Document> documents)
+            throws Exception {
+        int committed = 0;
+        while (crawler.runCycle()) {
+            // simulate the commit of the documents by the Source
+            for (; committed < documents.size(); committed++) {
+                crawler.getStatus().urlProcessed(documents.get(committed).url());
+            }
+        }
+    }
 }
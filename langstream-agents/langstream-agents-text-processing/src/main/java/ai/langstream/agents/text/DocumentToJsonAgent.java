@@ -15,11 +15,18 @@
  */
 package ai.langstream.agents.text;
 
+import ai.langstream.api.runner.code.Header;
 import ai.langstream.api.runner.code.Record;
 import ai.langstream.api.runner.code.SimpleRecord;
 import ai.langstream.api.runner.code.SingleRecordAgentProcessor;
+import ai.langstream.api.runner.code.TextValue;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import java.util.HashMap;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import lombok.extern.slf4j.Slf4j;
@@ -44,16 +51,52 @@ public class DocumentToJsonAgent extends SingleRecordAgentProcessor {
         if (record == null) {
             return List.of();
         }
-        Object value = record.value();
-        String stream = Utils.toText(value);
-
-        Map<String, Object> asJson = new HashMap<>();
-        asJson.put(textField, stream);
+        if (record.value() == null) {
+            // a tombstone, the document has been deleted and there is no text to process
+            return List.of(record);
+        }
+        Map<String, Object> properties = new LinkedHashMap<>();
         if (copyProperties) {
-            record.headers().forEach(h -> asJson.put(h.key(), h.value()));
+            // like in a map, the last header with a given name wins, also over the text
+            for (Header header : record.headers()) {
+                properties.put(header.key(), header.value());
+            }
         }
+        byte[] json = toJson(record.value(), properties);
+        return List.of(SimpleRecord.copyFrom(record).value(TextValue.of(json)).build());
+    }
 
-        return List.of(
-                SimpleRecord.copyFrom(record).value(MAPPER.writeValueAsString(asJson)).build());
+    /**
+     * Streams the document into the UTF-8 encoded JSON object, the generator uses the recycled
+     * buffers of the factory. A byte[] document is decoded while it is written, without building a
+     * String.
+     */
+    private byte[] toJson(Object value, Map<String, Object> properties) throws IOException {
+        ByteArrayBuilder buffer = new ByteArrayBuilder();
+        try {
+            try (JsonGenerator generator =
+                    MAPPER.getFactory().createGenerator(buffer, JsonEncoding.UTF8)) {
+                generator.writeStartObject();
+                if (!properties.containsKey(textField)) {
+                    generator.writeFieldName(textField);
+                    if (value instanceof byte[]) {
+                        try (Reader reader = Utils.toReader(value)) {
+                            generator.writeString(reader, -1);
+                        }
+                    } else if (value == null) {
+                        generator.writeNull();
+                    } else {
+                        generator.writeString(Utils.toText(value));
+                    }
+                }
+                for (Map.Entry<String, Object> property : properties.entrySet()) {
+                    generator.writeObjectField(property.getKey(), property.getValue());
+                }
+                generator.writeEndObject();
+            }
+            return buffer.toByteArray();
+        } finally {
+            buffer.release();
+        }
     }
 }
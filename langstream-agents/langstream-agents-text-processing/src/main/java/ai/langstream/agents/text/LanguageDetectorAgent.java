@@ -15,18 +15,36 @@
  */
 package ai.langstream.agents.text;
 
+import ai.langstream.api.runner.code.Header;
 import ai.langstream.api.runner.code.Record;
 import ai.langstream.api.runner.code.SimpleRecord;
 import ai.langstream.api.runner.code.SingleRecordAgentProcessor;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Properties;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.tika.langdetect.tika.LanguageIdentifier;
+import org.apache.tika.langdetect.tika.LanguageProfile;
 
+/**
+ * Detects the language of the text with the n-gram profiles of Tika, like {@link
+ * LanguageIdentifier}. The profiles are loaded once and shared by all the agents, only the
+ * beginning of the text is profiled.
+ */
 @Slf4j
 public class LanguageDetectorAgent extends SingleRecordAgentProcessor {
 
     private String property = "language";
+    private String confidenceProperty;
+    private double minConfidence;
+    private int sampleSize = 16 * 1024;
     private List<String> allowedLanguages;
 
     @Override
@@ -39,10 +57,20 @@ public class LanguageDetectorAgent extends SingleRecordAgentProcessor {
         } else {
             allowedLanguages = List.of();
         }
+        if (configuration.containsKey("confidence-property")) {
+            confidenceProperty = (String) configuration.get("confidence-property");
+        }
+        minConfidence =
+                Double.parseDouble(configuration.getOrDefault("min-confidence", 0).toString());
+        sampleSize =
+                Integer.parseInt(configuration.getOrDefault("sample-size", sampleSize).toString());
         log.info(
                 "Configuring Language Detectors with field {} and allowed languages {}",
                 property,
                 allowedLanguages);
+
+        // load the profiles now instead of on the first record
+        log.info("Supported languages: {}", Profiles.PROFILES.keySet());
     }
 
     @Override
@@ -50,10 +78,15 @@ public class LanguageDetectorAgent extends SingleRecordAgentProcessor {
         if (record == null) {
             return List.of();
         }
-        String inputText = Utils.toText(record.value());
+        if (record.value() == null) {
+            // a tombstone, the document has been deleted and there is no text to process
+            return List.of(record);
+        }
+        String inputText = sample(record.value(), sampleSize);
 
-        LanguageIdentifier identifier = new LanguageIdentifier(inputText);
-        String language = identifier.getLanguage();
+        Detection detection = detect(inputText);
+        String language = detection.language();
+        double confidence = detection.confidence();
 
         if (!allowedLanguages.isEmpty() && !allowedLanguages.contains(language)) {
             log.info(
@@ -62,15 +95,123 @@ public class LanguageDetectorAgent extends SingleRecordAgentProcessor {
                     allowedLanguages);
             return List.of();
         }
+        if (confidence < minConfidence) {
+            log.info(
+                    "Skipping record with language {} and confidence {} lower than {}",
+                    language,
+                    confidence,
+                    minConfidence);
+            return List.of();
+        }
 
-        Record result =
-                SimpleRecord.copyFrom(record)
-                        .headers(
-                                Utils.addHeader(
-                                        record.headers(),
-                                        SimpleRecord.SimpleHeader.of(property, language)))
-                        .build();
+        List<Header> headers =
+                Utils.addHeader(record.headers(), SimpleRecord.SimpleHeader.of(property, language));
+        if (confidenceProperty != null) {
+            headers =
+                    Utils.addHeader(
+                            headers,
+                            SimpleRecord.SimpleHeader.of(
+                                    confidenceProperty, String.valueOf(confidence)));
+        }
+        Record result = SimpleRecord.copyFrom(record).headers(headers).build();
 
         return List.of(result);
     }
+
+    record Detection(String language, double confidence) {}
+
+    /**
+     * Finds the language whose profile is the closest to the profile of the text. The confidence is
+     * the relative margin between the closest and the second closest languages, 0 when they are
+     * equally close, and 0 for a text without letters.
+     */
+    static Detection detect(String text) {
+        LanguageProfile profile = new LanguageProfile(text);
+
+        String language = null;
+        double best = Double.MAX_VALUE;
+        double second = Double.MAX_VALUE;
+        for (Map.Entry<String, LanguageProfile> entry : Profiles.PROFILES.entrySet()) {
+            double distance = profile.distance(entry.getValue());
+            if (distance < best) {
+                second = best;
+                best = distance;
+                language = entry.getKey();
+            } else if (distance < second) {
+                second = distance;
+            }
+        }
+        boolean hasLetters = text.codePoints().anyMatch(Character::isLetter);
+        double confidence = hasLetters && second > 0 ? 1 - best / second : 0;
+        return new Detection(language, confidence);
+    }
+
+    /**
+     * @return the beginning of the text, only the sampled bytes are decoded
+     */
+    static String sample(Object value, int sampleSize) {
+        if (value instanceof byte[] array) {
+            int length = array.length;
+            if (length > sampleSize) {
+                length = sampleSize;
+                // do not cut a UTF-8 sequence
+                while (length > 0 && (array[length] & 0xC0) == 0x80) {
+                    length--;
+                }
+            }
+            return new String(array, 0, length, StandardCharsets.UTF_8);
+        }
+        String text = Utils.toText(value);
+        if (text != null && text.length() > sampleSize) {
+            int length = sampleSize;
+            if (Character.isLowSurrogate(text.charAt(length))) {
+                length--;
+            }
+            return text.substring(0, length);
+        }
+        return text;
+    }
+
+    /** The profiles shipped with Tika, loaded on first use. */
+    private static final class Profiles {
+        private static final Map<String, LanguageProfile> PROFILES = load();
+
+        private static Map<String, LanguageProfile> load() {
+            try {
+                Properties properties = new Properties();
+                try (InputStream in =
+                        LanguageIdentifier.class.getResourceAsStream("tika.language.properties")) {
+                    properties.load(in);
+                }
+                Map<String, LanguageProfile> profiles = new HashMap<>();
+                for (String language : properties.getProperty("languages").split(",")) {
+                    profiles.put(language.trim(), loadProfile(language.trim()));
+                }
+                return profiles;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private static LanguageProfile loadProfile(String language) throws IOException {
+            LanguageProfile profile = new LanguageProfile();
+            try (BufferedReader reader =
+                    new BufferedReader(
+                            new InputStreamReader(
+                                    LanguageIdentifier.class.getResourceAsStream(language + ".ngp"),
+                                    StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.isEmpty() || line.charAt(0) == '#') {
+                        continue;
+                    }
+                    // "<ngram> <count>"
+                    int space = line.indexOf(' ');
+                    profile.add(
+                            line.substring(0, space), Long.parseLong(line.substring(space + 1)));
+                }
+            }
+            return profile;
+        }
+    }
 }
@@ -23,6 +23,8 @@ import java.util.regex.Pattern;
 
 public class RecursiveCharacterTextSplitter extends TextSplitter {
     private final List<String> separators;
+    // compiled once, null for the empty separator
+    private final List<Pattern> separatorPatterns;
 
     public RecursiveCharacterTextSplitter(
             List<String> separators,
@@ -32,48 +34,57 @@ public class RecursiveCharacterTextSplitter extends TextSplitter {
             Function<String, Integer> lengthFunction) {
         super(chunkSize, chunkOverlap, lengthFunction, keepSeparator, false);
         this.separators = separators != null ? separators : Arrays.asList("\n\n", "\n", " ", "");
+        this.separatorPatterns = new ArrayList<>(this.separators.size());
+        for (String separator : this.separators) {
+            separatorPatterns.add(separator.isEmpty() ? null : Pattern.compile(separator));
+        }
     }
 
-    private List<String> splitText(String text, List<String> separators) {
+    private List<String> splitText(String text, int firstSeparator) {
         List<String> finalChunks = new ArrayList<>();
-        String separator = separators.get(separators.size() - 1);
-        List<String> newSeparators = new ArrayList<>();
-        for (int i = 0; i < separators.size(); i++) {
-            String s = separators.get(i);
-            if (s.isEmpty()) {
-                separator = s;
+        int separatorIndex = separators.size() - 1;
+        int nextSeparator = separators.size();
+        for (int i = firstSeparator; i < separators.size(); i++) {
+            Pattern pattern = separatorPatterns.get(i);
+            if (pattern == null) {
+                separatorIndex = i;
                 break;
             }
-            if (Pattern.compile(s).matcher(text).find()) {
-                separator = s;
-                newSeparators = separators.subList(i + 1, separators.size());
+            if (pattern.matcher(text).find()) {
+                separatorIndex = i;
+                nextSeparator = i + 1;
                 break;
             }
         }
-        List<String> splits = splitTextWithRegex(text, separator, keepSeparator);
+        String separator = separators.get(separatorIndex);
+        List<String> splits =
+                splitTextWithRegex(text, separatorPatterns.get(separatorIndex), keepSeparator);
         List<String> goodSplits = new ArrayList<>();
+        int[] goodLengths = new int[splits.size()];
         String separatorToUse = keepSeparator ? "" : separator;
 
         for (String s : splits) {
-            if (lengthFunction.apply(s) < chunkSize) {
+            int length = lengthFunction.apply(s);
+            if (length < chunkSize) {
+                goodLengths[goodSplits.size()] = length;
                 goodSplits.add(s);
             } else {
                 if (!goodSplits.isEmpty()) {
-                    List<String> mergedText = mergeSplits(goodSplits, separatorToUse);
+                    List<String> mergedText = mergeSplits(goodSplits, goodLengths, separatorToUse);
                     finalChunks.addAll(mergedText);
                     goodSplits.clear();
                 }
-                if (newSeparators.isEmpty()) {
+                if (nextSeparator >= separators.size()) {
                     finalChunks.add(s);
                 } else {
-                    List<String> otherInfo = splitText(s, newSeparators);
+                    List<String> otherInfo = splitText(s, nextSeparator);
                     finalChunks.addAll(otherInfo);
                 }
             }
         }
 
         if (!goodSplits.isEmpty()) {
-            List<String> mergedText = mergeSplits(goodSplits, separatorToUse);
+            List<String> mergedText = mergeSplits(goodSplits, goodLengths, separatorToUse);
             finalChunks.addAll(mergedText);
         }
 
@@ -81,6 +92,6 @@ public class RecursiveCharacterTextSplitter extends TextSplitter {
     }
 
     public List<String> splitText(String text) {
-        return splitText(text, separators);
+        return splitText(text, 0);
     }
 }
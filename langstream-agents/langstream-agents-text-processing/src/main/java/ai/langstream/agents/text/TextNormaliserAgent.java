@@ -18,6 +18,8 @@ package ai.langstream.agents.text;
 import ai.langstream.api.runner.code.Record;
 import ai.langstream.api.runner.code.SimpleRecord;
 import ai.langstream.api.runner.code.SingleRecordAgentProcessor;
+import java.text.Normalizer;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -26,8 +28,13 @@ import lombok.extern.slf4j.Slf4j;
 @Slf4j
 public class TextNormaliserAgent extends SingleRecordAgentProcessor {
 
+    // runs of 3 or more newlines are reduced to 2
+    private static final int MAX_CONSECUTIVE_NEWLINES = 2;
+
     private boolean makeLowercase = true;
     private boolean trimSpaces = true;
+    private boolean stripControlCharacters = false;
+    private Normalizer.Form unicodeNormalization;
 
     @Override
     public void init(Map<String, Object> configuration) {
@@ -36,6 +43,15 @@ public class TextNormaliserAgent extends SingleRecordAgentProcessor {
                         configuration.getOrDefault("make-lowercase", "true").toString());
         trimSpaces =
                 Boolean.parseBoolean(configuration.getOrDefault("trim-spaces", "true").toString());
+        stripControlCharacters =
+                Boolean.parseBoolean(
+                        configuration.getOrDefault("strip-control-characters", "false").toString());
+        String normalization =
+                configuration.getOrDefault("unicode-normalization", "none").toString();
+        unicodeNormalization =
+                normalization.equalsIgnoreCase("none")
+                        ? null
+                        : Normalizer.Form.valueOf(normalization.toUpperCase(Locale.ENGLISH));
     }
 
     @Override
@@ -43,22 +59,94 @@ public class TextNormaliserAgent extends SingleRecordAgentProcessor {
         if (record == null) {
             return List.of();
         }
+        if (record.value() == null) {
+            // a tombstone, the document has been deleted and there is no text to process
+            return List.of(record);
+        }
         Object value = record.value();
         String stream = Utils.toText(value);
 
-        if (trimSpaces) {
-            stream = trimSpaces(stream);
-        }
-        if (makeLowercase) {
-            stream = stream.toLowerCase(Locale.ENGLISH);
+        if (unicodeNormalization != null
+                && !Normalizer.isNormalized(stream, unicodeNormalization)) {
+            stream = Normalizer.normalize(stream, unicodeNormalization);
         }
+        stream = normalise(stream, makeLowercase, trimSpaces, stripControlCharacters);
         return List.of(SimpleRecord.copyFrom(record).value(stream).build());
     }
 
     static String trimSpaces(String stream) {
-        return stream.replaceAll("\t+", " ") // convert tabs to spaces
-                .replaceAll(" +", " ") // remove multiple spaces
-                .replaceAll("\n\n\n", "\n\n") // remove repeated newlines (3 or more)
-                .trim();
+        return normalise(stream, false, true, false);
+    }
+
+    /**
+     * Normalises the text in a single pass over its characters, with a single output buffer.
+     *
+     * @param lowercase convert the text to lowercase
+     * @param trimSpaces collapse the runs of spaces and tabs into a single space, limit the runs of
+     *     newlines and trim the text
+     * @param stripControlCharacters remove the control characters, except newlines and tabs
+     */
+    static String normalise(
+            String text, boolean lowercase, boolean trimSpaces, boolean stripControlCharacters) {
+        if (!lowercase && !trimSpaces && !stripControlCharacters) {
+            return text;
+        }
+        int length = text.length();
+        char[] out = new char[length];
+        int size = 0;
+        boolean lastWasSpace = false;
+        int newlines = 0;
+        for (int i = 0; i < length; ) {
+            int c = text.codePointAt(i);
+            i += Character.charCount(c);
+            if (stripControlCharacters && c != '\n' && c != '\t' && Character.isISOControl(c)) {
+                continue;
+            }
+            if (trimSpaces) {
+                if (size == 0 && c <= ' ') {
+                    // leading whitespace
+                    continue;
+                }
+                if (c == ' ' || c == '\t') {
+                    if (lastWasSpace) {
+                        continue;
+                    }
+                    lastWasSpace = true;
+                    newlines = 0;
+                    out[size++] = ' ';
+                    continue;
+                }
+                lastWasSpace = false;
+                if (c == '\n') {
+                    if (++newlines > MAX_CONSECUTIVE_NEWLINES) {
+                        continue;
+                    }
+                } else {
+                    newlines = 0;
+                }
+            }
+            if (lowercase) {
+                c = c < 128 ? asciiToLowerCase(c) : Character.toLowerCase(c);
+            }
+            if (size + 2 > out.length && size + Character.charCount(c) > out.length) {
+                // the lowercase of a character may be longer
+                out = Arrays.copyOf(out, out.length * 2 + 2);
+            }
+            if (c < Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+                out[size++] = (char) c;
+            } else {
+                size += Character.toChars(c, out, size);
+            }
+        }
+        if (trimSpaces) {
+            while (size > 0 && out[size - 1] <= ' ') {
+                size--;
+            }
+        }
+        return new String(out, 0, size);
+    }
+
+    private static int asciiToLowerCase(int c) {
+        return c >= 'A' && c <= 'Z' ? c + ('a' - 'A') : c;
     }
 }
@@ -20,6 +20,7 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import lombok.extern.slf4j.Slf4j;
@@ -31,6 +32,7 @@ public abstract class TextSplitter {
     protected java.util.function.Function<String, Integer> lengthFunction;
     protected boolean keepSeparator;
     protected boolean addStartIndex;
+    private final Map<String, Integer> separatorLengths = new ConcurrentHashMap<>();
 
     public TextSplitter(
             int chunkSize,
@@ -91,21 +93,35 @@ public abstract class TextSplitter {
     }
 
     protected List<String> mergeSplits(List<String> splits, String separator) {
+        int[] lengths = new int[splits.size()];
+        for (int i = 0; i < lengths.length; i++) {
+            lengths[i] = lengthFunction.apply(splits.get(i));
+        }
+        return mergeSplits(splits, lengths, separator);
+    }
+
+    /**
+     * Merges the splits in chunks of at most chunkSize, with chunkOverlap of overlap between
+     * consecutive chunks. The lengths of the splits are computed by the caller, so each split is
+     * measured only once: with a tokenizer as length function measuring is the expensive part.
+     */
+    protected List<String> mergeSplits(List<String> splits, int[] lengths, String separator) {
         List<String> docs = new ArrayList<>();
-        List<String> currentDoc = new ArrayList<>();
+        // the current chunk is a window over the splits, from start (included) to end (excluded)
+        int start = 0;
         int total = 0;
-        int separatorLen = lengthFunction.apply(separator);
+        int separatorLen = separatorLength(separator);
 
-        for (String d : splits) {
-            int len = lengthFunction.apply(d);
-            if (total + len + (currentDoc.size() > 0 ? separatorLen : 0) > chunkSize) {
+        for (int end = 0; end < splits.size(); end++) {
+            int len = lengths[end];
+            if (total + len + (end > start ? separatorLen : 0) > chunkSize) {
                 if (total > chunkSize) {
                     log.warn(
                             "Created a chunk of size %d, which is longer than the specified %d"
                                     .formatted(total, chunkSize));
                 }
-                if (!currentDoc.isEmpty()) {
-                    String doc = joinDocs(currentDoc, separator);
+                if (end > start) {
+                    String doc = joinDocs(splits.subList(start, end), separator);
                     if (doc != null) {
                         docs.add(doc);
                     }
@@ -113,20 +129,17 @@ public abstract class TextSplitter {
                     // - we have a larger chunk than in the chunk overlap
                     // - or if we still have any chunks and the length is long
                     while (total > chunkOverlap
-                            || (total + len + (currentDoc.size() > 0 ? separatorLen : 0) > chunkSize
+                            || (total + len + (end > start ? separatorLen : 0) > chunkSize
                                     && total > 0)) {
-                        total -=
-                                lengthFunction.apply(currentDoc.get(0))
-                                        + (currentDoc.size() > 1 ? separatorLen : 0);
-                        currentDoc.remove(0);
+                        total -= lengths[start] + (end - start > 1 ? separatorLen : 0);
+                        start++;
                     }
                 }
             }
-            currentDoc.add(d);
-            total += len + (currentDoc.size() > 1 ? separatorLen : 0);
+            total += len + (end > start ? separatorLen : 0);
         }
 
-        String doc = joinDocs(currentDoc, separator);
+        String doc = joinDocs(splits.subList(start, splits.size()), separator);
         if (doc != null) {
             docs.add(doc);
         }
@@ -134,13 +147,28 @@ public abstract class TextSplitter {
         return docs;
     }
 
+    private int separatorLength(String separator) {
+        return separatorLengths.computeIfAbsent(separator, lengthFunction::apply);
+    }
+
     public static List<String> splitTextWithRegex(
             String text, String separator, boolean keepSeparator) {
+        return splitTextWithRegex(
+                text,
+                separator != null && !separator.isEmpty() ? Pattern.compile(separator) : null,
+                keepSeparator);
+    }
+
+    /**
+     * Splits the text around the matches of the separator, a null separator splits the text into
+     * individual characters.
+     */
+    public static List<String> splitTextWithRegex(
+            String text, Pattern separator, boolean keepSeparator) {
         List<String> splits = new ArrayList<>();
-        if (separator != null && !separator.isEmpty()) {
+        if (separator != null) {
             if (keepSeparator) {
-                Pattern pattern = Pattern.compile("(" + separator + ")");
-                Matcher matcher = pattern.matcher(text);
+                Matcher matcher = separator.matcher(text);
                 if (matcher.find()) {
                     if (matcher.start() != 0) {
                         splits.add(text.substring(0, matcher.start()));
@@ -157,7 +185,7 @@ public abstract class TextSplitter {
                     splits.add(text);
                 }
             } else {
-                splits.addAll(Arrays.asList(text.split(separator)));
+                splits.addAll(Arrays.asList(separator.split(text)));
             }
         } else {
             // If separator is empty, split the text into individual characters
@@ -20,6 +20,7 @@ import ai.langstream.api.runner.code.Record;
 import ai.langstream.api.runner.code.SimpleRecord;
 import ai.langstream.api.runner.code.SingleRecordAgentProcessor;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import lombok.extern.slf4j.Slf4j;
@@ -92,13 +93,25 @@ public class TextSplitterAgent extends SingleRecordAgentProcessor {
         if (record == null) {
             return List.of();
         }
+        if (record.value() == null) {
+            // a tombstone, the document has been deleted and there is no text to process
+            return List.of(record);
+        }
         Object value = record.value();
         String text = Utils.toText(value);
+        return split(record, text, 0, record.headers());
+    }
+
+    /**
+     * Splits the text in chunk records, the chunk ids start from firstChunkId. Used by the text
+     * extractor to split each page of a document.
+     */
+    List<Record> split(Record record, String text, int firstChunkId, Collection<Header> headers) {
         List<String> chunks = textSplitter.splitText(text);
-        int chunkId = 0;
+        int chunkId = firstChunkId;
         List<Record> result = new ArrayList<>();
         for (String chunk : chunks) {
-            List<Header> chunkHeaders = new ArrayList<>(record.headers());
+            List<Header> chunkHeaders = new ArrayList<>(headers);
             chunkHeaders.add(new SimpleRecord.SimpleHeader("chunk_id", String.valueOf(chunkId++)));
             chunkHeaders.add(
                     new SimpleRecord.SimpleHeader(
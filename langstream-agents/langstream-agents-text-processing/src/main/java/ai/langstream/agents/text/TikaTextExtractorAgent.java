@@ -15,13 +15,17 @@
  */
 package ai.langstream.agents.text;
 
+import ai.langstream.api.runner.code.Header;
 import ai.langstream.api.runner.code.Record;
 import ai.langstream.api.runner.code.SimpleRecord;
 import ai.langstream.api.runner.code.SingleRecordAgentProcessor;
 import java.io.InputStream;
-import java.io.Reader;
 import java.io.StringWriter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
+import java.util.Map;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -29,30 +33,152 @@ import lombok.extern.slf4j.Slf4j;
 import org.apache.tika.metadata.Metadata;
 import org.apache.tika.parser.AutoDetectParser;
 import org.apache.tika.parser.ParseContext;
-import org.apache.tika.parser.ParsingReader;
+import org.apache.tika.parser.Parser;
+import org.apache.tika.sax.BodyContentHandler;
+import org.apache.tika.sax.ToTextContentHandler;
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
 
+/**
+ * Extracts the text of a document with Apache Tika. The document is parsed in the calling thread
+ * with a parser shared by all the records.
+ *
+ * <p>With {@code split-mode: page} the agent emits one record per page (for the formats that have
+ * pages, like PDF) with the {@code page_number} header, the text of the document is never held as a
+ * whole. The optional {@code text-splitter} configuration, with the same keys as the text-splitter
+ * agent, splits each page in chunks as soon as it is extracted.
+ */
 @Slf4j
 public class TikaTextExtractorAgent extends SingleRecordAgentProcessor {
 
+    // AutoDetectParser is thread safe, loading the parsers is expensive
+    private static final Parser PARSER = new AutoDetectParser();
+
+    private boolean splitByPage;
+    private TextSplitterAgent textSplitter;
+
+    @Override
+    public void init(Map<String, Object> configuration) throws Exception {
+        String splitMode = configuration.getOrDefault("split-mode", "document").toString();
+        switch (splitMode) {
+            case "document" -> splitByPage = false;
+            case "page" -> splitByPage = true;
+            default -> throw new IllegalArgumentException(
+                    "Unknown split-mode: " + splitMode + ", only document and page are supported");
+        }
+        Map<String, Object> splitterConfiguration =
+                (Map<String, Object>) configuration.get("text-splitter");
+        if (splitterConfiguration != null) {
+            if (!splitByPage) {
+                throw new IllegalArgumentException("text-splitter requires split-mode: page");
+            }
+            textSplitter = new TextSplitterAgent();
+            textSplitter.init(splitterConfiguration);
+        }
+    }
+
     @Override
     public List<Record> processRecord(Record record) throws Exception {
         if (record == null) {
             return List.of();
         }
-        AutoDetectParser parser = new AutoDetectParser();
+        if (record.value() == null) {
+            // a tombstone, the document has been deleted and there is no text to process
+            return List.of(record);
+        }
         Object value = record.value();
         final InputStream stream = Utils.toStream(value);
         Metadata metadata = new Metadata();
-        ParseContext parseContext = new ParseContext();
-        try (Reader reader = new ParsingReader(parser, stream, metadata, parseContext)) {
-            StringWriter valueAsString = new StringWriter();
-            String[] names = metadata.names();
+        List<Record> result = new ArrayList<>();
+        PageHandler handler =
+                new PageHandler(
+                        splitByPage,
+                        (pageNumber, text) ->
+                                result.addAll(toRecords(record, pageNumber, text, result.size())));
+        PARSER.parse(stream, new BodyContentHandler(handler), metadata, new ParseContext());
+        handler.finish();
+        if (log.isInfoEnabled()) {
             log.info(
-                    "Document type: {} Content {}",
-                    Stream.of(names).collect(Collectors.toMap(Function.identity(), metadata::get)),
-                    valueAsString);
-            reader.transferTo(valueAsString);
-            return List.of(SimpleRecord.copyFrom(record).value(valueAsString.toString()).build());
+                    "Document type: {}, {} records",
+                    Stream.of(metadata.names())
+                            .collect(Collectors.toMap(Function.identity(), metadata::get)),
+                    result.size());
+        }
+        return result;
+    }
+
+    private List<Record> toRecords(Record record, int pageNumber, String text, int emitted) {
+        if (!splitByPage) {
+            return List.of(SimpleRecord.copyFrom(record).value(text).build());
+        }
+        if (text.isBlank()) {
+            return List.of();
+        }
+        List<Header> headers =
+                Utils.addHeader(
+                        record.headers(),
+                        new SimpleRecord.SimpleHeader("page_number", String.valueOf(pageNumber)));
+        if (textSplitter != null) {
+            // the chunk ids are unique across the pages of the document
+            return textSplitter.split(record, text, emitted, headers);
+        }
+        return List.of(SimpleRecord.copyFrom(record).value(text).headers(headers).build());
+    }
+
+    interface PageConsumer {
+        void accept(int pageNumber, String text);
+    }
+
+    /**
+     * Writes the text like the default handler of Tika and hands it over at the end of each page,
+     * the pages are the {@code <div class="page">} elements. The text out of the pages is handed
+     * over at the end of the document.
+     */
+    static class PageHandler extends ToTextContentHandler {
+        private final StringWriter writer;
+        private final boolean splitByPage;
+        private final PageConsumer consumer;
+        private final Deque<Boolean> divs = new ArrayDeque<>();
+        private int pageNumber = 1;
+
+        PageHandler(boolean splitByPage, PageConsumer consumer) {
+            this(new StringWriter(), splitByPage, consumer);
+        }
+
+        private PageHandler(StringWriter writer, boolean splitByPage, PageConsumer consumer) {
+            super(writer);
+            this.writer = writer;
+            this.splitByPage = splitByPage;
+            this.consumer = consumer;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes atts)
+                throws SAXException {
+            super.startElement(uri, localName, qName, atts);
+            if ("div".equals(localName)) {
+                divs.push("page".equals(atts.getValue("class")));
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) throws SAXException {
+            super.endElement(uri, localName, qName);
+            if ("div".equals(localName) && !divs.isEmpty() && divs.pop() && splitByPage) {
+                flush();
+            }
+        }
+
+        /** Called after the parsing, hands over the remaining text. */
+        void finish() {
+            if (!splitByPage || writer.getBuffer().length() > 0) {
+                flush();
+            }
+        }
+
+        private void flush() {
+            consumer.accept(pageNumber++, writer.toString());
+            writer.getBuffer().setLength(0);
         }
     }
 }
@@ -16,6 +16,7 @@
 package ai.langstream.agents.text;
 
 import ai.langstream.api.runner.code.Header;
+import ai.langstream.api.runner.code.TextValue;
 import java.io.ByteArrayInputStream;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -31,6 +32,8 @@ public class Utils {
         final InputStream stream;
         if (value instanceof byte[] array) {
             stream = new ByteArrayInputStream(array);
+        } else if (value instanceof TextValue textValue) {
+            stream = new ByteArrayInputStream(textValue.bytes());
         } else {
             stream = new ByteArrayInputStream(value.toString().getBytes(StandardCharsets.UTF_8));
         }
@@ -43,6 +46,8 @@ public class Utils {
         }
         if (value instanceof byte[] array) {
             return new InputStreamReader(new ByteArrayInputStream(array), StandardCharsets.UTF_8);
+        } else if (value instanceof TextValue textValue) {
+            return new StringReader(textValue.text());
         } else {
             return new StringReader(value.toString());
         }
@@ -55,6 +60,8 @@ public class Utils {
         }
         if (value instanceof byte[] array) {
             return new String(array, StandardCharsets.UTF_8);
+        } else if (value instanceof TextValue textValue) {
+            return textValue.text();
         } else {
             return value.toString();
         }
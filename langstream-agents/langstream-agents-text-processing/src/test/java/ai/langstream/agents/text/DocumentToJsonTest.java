@@ -20,6 +20,8 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import ai.langstream.api.runner.code.Record;
 import ai.langstream.api.runner.code.SimpleRecord;
 import ai.langstream.api.runner.code.SingleRecordAgentProcessor;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.Map;
@@ -29,6 +31,8 @@ import org.junit.jupiter.api.Test;
 @Slf4j
 public class DocumentToJsonTest {
 
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
     @Test
     public void textConvertToJson() throws Exception {
         TextProcessingAgentsCodeProvider provider = new TextProcessingAgentsCodeProvider();
@@ -36,7 +40,7 @@ public class DocumentToJsonTest {
         instance.init(Map.of("text-field", "document", "copy-properties", "true"));
 
         assertEquals(
-                "{\"detected-language\":\"en\",\"document\":\"This is a English\"}",
+                "{\"document\":\"This is a English\",\"detected-language\":\"en\"}",
                 convertToJson(instance, "This is a English"));
 
         instance.init(Map.of("text-field", "document", "copy-properties", "false"));
@@ -45,6 +49,22 @@ public class DocumentToJsonTest {
                 convertToJson(instance, "This is a English"));
     }
 
+    @Test
+    public void textConvertLargeDocumentToJson() throws Exception {
+        TextProcessingAgentsCodeProvider provider = new TextProcessingAgentsCodeProvider();
+        SingleRecordAgentProcessor instance = provider.createInstance("document-to-json");
+        instance.init(Map.of("copy-properties", "true"));
+
+        String text = "Un été \"chaud\"\n\uD83D\uDE00 ".repeat(10000);
+        JsonNode json = MAPPER.readTree(convertToJson(instance, text));
+        assertEquals(text, json.get("text").asText());
+        assertEquals("en", json.get("detected-language").asText());
+
+        // a header with the same name replaces the text
+        instance.init(Map.of("text-field", "detected-language", "copy-properties", "true"));
+        assertEquals("{\"detected-language\":\"en\"}", convertToJson(instance, text));
+    }
+
     private static String convertToJson(SingleRecordAgentProcessor instance, String text)
             throws Exception {
         Record fromSource =
@@ -58,6 +78,6 @@ public class DocumentToJsonTest {
 
         Record result = instance.processRecord(fromSource).get(0);
         log.info("Result: {}", result);
-        return (String) result.value();
+        return result.value().toString();
     }
 }
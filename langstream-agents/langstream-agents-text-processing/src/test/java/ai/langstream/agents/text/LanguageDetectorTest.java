@@ -16,6 +16,7 @@
 package ai.langstream.agents.text;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import ai.langstream.api.runner.code.Record;
 import ai.langstream.api.runner.code.SimpleRecord;
@@ -39,6 +40,63 @@ public class LanguageDetectorTest {
         assertEquals("fr", detectLanguage(instance, "Parlez-vous français?"));
     }
 
+    @Test
+    public void testSampleAndConfidence() throws Exception {
+        TextProcessingAgentsCodeProvider provider = new TextProcessingAgentsCodeProvider();
+        SingleRecordAgentProcessor instance = provider.createInstance("language-detector");
+        instance.init(
+                Map.of(
+                        "property",
+                        "detected-language",
+                        "confidence-property",
+                        "confidence",
+                        "sample-size",
+                        200));
+
+        // only the beginning of the text is used
+        String text =
+                "This is a document written in English, the language detector will only read the"
+                        + " beginning of the document to find its language. "
+                        + "Questo documento è scritto in italiano. ".repeat(100);
+        Record result = detect(instance, text);
+        assertEquals("en", result.getHeader("detected-language").valueAsString());
+        double confidence = Double.parseDouble(result.getHeader("confidence").valueAsString());
+        assertTrue(confidence > 0.05 && confidence <= 1, "confidence " + confidence);
+
+        // a short text is ambiguous
+        assertTrue(LanguageDetectorAgent.detect("xyz").confidence() < 0.01);
+        assertEquals(0, LanguageDetectorAgent.detect("12345 67890").confidence());
+
+        // the records with a low confidence are skipped
+        instance.init(Map.of("min-confidence", 0.05));
+        assertTrue(instance.processRecord(record("xyz")).isEmpty());
+        assertEquals(1, instance.processRecord(record(text)).size());
+    }
+
+    @Test
+    public void testSample() {
+        assertEquals("abc", LanguageDetectorAgent.sample("abcdef", 3));
+        assertEquals("ab", LanguageDetectorAgent.sample("ab\uD801\uDC00", 3));
+        // the UTF-8 sequence of é is not cut
+        assertEquals("ab", LanguageDetectorAgent.sample("abé".getBytes(StandardCharsets.UTF_8), 3));
+        assertEquals(
+                "abé", LanguageDetectorAgent.sample("abé".getBytes(StandardCharsets.UTF_8), 4));
+    }
+
+    private static Record record(String text) {
+        return SimpleRecord.builder()
+                .key("filename.txt")
+                .value(text.getBytes(StandardCharsets.UTF_8))
+                .origin("origin")
+                .timestamp(System.currentTimeMillis())
+                .build();
+    }
+
+    private static Record detect(SingleRecordAgentProcessor instance, String text)
+            throws Exception {
+        return instance.processRecord(record(text)).get(0);
+    }
+
     private static String detectLanguage(SingleRecordAgentProcessor instance, String text)
             throws Exception {
         Record fromSource =
@@ -16,14 +16,22 @@
 package ai.langstream.agents.text;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
 
 import ai.langstream.api.runner.code.Record;
 import ai.langstream.api.runner.code.SimpleRecord;
 import ai.langstream.api.runner.code.SingleRecordAgentProcessor;
+import java.io.ByteArrayOutputStream;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
 import org.junit.jupiter.api.Test;
 
 @Slf4j
@@ -88,4 +96,102 @@ public class TextExtractorTest {
 
         assertEquals("This is a very simple Word Document", result.value().toString().trim());
     }
+
+    @Test
+    public void textExtractByPage() throws Exception {
+        TextProcessingAgentsCodeProvider provider = new TextProcessingAgentsCodeProvider();
+        SingleRecordAgentProcessor instance = provider.createInstance("text-extractor");
+        instance.init(Map.of("split-mode", "page"));
+
+        List<Record> results =
+                instance.processRecord(
+                        pdfRecord("First page", "Second page is longer", "Third page"));
+
+        assertEquals(3, results.size());
+        assertEquals("First page", results.get(0).value().toString().trim());
+        assertEquals("Second page is longer", results.get(1).value().toString().trim());
+        assertEquals("Third page", results.get(2).value().toString().trim());
+        assertEquals("2", results.get(1).getHeader("page_number").valueAsString());
+        assertEquals("filename.pdf", results.get(1).key());
+    }
+
+    @Test
+    public void textExtractAndSplitByPage() throws Exception {
+        TextProcessingAgentsCodeProvider provider = new TextProcessingAgentsCodeProvider();
+        SingleRecordAgentProcessor instance = provider.createInstance("text-extractor");
+        instance.init(
+                Map.of(
+                        "split-mode",
+                        "page",
+                        "text-splitter",
+                        Map.of("chunk_size", 12, "chunk_overlap", 0, "length_function", "length")));
+
+        List<Record> results =
+                instance.processRecord(
+                        pdfRecord("First page", "Second page is longer", "Third page"));
+
+        List<String> chunks = results.stream().map(r -> r.value().toString()).toList();
+        assertEquals(List.of("First page", "Second page", "is longer", "Third page"), chunks);
+        for (int i = 0; i < results.size(); i++) {
+            assertEquals(String.valueOf(i), results.get(i).getHeader("chunk_id").valueAsString());
+        }
+        assertEquals("2", results.get(2).getHeader("page_number").valueAsString());
+        assertEquals("3", results.get(3).getHeader("page_number").valueAsString());
+    }
+
+    @Test
+    public void tombstonesArePassedThrough() throws Exception {
+        TextProcessingAgentsCodeProvider provider = new TextProcessingAgentsCodeProvider();
+        Record tombstone =
+                SimpleRecord.builder()
+                        .key("https://example.com/page.html")
+                        .value(null)
+                        .headers(List.of(new SimpleRecord.SimpleHeader("deleted", "true")))
+                        .build();
+
+        SingleRecordAgentProcessor extractor = provider.createInstance("text-extractor");
+        extractor.init(Map.of());
+        SingleRecordAgentProcessor normaliser = provider.createInstance("text-normaliser");
+        normaliser.init(Map.of("make-lowercase", true, "trim-spaces", true));
+        SingleRecordAgentProcessor detector = provider.createInstance("language-detector");
+        detector.init(Map.of("allowedLanguages", List.of("en"), "property", "language"));
+        SingleRecordAgentProcessor splitter = provider.createInstance("text-splitter");
+        splitter.init(Map.of("chunk_size", 400, "chunk_overlap", 100));
+        SingleRecordAgentProcessor toJson = provider.createInstance("document-to-json");
+        toJson.init(Map.of("text-field", "text", "copy-properties", true));
+
+        // the pipeline of the web crawler example, the delete must reach the sink unchanged
+        Record result = tombstone;
+        for (SingleRecordAgentProcessor agent :
+                List.of(extractor, normaliser, detector, splitter, toJson)) {
+            List<Record> results = agent.processRecord(result);
+            assertEquals(1, results.size());
+            result = results.get(0);
+        }
+        assertSame(tombstone, result);
+    }
+
+    private static Record pdfRecord(String... pages) throws Exception {
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        try (PDDocument document = new PDDocument()) {
+            for (String text : pages) {
+                PDPage page = new PDPage();
+                document.addPage(page);
+                try (PDPageContentStream stream = new PDPageContentStream(document, page)) {
+                    stream.beginText();
+                    stream.setFont(PDType1Font.HELVETICA, 12);
+                    stream.newLineAtOffset(100, 700);
+                    stream.showText(text);
+                    stream.endText();
+                }
+            }
+            document.save(content);
+        }
+        return SimpleRecord.builder()
+                .key("filename.pdf")
+                .value(content.toByteArray())
+                .origin("origin")
+                .timestamp(System.currentTimeMillis())
+                .build();
+    }
 }
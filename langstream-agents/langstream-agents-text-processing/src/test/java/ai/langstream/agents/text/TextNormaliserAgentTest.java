@@ -17,6 +17,12 @@ package ai.langstream.agents.text;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import ai.langstream.api.runner.code.Record;
+import ai.langstream.api.runner.code.SimpleRecord;
+import ai.langstream.api.runner.code.TextValue;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
 import org.junit.jupiter.api.Test;
 
 class TextNormaliserAgentTest {
@@ -32,4 +38,39 @@ class TextNormaliserAgentTest {
              this is a new line""",
                 result);
     }
+
+    @Test
+    void testNormalise() {
+        String text = "\t  Some TEXT\u0001 with\r\n\n\n\n\nÉTÉ  \tΣ \uD801\uDC00 ";
+        assertEquals(
+                "some text with\n\nété σ \uD801\uDC28",
+                TextNormaliserAgent.normalise(text, true, true, true));
+        // control characters are kept
+        assertEquals(
+                "Some TEXT\u0001 with\r\n\nÉTÉ Σ \uD801\uDC00",
+                TextNormaliserAgent.normalise(text, false, true, false));
+        assertEquals(text.toLowerCase(), TextNormaliserAgent.normalise(text, true, false, false));
+        assertSame(text, TextNormaliserAgent.normalise(text, false, false, false));
+    }
+
+    @Test
+    void testUnicodeNormalization() {
+        TextNormaliserAgent agent = new TextNormaliserAgent();
+        agent.init(Map.of("unicode-normalization", "NFKC"));
+        List<Record> result =
+                agent.processRecord(SimpleRecord.of(null, "\uFB01ne\u00A0\u00A0Ｔｅｘｔ"));
+        assertEquals("fine text", result.get(0).value());
+    }
+
+    @Test
+    void testTextValue() {
+        TextNormaliserAgent agent = new TextNormaliserAgent();
+        agent.init(Map.of());
+        TextValue value = TextValue.of("  Été \n\n\n Text ".getBytes(StandardCharsets.UTF_8));
+        List<Record> result = agent.processRecord(SimpleRecord.of(null, value));
+        assertEquals("été \n\n text", result.get(0).value());
+        // the decoded form is cached
+        assertSame(value.text(), Utils.toText(value));
+        assertEquals(TextValue.of("  Été \n\n\n Text "), value);
+    }
 }
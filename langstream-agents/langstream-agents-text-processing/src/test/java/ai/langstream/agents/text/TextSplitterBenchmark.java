@@ -0,0 +1,114 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.langstream.agents.text;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Splits a document of the size of the text extracted from a 500 pages PDF, with the default
+ * configuration of the text-splitter agent. Run it from the IDE or with the test classpath: {@code
+ * java -cp ... ai.langstream.agents.text.TextSplitterBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class TextSplitterBenchmark {
+
+    private static final String[] WORDS = {
+        "the",
+        "vector",
+        "of",
+        "a",
+        "document",
+        "is",
+        "computed",
+        "by",
+        "embedding",
+        "model",
+        "retrieval",
+        "augmented",
+        "generation",
+        "pipeline",
+        "chunk",
+        "overlap",
+        "tokens",
+        "and"
+    };
+
+    @Param({"length", "cl100k_base"})
+    public String lengthFunction;
+
+    @Param({"500"})
+    public int pages;
+
+    private String text;
+    private TextSplitter splitter;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(1);
+        StringBuilder builder = new StringBuilder();
+        for (int page = 0; page < pages; page++) {
+            // about 3000 characters per page, in paragraphs of a few lines
+            for (int paragraph = 0; paragraph < 6; paragraph++) {
+                for (int word = 0; word < 80; word++) {
+                    builder.append(WORDS[random.nextInt(WORDS.length)]);
+                    builder.append(word % 12 == 11 ? '\n' : ' ');
+                }
+                builder.append("\n\n");
+            }
+        }
+        text = builder.toString();
+        LengthFunction function =
+                lengthFunction.equals("length")
+                        ? String::length
+                        : new TikTokLengthFunction(lengthFunction);
+        splitter =
+                new RecursiveCharacterTextSplitter(
+                        List.of("\n\n", "\n", " ", ""), false, 200, 100, function::length);
+    }
+
+    @Benchmark
+    public List<String> splitText() {
+        return splitter.splitText(text);
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(
+                        new OptionsBuilder()
+                                .include(TextSplitterBenchmark.class.getSimpleName())
+                                .build())
+                .run();
+    }
+}
@@ -17,9 +17,12 @@ package ai.langstream.ai.agents;
 
 import ai.langstream.ai.agents.datasource.DataSourceProviderRegistry;
 import ai.langstream.ai.agents.services.ServiceProviderRegistry;
+import ai.langstream.api.runner.code.AbstractAgentCode;
+import ai.langstream.api.runner.code.AgentProcessor;
 import ai.langstream.api.runner.code.Header;
 import ai.langstream.api.runner.code.Record;
-import ai.langstream.api.runner.code.SingleRecordAgentProcessor;
+import ai.langstream.api.runner.code.RecordSink;
+import ai.langstream.api.runner.code.TextValue;
 import com.datastax.oss.streaming.ai.TransformContext;
 import com.datastax.oss.streaming.ai.datasource.QueryStepDataSource;
 import com.datastax.oss.streaming.ai.jstl.predicate.StepPredicatePair;
@@ -43,34 +46,79 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.avro.generic.GenericRecord;
 
 @Slf4j
-public class GenAIToolKitAgent extends SingleRecordAgentProcessor {
+public class GenAIToolKitAgent extends AbstractAgentCode implements AgentProcessor {
 
     private static final ObjectMapper MAPPER = new ObjectMapper();
+    private final AtomicLong errors = new AtomicLong();
     private List<StepPredicatePair> steps;
     private TransformStepConfig config;
     private QueryStepDataSource dataSource;
     private ServiceProvider serviceProvider;
 
+    /**
+     * Process the records as a batch: each step is applied to all the records before moving to the
+     * next step, so that the steps implementing {@link
+     * com.datastax.oss.streaming.ai.BatchTransformStep} can amortize their remote calls. The errors
+     * are tracked per record: only the records that fail are reported as failed, the other records
+     * of the batch are emitted normally.
+     */
     @Override
-    public List<Record> processRecord(Record record) throws Exception {
-        log.info("Processing {}", record);
-        if (log.isDebugEnabled()) {
-            log.debug("Processing {}", record);
-        }
-        TransformContext context =
-                recordToTransformContext(record, config.isAttemptJsonConversion());
-
-        TransformFunctionUtil.processTransformSteps(context, steps);
-        context.convertMapToStringOrBytes();
-        Optional<Record> recordResult = transformContextToRecord(context, record.headers());
-        log.info("Result {}", recordResult);
-        return recordResult.map(List::of).orElseGet(List::of);
+    public void process(List<Record> records, RecordSink recordSink) {
+        List<Record> sourceRecords = new ArrayList<>(records.size());
+        List<TransformContext> contexts = new ArrayList<>(records.size());
+        for (Record record : records) {
+            try {
+                contexts.add(recordToTransformContext(record, config.isAttemptJsonConversion()));
+                sourceRecords.add(record);
+            } catch (Throwable error) {
+                emitError(record, error, recordSink);
+            }
+        }
+        if (contexts.isEmpty()) {
+            return;
+        }
+
+        Map<TransformContext, Throwable> failures =
+                TransformFunctionUtil.processTransformSteps(contexts, steps);
+        for (int i = 0; i < contexts.size(); i++) {
+            Record record = sourceRecords.get(i);
+            try {
+                TransformContext context = contexts.get(i);
+                Throwable failure = failures.get(context);
+                if (failure != null) {
+                    emitError(record, failure, recordSink);
+                    continue;
+                }
+                context.convertMapToStringOrBytes();
+                Optional<Record> recordResult = transformContextToRecord(context, record.headers());
+                emitResult(record, recordResult.map(List::of).orElseGet(List::of), recordSink);
+            } catch (Throwable error) {
+                emitError(record, error, recordSink);
+            }
+        }
+    }
+
+    private void emitResult(Record record, List<Record> result, RecordSink recordSink) {
+        processed(1, result.size());
+        recordSink.emit(new SourceRecordAndResult(record, result, null));
+    }
+
+    private void emitError(Record record, Throwable error, RecordSink recordSink) {
+        log.error("Error processing record: {}", record, error);
+        errors.incrementAndGet();
+        recordSink.emit(new SourceRecordAndResult(record, null, error));
+    }
+
+    @Override
+    protected Map<String, Object> buildAdditionalInfo() {
+        return Map.of("errors", errors.get());
     }
 
     @Override
@@ -105,18 +153,19 @@ public class GenAIToolKitAgent extends SingleRecordAgentProcessor {
     public static TransformContext recordToTransformContext(
             Record record, boolean attemptJsonConversion) {
         TransformContext context = new TransformContext();
-        context.setKeyObject(record.key());
-        context.setKeySchemaType(
-                record.key() == null ? null : getSchemaType(record.key().getClass()));
+        Object key = unwrapText(record.key());
+        context.setKeyObject(key);
+        context.setKeySchemaType(key == null ? null : getSchemaType(key.getClass()));
         // TODO: temporary hack. We should be able to get the schema from the record
-        if (record.key() instanceof GenericRecord) {
-            context.setKeyNativeSchema(((GenericRecord) record.key()).getSchema());
+        if (key instanceof GenericRecord) {
+            context.setKeyNativeSchema(((GenericRecord) key).getSchema());
         }
-        context.setValueObject(record.value());
-        context.setValueSchemaType(getSchemaType(record.value().getClass()));
+        Object value = unwrapText(record.value());
+        context.setValueObject(value);
+        context.setValueSchemaType(value == null ? null : getSchemaType(value.getClass()));
         // TODO: temporary hack. We should be able to get the schema from the record
-        if (record.value() instanceof GenericRecord) {
-            context.setKeyNativeSchema(((GenericRecord) record.value()).getSchema());
+        if (value instanceof GenericRecord) {
+            context.setKeyNativeSchema(((GenericRecord) value).getSchema());
         }
         context.setInputTopic(record.origin());
         context.setEventTime(record.timestamp());
@@ -184,6 +233,13 @@ public class GenAIToolKitAgent extends SingleRecordAgentProcessor {
         }
     }
 
+    private static Object unwrapText(Object value) {
+        if (value instanceof TextValue textValue) {
+            return textValue.text();
+        }
+        return value;
+    }
+
     private static TransformSchemaType getSchemaType(Class<?> javaType) {
         if (String.class.isAssignableFrom(javaType)) {
             return TransformSchemaType.STRING;
@@ -16,7 +16,11 @@
 package ai.langstream.ai.agents.datasource.impl;
 
 import ai.langstream.ai.agents.datasource.DataSourceProvider;
+import com.datastax.oss.streaming.ai.datasource.QueryResultCursor;
 import com.datastax.oss.streaming.ai.datasource.QueryStepDataSource;
+import java.sql.Array;
+import java.sql.Blob;
+import java.sql.Clob;
 import java.sql.Connection;
 import java.sql.Driver;
 import java.sql.DriverManager;
@@ -27,10 +31,16 @@ import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.SQLFeatureNotSupportedException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
 import java.util.logging.Logger;
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
@@ -50,15 +60,36 @@ public class JdbcDataSourceProvider implements DataSourceProvider {
         return new DataSourceImpl(dataSourceConfig);
     }
 
+    /**
+     * Runs the queries on a small pool of connections, so concurrent callers don't serialize on a
+     * single connection. Each pooled connection keeps its prepared statements by query text.
+     */
     private static class DataSourceImpl implements QueryStepDataSource {
 
-        Connection connection;
+        private static final int DEFAULT_POOL_SIZE = 4;
+        private static final int DEFAULT_STATEMENT_CACHE_SIZE = 64;
+
+        private final String url;
+        private final Properties properties;
+        private final int statementCacheSize;
+        private final int fetchSize;
+        private final Semaphore available;
+        private final Deque<PooledConnection> idle = new ConcurrentLinkedDeque<>();
+        private volatile boolean closed;
 
         public DataSourceImpl(Map<String, Object> dataSourceConfig) throws Exception {
-            Properties properties = new Properties();
-            properties.putAll(dataSourceConfig);
+            Map<String, Object> config = new HashMap<>(dataSourceConfig);
+            int poolSize = getInt(config.remove("pool-size"), DEFAULT_POOL_SIZE);
+            statementCacheSize =
+                    getInt(config.remove("statement-cache-size"), DEFAULT_STATEMENT_CACHE_SIZE);
+            fetchSize = getInt(config.remove("fetch-size"), 0);
+            available = new Semaphore(poolSize);
+
+            properties = new Properties();
+            properties.putAll(config);
+            url = properties.getProperty("url");
             String driverClass = properties.getProperty("driverClass", "");
-            log.info("Connecting to {}, config {}", properties.getProperty("url"), properties);
+            log.info("Connecting to {}, config {}", url, properties);
             if (!driverClass.isEmpty()) {
                 log.info("Loading JDBC Driver {}", driverClass);
                 Driver driver =
@@ -72,27 +103,71 @@ public class JdbcDataSourceProvider implements DataSourceProvider {
                 // https://www.kfu.com/~nsayer/Java/dyn-jdbc.html
                 DriverManager.registerDriver(new DriverShim(driver));
             }
-            connection = DriverManager.getConnection((String) properties.get("url"), properties);
+            // fail fast if the database is not reachable
+            idle.push(newConnection());
+        }
+
+        private static int getInt(Object value, int defaultValue) {
+            return value == null ? defaultValue : Integer.parseInt(value.toString());
+        }
+
+        private PooledConnection newConnection() throws SQLException {
+            Connection connection = DriverManager.getConnection(url, properties);
             connection.setAutoCommit(true);
+            return new PooledConnection(connection, statementCacheSize);
+        }
+
+        private PooledConnection borrow() throws SQLException, InterruptedException {
+            available.acquire();
+            try {
+                PooledConnection connection;
+                while ((connection = idle.poll()) != null) {
+                    if (connection.isUsable()) {
+                        return connection;
+                    }
+                    connection.close();
+                }
+                return newConnection();
+            } catch (SQLException | RuntimeException error) {
+                available.release();
+                throw error;
+            }
+        }
+
+        private void release(PooledConnection connection, boolean broken) {
+            if (broken || closed) {
+                connection.close();
+            } else {
+                idle.push(connection);
+            }
+            available.release();
         }
 
         @Override
-        @SneakyThrows
         public List<Map<String, String>> fetchData(String query, List<Object> params) {
-            PreparedStatement ps = connection.prepareStatement(query);
-            for (int i = 0; i < params.size(); i++) {
-                ps.setObject(i + 1, params.get(i));
+            return fetchData(query, params, 0);
+        }
+
+        @Override
+        public CompletableFuture<List<Map<String, String>>> fetchDataAsync(
+                String query, List<Object> params, int maxResults) {
+            try {
+                return CompletableFuture.completedFuture(fetchData(query, params, maxResults));
+            } catch (Throwable error) {
+                return CompletableFuture.failedFuture(error);
             }
-            try (ResultSet resultSet = ps.executeQuery()) {
-                ResultSetMetaData metaData = resultSet.getMetaData();
-                int numColumns = metaData.getColumnCount();
+        }
+
+        private List<Map<String, String>> fetchData(
+                String query, List<Object> params, int maxResults) {
+            try (QueryResultCursor cursor = executeQuery(query, params, maxResults)) {
+                List<String> columns = cursor.getColumnNames();
                 List<Map<String, String>> results = new ArrayList<>();
-                while (resultSet.next()) {
+                while (cursor.next()) {
                     Map<String, String> result = new HashMap<>();
-                    for (int i = 1; i <= numColumns; i++) {
-                        Object value = resultSet.getObject(i);
-                        result.put(
-                                metaData.getColumnName(i), value != null ? value.toString() : null);
+                    for (int i = 0; i < columns.size(); i++) {
+                        Object value = cursor.getValue(i);
+                        result.put(columns.get(i), value != null ? value.toString() : null);
                     }
                     results.add(result);
                 }
@@ -100,14 +175,176 @@ public class JdbcDataSourceProvider implements DataSourceProvider {
             }
         }
 
+        /**
+         * Streams the rows from the ResultSet, the connection goes back to the pool when the cursor
+         * is closed. The limit is pushed down to the driver with {@link
+         * PreparedStatement#setMaxRows(int)}.
+         */
         @Override
-        public void close() {
-            if (connection != null) {
+        @SneakyThrows
+        public QueryResultCursor executeQuery(String query, List<Object> params, int maxResults) {
+            PooledConnection connection = borrow();
+            try {
+                PreparedStatement ps = connection.prepareStatement(query);
+                ps.clearParameters();
+                for (int i = 0; i < params.size(); i++) {
+                    ps.setObject(i + 1, params.get(i));
+                }
+                if (fetchSize > 0) {
+                    ps.setFetchSize(fetchSize);
+                }
+                ps.setMaxRows(maxResults);
+                ResultSet resultSet = ps.executeQuery();
+                ResultSetMetaData metaData = resultSet.getMetaData();
+                List<String> columns = new ArrayList<>(metaData.getColumnCount());
+                for (int i = 1; i <= metaData.getColumnCount(); i++) {
+                    columns.add(metaData.getColumnName(i));
+                }
+                return new ResultSetCursor(resultSet, columns, connection);
+            } catch (SQLException | RuntimeException error) {
+                // we cannot tell a syntax error from a dropped connection, start from scratch
+                release(connection, true);
+                throw error;
+            }
+        }
+
+        private class ResultSetCursor implements QueryResultCursor {
+            private final ResultSet resultSet;
+            private final List<String> columns;
+            private PooledConnection connection;
+            private boolean broken;
+
+            ResultSetCursor(
+                    ResultSet resultSet, List<String> columns, PooledConnection connection) {
+                this.resultSet = resultSet;
+                this.columns = columns;
+                this.connection = connection;
+            }
+
+            @Override
+            public List<String> getColumnNames() {
+                return columns;
+            }
+
+            @Override
+            @SneakyThrows
+            public boolean next() {
                 try {
-                    connection.close();
-                } catch (Exception e) {
-                    log.error("Error closing connection", e);
+                    return resultSet.next();
+                } catch (SQLException error) {
+                    broken = true;
+                    throw error;
+                }
+            }
+
+            @Override
+            @SneakyThrows
+            public Object getValue(int column) {
+                try {
+                    return adaptResultValue(resultSet.getObject(column + 1));
+                } catch (SQLException error) {
+                    broken = true;
+                    throw error;
+                }
+            }
+
+            @Override
+            public void close() {
+                if (connection == null) {
+                    return;
+                }
+                try {
+                    resultSet.close();
+                } catch (SQLException error) {
+                    broken = true;
                 }
+                release(connection, broken);
+                connection = null;
+            }
+        }
+
+        private static Object adaptResultValue(Object value) throws SQLException {
+            if (value instanceof Array array) {
+                Object[] values = (Object[]) array.getArray();
+                array.free();
+                return Arrays.asList(values);
+            }
+            if (value instanceof Blob blob) {
+                byte[] bytes = blob.getBytes(1, (int) blob.length());
+                blob.free();
+                return bytes;
+            }
+            if (value instanceof Clob clob) {
+                String text = clob.getSubString(1, (int) clob.length());
+                clob.free();
+                return text;
+            }
+            return value;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+            PooledConnection connection;
+            while ((connection = idle.poll()) != null) {
+                connection.close();
+            }
+        }
+    }
+
+    /** A connection with a LRU cache of its prepared statements. */
+    private static class PooledConnection {
+        private final Connection connection;
+        private final Map<String, PreparedStatement> statements;
+
+        PooledConnection(Connection connection, int statementCacheSize) {
+            this.connection = connection;
+            this.statements =
+                    new LinkedHashMap<>(16, 0.75f, true) {
+                        @Override
+                        protected boolean removeEldestEntry(
+                                Map.Entry<String, PreparedStatement> eldest) {
+                            if (size() > statementCacheSize) {
+                                closeQuietly(eldest.getValue());
+                                return true;
+                            }
+                            return false;
+                        }
+                    };
+        }
+
+        PreparedStatement prepareStatement(String query) throws SQLException {
+            PreparedStatement statement = statements.get(query);
+            if (statement == null || statement.isClosed()) {
+                statement = connection.prepareStatement(query);
+                statements.put(query, statement);
+            }
+            return statement;
+        }
+
+        boolean isUsable() {
+            try {
+                return !connection.isClosed();
+            } catch (SQLException e) {
+                return false;
+            }
+        }
+
+        void close() {
+            statements.values().forEach(PooledConnection::closeQuietly);
+            statements.clear();
+            try {
+                connection.close();
+            } catch (Exception e) {
+                log.error("Error closing connection", e);
+            }
+        }
+
+        private static void closeQuietly(PreparedStatement statement) {
+            try {
+                statement.close();
+            } catch (Exception e) {
+                log.debug("Error closing statement", e);
             }
         }
     }
@@ -0,0 +1,37 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datastax.oss.streaming.ai;
+
+import java.util.List;
+
+/**
+ * A {@link TransformStep} that can process a batch of records at once, for instance to amortize a
+ * remote call over all the records of the batch.
+ */
+public interface BatchTransformStep extends TransformStep {
+
+    /**
+     * Process a batch of records. The contexts are only the ones selected by the step predicate.
+     *
+     * @param transformContexts the contexts of the records to process
+     */
+    void processBatch(List<TransformContext> transformContexts) throws Exception;
+
+    @Override
+    default void process(TransformContext transformContext) throws Exception {
+        processBatch(List.of(transformContext));
+    }
+}
@@ -19,13 +19,22 @@ import static com.datastax.oss.streaming.ai.util.TransformFunctionUtil.convertTo
 
 import com.azure.ai.openai.models.ChatCompletionsOptions;
 import com.datastax.oss.streaming.ai.completions.ChatCompletions;
+import com.datastax.oss.streaming.ai.completions.ChatCompletionsCache;
 import com.datastax.oss.streaming.ai.completions.ChatMessage;
 import com.datastax.oss.streaming.ai.completions.CompletionsService;
+import com.datastax.oss.streaming.ai.embeddings.EmbeddingsService;
 import com.datastax.oss.streaming.ai.model.JsonRecord;
+import com.datastax.oss.streaming.ai.model.config.ChatCompletionsCacheConfig;
+import com.datastax.oss.streaming.ai.model.config.ChatCompletionsCacheMode;
 import com.datastax.oss.streaming.ai.model.config.ChatCompletionsConfig;
-import com.samskivert.mustache.Mustache;
+import com.datastax.oss.streaming.ai.util.TemplateCollector;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import com.samskivert.mustache.Template;
+import java.security.MessageDigest;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HexFormat;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
@@ -34,8 +43,13 @@ import org.apache.avro.Schema;
 
 public class ChatCompletionsStep implements TransformStep {
 
+    private static final ObjectMapper CACHE_KEY_MAPPER =
+            new ObjectMapper().configure(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS, true);
+
     private final CompletionsService completionsService;
     private final ChatCompletionsConfig config;
+    private final ChatCompletionsCache cache;
+    private final EmbeddingsService cacheEmbeddingsService;
 
     private final Map<Schema, Schema> avroValueSchemaCache = new ConcurrentHashMap<>();
 
@@ -45,14 +59,36 @@ public class ChatCompletionsStep implements TransformStep {
 
     public ChatCompletionsStep(
             CompletionsService completionsService, ChatCompletionsConfig config) {
+        this(completionsService, config, null, null);
+    }
+
+    /**
+     * @param cache the completions cache, null to disable caching
+     * @param cacheEmbeddingsService the service used to compute the embeddings of the last user
+     *     message, only required if the cache is in semantic mode
+     */
+    public ChatCompletionsStep(
+            CompletionsService completionsService,
+            ChatCompletionsConfig config,
+            ChatCompletionsCache cache,
+            EmbeddingsService cacheEmbeddingsService) {
         this.completionsService = completionsService;
         this.config = config;
+        this.cache = cache;
+        this.cacheEmbeddingsService = cacheEmbeddingsService;
+        if (cache != null
+                && cacheEmbeddingsService == null
+                && config.getCache().getMode() == ChatCompletionsCacheMode.SEMANTIC) {
+            throw new IllegalArgumentException(
+                    "An embeddings service is required for the semantic cache mode");
+        }
         config.getMessages()
                 .forEach(
                         chatMessage ->
                                 messageTemplates.put(
                                         chatMessage,
-                                        Mustache.compiler().compile(chatMessage.getContent())));
+                                        TemplateCollector.compiler()
+                                                .compile(chatMessage.getContent())));
     }
 
     @Override
@@ -84,7 +120,10 @@ public class ChatCompletionsStep implements TransformStep {
         options.put("model", config.getModel());
         options.remove("messages");
 
-        ChatCompletions chatCompletions = completionsService.getChatCompletions(messages, options);
+        ChatCompletions chatCompletions =
+                cache == null
+                        ? completionsService.getChatCompletions(messages, options)
+                        : getChatCompletionsWithCache(messages, options);
 
         String content = chatCompletions.getChoices().get(0).getMessage().getContent();
         String fieldName = config.getFieldName();
@@ -109,4 +148,61 @@ public class ChatCompletionsStep implements TransformStep {
                     avroValueSchemaCache);
         }
     }
+
+    private ChatCompletions getChatCompletionsWithCache(
+            List<ChatMessage> messages, Map<String, Object> options) throws Exception {
+        String key = cacheKey(options, messages);
+        ChatCompletions cached = cache.get(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        ChatCompletionsCacheConfig cacheConfig = config.getCache();
+        int lastUserMessage = findLastUserMessage(messages);
+        String partitionKey = key;
+        List<Double> embedding = null;
+        if (cacheConfig.getMode() == ChatCompletionsCacheMode.SEMANTIC && lastUserMessage >= 0) {
+            List<ChatMessage> context = new ArrayList<>(messages);
+            context.set(lastUserMessage, new ChatMessage("user"));
+            partitionKey = cacheKey(options, context);
+            embedding =
+                    cacheEmbeddingsService
+                            .computeEmbeddings(List.of(messages.get(lastUserMessage).getContent()))
+                            .get(0);
+            cached =
+                    cache.getSimilar(partitionKey, embedding, cacheConfig.getSimilarityThreshold());
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        ChatCompletions chatCompletions = completionsService.getChatCompletions(messages, options);
+        cache.put(key, partitionKey, embedding, chatCompletions);
+        return chatCompletions;
+    }
+
+    private static int findLastUserMessage(List<ChatMessage> messages) {
+        for (int i = messages.size() - 1; i >= 0; i--) {
+            if ("user".equals(messages.get(i).getRole())) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static String cacheKey(Map<String, Object> options, List<ChatMessage> messages)
+            throws Exception {
+        byte[] serialized = CACHE_KEY_MAPPER.writeValueAsBytes(List.of(options, messages));
+        return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(serialized));
+    }
+
+    @Override
+    public void close() throws Exception {
+        if (cache != null) {
+            cache.close();
+        }
+        if (cacheEmbeddingsService != null) {
+            cacheEmbeddingsService.close();
+        }
+    }
 }
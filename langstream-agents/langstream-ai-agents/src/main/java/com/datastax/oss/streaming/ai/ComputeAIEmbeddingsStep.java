@@ -17,8 +17,9 @@ package com.datastax.oss.streaming.ai;
 
 import com.datastax.oss.streaming.ai.embeddings.EmbeddingsService;
 import com.datastax.oss.streaming.ai.model.JsonRecord;
-import com.samskivert.mustache.Mustache;
+import com.datastax.oss.streaming.ai.util.TemplateCollector;
 import com.samskivert.mustache.Template;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
@@ -28,7 +29,7 @@ import org.apache.avro.Schema;
  * Compute AI Embeddings from a template filled with the received message fields and metadata and
  * put the value into a new or existing field.
  */
-public class ComputeAIEmbeddingsStep implements TransformStep {
+public class ComputeAIEmbeddingsStep implements BatchTransformStep {
 
     private final Template template;
     private final String embeddingsFieldName;
@@ -41,7 +42,7 @@ public class ComputeAIEmbeddingsStep implements TransformStep {
 
     public ComputeAIEmbeddingsStep(
             String text, String embeddingsFieldName, EmbeddingsService embeddingsService) {
-        this.template = Mustache.compiler().compile(text);
+        this.template = TemplateCollector.compiler().compile(text);
         this.embeddingsFieldName = embeddingsFieldName;
         this.embeddingsService = embeddingsService;
     }
@@ -54,16 +55,24 @@ public class ComputeAIEmbeddingsStep implements TransformStep {
     }
 
     @Override
-    public void process(TransformContext transformContext) {
-        JsonRecord jsonRecord = transformContext.toJsonRecord();
-        String text = template.execute(jsonRecord);
+    public void processBatch(List<TransformContext> transformContexts) {
+        // compute the embeddings of the whole batch with a single request
+        List<String> texts = new ArrayList<>(transformContexts.size());
+        for (TransformContext transformContext : transformContexts) {
+            JsonRecord jsonRecord = transformContext.toJsonRecord();
+            texts.add(template.execute(jsonRecord));
+        }
 
-        final List<Double> embeddings = embeddingsService.computeEmbeddings(List.of(text)).get(0);
-        transformContext.setResultField(
-                embeddings,
-                embeddingsFieldName,
-                Schema.createArray(Schema.create(Schema.Type.DOUBLE)),
-                avroKeySchemaCache,
-                avroValueSchemaCache);
+        final List<List<Double>> embeddings = embeddingsService.computeEmbeddings(texts);
+        for (int i = 0; i < transformContexts.size(); i++) {
+            transformContexts
+                    .get(i)
+                    .setResultField(
+                            embeddings.get(i),
+                            embeddingsFieldName,
+                            Schema.createArray(Schema.create(Schema.Type.DOUBLE)),
+                            avroKeySchemaCache,
+                            avroValueSchemaCache);
+        }
     }
 }
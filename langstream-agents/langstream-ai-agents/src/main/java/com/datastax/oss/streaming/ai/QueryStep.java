@@ -15,12 +15,17 @@
  */
 package com.datastax.oss.streaming.ai;
 
+import com.datastax.oss.streaming.ai.datasource.QueryResultCursor;
 import com.datastax.oss.streaming.ai.datasource.QueryStepDataSource;
 import com.datastax.oss.streaming.ai.model.TransformSchemaType;
 import com.fasterxml.jackson.databind.JsonNode;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
 import lombok.Builder;
 import lombok.extern.slf4j.Slf4j;
@@ -33,18 +38,96 @@ import org.apache.avro.generic.GenericRecord;
  */
 @Builder
 @Slf4j
-public class QueryStep implements TransformStep {
+public class QueryStep implements BatchTransformStep {
+
+    /** The schema of the columns when the results are typed. */
+    static final Schema TYPED_VALUE_SCHEMA =
+            Schema.createUnion(
+                    Schema.create(Schema.Type.NULL),
+                    Schema.create(Schema.Type.STRING),
+                    Schema.create(Schema.Type.LONG),
+                    Schema.create(Schema.Type.DOUBLE),
+                    Schema.create(Schema.Type.BOOLEAN),
+                    Schema.create(Schema.Type.BYTES),
+                    Schema.createArray(Schema.create(Schema.Type.FLOAT)));
 
     @Builder.Default private final List<String> fields = new ArrayList<>();
     private final String outputFieldName;
     private final String query;
     private final boolean onlyFirst;
+
+    /**
+     * Keep the native values of the columns (numbers, booleans, bytes and float vectors) instead of
+     * converting them to strings.
+     */
+    private final boolean typedResults;
+
+    /** Maximum number of rows to fetch, pushed down to the data source, 0 means no limit. */
+    private final int maxResults;
+
     private final QueryStepDataSource dataSource;
     private final Map<Schema, Schema> avroValueSchemaCache = new ConcurrentHashMap<>();
     private final Map<Schema, Schema> avroKeySchemaCache = new ConcurrentHashMap<>();
 
+    /**
+     * Sends the queries of all the records before waiting for the results, so the data sources
+     * implementing {@link QueryStepDataSource#fetchDataAsync} run them concurrently. The typed
+     * queries are executed one by one.
+     */
     @Override
-    public void process(TransformContext transformContext) {
+    public void processBatch(List<TransformContext> transformContexts) throws Exception {
+        // only-first is pushed down as a limit of 1
+        int limit = onlyFirst ? 1 : maxResults;
+        List<CompletableFuture<? extends List<? extends Map<String, ?>>>> results =
+                new ArrayList<>(transformContexts.size());
+        for (TransformContext transformContext : transformContexts) {
+            List<Object> params = getParams(transformContext);
+            if (typedResults) {
+                results.add(CompletableFuture.completedFuture(executeQuery(params, limit)));
+            } else {
+                results.add(dataSource.fetchDataAsync(query, params, limit));
+            }
+        }
+        Schema columnSchema = typedResults ? TYPED_VALUE_SCHEMA : Schema.create(Schema.Type.STRING);
+        for (int i = 0; i < transformContexts.size(); i++) {
+            List<? extends Map<String, ?>> rows;
+            try {
+                rows = results.get(i).join();
+            } catch (CompletionException error) {
+                if (error.getCause() instanceof Exception e) {
+                    throw e;
+                }
+                throw error;
+            }
+            setResult(transformContexts.get(i), rows, columnSchema);
+        }
+    }
+
+    private void setResult(
+            TransformContext transformContext,
+            List<? extends Map<String, ?>> results,
+            Schema columnSchema) {
+        if (results == null) {
+            results = List.of();
+        }
+        Object finalResult = results;
+        Schema schema;
+        if (onlyFirst) {
+            schema = Schema.createMap(columnSchema);
+            if (results.isEmpty()) {
+                finalResult = Map.of();
+            } else {
+                finalResult = results.get(0);
+            }
+        } else {
+            schema = Schema.createArray(Schema.createMap(columnSchema));
+        }
+
+        transformContext.setResultField(
+                finalResult, outputFieldName, schema, avroKeySchemaCache, avroValueSchemaCache);
+    }
+
+    private List<Object> getParams(TransformContext transformContext) {
         List<Object> params = new ArrayList<>();
         fields.forEach(
                 field -> {
@@ -79,26 +162,59 @@ public class QueryStep implements TransformStep {
                                         transformContext.getKeyObject()));
                     }
                 });
+        return params;
+    }
 
-        List<Map<String, String>> results = dataSource.fetchData(query, params);
-        if (results == null) {
-            results = List.of();
-        }
-        Object finalResult = results;
-        Schema schema;
-        if (onlyFirst) {
-            schema = Schema.createMap(Schema.create(Schema.Type.STRING));
-            if (results.isEmpty()) {
-                finalResult = Map.of();
-            } else {
-                finalResult = results.get(0);
+    private List<Map<String, Object>> executeQuery(List<Object> params, int limit) {
+        try (QueryResultCursor cursor = dataSource.executeQuery(query, params, limit)) {
+            List<String> columns = cursor.getColumnNames();
+            List<Map<String, Object>> results = new ArrayList<>();
+            while ((limit <= 0 || results.size() < limit) && cursor.next()) {
+                Map<String, Object> row = new HashMap<>(columns.size() * 2);
+                for (int i = 0; i < columns.size(); i++) {
+                    Object value = cursor.getValue(i);
+                    if (typedResults) {
+                        row.put(columns.get(i), toTypedValue(value));
+                    } else {
+                        row.put(columns.get(i), value != null ? value.toString() : null);
+                    }
+                }
+                results.add(row);
             }
-        } else {
-            schema = Schema.createArray(Schema.createMap(Schema.create(Schema.Type.STRING)));
+            return results;
         }
+    }
 
-        transformContext.setResultField(
-                finalResult, outputFieldName, schema, avroKeySchemaCache, avroValueSchemaCache);
+    /** Converts a value to one of the branches of {@link #TYPED_VALUE_SCHEMA}. */
+    private static Object toTypedValue(Object value) {
+        if (value == null
+                || value instanceof String
+                || value instanceof Long
+                || value instanceof Double
+                || value instanceof Boolean) {
+            return value;
+        }
+        if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            return ((Number) value).longValue();
+        }
+        if (value instanceof Float f) {
+            return f.doubleValue();
+        }
+        if (value instanceof byte[] bytes) {
+            return ByteBuffer.wrap(bytes);
+        }
+        if (value instanceof ByteBuffer) {
+            return value;
+        }
+        if (value instanceof List<?> list && list.stream().allMatch(v -> v instanceof Number)) {
+            List<Float> vector = new ArrayList<>(list.size());
+            for (Object v : list) {
+                vector.add(((Number) v).floatValue());
+            }
+            return vector;
+        }
+        // decimals, dates, uuids...
+        return value.toString();
     }
 
     private Object getField(
@@ -18,9 +18,7 @@ package com.datastax.oss.streaming.ai;
 import com.datastax.oss.streaming.ai.model.JsonRecord;
 import com.datastax.oss.streaming.ai.model.TransformSchemaType;
 import com.datastax.oss.streaming.ai.util.AvroUtil;
-import com.datastax.oss.streaming.ai.util.JsonConverter;
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import java.io.ByteArrayOutputStream;
@@ -28,7 +26,13 @@ import java.io.IOException;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Objects;
+import lombok.AccessLevel;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.avro.Conversions;
 import org.apache.avro.Schema;
@@ -57,6 +61,12 @@ public class TransformContext {
     // only for fn:filter
     private Object recordObject;
 
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private JsonRecord jsonRecord;
+
     public void convertMapToStringOrBytes() throws JsonProcessingException {
         if (valueObject instanceof Map) {
             if (valueSchemaType == TransformSchemaType.STRING) {
@@ -214,37 +224,33 @@ public class TransformContext {
         keyObject = json;
     }
 
+    /**
+     * Returns a view of the record suitable for template rendering. The key and value are not
+     * copied: AVRO and JSON values are exposed as-is and read by {@link
+     * com.datastax.oss.streaming.ai.util.TemplateCollector}. The view is memoized and rebuilt only
+     * when one of the exposed fields has been replaced.
+     */
     public JsonRecord toJsonRecord() {
-        JsonRecord jsonRecord = new JsonRecord();
-        if (keySchemaType != null) {
-            jsonRecord.setKey(toJsonSerializable(keySchemaType, keyObject));
-        } else {
-            jsonRecord.setKey(key);
-        }
-        jsonRecord.setValue(toJsonSerializable(valueSchemaType, valueObject));
-        jsonRecord.setDestinationTopic(outputTopic);
-
-        jsonRecord.setProperties(properties);
-        jsonRecord.setEventTime(eventTime);
-        jsonRecord.setTopicName(inputTopic);
-        return jsonRecord;
-    }
-
-    private static Object toJsonSerializable(TransformSchemaType schemaType, Object val) {
-        if (schemaType == null || schemaType.isPrimitive()) {
-            return val;
-        }
-        switch (schemaType) {
-            case AVRO:
-                // TODO: do better than the double conversion AVRO -> JsonNode -> Map
-                return OBJECT_MAPPER.convertValue(
-                        JsonConverter.toJson((GenericRecord) val),
-                        new TypeReference<Map<String, Object>>() {});
-            case JSON:
-                return OBJECT_MAPPER.convertValue(val, new TypeReference<Map<String, Object>>() {});
-            default:
-                throw new UnsupportedOperationException("Unsupported schemaType " + schemaType);
+        Object currentKey = keySchemaType != null ? keyObject : key;
+        JsonRecord current = jsonRecord;
+        if (current != null
+                && current.getKey() == currentKey
+                && current.getValue() == valueObject
+                && current.getProperties() == properties
+                && Objects.equals(current.getDestinationTopic(), outputTopic)
+                && Objects.equals(current.getTopicName(), inputTopic)
+                && Objects.equals(current.getEventTime(), eventTime)) {
+            return current;
         }
+        current = new JsonRecord();
+        current.setKey(currentKey);
+        current.setValue(valueObject);
+        current.setDestinationTopic(outputTopic);
+        current.setProperties(properties);
+        current.setEventTime(eventTime);
+        current.setTopicName(inputTopic);
+        jsonRecord = current;
+        return current;
     }
 
     public static String toJson(Object object) throws JsonProcessingException {
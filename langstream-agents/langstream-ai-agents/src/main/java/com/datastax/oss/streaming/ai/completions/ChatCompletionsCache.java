@@ -0,0 +1,52 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datastax.oss.streaming.ai.completions;
+
+import java.util.List;
+
+/**
+ * Stores chat completions so that identical (or, in semantic mode, similar) prompts are not sent to
+ * the completions service again.
+ *
+ * <p>Entries are grouped by a partition key which identifies everything that must match exactly
+ * (model, options, all the messages but the last user message). In exact mode the partition key
+ * also covers the last user message.
+ */
+public interface ChatCompletionsCache extends AutoCloseable {
+
+    /** Returns the completion stored for the given key, or null. */
+    ChatCompletions get(String key);
+
+    /**
+     * Returns the completion stored in the given partition whose embedding has the highest cosine
+     * similarity with the given embedding, if that similarity is at least the threshold; otherwise
+     * null.
+     */
+    ChatCompletions getSimilar(String partitionKey, List<Double> embedding, double threshold);
+
+    /**
+     * Stores a completion.
+     *
+     * @param key the exact key of the entry
+     * @param partitionKey the partition key used for semantic lookups
+     * @param embedding the embedding of the last user message, null in exact mode
+     * @param completions the completion
+     */
+    void put(String key, String partitionKey, List<Double> embedding, ChatCompletions completions);
+
+    @Override
+    default void close() {}
+}
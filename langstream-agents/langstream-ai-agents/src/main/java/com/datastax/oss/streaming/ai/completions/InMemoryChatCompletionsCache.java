@@ -0,0 +1,148 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datastax.oss.streaming.ai.completions;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded LRU {@link ChatCompletionsCache} local to the agent. Entries expire after the configured
+ * TTL.
+ */
+public class InMemoryChatCompletionsCache implements ChatCompletionsCache {
+
+    private final long ttlNanos;
+    private final LinkedHashMap<String, Entry> entries;
+
+    private record Entry(
+            String partitionKey,
+            double[] embedding,
+            double embeddingNorm,
+            ChatCompletions completions,
+            long expiresAt) {}
+
+    public InMemoryChatCompletionsCache(int maxSize, long ttlSeconds) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Cache max-size must be positive");
+        }
+        this.ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+        this.entries =
+                new LinkedHashMap<>(16, 0.75f, true) {
+                    @Override
+                    protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                        return size() > maxSize;
+                    }
+                };
+    }
+
+    @Override
+    public synchronized ChatCompletions get(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (isExpired(entry, System.nanoTime())) {
+            entries.remove(key);
+            return null;
+        }
+        return entry.completions();
+    }
+
+    @Override
+    public synchronized ChatCompletions getSimilar(
+            String partitionKey, List<Double> embedding, double threshold) {
+        double[] query = toArray(embedding);
+        double queryNorm = norm(query);
+        if (queryNorm == 0) {
+            return null;
+        }
+        long now = System.nanoTime();
+        String bestKey = null;
+        Entry best = null;
+        double bestSimilarity = threshold;
+        var iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Entry> mapEntry = iterator.next();
+            Entry entry = mapEntry.getValue();
+            if (isExpired(entry, now)) {
+                iterator.remove();
+                continue;
+            }
+            if (entry.embedding() == null
+                    || entry.embeddingNorm() == 0
+                    || entry.embedding().length != query.length
+                    || !entry.partitionKey().equals(partitionKey)) {
+                continue;
+            }
+            double similarity = dot(query, entry.embedding()) / (queryNorm * entry.embeddingNorm());
+            if (similarity >= bestSimilarity) {
+                bestSimilarity = similarity;
+                bestKey = mapEntry.getKey();
+                best = entry;
+            }
+        }
+        if (best == null) {
+            return null;
+        }
+        // touch the entry to keep it in the LRU
+        entries.get(bestKey);
+        return best.completions();
+    }
+
+    @Override
+    public synchronized void put(
+            String key, String partitionKey, List<Double> embedding, ChatCompletions completions) {
+        double[] vector = embedding == null ? null : toArray(embedding);
+        entries.put(
+                key,
+                new Entry(
+                        partitionKey,
+                        vector,
+                        vector == null ? 0 : norm(vector),
+                        completions,
+                        System.nanoTime() + ttlNanos));
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private static boolean isExpired(Entry entry, long now) {
+        return now - entry.expiresAt() > 0;
+    }
+
+    private static double[] toArray(List<Double> embedding) {
+        double[] result = new double[embedding.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = embedding.get(i);
+        }
+        return result;
+    }
+
+    private static double dot(double[] a, double[] b) {
+        double result = 0;
+        for (int i = 0; i < a.length; i++) {
+            result += a[i] * b[i];
+        }
+        return result;
+    }
+
+    private static double norm(double[] a) {
+        return Math.sqrt(dot(a, a));
+    }
+}
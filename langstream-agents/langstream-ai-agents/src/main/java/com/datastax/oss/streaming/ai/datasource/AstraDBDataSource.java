@@ -16,28 +16,29 @@
 package com.datastax.oss.streaming.ai.datasource;
 
 import com.datastax.oss.driver.api.core.CqlSession;
-import com.datastax.oss.driver.api.core.CqlSessionBuilder;
+import com.datastax.oss.driver.api.core.ProtocolVersion;
+import com.datastax.oss.driver.api.core.cql.AsyncResultSet;
 import com.datastax.oss.driver.api.core.cql.BoundStatement;
-import com.datastax.oss.driver.api.core.cql.ColumnDefinition;
+import com.datastax.oss.driver.api.core.cql.BoundStatementBuilder;
 import com.datastax.oss.driver.api.core.cql.ColumnDefinitions;
 import com.datastax.oss.driver.api.core.cql.PreparedStatement;
+import com.datastax.oss.driver.api.core.cql.ResultSet;
 import com.datastax.oss.driver.api.core.cql.Row;
 import com.datastax.oss.driver.api.core.data.CqlVector;
 import com.datastax.oss.driver.api.core.type.CqlVectorType;
 import com.datastax.oss.driver.api.core.type.DataType;
 import com.datastax.oss.driver.api.core.type.DataTypes;
 import com.datastax.oss.driver.api.core.type.codec.TypeCodec;
-import com.datastax.oss.driver.api.core.type.reflect.GenericType;
-import com.datastax.oss.driver.internal.core.type.codec.CqlVectorCodec;
-import com.datastax.oss.driver.internal.core.type.codec.registry.DefaultCodecRegistry;
+import com.datastax.oss.driver.api.core.type.codec.registry.CodecRegistry;
 import com.datastax.oss.streaming.ai.model.config.DataSourceConfig;
-import edu.umd.cs.findbugs.annotations.Nullable;
-import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
-import java.util.Base64;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 import lombok.extern.slf4j.Slf4j;
@@ -46,23 +47,7 @@ import lombok.extern.slf4j.Slf4j;
 public class AstraDBDataSource implements QueryStepDataSource {
 
     CqlSession session;
-    Map<String, PreparedStatement> statements = new ConcurrentHashMap<>();
-
-    private static final DefaultCodecRegistry CODEC_REGISTRY =
-            new DefaultCodecRegistry("default-registry") {
-
-                protected TypeCodec<?> createCodec(
-                        @Nullable DataType cqlType,
-                        @Nullable GenericType<?> javaType,
-                        boolean isJavaCovariant) {
-                    if (cqlType instanceof CqlVectorType) {
-                        log.info("Automatically Registering codec for CqlVectorType {}", cqlType);
-                        CqlVectorType vectorType = (CqlVectorType) cqlType;
-                        return new CqlVectorCodec<>(vectorType, codecFor(vectorType.getSubtype()));
-                    }
-                    return super.createCodec(cqlType, javaType, isJavaCovariant);
-                }
-            };
+    Map<String, PreparedQuery> statements = new ConcurrentHashMap<>();
 
     @Override
     public void initialize(DataSourceConfig dataSourceConfig) {
@@ -83,6 +68,159 @@ public class AstraDBDataSource implements QueryStepDataSource {
 
     @Override
     public List<Map<String, String>> fetchData(String query, List<Object> params) {
+        try {
+            return fetchDataAsync(query, params).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    /** Executes the query asynchronously and fetches the following pages without blocking. */
+    @Override
+    public CompletableFuture<List<Map<String, String>>> fetchDataAsync(
+            String query, List<Object> params) {
+        return fetchDataAsync(query, params, 0);
+    }
+
+    /** The page size is the limit, like in {@link #executeQuery}. */
+    @Override
+    public CompletableFuture<List<Map<String, String>>> fetchDataAsync(
+            String query, List<Object> params, int maxResults) {
+        BoundStatement bind;
+        try {
+            bind = bind(query, params);
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        if (maxResults > 0) {
+            bind = bind.setPageSize(maxResults);
+        }
+        CompletableFuture<List<Map<String, String>>> result = new CompletableFuture<>();
+        session.executeAsync(bind)
+                .whenComplete(
+                        (page, error) ->
+                                collectPage(
+                                        page, error, null, new ArrayList<>(), maxResults, result));
+        return result;
+    }
+
+    private static void collectPage(
+            AsyncResultSet page,
+            Throwable error,
+            String[] columns,
+            List<Map<String, String>> rows,
+            int maxResults,
+            CompletableFuture<List<Map<String, String>>> result) {
+        if (error != null) {
+            result.completeExceptionally(error);
+            return;
+        }
+        try {
+            if (columns == null) {
+                ColumnDefinitions columnDefinitions = page.getColumnDefinitions();
+                columns = new String[columnDefinitions.size()];
+                for (int i = 0; i < columns.length; i++) {
+                    columns[i] = columnDefinitions.get(i).getName().toString();
+                }
+            }
+            for (Row r : page.currentPage()) {
+                if (maxResults > 0 && rows.size() >= maxResults) {
+                    break;
+                }
+                Map<String, String> row = new HashMap<>();
+                for (int i = 0; i < columns.length; i++) {
+                    Object object = r.getObject(i);
+                    if (log.isTraceEnabled()) {
+                        log.trace(
+                                "Column {} is of type {} and value {}",
+                                columns[i],
+                                object != null ? object.getClass().toString() : "null",
+                                object);
+                    }
+                    row.put(columns[i], object != null ? object.toString() : null);
+                }
+                rows.add(row);
+            }
+            if (page.hasMorePages() && (maxResults <= 0 || rows.size() < maxResults)) {
+                String[] pageColumns = columns;
+                page.fetchNextPage()
+                        .whenComplete(
+                                (next, nextError) ->
+                                        collectPage(
+                                                next,
+                                                nextError,
+                                                pageColumns,
+                                                rows,
+                                                maxResults,
+                                                result));
+            } else {
+                result.complete(rows);
+            }
+        } catch (RuntimeException e) {
+            result.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * Pages through the results, the page size is the limit so a top-k query fetches a single page.
+     */
+    @Override
+    public QueryResultCursor executeQuery(String query, List<Object> params, int maxResults) {
+        BoundStatement bind = bind(query, params);
+        if (maxResults > 0) {
+            bind = bind.setPageSize(maxResults);
+        }
+        ResultSet resultSet = session.execute(bind);
+        List<String> columns = new ArrayList<>();
+        resultSet
+                .getColumnDefinitions()
+                .forEach(column -> columns.add(column.getName().toString()));
+        Iterator<Row> rows = resultSet.iterator();
+        return new QueryResultCursor() {
+            private Row current;
+            private int count;
+
+            @Override
+            public List<String> getColumnNames() {
+                return columns;
+            }
+
+            @Override
+            public boolean next() {
+                if ((maxResults > 0 && count >= maxResults) || !rows.hasNext()) {
+                    current = null;
+                    return false;
+                }
+                current = rows.next();
+                count++;
+                return true;
+            }
+
+            @Override
+            public Object getValue(int column) {
+                return adaptResultValue(current.getObject(column));
+            }
+        };
+    }
+
+    private static Object adaptResultValue(Object value) {
+        if (value instanceof CqlVector<?> vector) {
+            List<Object> values = new ArrayList<>();
+            vector.getValues().forEach(values::add);
+            return values;
+        }
+        if (value instanceof ByteBuffer buffer) {
+            byte[] bytes = new byte[buffer.remaining()];
+            buffer.duplicate().get(bytes);
+            return bytes;
+        }
+        return value;
+    }
+
+    private BoundStatement bind(String query, List<Object> params) {
         if (log.isDebugEnabled()) {
             log.debug(
                     "Executing query {} with params {} ({})",
@@ -92,70 +230,134 @@ public class AstraDBDataSource implements QueryStepDataSource {
                             .map(v -> v == null ? "null" : v.getClass().toString())
                             .collect(Collectors.joining(",")));
         }
-        PreparedStatement preparedStatement =
-                statements.computeIfAbsent(query, q -> session.prepare(q));
+        return statements.computeIfAbsent(query, this::prepare).bind(params);
+    }
 
+    private PreparedQuery prepare(String query) {
+        PreparedStatement preparedStatement = session.prepare(query);
         ColumnDefinitions variableDefinitions = preparedStatement.getVariableDefinitions();
-        List<Object> adaptedParameters = new ArrayList<>();
-        for (int i = 0; i < variableDefinitions.size(); i++) {
-            Object value = params.get(i);
-            ColumnDefinition columnDefinition = variableDefinitions.get(i);
-            if (columnDefinition.getType() instanceof CqlVectorType && value instanceof List) {
-                CqlVectorType vectorType = (CqlVectorType) columnDefinition.getType();
+        CodecRegistry codecRegistry = session.getContext().getCodecRegistry();
+        ProtocolVersion protocolVersion = session.getContext().getProtocolVersion();
+        ParameterBinder[] binders = new ParameterBinder[variableDefinitions.size()];
+        for (int i = 0; i < binders.length; i++) {
+            binders[i] =
+                    ParameterBinder.of(
+                            variableDefinitions.get(i).getType(), codecRegistry, protocolVersion);
+        }
+        return new PreparedQuery(preparedStatement, binders);
+    }
+
+    /** A prepared statement with the binders of its variables, resolved once. */
+    private record PreparedQuery(PreparedStatement statement, ParameterBinder[] binders) {
+
+        BoundStatement bind(List<Object> params) {
+            BoundStatementBuilder builder = statement.boundStatementBuilder();
+            for (int i = 0; i < binders.length; i++) {
+                builder = builder.setBytesUnsafe(i, binders[i].encode(params.get(i)));
+            }
+            return builder.build();
+        }
+    }
+
+    /**
+     * Serializes a parameter for a variable, the codec is looked up when the statement is prepared.
+     */
+    abstract static class ParameterBinder {
+
+        static ParameterBinder of(
+                DataType type, CodecRegistry codecRegistry, ProtocolVersion protocolVersion) {
+            if (type instanceof CqlVectorType vectorType) {
                 if (vectorType.getSubtype() != DataTypes.FLOAT) {
                     throw new IllegalArgumentException("Only VECTOR<FLOAT,x> is supported");
                 }
-                CqlVector.Builder<Float> builder = CqlVector.builder();
-                for (Object v : (List<Object>) value) {
-                    if (v instanceof Number) {
-                        builder.add(((Number) v).floatValue());
+                return new FloatVectorBinder(
+                        vectorType.getDimensions(),
+                        new CodecBinder(type, codecRegistry, protocolVersion));
+            }
+            return new CodecBinder(type, codecRegistry, protocolVersion);
+        }
+
+        abstract ByteBuffer encode(Object value);
+    }
+
+    /** Uses the codec of the column, unless the value is of another java type. */
+    static final class CodecBinder extends ParameterBinder {
+        private final DataType type;
+        private final CodecRegistry codecRegistry;
+        private final ProtocolVersion protocolVersion;
+        private final TypeCodec<Object> codec;
+
+        CodecBinder(DataType type, CodecRegistry codecRegistry, ProtocolVersion protocolVersion) {
+            this.type = type;
+            this.codecRegistry = codecRegistry;
+            this.protocolVersion = protocolVersion;
+            this.codec = codecRegistry.codecFor(type);
+        }
+
+        @Override
+        ByteBuffer encode(Object value) {
+            if (value == null) {
+                return null;
+            }
+            TypeCodec<Object> valueCodec =
+                    codec.accepts(value) ? codec : codecRegistry.codecFor(type, value);
+            return valueCodec.encode(value, protocolVersion);
+        }
+    }
+
+    /**
+     * Writes the floats of the vector directly in the buffer, without building a {@link CqlVector}
+     * of boxed floats. A vector of floats is serialized as the concatenation of its elements.
+     */
+    static final class FloatVectorBinder extends ParameterBinder {
+        private final int dimensions;
+        private final ParameterBinder fallback;
+
+        FloatVectorBinder(int dimensions, ParameterBinder fallback) {
+            this.dimensions = dimensions;
+            this.fallback = fallback;
+        }
+
+        @Override
+        ByteBuffer encode(Object value) {
+            if (value instanceof float[] floats) {
+                checkDimensions(floats.length);
+                ByteBuffer buffer = ByteBuffer.allocate(floats.length * Float.BYTES);
+                buffer.asFloatBuffer().put(floats);
+                return buffer;
+            }
+            if (value instanceof double[] doubles) {
+                checkDimensions(doubles.length);
+                ByteBuffer buffer = ByteBuffer.allocate(doubles.length * Float.BYTES);
+                for (double d : doubles) {
+                    buffer.putFloat((float) d);
+                }
+                return buffer.flip();
+            }
+            if (value instanceof List<?> list) {
+                checkDimensions(list.size());
+                ByteBuffer buffer = ByteBuffer.allocate(list.size() * Float.BYTES);
+                for (Object v : list) {
+                    if (v instanceof Number number) {
+                        buffer.putFloat(number.floatValue());
                     } else {
-                        builder.add(Float.parseFloat(v + ""));
+                        buffer.putFloat(Float.parseFloat(v + ""));
                     }
                 }
-                value = builder.build();
+                return buffer.flip();
             }
-            adaptedParameters.add(value);
-        }
-
-        BoundStatement bind = preparedStatement.bind(adaptedParameters.toArray(new Object[0]));
-
-        List<Row> all = session.execute(bind).all();
-        return all.stream()
-                .map(
-                        r -> {
-                            Map<String, String> result = new HashMap<>();
-                            ColumnDefinitions columnDefinitions = r.getColumnDefinitions();
-                            for (int i = 0; i < columnDefinitions.size(); i++) {
-                                String name = columnDefinitions.get(i).getName().toString();
-                                Object object = r.getObject(i);
-                                if (log.isTraceEnabled()) {
-                                    log.trace(
-                                            "Column {} is of type {} and value {}",
-                                            name,
-                                            object != null ? object.getClass().toString() : "null",
-                                            object);
-                                }
-                                result.put(name, object != null ? object.toString() : null);
-                            }
-                            return result;
-                        })
-                .collect(Collectors.toList());
-    }
-
-    public CqlSession buildCqlSession(String username, String password, String secureBundle) {
+            return fallback.encode(value);
+        }
 
-        // Remove the base64: prefix if present
-        if (secureBundle.startsWith("base64:")) {
-            secureBundle = secureBundle.substring("base64:".length());
+        private void checkDimensions(int size) {
+            if (size != dimensions) {
+                throw new IllegalArgumentException(
+                        "Expected a vector of " + dimensions + " dimensions, got " + size);
+            }
         }
+    }
 
-        byte[] secureBundleDecoded = Base64.getDecoder().decode(secureBundle);
-        CqlSessionBuilder builder =
-                new CqlSessionBuilder()
-                        .withCodecRegistry(CODEC_REGISTRY)
-                        .withCloudSecureConnectBundle(new ByteArrayInputStream(secureBundleDecoded))
-                        .withAuthCredentials(username, password);
-        return builder.build();
+    public CqlSession buildCqlSession(String username, String password, String secureBundle) {
+        return CqlSessionFactory.buildCqlSession(username, password, secureBundle);
     }
 }
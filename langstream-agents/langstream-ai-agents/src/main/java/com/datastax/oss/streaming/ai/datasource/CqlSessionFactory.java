@@ -0,0 +1,109 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datastax.oss.streaming.ai.datasource;
+
+import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.CqlSessionBuilder;
+import com.datastax.oss.driver.api.core.type.CqlVectorType;
+import com.datastax.oss.driver.api.core.type.DataType;
+import com.datastax.oss.driver.api.core.type.codec.TypeCodec;
+import com.datastax.oss.driver.api.core.type.codec.registry.MutableCodecRegistry;
+import com.datastax.oss.driver.api.core.type.reflect.GenericType;
+import com.datastax.oss.driver.internal.core.type.codec.CqlVectorCodec;
+import com.datastax.oss.driver.internal.core.type.codec.registry.DefaultCodecRegistry;
+import edu.umd.cs.findbugs.annotations.Nullable;
+import java.io.ByteArrayInputStream;
+import java.net.InetSocketAddress;
+import java.util.Base64;
+import java.util.Map;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Builds the {@link CqlSession}s of the agents that read from or write to Cassandra and AstraDB.
+ */
+@Slf4j
+public final class CqlSessionFactory {
+
+    /** A codec registry that creates the codecs of the VECTOR columns on demand. */
+    public static final MutableCodecRegistry CODEC_REGISTRY =
+            new DefaultCodecRegistry("default-registry") {
+
+                protected TypeCodec<?> createCodec(
+                        @Nullable DataType cqlType,
+                        @Nullable GenericType<?> javaType,
+                        boolean isJavaCovariant) {
+                    if (cqlType instanceof CqlVectorType vectorType) {
+                        log.info("Automatically Registering codec for CqlVectorType {}", cqlType);
+                        return new CqlVectorCodec<>(vectorType, codecFor(vectorType.getSubtype()));
+                    }
+                    return super.createCodec(cqlType, javaType, isJavaCovariant);
+                }
+            };
+
+    private CqlSessionFactory() {}
+
+    /**
+     * Builds a session from the configuration of a datasource: AstraDB with {@code secureBundle},
+     * or Cassandra with {@code contact-points}, {@code port} and {@code loadBalancing-localDc}. The
+     * credentials are {@code username} and {@code password}.
+     */
+    public static CqlSession buildCqlSession(Map<String, Object> datasource) {
+        return buildCqlSession(
+                datasource.getOrDefault("username", "").toString(),
+                datasource.getOrDefault("password", "").toString(),
+                datasource.getOrDefault("secureBundle", "").toString(),
+                datasource.getOrDefault("contact-points", "").toString(),
+                Integer.parseInt(datasource.getOrDefault("port", "9042").toString()),
+                datasource.getOrDefault("loadBalancing-localDc", "").toString());
+    }
+
+    /** Builds a session to AstraDB. */
+    public static CqlSession buildCqlSession(
+            String username, String password, String secureBundle) {
+        return buildCqlSession(username, password, secureBundle, "", 9042, "");
+    }
+
+    private static CqlSession buildCqlSession(
+            String username,
+            String password,
+            String secureBundle,
+            String contactPoints,
+            int port,
+            String localDc) {
+        CqlSessionBuilder builder = new CqlSessionBuilder().withCodecRegistry(CODEC_REGISTRY);
+        if (secureBundle != null && !secureBundle.isEmpty()) {
+            // Remove the base64: prefix if present
+            if (secureBundle.startsWith("base64:")) {
+                secureBundle = secureBundle.substring("base64:".length());
+            }
+            builder.withCloudSecureConnectBundle(
+                    new ByteArrayInputStream(Base64.getDecoder().decode(secureBundle)));
+        } else {
+            for (String contactPoint : contactPoints.split(",")) {
+                if (!contactPoint.isBlank()) {
+                    builder.addContactPoint(new InetSocketAddress(contactPoint.trim(), port));
+                }
+            }
+            if (!localDc.isEmpty()) {
+                builder.withLocalDatacenter(localDc);
+            }
+        }
+        if (username != null && !username.isEmpty()) {
+            builder.withAuthCredentials(username, password == null ? "" : password);
+        }
+        return builder.build();
+    }
+}
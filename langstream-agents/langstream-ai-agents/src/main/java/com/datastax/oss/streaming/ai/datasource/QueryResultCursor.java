@@ -0,0 +1,93 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datastax.oss.streaming.ai.datasource;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A forward only cursor over the rows returned by a {@link QueryStepDataSource}. The values are the
+ * native values of the store, converted to plain java types: strings, numbers, booleans, byte
+ * arrays and lists (float vectors are returned as a {@code List<Float>}). The cursor may hold
+ * resources of the data source, like a connection, until it is closed.
+ */
+public interface QueryResultCursor extends AutoCloseable {
+
+    /**
+     * @return the names of the columns, in the order of the result
+     */
+    List<String> getColumnNames();
+
+    /**
+     * Moves to the next row.
+     *
+     * @return false if there are no more rows
+     */
+    boolean next();
+
+    /**
+     * @param column the index of the column in {@link #getColumnNames()}
+     * @return the value of the column in the current row
+     */
+    Object getValue(int column);
+
+    /**
+     * @return the current row, by column name
+     */
+    default Map<String, Object> getRow() {
+        List<String> columns = getColumnNames();
+        Map<String, Object> row = new LinkedHashMap<>(columns.size() * 2);
+        for (int i = 0; i < columns.size(); i++) {
+            row.put(columns.get(i), getValue(i));
+        }
+        return row;
+    }
+
+    @Override
+    default void close() {}
+
+    /** Adapts the materialized results returned by {@link QueryStepDataSource#fetchData}. */
+    static QueryResultCursor of(List<? extends Map<String, ?>> rows) {
+        Set<String> columnNames = new LinkedHashSet<>();
+        rows.forEach(row -> columnNames.addAll(row.keySet()));
+        List<String> columns = new ArrayList<>(columnNames);
+        Iterator<? extends Map<String, ?>> iterator = rows.iterator();
+        return new QueryResultCursor() {
+            private Map<String, ?> current;
+
+            @Override
+            public List<String> getColumnNames() {
+                return columns;
+            }
+
+            @Override
+            public boolean next() {
+                current = iterator.hasNext() ? iterator.next() : null;
+                return current != null;
+            }
+
+            @Override
+            public Object getValue(int column) {
+                return current.get(columns.get(column));
+            }
+        };
+    }
+}
@@ -19,6 +19,7 @@ import com.datastax.oss.streaming.ai.model.config.DataSourceConfig;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 public interface QueryStepDataSource {
 
@@ -28,5 +29,57 @@ public interface QueryStepDataSource {
         return Collections.emptyList();
     }
 
+    /**
+     * Executes the query without blocking the caller, so the queries of several records can be in
+     * flight at the same time. The default implementation runs {@link #fetchData} in the calling
+     * thread.
+     */
+    default CompletableFuture<List<Map<String, String>>> fetchDataAsync(
+            String query, List<Object> params) {
+        try {
+            return CompletableFuture.completedFuture(fetchData(query, params));
+        } catch (Throwable error) {
+            return CompletableFuture.failedFuture(error);
+        }
+    }
+
+    /**
+     * Like {@link #fetchDataAsync(String, List)}, returns at most maxResults rows. The data sources
+     * that can limit the rows on the server side override this method, the default implementation
+     * truncates the results.
+     *
+     * @param maxResults the maximum number of rows to return, 0 means no limit
+     */
+    default CompletableFuture<List<Map<String, String>>> fetchDataAsync(
+            String query, List<Object> params, int maxResults) {
+        CompletableFuture<List<Map<String, String>>> result = fetchDataAsync(query, params);
+        if (maxResults <= 0) {
+            return result;
+        }
+        return result.thenApply(
+                rows ->
+                        rows != null && rows.size() > maxResults
+                                ? rows.subList(0, maxResults)
+                                : rows);
+    }
+
+    /**
+     * Executes the query and returns the typed rows, without converting them to strings. The data
+     * sources that can stream the rows or limit them on the server side override this method, the
+     * default implementation adapts {@link #fetchData}.
+     *
+     * @param maxResults the maximum number of rows to return, 0 means no limit
+     */
+    default QueryResultCursor executeQuery(String query, List<Object> params, int maxResults) {
+        List<Map<String, String>> rows = fetchData(query, params);
+        if (rows == null) {
+            rows = List.of();
+        }
+        if (maxResults > 0 && rows.size() > maxResults) {
+            rows = rows.subList(0, maxResults);
+        }
+        return QueryResultCursor.of(rows);
+    }
+
     default void close() {}
 }
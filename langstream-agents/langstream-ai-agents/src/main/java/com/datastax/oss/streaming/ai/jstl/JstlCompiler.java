@@ -0,0 +1,412 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datastax.oss.streaming.ai.jstl;
+
+import jakarta.el.ELContext;
+import jakarta.el.ELException;
+import jakarta.el.FunctionMapper;
+import jakarta.el.PropertyNotFoundException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Collection;
+import java.util.Map;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.el.lang.ELArithmetic;
+import org.apache.el.lang.ELSupport;
+import org.apache.el.parser.AstAnd;
+import org.apache.el.parser.AstBracketSuffix;
+import org.apache.el.parser.AstChoice;
+import org.apache.el.parser.AstCompositeExpression;
+import org.apache.el.parser.AstConcatenation;
+import org.apache.el.parser.AstDiv;
+import org.apache.el.parser.AstDotSuffix;
+import org.apache.el.parser.AstDynamicExpression;
+import org.apache.el.parser.AstEmpty;
+import org.apache.el.parser.AstEqual;
+import org.apache.el.parser.AstFalse;
+import org.apache.el.parser.AstFloatingPoint;
+import org.apache.el.parser.AstFunction;
+import org.apache.el.parser.AstGreaterThan;
+import org.apache.el.parser.AstGreaterThanEqual;
+import org.apache.el.parser.AstIdentifier;
+import org.apache.el.parser.AstInteger;
+import org.apache.el.parser.AstLessThan;
+import org.apache.el.parser.AstLessThanEqual;
+import org.apache.el.parser.AstLiteralExpression;
+import org.apache.el.parser.AstMethodParameters;
+import org.apache.el.parser.AstMinus;
+import org.apache.el.parser.AstMod;
+import org.apache.el.parser.AstMult;
+import org.apache.el.parser.AstNot;
+import org.apache.el.parser.AstNotEqual;
+import org.apache.el.parser.AstNull;
+import org.apache.el.parser.AstOr;
+import org.apache.el.parser.AstPlus;
+import org.apache.el.parser.AstString;
+import org.apache.el.parser.AstTrue;
+import org.apache.el.parser.AstValue;
+import org.apache.el.parser.ELParser;
+import org.apache.el.parser.Node;
+
+/**
+ * Compiles the common subset of the expression language (variables, property access, literals,
+ * comparisons, boolean and arithmetic operators and the {@link JstlFunctions} library) into a tree
+ * of {@link CompiledExpression} closures, with the functions bound as {@link MethodHandle}s. The
+ * compiled tree applies the same coercion rules as the EL interpreter but skips the per-evaluation
+ * AST walk and resolver chain lookups. Expressions using anything else (method invocations,
+ * lambdas, collection literals, imports...) are not compiled and are left to the interpreter.
+ */
+@Slf4j
+final class JstlCompiler {
+
+    /** A compiled expression. The {@link ELContext} is only used for type coercions. */
+    @FunctionalInterface
+    interface CompiledExpression {
+        Object evaluate(ELContext context, JstlTransformContextAdapter adapter);
+    }
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.publicLookup();
+
+    private final FunctionMapper functions;
+
+    private JstlCompiler(FunctionMapper functions) {
+        this.functions = functions;
+    }
+
+    /**
+     * @return the compiled expression, or null if the expression uses a construct that is not
+     *     supported by the compiler.
+     */
+    static CompiledExpression compile(String expression, FunctionMapper functions) {
+        try {
+            Node node = ELParser.parse(expression);
+            if (node.jjtGetNumChildren() == 1) {
+                node = node.jjtGetChild(0);
+            }
+            return new JstlCompiler(functions).compile(node);
+        } catch (UnsupportedExpressionException | ELException e) {
+            log.debug("Expression {} is not compiled: {}", expression, e.getMessage());
+            return null;
+        }
+    }
+
+    private CompiledExpression compile(Node node) {
+        if (node instanceof AstDynamicExpression) {
+            return compile(node.jjtGetChild(0));
+        }
+        if (node instanceof AstCompositeExpression) {
+            return compileComposite(node);
+        }
+        if (node instanceof AstLiteralExpression
+                || node instanceof AstString
+                || node instanceof AstInteger
+                || node instanceof AstFloatingPoint
+                || node instanceof AstTrue
+                || node instanceof AstFalse
+                || node instanceof AstNull) {
+            // constants don't use the evaluation context
+            Object constant = node.getValue(null);
+            return (context, adapter) -> constant;
+        }
+        if (node instanceof AstIdentifier) {
+            return compileIdentifier(node.getImage());
+        }
+        if (node instanceof AstValue) {
+            return compileValue(node);
+        }
+        if (node instanceof AstFunction) {
+            return compileFunction((AstFunction) node);
+        }
+        if (node instanceof AstNot) {
+            CompiledExpression operand = compile(node.jjtGetChild(0));
+            return (context, adapter) ->
+                    !ELSupport.coerceToBoolean(context, operand.evaluate(context, adapter), true);
+        }
+        if (node instanceof AstEmpty) {
+            CompiledExpression operand = compile(node.jjtGetChild(0));
+            return (context, adapter) -> isEmpty(operand.evaluate(context, adapter));
+        }
+        if (node instanceof AstChoice) {
+            CompiledExpression condition = compile(node.jjtGetChild(0));
+            CompiledExpression whenTrue = compile(node.jjtGetChild(1));
+            CompiledExpression whenFalse = compile(node.jjtGetChild(2));
+            return (context, adapter) ->
+                    ELSupport.coerceToBoolean(context, condition.evaluate(context, adapter), true)
+                            ? whenTrue.evaluate(context, adapter)
+                            : whenFalse.evaluate(context, adapter);
+        }
+        if (node.jjtGetNumChildren() != 2) {
+            throw new UnsupportedExpressionException(node);
+        }
+        CompiledExpression left = compile(node.jjtGetChild(0));
+        CompiledExpression right = compile(node.jjtGetChild(1));
+        if (node instanceof AstAnd) {
+            return (context, adapter) ->
+                    ELSupport.coerceToBoolean(context, left.evaluate(context, adapter), true)
+                            && ELSupport.coerceToBoolean(
+                                    context, right.evaluate(context, adapter), true);
+        }
+        if (node instanceof AstOr) {
+            return (context, adapter) ->
+                    ELSupport.coerceToBoolean(context, left.evaluate(context, adapter), true)
+                            || ELSupport.coerceToBoolean(
+                                    context, right.evaluate(context, adapter), true);
+        }
+        if (node instanceof AstEqual) {
+            return (context, adapter) ->
+                    ELSupport.equals(
+                            context,
+                            left.evaluate(context, adapter),
+                            right.evaluate(context, adapter));
+        }
+        if (node instanceof AstNotEqual) {
+            return (context, adapter) ->
+                    !ELSupport.equals(
+                            context,
+                            left.evaluate(context, adapter),
+                            right.evaluate(context, adapter));
+        }
+        if (node instanceof AstGreaterThan) {
+            return compileComparison(left, right, (result) -> result > 0);
+        }
+        if (node instanceof AstGreaterThanEqual) {
+            return compileComparison(left, right, (result) -> result >= 0);
+        }
+        if (node instanceof AstLessThan) {
+            return compileComparison(left, right, (result) -> result < 0);
+        }
+        if (node instanceof AstLessThanEqual) {
+            return compileComparison(left, right, (result) -> result <= 0);
+        }
+        if (node instanceof AstPlus) {
+            return (context, adapter) ->
+                    ELArithmetic.add(
+                            left.evaluate(context, adapter), right.evaluate(context, adapter));
+        }
+        if (node instanceof AstMinus) {
+            return (context, adapter) ->
+                    ELArithmetic.subtract(
+                            left.evaluate(context, adapter), right.evaluate(context, adapter));
+        }
+        if (node instanceof AstMult) {
+            return (context, adapter) ->
+                    ELArithmetic.multiply(
+                            left.evaluate(context, adapter), right.evaluate(context, adapter));
+        }
+        if (node instanceof AstDiv) {
+            return (context, adapter) ->
+                    ELArithmetic.divide(
+                            left.evaluate(context, adapter), right.evaluate(context, adapter));
+        }
+        if (node instanceof AstMod) {
+            return (context, adapter) ->
+                    ELArithmetic.mod(
+                            left.evaluate(context, adapter), right.evaluate(context, adapter));
+        }
+        if (node instanceof AstConcatenation) {
+            return (context, adapter) ->
+                    ELSupport.coerceToString(context, left.evaluate(context, adapter))
+                            + ELSupport.coerceToString(context, right.evaluate(context, adapter));
+        }
+        throw new UnsupportedExpressionException(node);
+    }
+
+    private CompiledExpression compileComposite(Node node) {
+        CompiledExpression[] parts = new CompiledExpression[node.jjtGetNumChildren()];
+        for (int i = 0; i < parts.length; i++) {
+            parts[i] = compile(node.jjtGetChild(i));
+        }
+        return (context, adapter) -> {
+            StringBuilder sb = new StringBuilder();
+            for (CompiledExpression part : parts) {
+                Object value = part.evaluate(context, adapter);
+                if (value != null) {
+                    sb.append(ELSupport.coerceToString(context, value));
+                }
+            }
+            return sb.toString();
+        };
+    }
+
+    private static CompiledExpression compileIdentifier(String name) {
+        switch (name) {
+            case "key":
+                return (context, adapter) -> adapter.getKey();
+            case "value":
+                return (context, adapter) -> adapter.adaptValue();
+            case "record":
+                return (context, adapter) -> adapter.adaptRecord();
+            case "messageKey":
+            case "topicName":
+            case "destinationTopic":
+            case "eventTime":
+            case "properties":
+                return (context, adapter) -> adapter.adaptHeader(name);
+            default:
+                // the interpreter looks up the imported classes and reports unknown variables
+                throw new UnsupportedExpressionException("unknown variable " + name);
+        }
+    }
+
+    private CompiledExpression compileValue(Node node) {
+        CompiledExpression base = compile(node.jjtGetChild(0));
+        CompiledExpression[] suffixes = new CompiledExpression[node.jjtGetNumChildren() - 1];
+        for (int i = 0; i < suffixes.length; i++) {
+            Node suffix = node.jjtGetChild(i + 1);
+            if (suffix instanceof AstDotSuffix) {
+                String property = suffix.getImage();
+                suffixes[i] = (context, adapter) -> property;
+            } else if (suffix instanceof AstBracketSuffix) {
+                suffixes[i] = compile(suffix.jjtGetChild(0));
+            } else {
+                // AstMethodParameters: method invocations are disabled by the interpreter
+                throw new UnsupportedExpressionException(suffix);
+            }
+        }
+        return (context, adapter) -> {
+            Object value = base.evaluate(context, adapter);
+            for (int i = 0; value != null && i < suffixes.length; i++) {
+                Object property = suffixes[i].evaluate(context, adapter);
+                if (property == null) {
+                    return null;
+                }
+                value = getProperty(context, value, property);
+            }
+            return value;
+        };
+    }
+
+    private static Object getProperty(ELContext context, Object base, Object property) {
+        if (base instanceof Map) {
+            // same as the MapELResolver
+            return ((Map<?, ?>) base).get(property);
+        }
+        context.setPropertyResolved(false);
+        Object value = context.getELResolver().getValue(context, base, property);
+        if (!context.isPropertyResolved()) {
+            throw new PropertyNotFoundException(
+                    "ELResolver did not handle type: "
+                            + base.getClass()
+                            + " with property of ["
+                            + property
+                            + "]");
+        }
+        return value;
+    }
+
+    private CompiledExpression compileFunction(AstFunction node) {
+        Method method =
+                functions == null
+                        ? null
+                        : functions.resolveFunction(node.getPrefix(), node.getLocalName());
+        if (method == null
+                || !Modifier.isStatic(method.getModifiers())
+                || method.isVarArgs()
+                || node.jjtGetNumChildren() != 1
+                || !(node.jjtGetChild(0) instanceof AstMethodParameters)) {
+            throw new UnsupportedExpressionException(node);
+        }
+        Node parameters = node.jjtGetChild(0);
+        Class<?>[] parameterTypes = method.getParameterTypes();
+        if (parameters.jjtGetNumChildren() != parameterTypes.length) {
+            throw new UnsupportedExpressionException(node);
+        }
+        CompiledExpression[] arguments = new CompiledExpression[parameterTypes.length];
+        for (int i = 0; i < arguments.length; i++) {
+            arguments[i] = compile(parameters.jjtGetChild(i));
+        }
+        MethodHandle handle;
+        try {
+            handle =
+                    LOOKUP.unreflect(method)
+                            .asType(MethodType.genericMethodType(arguments.length))
+                            .asSpreader(Object[].class, arguments.length);
+        } catch (IllegalAccessException e) {
+            throw new UnsupportedExpressionException(node);
+        }
+        String name = node.getOutputName();
+        return (context, adapter) -> {
+            Object[] values = new Object[arguments.length];
+            try {
+                for (int i = 0; i < values.length; i++) {
+                    values[i] =
+                            ELSupport.coerceToType(
+                                    context,
+                                    arguments[i].evaluate(context, adapter),
+                                    parameterTypes[i]);
+                }
+            } catch (ELException e) {
+                throw new ELException("Problems calling function [" + name + "]", e);
+            }
+            try {
+                return (Object) handle.invokeExact(values);
+            } catch (VirtualMachineError e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new ELException("Problems calling function [" + name + "]", e);
+            }
+        };
+    }
+
+    private static CompiledExpression compileComparison(
+            CompiledExpression left, CompiledExpression right, ComparisonResult test) {
+        return (context, adapter) -> {
+            Object leftValue = left.evaluate(context, adapter);
+            if (leftValue == null) {
+                return false;
+            }
+            Object rightValue = right.evaluate(context, adapter);
+            if (rightValue == null) {
+                return false;
+            }
+            return test.matches(ELSupport.compare(context, leftValue, rightValue));
+        };
+    }
+
+    private static boolean isEmpty(Object value) {
+        if (value == null) {
+            return true;
+        } else if (value instanceof String) {
+            return ((String) value).isEmpty();
+        } else if (value instanceof Object[]) {
+            return ((Object[]) value).length == 0;
+        } else if (value instanceof Collection) {
+            return ((Collection<?>) value).isEmpty();
+        } else if (value instanceof Map) {
+            return ((Map<?, ?>) value).isEmpty();
+        }
+        return false;
+    }
+
+    @FunctionalInterface
+    private interface ComparisonResult {
+        boolean matches(int result);
+    }
+
+    private static class UnsupportedExpressionException extends RuntimeException {
+
+        UnsupportedExpressionException(Node node) {
+            this("unsupported node " + node.getClass().getSimpleName());
+        }
+
+        UnsupportedExpressionException(String message) {
+            super(message, null, false, false);
+        }
+    }
+}
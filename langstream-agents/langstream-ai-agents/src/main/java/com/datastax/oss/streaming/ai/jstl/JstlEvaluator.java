@@ -16,158 +16,131 @@
 package com.datastax.oss.streaming.ai.jstl;
 
 import com.datastax.oss.streaming.ai.TransformContext;
-import jakarta.el.ELContext;
 import jakarta.el.ExpressionFactory;
+import jakarta.el.FunctionMapper;
 import jakarta.el.ValueExpression;
+import java.lang.reflect.Method;
+import java.util.HashMap;
 import java.util.Map;
 import lombok.SneakyThrows;
 import org.apache.el.ExpressionFactoryImpl;
 
+/**
+ * Evaluates a JSTL expression against a {@link TransformContext}. The expression is parsed once and
+ * each evaluation uses its own {@link TransformELContext}, so an evaluator can be used concurrently
+ * by multiple threads. When the expression only uses the subset supported by the {@link
+ * JstlCompiler}, the compiled form is evaluated instead of interpreting the expression.
+ */
 public class JstlEvaluator<T> {
 
-    private static final ExpressionFactory FACTORY = new ExpressionFactoryImpl();
+    static final ExpressionFactory FACTORY = new ExpressionFactoryImpl();
+    private static final FunctionMapper FUNCTIONS = registerFunctions();
     private final ValueExpression valueExpression;
-    private final ELContext expressionContext;
+    private final JstlCompiler.CompiledExpression compiledExpression;
+    private final Class<? extends T> type;
 
     public JstlEvaluator(String expression, Class<? extends T> type) {
-        this.expressionContext = new StandardContext(FACTORY);
-        registerFunctions();
-        this.valueExpression = FACTORY.createValueExpression(expressionContext, expression, type);
+        this(expression, type, true);
     }
 
-    @SneakyThrows
-    private void registerFunctions() {
-        this.expressionContext
-                .getFunctionMapper()
-                .mapFunction("fn", "toJson", JstlFunctions.class.getMethod("toJson", Object.class));
-        this.expressionContext
-                .getFunctionMapper()
-                .mapFunction(
-                        "fn", "fromJson", JstlFunctions.class.getMethod("fromJson", Object.class));
-        this.expressionContext
-                .getFunctionMapper()
-                .mapFunction(
-                        "fn",
-                        "split",
-                        JstlFunctions.class.getMethod("split", Object.class, Object.class));
-        this.expressionContext
-                .getFunctionMapper()
-                .mapFunction(
-                        "fn",
-                        "unpack",
-                        JstlFunctions.class.getMethod("unpack", Object.class, Object.class));
-        this.expressionContext
-                .getFunctionMapper()
-                .mapFunction(
-                        "fn",
-                        "uppercase",
-                        JstlFunctions.class.getMethod("uppercase", Object.class));
-        this.expressionContext
-                .getFunctionMapper()
-                .mapFunction(
-                        "fn",
-                        "lowercase",
-                        JstlFunctions.class.getMethod("lowercase", Object.class));
-        this.expressionContext
-                .getFunctionMapper()
-                .mapFunction(
-                        "fn",
-                        "contains",
-                        JstlFunctions.class.getMethod("contains", Object.class, Object.class));
-        this.expressionContext
-                .getFunctionMapper()
-                .mapFunction("fn", "trim", JstlFunctions.class.getMethod("trim", Object.class));
-        this.expressionContext
-                .getFunctionMapper()
-                .mapFunction(
-                        "fn",
-                        "concat",
-                        JstlFunctions.class.getMethod("concat", Object.class, Object.class));
-        this.expressionContext
-                .getFunctionMapper()
-                .mapFunction(
-                        "fn",
-                        "coalesce",
-                        JstlFunctions.class.getMethod("coalesce", Object.class, Object.class));
-        this.expressionContext
-                .getFunctionMapper()
-                .mapFunction("fn", "str", JstlFunctions.class.getMethod("toString", Object.class));
-        this.expressionContext
-                .getFunctionMapper()
-                .mapFunction(
-                        "fn", "toDouble", JstlFunctions.class.getMethod("toDouble", Object.class));
-        this.expressionContext
-                .getFunctionMapper()
-                .mapFunction(
-                        "fn",
-                        "filter",
-                        JstlFunctions.class.getMethod("filter", Object.class, String.class));
-        this.expressionContext
-                .getFunctionMapper()
-                .mapFunction("fn", "toInt", JstlFunctions.class.getMethod("toInt", Object.class));
-        this.expressionContext
-                .getFunctionMapper()
-                .mapFunction(
-                        "fn",
-                        "replace",
-                        JstlFunctions.class.getMethod(
-                                "replace", Object.class, Object.class, Object.class));
-        this.expressionContext
-                .getFunctionMapper()
-                .mapFunction("fn", "now", JstlFunctions.class.getMethod("now"));
-        this.expressionContext
-                .getFunctionMapper()
-                .mapFunction(
-                        "fn",
-                        "timestampAdd",
-                        JstlFunctions.class.getMethod(
-                                "timestampAdd", Object.class, Object.class, Object.class));
-        this.expressionContext
-                .getFunctionMapper()
-                .mapFunction(
-                        "fn",
-                        "decimalFromUnscaled",
-                        JstlFunctions.class.getMethod("toBigDecimal", Object.class, Object.class));
+    JstlEvaluator(String expression, Class<? extends T> type, boolean compile) {
+        // always let the interpreter parse the expression, so the errors are reported the same way
+        this.valueExpression =
+                FACTORY.createValueExpression(
+                        new TransformELContext(FUNCTIONS, null), expression, type);
+        this.compiledExpression = compile ? JstlCompiler.compile(expression, FUNCTIONS) : null;
+        this.type = type;
+    }
 
-        this.expressionContext
-                .getFunctionMapper()
-                .mapFunction(
-                        "fn",
-                        "decimalFromNumber",
-                        JstlFunctions.class.getMethod("toBigDecimal", Object.class));
+    @SneakyThrows
+    private static FunctionMapper registerFunctions() {
+        StaticFunctionMapper functions = new StaticFunctionMapper();
+        functions.mapFunction(
+                "fn", "toJson", JstlFunctions.class.getMethod("toJson", Object.class));
+        functions.mapFunction(
+                "fn", "fromJson", JstlFunctions.class.getMethod("fromJson", Object.class));
+        functions.mapFunction(
+                "fn", "split", JstlFunctions.class.getMethod("split", Object.class, Object.class));
+        functions.mapFunction(
+                "fn",
+                "unpack",
+                JstlFunctions.class.getMethod("unpack", Object.class, Object.class));
+        functions.mapFunction(
+                "fn", "uppercase", JstlFunctions.class.getMethod("uppercase", Object.class));
+        functions.mapFunction(
+                "fn", "lowercase", JstlFunctions.class.getMethod("lowercase", Object.class));
+        functions.mapFunction(
+                "fn",
+                "contains",
+                JstlFunctions.class.getMethod("contains", Object.class, Object.class));
+        functions.mapFunction("fn", "trim", JstlFunctions.class.getMethod("trim", Object.class));
+        functions.mapFunction(
+                "fn",
+                "concat",
+                JstlFunctions.class.getMethod("concat", Object.class, Object.class));
+        functions.mapFunction(
+                "fn",
+                "coalesce",
+                JstlFunctions.class.getMethod("coalesce", Object.class, Object.class));
+        functions.mapFunction("fn", "str", JstlFunctions.class.getMethod("toString", Object.class));
+        functions.mapFunction(
+                "fn", "toDouble", JstlFunctions.class.getMethod("toDouble", Object.class));
+        functions.mapFunction(
+                "fn",
+                "filter",
+                JstlFunctions.class.getMethod("filter", Object.class, String.class));
+        functions.mapFunction("fn", "toInt", JstlFunctions.class.getMethod("toInt", Object.class));
+        functions.mapFunction(
+                "fn",
+                "replace",
+                JstlFunctions.class.getMethod("replace", Object.class, Object.class, Object.class));
+        functions.mapFunction("fn", "now", JstlFunctions.class.getMethod("now"));
+        functions.mapFunction(
+                "fn",
+                "timestampAdd",
+                JstlFunctions.class.getMethod(
+                        "timestampAdd", Object.class, Object.class, Object.class));
+        functions.mapFunction(
+                "fn",
+                "decimalFromUnscaled",
+                JstlFunctions.class.getMethod("toBigDecimal", Object.class, Object.class));
+        functions.mapFunction(
+                "fn",
+                "decimalFromNumber",
+                JstlFunctions.class.getMethod("toBigDecimal", Object.class));
 
         // Deprecated
-        this.expressionContext
-                .getFunctionMapper()
-                .mapFunction(
-                        "fn",
-                        "dateadd",
-                        JstlFunctions.class.getMethod(
-                                "dateadd", Object.class, Object.class, Object.class));
+        functions.mapFunction(
+                "fn",
+                "dateadd",
+                JstlFunctions.class.getMethod("dateadd", Object.class, Object.class, Object.class));
+        return functions;
     }
 
     public T evaluate(TransformContext transformContext) {
         JstlTransformContextAdapter adapter = new JstlTransformContextAdapter(transformContext);
-        FACTORY.createValueExpression(expressionContext, "${key}", Object.class)
-                .setValue(expressionContext, adapter.getKey());
-        FACTORY.createValueExpression(expressionContext, "${value}", Object.class)
-                .setValue(expressionContext, adapter.adaptValue());
+        if (compiledExpression == null) {
+            return this.valueExpression.getValue(new TransformELContext(FUNCTIONS, adapter));
+        }
+        TransformELContext context = new TransformELContext(FUNCTIONS, null);
+        return context.convertToType(compiledExpression.evaluate(context, adapter), type);
+    }
+
+    boolean isCompiled() {
+        return compiledExpression != null;
+    }
+
+    private static class StaticFunctionMapper extends FunctionMapper {
+        private final Map<String, Method> functions = new HashMap<>();
 
-        // this is only for fn:filter
-        FACTORY.createValueExpression(expressionContext, "${record}", Object.class)
-                .setValue(expressionContext, adapter.adaptRecord());
+        @Override
+        public Method resolveFunction(String prefix, String localName) {
+            return functions.get(prefix + ":" + localName);
+        }
 
-        // Register message headers as top level fields
-        FACTORY.createValueExpression(expressionContext, "${messageKey}", String.class)
-                .setValue(expressionContext, adapter.getHeader().get("messageKey"));
-        FACTORY.createValueExpression(expressionContext, "${topicName}", String.class)
-                .setValue(expressionContext, adapter.getHeader().get("topicName"));
-        FACTORY.createValueExpression(expressionContext, "${destinationTopic}", String.class)
-                .setValue(expressionContext, adapter.getHeader().get("destinationTopic"));
-        FACTORY.createValueExpression(expressionContext, "${eventTime}", Long.class)
-                .setValue(expressionContext, adapter.getHeader().get("eventTime"));
-        FACTORY.createValueExpression(expressionContext, "${properties}", Map.class)
-                .setValue(expressionContext, adapter.getHeader().get("properties"));
-        return this.valueExpression.getValue(expressionContext);
+        @Override
+        public void mapFunction(String prefix, String localName, Method method) {
+            functions.put(prefix + ":" + localName, method);
+        }
     }
 }
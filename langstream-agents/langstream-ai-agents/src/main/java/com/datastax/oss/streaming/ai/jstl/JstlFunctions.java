@@ -28,6 +28,7 @@ import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
@@ -41,8 +42,41 @@ import org.apache.el.util.MessageFactory;
 public class JstlFunctions {
     private static final ObjectMapper MAPPER = new ObjectMapper();
 
+    static final int MAX_FILTER_PREDICATES = 1000;
+
+    // fn:filter expressions are usually literals in the pipeline definition, parse them only once.
+    // The cache is bounded because an expression can also be built from the record.
+    private static final Map<String, JstlPredicate> FILTER_PREDICATES =
+            new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, JstlPredicate> eldest) {
+                    return size() > MAX_FILTER_PREDICATES;
+                }
+            };
+
     @Setter private static Clock clock = Clock.systemUTC();
 
+    static JstlPredicate filterPredicate(String expression) {
+        synchronized (FILTER_PREDICATES) {
+            JstlPredicate predicate = FILTER_PREDICATES.get(expression);
+            if (predicate != null) {
+                return predicate;
+            }
+        }
+        // parse outside the lock, at worst the same expression is parsed twice
+        JstlPredicate predicate = new JstlPredicate(expression);
+        synchronized (FILTER_PREDICATES) {
+            FILTER_PREDICATES.put(expression, predicate);
+        }
+        return predicate;
+    }
+
+    static int filterPredicatesCount() {
+        synchronized (FILTER_PREDICATES) {
+            return FILTER_PREDICATES.size();
+        }
+    }
+
     public static String uppercase(Object input) {
         return input == null ? null : toString(input).toUpperCase();
     }
@@ -151,7 +185,7 @@ public class JstlFunctions {
                     "fn:filter cannot filter object of type " + input.getClass().getName());
         }
         List<Object> result = new ArrayList<>();
-        JstlPredicate predicate = new JstlPredicate(expression);
+        JstlPredicate predicate = filterPredicate(expression);
         for (Object o : source) {
             if (log.isDebugEnabled()) {
                 log.info("Filtering object {}", o);
@@ -64,7 +64,7 @@ public class JstlTransformContextAdapter {
                 return null;
             };
 
-    private final Map<String, Object> lazyKey = LazyMap.lazyMap(new HashMap<>(), keyTransformer);
+    private Map<String, Object> lazyKey;
 
     /**
      * A value transformer backing the lazy value map. It transforms top level value fields to
@@ -88,31 +88,12 @@ public class JstlTransformContextAdapter {
                 return null;
             };
 
-    private final Map<String, Object> lazyValue =
-            LazyMap.lazyMap(new HashMap<>(), valueTransformer);
+    private Map<String, Object> lazyValue;
 
     /** A header transformer to return message headers the user is allowed to filter on. */
-    private final Transformer<String, Object> headerTransformer =
-            (fieldName) -> {
-                // Allow list message headers in the expression
-                switch (fieldName) {
-                    case "messageKey":
-                        return transformContext.getKey();
-                    case "topicName":
-                        return transformContext.getInputTopic();
-                    case "destinationTopic":
-                        return transformContext.getOutputTopic();
-                    case "eventTime":
-                        return transformContext.getEventTime();
-                    case "properties":
-                        return transformContext.getProperties();
-                    default:
-                        return null;
-                }
-            };
+    private final Transformer<String, Object> headerTransformer = this::adaptHeader;
 
-    private final Map<String, Object> lazyHeader =
-            LazyMap.lazyMap(new HashMap<>(), headerTransformer);
+    private Map<String, Object> lazyHeader;
 
     public JstlTransformContextAdapter(TransformContext transformContext) {
         this.transformContext = transformContext;
@@ -127,9 +108,13 @@ public class JstlTransformContextAdapter {
         if (keyObject == null) {
             return transformContext.getKey();
         }
-        return keyObject instanceof GenericRecord || keyObject instanceof JsonNode
-                ? lazyKey
-                : keyObject;
+        if (keyObject instanceof GenericRecord || keyObject instanceof JsonNode) {
+            if (lazyKey == null) {
+                lazyKey = LazyMap.lazyMap(new HashMap<>(), keyTransformer);
+            }
+            return lazyKey;
+        }
+        return keyObject;
     }
 
     /**
@@ -138,9 +123,13 @@ public class JstlTransformContextAdapter {
      */
     public Object adaptValue() {
         Object valueObject = this.transformContext.getValueObject();
-        return valueObject instanceof GenericRecord || valueObject instanceof JsonNode
-                ? lazyValue
-                : valueObject;
+        if (valueObject instanceof GenericRecord || valueObject instanceof JsonNode) {
+            if (lazyValue == null) {
+                lazyValue = LazyMap.lazyMap(new HashMap<>(), valueTransformer);
+            }
+            return lazyValue;
+        }
+        return valueObject;
     }
 
     public Object adaptRecord() {
@@ -148,9 +137,39 @@ public class JstlTransformContextAdapter {
     }
 
     public Map<String, Object> getHeader() {
+        if (lazyHeader == null) {
+            lazyHeader = LazyMap.lazyMap(new HashMap<>(), headerTransformer);
+        }
         return lazyHeader;
     }
 
+    /**
+     * @return the value of a message header the user is allowed to filter on, or null. The headers
+     *     are coerced to the type they are declared with, for instance a Long message key is a
+     *     String.
+     */
+    public Object adaptHeader(String fieldName) {
+        // Allow list message headers in the expression
+        switch (fieldName) {
+            case "messageKey":
+                return coerce(transformContext.getKey(), String.class);
+            case "topicName":
+                return coerce(transformContext.getInputTopic(), String.class);
+            case "destinationTopic":
+                return coerce(transformContext.getOutputTopic(), String.class);
+            case "eventTime":
+                return coerce(transformContext.getEventTime(), Long.class);
+            case "properties":
+                return transformContext.getProperties();
+            default:
+                return null;
+        }
+    }
+
+    private static Object coerce(Object value, Class<?> type) {
+        return value == null ? null : JstlTypeConverter.INSTANCE.coerceToType(value, type);
+    }
+
     /** Enables {@link LazyMap} lookup on {@link GenericRecord}. */
     static class GenericRecordTransformer implements Transformer<String, Object> {
 
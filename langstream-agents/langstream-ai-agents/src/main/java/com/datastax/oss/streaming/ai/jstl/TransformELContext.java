@@ -0,0 +1,156 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datastax.oss.streaming.ai.jstl;
+
+import jakarta.el.ArrayELResolver;
+import jakarta.el.CompositeELResolver;
+import jakarta.el.ELContext;
+import jakarta.el.ELResolver;
+import jakarta.el.ExpressionFactory;
+import jakarta.el.FunctionMapper;
+import jakarta.el.ListELResolver;
+import jakarta.el.MapELResolver;
+import jakarta.el.PropertyNotWritableException;
+import jakarta.el.ResourceBundleELResolver;
+import jakarta.el.StaticFieldELResolver;
+import jakarta.el.VariableMapper;
+
+/**
+ * A lightweight {@link ELContext} created for each evaluation. The top level identifiers (key,
+ * value, record and the message headers) are resolved lazily from a {@link
+ * JstlTransformContextAdapter}, so unused variables are never computed. The resolver chain is
+ * stateless and shared by all the contexts. Like {@link jakarta.el.StandardELContext}, it registers
+ * a custom beans resolver that disables invocations.
+ */
+public class TransformELContext extends ELContext {
+
+    private static final ELResolver RESOLVER = createResolver(JstlEvaluator.FACTORY);
+
+    private final FunctionMapper functionMapper;
+
+    public TransformELContext(FunctionMapper functionMapper, JstlTransformContextAdapter adapter) {
+        this.functionMapper = functionMapper;
+        if (adapter != null) {
+            // the expression evaluation wraps this context, so the adapter is looked up by key
+            putContext(JstlTransformContextAdapter.class, adapter);
+        }
+    }
+
+    private static ELResolver createResolver(ExpressionFactory factory) {
+        CompositeELResolver standardResolver = new CompositeELResolver();
+        standardResolver.add(new TransformContextResolver());
+        ELResolver streamResolver = factory.getStreamELResolver();
+        if (streamResolver != null) {
+            standardResolver.add(streamResolver);
+        }
+        standardResolver.add(JstlTypeConverter.INSTANCE);
+
+        standardResolver.add(new StaticFieldELResolver());
+        standardResolver.add(new MapELResolver());
+        standardResolver.add(new ResourceBundleELResolver());
+        standardResolver.add(new ListELResolver());
+        standardResolver.add(new ArrayELResolver());
+        standardResolver.add(new DisabledInvocationBeanResolver());
+        return standardResolver;
+    }
+
+    @Override
+    public ELResolver getELResolver() {
+        return RESOLVER;
+    }
+
+    @Override
+    public FunctionMapper getFunctionMapper() {
+        return functionMapper;
+    }
+
+    @Override
+    public VariableMapper getVariableMapper() {
+        return null;
+    }
+
+    /** Resolves the top level identifiers against the adapter of the current context. */
+    private static class TransformContextResolver extends ELResolver {
+
+        private static Object resolve(ELContext context, Object base, Object property) {
+            if (base != null || !(property instanceof String name)) {
+                return null;
+            }
+            JstlTransformContextAdapter adapter =
+                    (JstlTransformContextAdapter)
+                            context.getContext(JstlTransformContextAdapter.class);
+            if (adapter == null) {
+                return null;
+            }
+            Object value;
+            switch (name) {
+                case "key":
+                    value = adapter.getKey();
+                    break;
+                case "value":
+                    value = adapter.adaptValue();
+                    break;
+                case "record":
+                    // this is only for fn:filter
+                    value = adapter.adaptRecord();
+                    break;
+                case "messageKey":
+                case "topicName":
+                case "destinationTopic":
+                case "eventTime":
+                case "properties":
+                    value = adapter.adaptHeader(name);
+                    break;
+                default:
+                    return null;
+            }
+            context.setPropertyResolved(true);
+            return value;
+        }
+
+        @Override
+        public Object getValue(ELContext context, Object base, Object property) {
+            return resolve(context, base, property);
+        }
+
+        @Override
+        public Class<?> getType(ELContext context, Object base, Object property) {
+            // the variables are read-only
+            resolve(context, base, property);
+            return null;
+        }
+
+        @Override
+        public void setValue(ELContext context, Object base, Object property, Object value) {
+            resolve(context, base, property);
+            if (context.isPropertyResolved()) {
+                throw new PropertyNotWritableException(
+                        "Cannot assign read-only variable " + property);
+            }
+        }
+
+        @Override
+        public boolean isReadOnly(ELContext context, Object base, Object property) {
+            resolve(context, base, property);
+            return context.isPropertyResolved();
+        }
+
+        @Override
+        public Class<?> getCommonPropertyType(ELContext context, Object base) {
+            return base == null ? String.class : null;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datastax.oss.streaming.ai.model.config;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import java.util.Map;
+import lombok.Data;
+
+@Data
+public class ChatCompletionsCacheConfig {
+
+    @JsonProperty(value = "mode")
+    private ChatCompletionsCacheMode mode = ChatCompletionsCacheMode.EXACT;
+
+    @JsonProperty(value = "max-size")
+    private int maxSize = 1000;
+
+    @JsonProperty(value = "ttl-seconds")
+    private long ttlSeconds = 600;
+
+    @JsonProperty(value = "similarity-threshold")
+    private double similarityThreshold = 0.95;
+
+    @JsonProperty(value = "embeddings-model")
+    private String embeddingsModel = "text-embedding-ada-002";
+
+    @JsonProperty(value = "backend")
+    private String backend = "memory";
+
+    @JsonProperty(value = "backend-configuration")
+    private Map<String, Object> backendConfiguration;
+}
@@ -0,0 +1,30 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datastax.oss.streaming.ai.model.config;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+public enum ChatCompletionsCacheMode {
+    /** Reuse a completion only if model, options and rendered messages are identical. */
+    @JsonProperty("exact")
+    EXACT,
+    /**
+     * Reuse a completion if everything but the last user message is identical and the last user
+     * message is semantically close to the one of the cached completion.
+     */
+    @JsonProperty("semantic")
+    SEMANTIC
+}
@@ -32,4 +32,10 @@ public class QueryConfig extends StepConfig {
 
     @JsonProperty(value = "only-first", required = false)
     private boolean onlyFirst;
+
+    @JsonProperty(value = "typed-results", required = false)
+    private boolean typedResults;
+
+    @JsonProperty(value = "max-results", required = false)
+    private int maxResults;
 }
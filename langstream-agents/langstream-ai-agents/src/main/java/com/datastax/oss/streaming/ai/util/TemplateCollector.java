@@ -0,0 +1,117 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datastax.oss.streaming.ai.util;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.samskivert.mustache.DefaultCollector;
+import com.samskivert.mustache.Mustache;
+import com.samskivert.mustache.Template;
+import java.util.Iterator;
+import java.util.Spliterators;
+import java.util.stream.StreamSupport;
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericRecord;
+
+/**
+ * Mustache collector that reads fields directly from AVRO {@link GenericRecord}s and Jackson {@link
+ * JsonNode}s, so that templates can be rendered without converting the record to a Map.
+ */
+public class TemplateCollector extends DefaultCollector {
+
+    public static final TemplateCollector INSTANCE = new TemplateCollector();
+
+    private static final Mustache.VariableFetcher GENERIC_RECORD_FETCHER =
+            (ctx, name) -> {
+                GenericRecord record = (GenericRecord) ctx;
+                Schema.Field field = record.getSchema().getField(name);
+                if (field == null) {
+                    return Template.NO_FETCHER_FOUND;
+                }
+                return toTemplateValue(field.schema(), record.get(field.pos()));
+            };
+
+    private static final Mustache.VariableFetcher JSON_NODE_FETCHER =
+            (ctx, name) -> {
+                JsonNode node = ((JsonNode) ctx).get(name);
+                if (node == null) {
+                    return Template.NO_FETCHER_FOUND;
+                }
+                return toTemplateValue(node);
+            };
+
+    public static Mustache.Compiler compiler() {
+        return Mustache.compiler().withCollector(INSTANCE);
+    }
+
+    @Override
+    public Mustache.VariableFetcher createFetcher(Object ctx, String name) {
+        if (ctx instanceof GenericRecord) {
+            return GENERIC_RECORD_FETCHER;
+        }
+        if (ctx instanceof JsonNode node && node.isObject()) {
+            return JSON_NODE_FETCHER;
+        }
+        return super.createFetcher(ctx, name);
+    }
+
+    @Override
+    public Iterator<?> toIterator(Object value) {
+        if (value instanceof JsonNode node) {
+            if (!node.isArray()) {
+                // objects are used as a context, not iterated over their values
+                return null;
+            }
+            return StreamSupport.stream(
+                            Spliterators.spliterator(node.elements(), node.size(), 0), false)
+                    .map(TemplateCollector::toTemplateValue)
+                    .iterator();
+        }
+        return super.toIterator(value);
+    }
+
+    private static Object toTemplateValue(Schema schema, Object value) {
+        if (value == null || value instanceof GenericRecord) {
+            return value;
+        }
+        if (schema.getLogicalType() == null) {
+            if (value instanceof CharSequence) {
+                // String or org.apache.avro.util.Utf8
+                return value.toString();
+            }
+            if (value instanceof Number || value instanceof Boolean) {
+                return value;
+            }
+        }
+        // logical types, bytes, arrays and maps are converted like in the JSON view
+        return toTemplateValue(JsonConverter.toJson(schema, value));
+    }
+
+    private static Object toTemplateValue(JsonNode node) {
+        if (node == null || node.isNull() || node.isMissingNode()) {
+            return null;
+        }
+        if (node.isTextual() || node.isBinary()) {
+            return node.asText();
+        }
+        if (node.isNumber()) {
+            return node.numberValue();
+        }
+        if (node.isBoolean()) {
+            return node.booleanValue();
+        }
+        return node;
+    }
+}
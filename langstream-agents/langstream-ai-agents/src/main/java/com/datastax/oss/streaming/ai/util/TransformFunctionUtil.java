@@ -19,6 +19,7 @@ import com.azure.ai.openai.OpenAIClient;
 import com.azure.ai.openai.OpenAIClientBuilder;
 import com.azure.ai.openai.models.NonAzureOpenAIKeyCredential;
 import com.azure.core.credential.AzureKeyCredential;
+import com.datastax.oss.streaming.ai.BatchTransformStep;
 import com.datastax.oss.streaming.ai.CastStep;
 import com.datastax.oss.streaming.ai.ChatCompletionsStep;
 import com.datastax.oss.streaming.ai.ComputeAIEmbeddingsStep;
@@ -31,7 +32,10 @@ import com.datastax.oss.streaming.ai.QueryStep;
 import com.datastax.oss.streaming.ai.TransformContext;
 import com.datastax.oss.streaming.ai.TransformStep;
 import com.datastax.oss.streaming.ai.UnwrapKeyValueStep;
+import com.datastax.oss.streaming.ai.completions.ChatCompletionsCache;
+import com.datastax.oss.streaming.ai.completions.ChatCompletionsCacheProvider;
 import com.datastax.oss.streaming.ai.completions.CompletionsService;
+import com.datastax.oss.streaming.ai.completions.InMemoryChatCompletionsCache;
 import com.datastax.oss.streaming.ai.datasource.AstraDBDataSource;
 import com.datastax.oss.streaming.ai.datasource.QueryStepDataSource;
 import com.datastax.oss.streaming.ai.embeddings.EmbeddingsService;
@@ -41,6 +45,8 @@ import com.datastax.oss.streaming.ai.model.ComputeField;
 import com.datastax.oss.streaming.ai.model.ComputeFieldType;
 import com.datastax.oss.streaming.ai.model.TransformSchemaType;
 import com.datastax.oss.streaming.ai.model.config.CastConfig;
+import com.datastax.oss.streaming.ai.model.config.ChatCompletionsCacheConfig;
+import com.datastax.oss.streaming.ai.model.config.ChatCompletionsCacheMode;
 import com.datastax.oss.streaming.ai.model.config.ChatCompletionsConfig;
 import com.datastax.oss.streaming.ai.model.config.ComputeAIEmbeddingsConfig;
 import com.datastax.oss.streaming.ai.model.config.ComputeConfig;
@@ -62,8 +68,10 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.ServiceLoader;
 import java.util.Set;
 import java.util.function.Predicate;
 import lombok.SneakyThrows;
@@ -269,7 +277,41 @@ public class TransformFunctionUtil {
             ChatCompletionsConfig config, ServiceProvider serviceProvider) throws Exception {
         CompletionsService completionsService =
                 serviceProvider.getCompletionsService(convertToMap(config));
-        return new ChatCompletionsStep(completionsService, config);
+        ChatCompletionsCacheConfig cacheConfig = config.getCache();
+        if (cacheConfig == null) {
+            return new ChatCompletionsStep(completionsService, config);
+        }
+        EmbeddingsService embeddingsService = null;
+        if (cacheConfig.getMode() == ChatCompletionsCacheMode.SEMANTIC) {
+            embeddingsService =
+                    serviceProvider.getEmbeddingsService(
+                            Map.of("model", cacheConfig.getEmbeddingsModel()));
+        }
+        return new ChatCompletionsStep(
+                completionsService,
+                config,
+                buildChatCompletionsCache(cacheConfig),
+                embeddingsService);
+    }
+
+    public static ChatCompletionsCache buildChatCompletionsCache(
+            ChatCompletionsCacheConfig cacheConfig) {
+        String backend = cacheConfig.getBackend();
+        if (backend == null || backend.equals("memory")) {
+            return new InMemoryChatCompletionsCache(
+                    cacheConfig.getMaxSize(), cacheConfig.getTtlSeconds());
+        }
+        ServiceLoader<ChatCompletionsCacheProvider> loader =
+                ServiceLoader.load(ChatCompletionsCacheProvider.class);
+        return loader.stream()
+                .map(ServiceLoader.Provider::get)
+                .filter(p -> p.supports(backend))
+                .findFirst()
+                .orElseThrow(
+                        () ->
+                                new IllegalArgumentException(
+                                        "No chat completions cache found for backend " + backend))
+                .createCache(cacheConfig);
     }
 
     public static TransformStep newQuery(QueryConfig config, QueryStepDataSource dataSource) {
@@ -289,6 +331,8 @@ public class TransformFunctionUtil {
                 .outputFieldName(config.getOutputField())
                 .query(config.getQuery())
                 .onlyFirst(config.isOnlyFirst())
+                .typedResults(config.isTypedResults())
+                .maxResults(config.getMaxResults())
                 .fields(config.getFields())
                 .dataSource(dataSource)
                 .build();
@@ -306,6 +350,60 @@ public class TransformFunctionUtil {
         }
     }
 
+    /**
+     * Process a batch of records step by step: each step is applied to all the records selected by
+     * its predicate before moving to the next step. The {@link BatchTransformStep}s receive all the
+     * selected records at once. If a batch step fails, the step is applied again to each record on
+     * its own, so that only the records that cause the error fail.
+     *
+     * <p>A record that fails is not processed by the next steps.
+     *
+     * @return the error of each failed record, the other records were processed by all the steps
+     */
+    public static Map<TransformContext, Throwable> processTransformSteps(
+            List<TransformContext> transformContexts, Collection<StepPredicatePair> steps) {
+        Map<TransformContext, Throwable> errors = new IdentityHashMap<>();
+        for (StepPredicatePair pair : steps) {
+            TransformStep step = pair.getTransformStep();
+            Predicate<TransformContext> predicate = pair.getPredicate();
+            List<TransformContext> selected = new ArrayList<>(transformContexts.size());
+            for (TransformContext transformContext : transformContexts) {
+                if (errors.containsKey(transformContext)) {
+                    continue;
+                }
+                try {
+                    if (predicate == null || predicate.test(transformContext)) {
+                        selected.add(transformContext);
+                    }
+                } catch (Throwable error) {
+                    errors.put(transformContext, error);
+                }
+            }
+            if (selected.isEmpty()) {
+                continue;
+            }
+            if (step instanceof BatchTransformStep batchStep && selected.size() > 1) {
+                try {
+                    batchStep.processBatch(selected);
+                    continue;
+                } catch (Throwable error) {
+                    log.warn(
+                            "Error processing a batch of {} records, processing them one by one",
+                            selected.size(),
+                            error);
+                }
+            }
+            for (TransformContext transformContext : selected) {
+                try {
+                    step.process(transformContext);
+                } catch (Throwable error) {
+                    errors.put(transformContext, error);
+                }
+            }
+        }
+        return errors;
+    }
+
     public static Object attemptJsonConversion(Object value) {
         try {
             if (value instanceof String) {
@@ -17,9 +17,16 @@ package ai.langstream.ai.agents;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import ai.langstream.api.runner.code.AgentProcessor;
 import ai.langstream.api.runner.code.Record;
 import ai.langstream.api.runner.code.SimpleRecord;
+import com.datastax.oss.streaming.ai.BatchTransformStep;
+import com.datastax.oss.streaming.ai.TransformContext;
+import com.datastax.oss.streaming.ai.TransformStep;
+import com.datastax.oss.streaming.ai.jstl.predicate.StepPredicatePair;
+import com.datastax.oss.streaming.ai.util.TransformFunctionUtil;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import org.junit.jupiter.api.Test;
@@ -56,6 +63,132 @@ class GenAIToolKitAgentTest {
                         Map.class));
     }
 
+    @Test
+    void testProcessBatch() throws Exception {
+        GenAIToolKitAgent agent = new GenAIToolKitAgent();
+        agent.init(
+                Map.of(
+                        "steps",
+                        List.of(
+                                Map.of(
+                                        "type",
+                                        "compute",
+                                        "when",
+                                        "value.fieldInt > 1",
+                                        "fields",
+                                        List.of(
+                                                Map.of(
+                                                        "name",
+                                                        "value.computedField",
+                                                        "expression",
+                                                        "value.fieldInt * 10"))))));
+        agent.start();
+        List<Record> records = new ArrayList<>();
+        for (int i = 1; i <= 3; i++) {
+            records.add(
+                    SimpleRecord.builder()
+                            .value(MAPPER.writeValueAsString(Map.of("fieldInt", i)))
+                            .build());
+        }
+        List<AgentProcessor.SourceRecordAndResult> results = new ArrayList<>();
+        agent.process(records, results::add);
+        agent.close();
+
+        assertEquals(3, results.size());
+        for (int i = 0; i < 3; i++) {
+            AgentProcessor.SourceRecordAndResult result = results.get(i);
+            assertSame(records.get(i), result.sourceRecord());
+            assertNull(result.error());
+            Map<String, Object> value =
+                    MAPPER.readValue(result.resultRecords().get(0).value().toString(), Map.class);
+            if (i == 0) {
+                assertNull(value.get("computedField"));
+            } else {
+                assertEquals((i + 1) * 10, value.get("computedField"));
+            }
+        }
+    }
+
+    @Test
+    void testProcessBatchWithFailedRecord() throws Exception {
+        GenAIToolKitAgent agent = new GenAIToolKitAgent();
+        agent.init(
+                Map.of(
+                        "steps",
+                        List.of(
+                                Map.of(
+                                        "type",
+                                        "compute",
+                                        "fields",
+                                        List.of(
+                                                Map.of(
+                                                        "name",
+                                                        "value.computedField",
+                                                        "expression",
+                                                        "value.fieldInt * 10"))))));
+        agent.start();
+        List<Record> records = new ArrayList<>();
+        for (Object fieldInt : List.of(1, "not-a-number", 3)) {
+            records.add(
+                    SimpleRecord.builder()
+                            .value(MAPPER.writeValueAsString(Map.of("fieldInt", fieldInt)))
+                            .build());
+        }
+        List<AgentProcessor.SourceRecordAndResult> results = new ArrayList<>();
+        agent.process(records, results::add);
+        agent.close();
+
+        assertEquals(3, results.size());
+        assertSame(records.get(1), results.get(1).sourceRecord());
+        assertNotNull(results.get(1).error());
+        for (int i : List.of(0, 2)) {
+            AgentProcessor.SourceRecordAndResult result = results.get(i);
+            assertSame(records.get(i), result.sourceRecord());
+            assertNull(result.error());
+            Map<String, Object> value =
+                    MAPPER.readValue(result.resultRecords().get(0).value().toString(), Map.class);
+            assertEquals((i + 1) * 10, value.get("computedField"));
+        }
+    }
+
+    @Test
+    void testBatchStepIsRetriedPerRecord() {
+        List<Integer> batchSizes = new ArrayList<>();
+        BatchTransformStep step =
+                contexts -> {
+                    batchSizes.add(contexts.size());
+                    for (TransformContext context : contexts) {
+                        if ("fail".equals(context.getKey())) {
+                            throw new IllegalArgumentException("bad record");
+                        }
+                    }
+                    for (TransformContext context : contexts) {
+                        context.setValueObject("processed");
+                    }
+                };
+        TransformStep nextStep = context -> context.setValueObject(context.getValueObject() + "!");
+        List<TransformContext> contexts = new ArrayList<>();
+        for (String key : List.of("a", "fail", "b")) {
+            TransformContext context = new TransformContext();
+            context.setKey(key);
+            contexts.add(context);
+        }
+
+        Map<TransformContext, Throwable> errors =
+                TransformFunctionUtil.processTransformSteps(
+                        contexts,
+                        List.of(
+                                new StepPredicatePair(step, null),
+                                new StepPredicatePair(nextStep, null)));
+
+        assertEquals(List.of(3, 1, 1, 1), batchSizes);
+        assertEquals(1, errors.size());
+        assertInstanceOf(IllegalArgumentException.class, errors.get(contexts.get(1)));
+        assertEquals("processed!", contexts.get(0).getValueObject());
+        assertNull(contexts.get(1).getValueObject());
+        assertEquals("processed!", contexts.get(2).getValueObject());
+    }
+
     Object compute(String expression, Object value) throws Exception {
         GenAIToolKitAgent agent = new GenAIToolKitAgent();
         agent.init(
@@ -74,7 +207,10 @@ class GenAIToolKitAgentTest {
                                                         expression))))));
         agent.start();
         SimpleRecord record = SimpleRecord.builder().value(value).build();
-        Record result = agent.processRecord(record).get(0);
+        List<AgentProcessor.SourceRecordAndResult> results = new ArrayList<>();
+        agent.process(List.of(record), results::add);
+        assertNull(results.get(0).error());
+        Record result = results.get(0).resultRecords().get(0);
         Map<String, Object> resultValueParsed =
                 MAPPER.readValue(result.value().toString(), Map.class);
         agent.close();
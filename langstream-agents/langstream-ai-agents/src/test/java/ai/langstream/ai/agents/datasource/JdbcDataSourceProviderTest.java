@@ -16,14 +16,23 @@
 package ai.langstream.ai.agents.datasource;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import ai.langstream.ai.agents.datasource.impl.JdbcDataSourceProvider;
+import com.datastax.oss.streaming.ai.datasource.QueryResultCursor;
 import com.datastax.oss.streaming.ai.datasource.QueryStepDataSource;
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import lombok.extern.slf4j.Slf4j;
 import org.junit.jupiter.api.Test;
 
@@ -64,4 +73,109 @@ public class JdbcDataSourceProviderTest {
 
         implementation.close();
     }
+
+    @Test
+    public void testConcurrentQueries() throws Exception {
+        JdbcDataSourceProvider jdbcDataSourceProvider = new JdbcDataSourceProvider();
+        QueryStepDataSource implementation =
+                jdbcDataSourceProvider.createDataSourceImplementation(
+                        Map.of(
+                                "url",
+                                "jdbc:h2:mem:testpool",
+                                "user",
+                                "sa",
+                                "password",
+                                "sa",
+                                "driverClass",
+                                "org.h2.Driver",
+                                "pool-size",
+                                2,
+                                "statement-cache-size",
+                                1,
+                                "fetch-size",
+                                10));
+
+        try (Connection conn = DriverManager.getConnection("jdbc:h2:mem:testpool", "sa", "sa");
+                Statement statement = conn.createStatement()) {
+            statement.execute(
+                    "CREATE TABLE products (id INT PRIMARY KEY, name VARCHAR(255), price INT)");
+            for (int i = 0; i < 20; i++) {
+                statement.execute(
+                        "INSERT INTO products (id, name, price) VALUES (%d, 'product%d', %d)"
+                                .formatted(i, i, 100 + i));
+            }
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<List<Map<String, String>>>> futures = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                int id = i % 20;
+                // alternate two queries to exercise the eviction from the statement cache
+                String query =
+                        i % 2 == 0
+                                ? "SELECT name, price from PRODUCTS where id = ?"
+                                : "SELECT price, name from PRODUCTS where id = ?";
+                futures.add(executor.submit(() -> implementation.fetchData(query, List.of(id))));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                List<Map<String, String>> results = futures.get(i).get();
+                assertEquals(1, results.size());
+                assertEquals("product" + (i % 20), results.get(0).get("NAME"));
+                assertEquals(String.valueOf(100 + i % 20), results.get(0).get("PRICE"));
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        // a failed query doesn't break the data source
+        assertThrows(
+                SQLException.class,
+                () -> implementation.fetchData("SELECT * from MISSING", List.of()));
+        assertEquals(20, implementation.fetchData("SELECT * from PRODUCTS", List.of()).size());
+
+        implementation.close();
+    }
+
+    @Test
+    public void testTypedCursor() throws Exception {
+        JdbcDataSourceProvider jdbcDataSourceProvider = new JdbcDataSourceProvider();
+        QueryStepDataSource implementation =
+                jdbcDataSourceProvider.createDataSourceImplementation(
+                        Map.of(
+                                "url",
+                                "jdbc:h2:mem:testcursor",
+                                "user",
+                                "sa",
+                                "password",
+                                "sa",
+                                "driverClass",
+                                "org.h2.Driver",
+                                "pool-size",
+                                1));
+
+        try (Connection conn = DriverManager.getConnection("jdbc:h2:mem:testcursor", "sa", "sa");
+                Statement statement = conn.createStatement()) {
+            statement.execute("CREATE TABLE documents (id INT PRIMARY KEY, embeddings REAL ARRAY)");
+            statement.execute("INSERT INTO documents VALUES (1, ARRAY[1.0, 2.0])");
+            statement.execute("INSERT INTO documents VALUES (2, ARRAY[3.0, 4.0])");
+            statement.execute("INSERT INTO documents VALUES (3, ARRAY[5.0, 6.0])");
+        }
+
+        try (QueryResultCursor cursor =
+                implementation.executeQuery(
+                        "SELECT id, embeddings from DOCUMENTS order by id", List.of(), 2)) {
+            assertEquals(List.of("ID", "EMBEDDINGS"), cursor.getColumnNames());
+            assertTrue(cursor.next());
+            assertEquals(Map.of("ID", 1, "EMBEDDINGS", List.of(1.0f, 2.0f)), cursor.getRow());
+            assertTrue(cursor.next());
+            assertEquals(2, cursor.getValue(0));
+            assertFalse(cursor.next());
+        }
+
+        // the connection went back to the pool
+        assertEquals(3, implementation.fetchData("SELECT * from DOCUMENTS", List.of()).size());
+
+        implementation.close();
+    }
 }
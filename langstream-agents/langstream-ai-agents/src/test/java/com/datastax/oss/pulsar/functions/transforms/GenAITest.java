@@ -147,6 +147,9 @@ public class GenAITest {
             },
             {
                 "{'steps': [{'type': 'ai-chat-completions', 'model': 'example_model', 'messages': [{'content': 'Hello'}]}], 'openai': {'access-key': 'qwerty'}}"
+            },
+            {
+                "{'steps': [{'type': 'ai-chat-completions', 'model': 'example_model', 'messages': [{'role': 'user','content': 'Hello'}], 'cache': {'mode': 'invalid'}}], 'openai': {'access-key': 'qwerty'}}"
             }
         };
     }
@@ -20,6 +20,7 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -27,7 +28,11 @@ import com.azure.ai.openai.OpenAIClient;
 import com.azure.ai.openai.models.ChatCompletions;
 import com.azure.ai.openai.models.ChatCompletionsOptions;
 import com.datastax.oss.streaming.ai.completions.ChatMessage;
+import com.datastax.oss.streaming.ai.completions.InMemoryChatCompletionsCache;
 import com.datastax.oss.streaming.ai.completions.OpenAICompletionService;
+import com.datastax.oss.streaming.ai.embeddings.MockEmbeddingsService;
+import com.datastax.oss.streaming.ai.model.config.ChatCompletionsCacheConfig;
+import com.datastax.oss.streaming.ai.model.config.ChatCompletionsCacheMode;
 import com.datastax.oss.streaming.ai.model.config.ChatCompletionsConfig;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -502,4 +507,66 @@ public class ChatCompletionsStepTest {
             assertEquals(messageValue.getKey(), expected);
         }
     }
+
+    private static Record<GenericObject> stringRecord(String value) {
+        return Utils.TestRecord.<GenericObject>builder()
+                .key("test-key")
+                .value(
+                        AutoConsumeSchema.wrapPrimitiveObject(
+                                value, SchemaType.STRING, new byte[] {}))
+                .schema(Schema.STRING)
+                .build();
+    }
+
+    @Test
+    void testExactCache() throws Exception {
+        ChatCompletionsConfig config = new ChatCompletionsConfig();
+        config.setModel("test-model");
+        config.setMessages(
+                List.of(
+                        new ChatMessage("system").setContent("You are a bot"),
+                        new ChatMessage("user").setContent("{{ value }}")));
+        config.setCache(new ChatCompletionsCacheConfig());
+        InMemoryChatCompletionsCache cache = new InMemoryChatCompletionsCache(10, 60);
+        ChatCompletionsStep step = new ChatCompletionsStep(completionService, config, cache, null);
+
+        assertEquals(Utils.process(stringRecord("question"), step).getValue(), "result");
+        assertEquals(Utils.process(stringRecord("question"), step).getValue(), "result");
+        verify(openAIClient, times(1)).getChatCompletions(eq("test-model"), any());
+
+        Utils.process(stringRecord("another question"), step);
+        verify(openAIClient, times(2)).getChatCompletions(eq("test-model"), any());
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    void testSemanticCache() throws Exception {
+        ChatCompletionsConfig config = new ChatCompletionsConfig();
+        config.setModel("test-model");
+        config.setMessages(
+                List.of(
+                        new ChatMessage("system").setContent("You are a bot"),
+                        new ChatMessage("user").setContent("{{ value }}")));
+        ChatCompletionsCacheConfig cacheConfig = new ChatCompletionsCacheConfig();
+        cacheConfig.setMode(ChatCompletionsCacheMode.SEMANTIC);
+        cacheConfig.setSimilarityThreshold(0.9);
+        config.setCache(cacheConfig);
+        MockEmbeddingsService embeddingsService = new MockEmbeddingsService();
+        embeddingsService.setEmbeddingsForText("how do I reset my password?", List.of(1.0, 0.1));
+        embeddingsService.setEmbeddingsForText("how to reset my password", List.of(1.0, 0.15));
+        embeddingsService.setEmbeddingsForText("what is the weather?", List.of(0.1, 1.0));
+        ChatCompletionsStep step =
+                new ChatCompletionsStep(
+                        completionService,
+                        config,
+                        new InMemoryChatCompletionsCache(10, 60),
+                        embeddingsService);
+
+        Utils.process(stringRecord("how do I reset my password?"), step);
+        Utils.process(stringRecord("how to reset my password"), step);
+        verify(openAIClient, times(1)).getChatCompletions(eq("test-model"), any());
+
+        Utils.process(stringRecord("what is the weather?"), step);
+        verify(openAIClient, times(2)).getChatCompletions(eq("test-model"), any());
+    }
 }
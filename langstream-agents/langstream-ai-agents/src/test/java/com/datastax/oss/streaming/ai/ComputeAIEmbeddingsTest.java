@@ -19,10 +19,15 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 
 import com.datastax.oss.streaming.ai.embeddings.MockEmbeddingsService;
+import com.datastax.oss.streaming.ai.model.TransformSchemaType;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.apache.avro.generic.GenericData;
 import org.apache.pulsar.client.api.Schema;
 import org.apache.pulsar.client.api.schema.GenericObject;
@@ -94,6 +99,40 @@ public class ComputeAIEmbeddingsTest {
         assertEquals(outputRecord.getSchema().getSchemaInfo().getType(), SchemaType.KEY_VALUE);
     }
 
+    @Test
+    void testBatch() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        MockEmbeddingsService mockService =
+                new MockEmbeddingsService() {
+                    @Override
+                    public List<List<Double>> computeEmbeddings(List<String> texts) {
+                        calls.incrementAndGet();
+                        return super.computeEmbeddings(texts);
+                    }
+                };
+        mockService.setEmbeddingsForText("Jane", List.of(1.0d, 2.0d));
+        mockService.setEmbeddingsForText("John", List.of(3.0d, 4.0d));
+        ComputeAIEmbeddingsStep step =
+                new ComputeAIEmbeddingsStep("{{ value.name }}", "value.newField", mockService);
+
+        List<TransformContext> contexts = new ArrayList<>();
+        for (String name : List.of("Jane", "John")) {
+            TransformContext context = new TransformContext();
+            context.setValueObject(new HashMap<>(Map.of("name", name)));
+            context.setValueSchemaType(TransformSchemaType.STRING);
+            contexts.add(context);
+        }
+        step.processBatch(contexts);
+
+        assertEquals(1, calls.get());
+        assertEquals(
+                List.of(1.0d, 2.0d),
+                ((Map<?, ?>) contexts.get(0).getValueObject()).get("newField"));
+        assertEquals(
+                List.of(3.0d, 4.0d),
+                ((Map<?, ?>) contexts.get(1).getValueObject()).get("newField"));
+    }
+
     @Test
     @Disabled("JSON not supported at the moment")
     void testJson() throws Exception {
@@ -17,6 +17,7 @@ package com.datastax.oss.streaming.ai;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
+import com.datastax.oss.streaming.ai.datasource.QueryResultCursor;
 import com.datastax.oss.streaming.ai.datasource.QueryStepDataSource;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import java.time.Instant;
@@ -27,12 +28,16 @@ import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.TimeZone;
+import java.util.concurrent.CompletableFuture;
 import lombok.AllArgsConstructor;
 import lombok.Data;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.util.Utf8;
 import org.apache.pulsar.client.api.Schema;
 import org.apache.pulsar.client.api.schema.GenericObject;
 import org.apache.pulsar.client.api.schema.GenericRecord;
 import org.apache.pulsar.client.api.schema.GenericSchema;
+import org.apache.pulsar.client.api.schema.KeyValueSchema;
 import org.apache.pulsar.client.api.schema.RecordSchemaBuilder;
 import org.apache.pulsar.client.api.schema.SchemaBuilder;
 import org.apache.pulsar.client.impl.schema.AutoConsumeSchema;
@@ -355,4 +360,128 @@ public class QueryStepTest {
                         "result",
                         Map.of()));
     }
+
+    @Test
+    void testOnlyFirstIsPushedDown() throws Exception {
+        QueryStepDataSource dataSource =
+                new QueryStepDataSource() {
+                    @Override
+                    public CompletableFuture<List<Map<String, String>>> fetchDataAsync(
+                            String query, List<Object> params, int maxResults) {
+                        // the untyped limited queries stay asynchronous
+                        assertEquals(1, maxResults);
+                        return CompletableFuture.completedFuture(List.of(Map.of("a", "10")));
+                    }
+                };
+        QueryStep queryStep =
+                QueryStep.builder()
+                        .dataSource(dataSource)
+                        .outputFieldName("value.result")
+                        .query("select a from test")
+                        .onlyFirst(true)
+                        .maxResults(10)
+                        .build();
+
+        Record<?> result = Utils.process(Utils.createTestJsonKeyValueRecord(), queryStep);
+        Map<String, Object> parsed =
+                OBJECT_MAPPER.readValue(
+                        OBJECT_MAPPER.writeValueAsString(
+                                ((KeyValue<?, ?>) result.getValue()).getValue()),
+                        Map.class);
+        assertEquals(Map.of("a", "10"), parsed.get("result"));
+    }
+
+    @Test
+    void testMaxResultsTruncatesTheAsyncResults() throws Exception {
+        QueryStepDataSource dataSource =
+                new QueryStepDataSource() {
+                    @Override
+                    public CompletableFuture<List<Map<String, String>>> fetchDataAsync(
+                            String query, List<Object> params) {
+                        return CompletableFuture.completedFuture(
+                                List.of(Map.of("a", "1"), Map.of("a", "2"), Map.of("a", "3")));
+                    }
+                };
+        QueryStep queryStep =
+                QueryStep.builder()
+                        .dataSource(dataSource)
+                        .outputFieldName("value.result")
+                        .query("select a from test")
+                        .maxResults(2)
+                        .build();
+
+        Record<?> result = Utils.process(Utils.createTestJsonKeyValueRecord(), queryStep);
+        Map<String, Object> parsed =
+                OBJECT_MAPPER.readValue(
+                        OBJECT_MAPPER.writeValueAsString(
+                                ((KeyValue<?, ?>) result.getValue()).getValue()),
+                        Map.class);
+        assertEquals(List.of(Map.of("a", "1"), Map.of("a", "2")), parsed.get("result"));
+    }
+
+    @Test
+    void testTypedResults() throws Exception {
+        QueryStepDataSource dataSource =
+                new QueryStepDataSource() {
+                    @Override
+                    public QueryResultCursor executeQuery(
+                            String query, List<Object> params, int maxResults) {
+                        assertEquals(2, maxResults);
+                        return QueryResultCursor.of(
+                                List.of(
+                                        Map.of(
+                                                "id",
+                                                1,
+                                                "score",
+                                                0.5f,
+                                                "ok",
+                                                true,
+                                                "vector",
+                                                List.of(1.0f, 2.0f)),
+                                        Map.of(
+                                                "id",
+                                                2,
+                                                "score",
+                                                0.25f,
+                                                "ok",
+                                                false,
+                                                "vector",
+                                                List.of(3.0f, 4.0f)),
+                                        Map.of("id", 3)));
+                    }
+                };
+        QueryStep queryStep =
+                QueryStep.builder()
+                        .dataSource(dataSource)
+                        .outputFieldName("value.result")
+                        .query("select 1")
+                        .typedResults(true)
+                        .maxResults(2)
+                        .build();
+
+        Record<?> outputRecord = Utils.process(Utils.createTestAvroKeyValueRecord(), queryStep);
+        KeyValueSchema<?, ?> messageSchema = (KeyValueSchema<?, ?>) outputRecord.getSchema();
+        KeyValue<?, ?> messageValue = (KeyValue<?, ?>) outputRecord.getValue();
+        GenericData.Record valueAvroRecord =
+                Utils.getRecord(messageSchema.getValueSchema(), (byte[]) messageValue.getValue());
+        List<Map<Utf8, Object>> result = (List<Map<Utf8, Object>>) valueAvroRecord.get("result");
+        assertEquals(2, result.size());
+        assertEquals(1L, result.get(0).get(new Utf8("id")));
+        assertEquals(0.5d, result.get(0).get(new Utf8("score")));
+        assertEquals(true, result.get(0).get(new Utf8("ok")));
+        assertEquals(List.of(1.0f, 2.0f), result.get(0).get(new Utf8("vector")));
+        assertEquals(List.of(3.0f, 4.0f), result.get(1).get(new Utf8("vector")));
+
+        Record<?> jsonRecord = Utils.process(Utils.createTestJsonKeyValueRecord(), queryStep);
+        Map<String, Object> parsed =
+                OBJECT_MAPPER.readValue(
+                        OBJECT_MAPPER.writeValueAsString(
+                                ((KeyValue<?, ?>) jsonRecord.getValue()).getValue()),
+                        Map.class);
+        assertEquals(
+                List.of(
+                        Map.of("id", 1, "score", 0.5, "ok", true, "vector", List.of(1.0, 2.0)),
+                        Map.of("id", 2, "score", 0.25, "ok", false, "vector", List.of(3.0, 4.0))),
+                parsed.get("result"));
+    }
 }
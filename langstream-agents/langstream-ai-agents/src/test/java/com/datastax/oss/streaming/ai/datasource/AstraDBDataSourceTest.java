@@ -15,7 +15,18 @@
  */
 package com.datastax.oss.streaming.ai.datasource;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.datastax.oss.driver.api.core.ProtocolVersion;
+import com.datastax.oss.driver.api.core.data.CqlVector;
+import com.datastax.oss.driver.api.core.type.CqlVectorType;
+import com.datastax.oss.driver.api.core.type.DataTypes;
+import com.datastax.oss.driver.api.core.type.codec.TypeCodecs;
+import com.datastax.oss.driver.api.core.type.codec.registry.CodecRegistry;
+import com.datastax.oss.driver.internal.core.type.codec.CqlVectorCodec;
 import com.datastax.oss.streaming.ai.model.config.DataSourceConfig;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -53,6 +64,34 @@ public class AstraDBDataSourceTest {
         log.info("maps {}", maps);
     }
 
+    @Test
+    void testFloatVectorBinder() {
+        CqlVectorType type = new CqlVectorType(DataTypes.FLOAT, 3);
+        AstraDBDataSource.ParameterBinder binder =
+                AstraDBDataSource.ParameterBinder.of(
+                        type, CodecRegistry.DEFAULT, ProtocolVersion.DEFAULT);
+        ByteBuffer expected =
+                new CqlVectorCodec<>(type, TypeCodecs.FLOAT)
+                        .encode(
+                                CqlVector.builder().add(0.1f, 0.2f, 0.3f).build(),
+                                ProtocolVersion.DEFAULT);
+
+        assertEquals(expected, binder.encode(new float[] {0.1f, 0.2f, 0.3f}));
+        assertEquals(expected, binder.encode(new double[] {0.1f, 0.2f, 0.3f}));
+        assertEquals(expected, binder.encode(List.of(0.1f, 0.2f, 0.3f)));
+        assertEquals(expected, binder.encode(List.of("0.1", "0.2", "0.3")));
+        assertEquals(null, binder.encode(null));
+        assertThrows(IllegalArgumentException.class, () -> binder.encode(List.of(0.1f)));
+    }
+
+    @Test
+    void testCodecBinder() {
+        AstraDBDataSource.ParameterBinder binder =
+                AstraDBDataSource.ParameterBinder.of(
+                        DataTypes.TEXT, CodecRegistry.DEFAULT, ProtocolVersion.DEFAULT);
+        assertEquals(TypeCodecs.TEXT.encode("foo", ProtocolVersion.DEFAULT), binder.encode("foo"));
+    }
+
     private static DataSourceConfig buildDataSourceConfig() {
         DataSourceConfig dataSourceConfig = new DataSourceConfig();
         dataSourceConfig.setService("astra");
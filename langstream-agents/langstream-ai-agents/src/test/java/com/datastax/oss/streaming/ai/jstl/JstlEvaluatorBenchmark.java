@@ -0,0 +1,94 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datastax.oss.streaming.ai.jstl;
+
+import com.datastax.oss.streaming.ai.TransformContext;
+import com.datastax.oss.streaming.ai.Utils;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+import org.apache.pulsar.client.api.schema.GenericObject;
+import org.apache.pulsar.functions.api.Record;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares the interpreted and the compiled evaluation of typical compute and when expressions. Run
+ * it from the IDE or with the test classpath: {@code java -cp ...
+ * com.datastax.oss.streaming.ai.jstl.JstlEvaluatorBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JstlEvaluatorBenchmark {
+
+    @Param({
+        "value.valueField1 == 'value1'",
+        "fn:concat(value.valueField1, key.keyField1)",
+        "fn:uppercase(value.valueField2) != 'X' && topicName == 'topic'"
+    })
+    public String expression;
+
+    private TransformContext context;
+    private JstlEvaluator<Object> interpreted;
+    private JstlEvaluator<Object> compiled;
+
+    @Setup
+    public void setup() {
+        Record<GenericObject> record = Utils.createTestAvroKeyValueRecord();
+        context =
+                Utils.newTransformContext(
+                        new Utils.TestContext(record, new HashMap<>()),
+                        record.getValue().getNativeObject());
+        String el = String.format("${%s}", expression);
+        interpreted = new JstlEvaluator<>(el, Object.class, false);
+        compiled = new JstlEvaluator<>(el, Object.class);
+        if (!compiled.isCompiled()) {
+            throw new IllegalStateException("expression is not compiled: " + expression);
+        }
+    }
+
+    @Benchmark
+    public Object interpreted() {
+        return interpreted.evaluate(context);
+    }
+
+    @Benchmark
+    public Object compiled() {
+        return compiled.evaluate(context);
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(
+                        new OptionsBuilder()
+                                .include(JstlEvaluatorBenchmark.class.getSimpleName())
+                                .build())
+                .run();
+    }
+}
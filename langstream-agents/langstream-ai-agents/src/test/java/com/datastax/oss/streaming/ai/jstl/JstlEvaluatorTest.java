@@ -16,7 +16,9 @@
 package com.datastax.oss.streaming.ai.jstl;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import com.datastax.oss.streaming.ai.TransformContext;
 import com.datastax.oss.streaming.ai.Utils;
@@ -25,7 +27,15 @@ import java.nio.charset.StandardCharsets;
 import java.time.Clock;
 import java.time.Instant;
 import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import org.apache.pulsar.client.api.Schema;
+import org.apache.pulsar.client.api.schema.GenericObject;
+import org.apache.pulsar.functions.api.Record;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.MethodSource;
@@ -52,6 +62,29 @@ public class JstlEvaluatorTest {
                         .evaluate(context));
     }
 
+    @ParameterizedTest
+    @MethodSource("compiledExpressionProvider")
+    void testCompiledExpressions(String expression, Class<?> type) {
+        Record<GenericObject> record = Utils.createTestAvroKeyValueRecord();
+        TransformContext context =
+                Utils.newTransformContext(
+                        new Utils.TestContext(record, new HashMap<>()),
+                        record.getValue().getNativeObject());
+        JstlEvaluator<?> compiled = new JstlEvaluator<>(String.format("${%s}", expression), type);
+        JstlEvaluator<?> interpreted =
+                new JstlEvaluator<>(String.format("${%s}", expression), type, false);
+
+        assertTrue(compiled.isCompiled());
+        assertEquals(interpreted.evaluate(context), compiled.evaluate(context));
+    }
+
+    @ParameterizedTest
+    @MethodSource("methodInvocationExpressionProvider")
+    void testMethodInvocationsAreNotCompiled(String expression, TransformContext context) {
+        assertFalse(
+                new JstlEvaluator<>(String.format("${%s}", expression), String.class).isCompiled());
+    }
+
     @Test
     void testPrimitiveValue() {
         TransformContext primitiveStringContext =
@@ -63,6 +96,30 @@ public class JstlEvaluatorTest {
         assertEquals("test-message", value);
     }
 
+    @Test
+    void testConcurrentEvaluation() throws Exception {
+        JstlEvaluator<String> evaluator =
+                new JstlEvaluator<>("${fn:uppercase(value)}", String.class);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                String message = "message-" + i;
+                results.add(
+                        executor.submit(
+                                () ->
+                                        evaluator.evaluate(
+                                                Utils.createContextWithPrimitiveRecord(
+                                                        Schema.STRING, message, ""))));
+            }
+            for (int i = 0; i < 100; i++) {
+                assertEquals("MESSAGE-" + i, results.get(i).get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
     @Test
     void testNowFunction() {
         TransformContext primitiveStringContext =
@@ -110,6 +167,29 @@ public class JstlEvaluatorTest {
         };
     }
 
+    /**
+     * @return {"expression", "expected type"}
+     */
+    public static Object[][] compiledExpressionProvider() {
+        return new Object[][] {
+            {"value.valueField1", String.class},
+            {"value['valueField2']", String.class},
+            {"key.keyField1 == 'key1'", Boolean.class},
+            {"value.valueField1 != 'value1' || key.keyField2 eq 'key2'", boolean.class},
+            {"not empty value.valueField3 and value.missing == null", boolean.class},
+            {"value.missing.nested", Object.class},
+            {"fn:concat(value.valueField1, key.keyField1)", String.class},
+            {"fn:uppercase(fn:concat(value.valueField1, '-suffix'))", String.class},
+            {"fn:contains(value.valueField1, 'val') ? 'yes' : 'no'", String.class},
+            {"fn:toInt('2') + 3 * 4", Long.class},
+            {"10 / 4 > 2 && 7 % 3 <= 1", Boolean.class},
+            {"value.valueField1 += '-' += messageKey", String.class},
+            {"topicName", String.class},
+            {"properties", Object.class},
+            {"fn:toDouble('1.5') >= 1.5", Boolean.class},
+        };
+    }
+
     /**
      * @return {"expression", "context", "expected value"}
      */
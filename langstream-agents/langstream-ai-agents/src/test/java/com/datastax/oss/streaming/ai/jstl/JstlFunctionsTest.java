@@ -524,4 +524,14 @@ public class JstlFunctionsTest {
             assertEquals(2, filter.size());
         }
     }
+
+    @Test
+    void testFilterPredicatesCacheIsBounded() {
+        List<Map<String, String>> queryResult = List.of(Map.of("name", "product1"));
+        for (int i = 0; i < JstlFunctions.MAX_FILTER_PREDICATES + 10; i++) {
+            List<Object> filter = JstlFunctions.filter(queryResult, "record.name != 'p" + i + "'");
+            assertEquals(1, filter.size());
+        }
+        assertTrue(JstlFunctions.filterPredicatesCount() <= JstlFunctions.MAX_FILTER_PREDICATES);
+    }
 }
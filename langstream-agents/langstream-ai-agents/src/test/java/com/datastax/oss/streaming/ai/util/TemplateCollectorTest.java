@@ -0,0 +1,116 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datastax.oss.streaming.ai.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import com.datastax.oss.streaming.ai.TransformContext;
+import com.datastax.oss.streaming.ai.model.JsonRecord;
+import com.datastax.oss.streaming.ai.model.TransformSchemaType;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.List;
+import java.util.Map;
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaBuilder;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.util.Utf8;
+import org.junit.jupiter.api.Test;
+
+public class TemplateCollectorTest {
+
+    private static String render(String template, Object value) {
+        TransformContext context = new TransformContext();
+        context.setValueObject(value);
+        return TemplateCollector.compiler().compile(template).execute(context.toJsonRecord());
+    }
+
+    @Test
+    void testGenericRecord() {
+        Schema nestedSchema =
+                SchemaBuilder.record("nested").fields().requiredString("city").endRecord();
+        Schema schema =
+                SchemaBuilder.record("record")
+                        .fields()
+                        .requiredString("name")
+                        .requiredInt("age")
+                        .name("address")
+                        .type(nestedSchema)
+                        .noDefault()
+                        .name("tags")
+                        .type()
+                        .array()
+                        .items()
+                        .stringType()
+                        .noDefault()
+                        .name("scores")
+                        .type()
+                        .map()
+                        .values()
+                        .intType()
+                        .noDefault()
+                        .endRecord();
+        GenericRecord address = new GenericData.Record(nestedSchema);
+        address.put("city", new Utf8("Paris"));
+        GenericRecord record = new GenericData.Record(schema);
+        record.put("name", new Utf8("Jane"));
+        record.put("age", 42);
+        record.put("address", address);
+        record.put(
+                "tags",
+                new GenericData.Array<>(
+                        schema.getField("tags").schema(), List.of(new Utf8("a"), new Utf8("b"))));
+        record.put("scores", Map.of(new Utf8("math"), 10));
+
+        assertEquals(
+                "Jane 42 Paris [a,b,] 10",
+                render(
+                        "{{ value.name }} {{ value.age }} {{ value.address.city }} "
+                                + "[{{#value.tags}}{{.}},{{/value.tags}}] {{ value.scores.math }}",
+                        record));
+    }
+
+    @Test
+    void testJsonNode() throws Exception {
+        JsonNode json =
+                new ObjectMapper()
+                        .readTree(
+                                "{\"name\":\"Jane\",\"age\":42,\"active\":true,"
+                                        + "\"address\":{\"city\":\"Paris\"},\"tags\":[\"a\",\"b\"]}");
+
+        assertEquals(
+                "Jane 42 Paris [a,b,] yes",
+                render(
+                        "{{ value.name }} {{ value.age }} {{ value.address.city }} "
+                                + "[{{#value.tags}}{{.}},{{/value.tags}}] "
+                                + "{{#value.active}}yes{{/value.active}}",
+                        json));
+    }
+
+    @Test
+    void testJsonRecordIsMemoized() {
+        TransformContext context = new TransformContext();
+        context.setValueSchemaType(TransformSchemaType.STRING);
+        context.setValueObject("value");
+        JsonRecord jsonRecord = context.toJsonRecord();
+        assertSame(jsonRecord, context.toJsonRecord());
+
+        context.setValueObject("other");
+        assertEquals("other", context.toJsonRecord().getValue());
+    }
+}
@@ -0,0 +1,244 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.langstream.agents.vector;
+
+import com.datastax.oss.streaming.ai.datasource.QueryResultCursor;
+import com.datastax.oss.streaming.ai.datasource.QueryStepDataSource;
+import com.datastax.oss.streaming.ai.model.config.DataSourceConfig;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Caches the results of the queries of a {@link QueryStepDataSource}. The key is the query, its
+ * parameters and its limit, the components of the vectors are quantized so that near duplicate
+ * embeddings share the same entry. The cache is bounded and the entries expire after the configured
+ * TTL.
+ *
+ * <p>The {@code vector-db-sink} agents running in the same process invalidate the cached results of
+ * the data source they write to, see {@link #invalidate(Map)}. The writes done elsewhere are only
+ * visible once the entries expire.
+ */
+@Slf4j
+class CachingQueryStepDataSource implements QueryStepDataSource {
+
+    private static final Map<String, AtomicLong> GENERATIONS = new ConcurrentHashMap<>();
+
+    private final QueryStepDataSource delegate;
+    private final AtomicLong generation;
+    private final double quantizationStep;
+    private final long ttlNanos;
+    private final LinkedHashMap<String, Entry> entries;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    private record Entry(List<Map<String, String>> rows, long generation, long expiresAt) {}
+
+    CachingQueryStepDataSource(
+            QueryStepDataSource delegate,
+            Map<String, Object> datasourceConfiguration,
+            int maxSize,
+            long ttlSeconds,
+            double quantizationStep) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Cache max-size must be positive");
+        }
+        if (quantizationStep < 0) {
+            throw new IllegalArgumentException("Cache quantization-step must not be negative");
+        }
+        this.delegate = delegate;
+        this.generation =
+                GENERATIONS.computeIfAbsent(
+                        dataSourceKey(datasourceConfiguration), k -> new AtomicLong());
+        this.quantizationStep = quantizationStep;
+        this.ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+        this.entries =
+                new LinkedHashMap<>(16, 0.75f, true) {
+                    @Override
+                    protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                        return size() > maxSize;
+                    }
+                };
+    }
+
+    /**
+     * Invalidates the cached results of all the queries on the data source, called after writing to
+     * it.
+     */
+    static void invalidate(Map<String, Object> datasourceConfiguration) {
+        AtomicLong generation = GENERATIONS.get(dataSourceKey(datasourceConfiguration));
+        if (generation != null) {
+            generation.incrementAndGet();
+        }
+    }
+
+    private static String dataSourceKey(Map<String, Object> datasourceConfiguration) {
+        return String.valueOf(
+                datasourceConfiguration == null ? null : new TreeMap<>(datasourceConfiguration));
+    }
+
+    @Override
+    public void initialize(DataSourceConfig dataSourceConfig) {
+        delegate.initialize(dataSourceConfig);
+    }
+
+    @Override
+    public List<Map<String, String>> fetchData(String query, List<Object> params) {
+        try {
+            return fetchDataAsync(query, params).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    @Override
+    public CompletableFuture<List<Map<String, String>>> fetchDataAsync(
+            String query, List<Object> params) {
+        return fetchDataAsync(query, params, 0);
+    }
+
+    /** The limit is part of the key, the delegate still applies it on the server side. */
+    @Override
+    public CompletableFuture<List<Map<String, String>>> fetchDataAsync(
+            String query, List<Object> params, int maxResults) {
+        String key = cacheKey(query, params, maxResults);
+        // read before querying, the results of a query concurrent to a write are never fresh
+        long currentGeneration = generation.get();
+        List<Map<String, String>> cached = get(key, currentGeneration);
+        if (cached != null) {
+            hits.incrementAndGet();
+            return CompletableFuture.completedFuture(cached);
+        }
+        misses.incrementAndGet();
+        return delegate.fetchDataAsync(query, params, maxResults)
+                .thenApply(rows -> put(key, rows, currentGeneration));
+    }
+
+    /** The typed cursors are not cached. */
+    @Override
+    public QueryResultCursor executeQuery(String query, List<Object> params, int maxResults) {
+        return delegate.executeQuery(query, params, maxResults);
+    }
+
+    private synchronized List<Map<String, String>> get(String key, long currentGeneration) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.generation() != currentGeneration || System.nanoTime() - entry.expiresAt() > 0) {
+            entries.remove(key);
+            return null;
+        }
+        return entry.rows();
+    }
+
+    private synchronized List<Map<String, String>> put(
+            String key, List<Map<String, String>> rows, long queryGeneration) {
+        List<Map<String, String>> copy = new ArrayList<>(rows.size());
+        for (Map<String, String> row : rows) {
+            copy.add(Collections.unmodifiableMap(new HashMap<>(row)));
+        }
+        List<Map<String, String>> result = Collections.unmodifiableList(copy);
+        if (queryGeneration == generation.get()) {
+            entries.put(key, new Entry(result, queryGeneration, System.nanoTime() + ttlNanos));
+        }
+        return result;
+    }
+
+    String cacheKey(String query, List<Object> params, int maxResults) {
+        StringBuilder key = new StringBuilder();
+        if (maxResults > 0) {
+            key.append(maxResults).append('\u0000');
+        }
+        key.append(query);
+        for (Object param : params) {
+            key.append('\u0000');
+            appendParam(key, param);
+        }
+        return key.toString();
+    }
+
+    private void appendParam(StringBuilder key, Object param) {
+        if (param instanceof float[] floats) {
+            key.append('[');
+            for (float f : floats) {
+                appendComponent(key, f);
+            }
+            key.append(']');
+        } else if (param instanceof double[] doubles) {
+            key.append('[');
+            for (double d : doubles) {
+                appendComponent(key, d);
+            }
+            key.append(']');
+        } else if (param instanceof List<?> list) {
+            key.append('[');
+            for (Object element : list) {
+                if (element instanceof Number number) {
+                    appendComponent(key, number.doubleValue());
+                } else {
+                    appendParam(key, element);
+                    key.append(',');
+                }
+            }
+            key.append(']');
+        } else if (param == null) {
+            key.append("null");
+        } else {
+            // the type is part of the key, "1" and 1 may not give the same results
+            key.append(param.getClass().getSimpleName()).append(':').append(param);
+        }
+    }
+
+    private void appendComponent(StringBuilder key, double value) {
+        if (quantizationStep > 0) {
+            key.append(Math.round(value / quantizationStep));
+        } else {
+            key.append(value);
+        }
+        key.append(',');
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    long getHits() {
+        return hits.get();
+    }
+
+    long getMisses() {
+        return misses.get();
+    }
+
+    @Override
+    public void close() {
+        delegate.close();
+    }
+}
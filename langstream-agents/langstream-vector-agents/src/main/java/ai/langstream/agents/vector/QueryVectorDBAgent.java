@@ -17,8 +17,10 @@ package ai.langstream.agents.vector;
 
 import ai.langstream.ai.agents.GenAIToolKitAgent;
 import ai.langstream.ai.agents.datasource.DataSourceProviderRegistry;
+import ai.langstream.api.runner.code.AbstractAgentCode;
+import ai.langstream.api.runner.code.AgentProcessor;
 import ai.langstream.api.runner.code.Record;
-import ai.langstream.api.runner.code.SingleRecordAgentProcessor;
+import ai.langstream.api.runner.code.RecordSink;
 import com.datastax.oss.streaming.ai.QueryStep;
 import com.datastax.oss.streaming.ai.TransformContext;
 import com.datastax.oss.streaming.ai.datasource.QueryStepDataSource;
@@ -28,22 +30,31 @@ import com.datastax.oss.streaming.ai.model.config.QueryConfig;
 import com.datastax.oss.streaming.ai.util.TransformFunctionUtil;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
 import lombok.extern.slf4j.Slf4j;
 
+/**
+ * Queries a vector database for each record. With the optional {@code cache} configuration (keys
+ * {@code max-size}, {@code ttl-seconds} and {@code quantization-step}) the results of similar
+ * queries are reused, see {@link CachingQueryStepDataSource}.
+ */
 @Slf4j
-public class QueryVectorDBAgent extends SingleRecordAgentProcessor {
+public class QueryVectorDBAgent extends AbstractAgentCode implements AgentProcessor {
 
     private static final ObjectMapper MAPPER =
             new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
 
     private QueryStepDataSource dataSource;
     private QueryStep queryExecutor;
+    private CachingQueryStepDataSource cache;
 
     private Collection<StepPredicatePair> steps;
+    private final AtomicLong errors = new AtomicLong();
 
     @Override
     public void init(Map<String, Object> configuration) {
@@ -54,6 +65,24 @@ public class QueryVectorDBAgent extends SingleRecordAgentProcessor {
         DataSourceConfig dataSourceConfig =
                 MAPPER.convertValue(datasourceConfiguration, DataSourceConfig.class);
         dataSource.initialize(dataSourceConfig);
+        Map<String, Object> cacheConfiguration = (Map<String, Object>) configuration.get("cache");
+        if (cacheConfiguration != null) {
+            cache =
+                    new CachingQueryStepDataSource(
+                            dataSource,
+                            datasourceConfiguration,
+                            Integer.parseInt(
+                                    cacheConfiguration.getOrDefault("max-size", "1000").toString()),
+                            Long.parseLong(
+                                    cacheConfiguration
+                                            .getOrDefault("ttl-seconds", "60")
+                                            .toString()),
+                            Double.parseDouble(
+                                    cacheConfiguration
+                                            .getOrDefault("quantization-step", "0.001")
+                                            .toString()));
+            dataSource = cache;
+        }
 
         configuration.put("type", "query");
         QueryConfig queryConfig = MAPPER.convertValue(configuration, QueryConfig.class);
@@ -61,16 +90,74 @@ public class QueryVectorDBAgent extends SingleRecordAgentProcessor {
         steps = List.of(new StepPredicatePair(queryExecutor, it -> true));
     }
 
+    /**
+     * Queries the data source for all the records of the batch at once, the data sources that
+     * support it run the queries concurrently. If the batch fails the query is run again for each
+     * record, so that only the records that cause the error fail.
+     */
     @Override
-    public List<Record> processRecord(Record record) throws Exception {
-        log.info("Processing record {}", record);
-        TransformContext context = GenAIToolKitAgent.recordToTransformContext(record, true);
-        TransformFunctionUtil.processTransformSteps(context, steps);
-        context.convertMapToStringOrBytes();
-        Optional<Record> recordResult =
-                GenAIToolKitAgent.transformContextToRecord(context, record.headers());
-        log.info("recordResult {}", recordResult);
-        return recordResult.map(List::of).orElseGet(List::of);
+    public void process(List<Record> records, RecordSink recordSink) {
+        List<Record> sourceRecords = new ArrayList<>(records.size());
+        List<TransformContext> contexts = new ArrayList<>(records.size());
+        for (Record record : records) {
+            try {
+                contexts.add(GenAIToolKitAgent.recordToTransformContext(record, true));
+                sourceRecords.add(record);
+            } catch (Throwable error) {
+                emitError(record, error, recordSink);
+            }
+        }
+        if (contexts.isEmpty()) {
+            return;
+        }
+        Map<TransformContext, Throwable> failures =
+                TransformFunctionUtil.processTransformSteps(contexts, steps);
+        for (int i = 0; i < contexts.size(); i++) {
+            Record record = sourceRecords.get(i);
+            try {
+                TransformContext context = contexts.get(i);
+                Throwable failure = failures.get(context);
+                if (failure != null) {
+                    emitError(record, failure, recordSink);
+                    continue;
+                }
+                context.convertMapToStringOrBytes();
+                Optional<Record> recordResult =
+                        GenAIToolKitAgent.transformContextToRecord(context, record.headers());
+                emitResult(record, recordResult.map(List::of).orElseGet(List::of), recordSink);
+            } catch (Throwable error) {
+                emitError(record, error, recordSink);
+            }
+        }
+    }
+
+    private void emitResult(Record record, List<Record> result, RecordSink recordSink) {
+        processed(1, result.size());
+        recordSink.emit(new SourceRecordAndResult(record, result, null));
+    }
+
+    private void emitError(Record record, Throwable error, RecordSink recordSink) {
+        log.error("Error processing record: {}", record, error);
+        errors.incrementAndGet();
+        recordSink.emit(new SourceRecordAndResult(record, null, error));
+    }
+
+    @Override
+    protected Map<String, Object> buildAdditionalInfo() {
+        if (cache != null) {
+            return Map.of(
+                    "errors",
+                    errors.get(),
+                    "cache",
+                    Map.of(
+                            "size",
+                            cache.size(),
+                            "hits",
+                            cache.getHits(),
+                            "misses",
+                            cache.getMisses()));
+        }
+        return Map.of("errors", errors.get());
     }
 
     @Override
@@ -20,18 +20,56 @@ import ai.langstream.api.database.VectorDatabaseWriterProviderRegistry;
 import ai.langstream.api.runner.code.AbstractAgentCode;
 import ai.langstream.api.runner.code.AgentSink;
 import ai.langstream.api.runner.code.Record;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import lombok.extern.slf4j.Slf4j;
 
+/**
+ * Writes the records to a vector database. The records are buffered and written in batches with
+ * {@link VectorDatabaseWriter#upsertBatch(List, Map)}: a batch is flushed when it reaches {@code
+ * batch-size} records or when the oldest record has been waiting for {@code linger-time-ms}. The
+ * written records are committed after each batch.
+ *
+ * <p>The errors are reported to the runtime errors handler for each record. If the records of the
+ * current write fail, the write fails. The failed records of the previous writes are reported with
+ * {@link CommitCallback#fail(Record, Throwable)}, and written again with the next batch when the
+ * errors handler asks for a retry.
+ *
+ * <p>There is no timer: the linger time is only checked when the runtime calls {@link #write(List)}
+ * or {@link #commit()}, once per iteration of its main loop, and the batch is written by the agent
+ * thread. If the source blocks in {@code read()} for longer than {@code linger-time-ms}, the
+ * pending records wait until it returns. Use a {@code batch-size} of 1 when the latency matters
+ * with such a source.
+ */
+@Slf4j
 public class VectorDBSinkAgent extends AbstractAgentCode implements AgentSink {
 
     private VectorDatabaseWriter writer;
+    private Map<String, Object> datasourceConfiguration;
     private CommitCallback callback;
+    private int batchSize;
+    private long lingerTimeMs;
+    private final List<Record> pending = new ArrayList<>();
+    private long firstPendingAt;
+    private Exception fatalError;
 
     @Override
     public void init(Map<String, Object> configuration) throws Exception {
-        Map<String, Object> datasourceConfiguration =
-                (Map<String, Object>) configuration.get("datasource");
+        configuration = new HashMap<>(configuration);
+        // these are not passed to the writer
+        batchSize = Integer.parseInt(configuration.getOrDefault("batch-size", "1").toString());
+        lingerTimeMs =
+                Long.parseLong(configuration.getOrDefault("linger-time-ms", "1000").toString());
+        configuration.remove("batch-size");
+        configuration.remove("linger-time-ms");
+        datasourceConfiguration = (Map<String, Object>) configuration.get("datasource");
         writer = VectorDatabaseWriterProviderRegistry.createWriter(datasourceConfiguration);
         writer.initialise(configuration);
     }
@@ -42,19 +80,123 @@ public class VectorDBSinkAgent extends AbstractAgentCode implements AgentSink {
     @Override
     public void close() throws Exception {
         if (writer != null) {
+            if (!pending.isEmpty() && fatalError == null) {
+                try {
+                    flush(List.of());
+                } catch (Exception error) {
+                    log.warn("Error flushing {} pending records on close", pending.size(), error);
+                }
+            }
             writer.close();
         }
     }
 
     @Override
-    public void write(List<Record> records) throws Exception {
+    public boolean handlesCommit() {
+        return true;
+    }
 
-        // naive implementation, no batching
-        Map<String, Object> context = Map.of();
+    @Override
+    public void write(List<Record> records) throws Exception {
+        checkFatalError();
+        Set<Record> alreadyPending = Collections.newSetFromMap(new IdentityHashMap<>());
+        alreadyPending.addAll(pending);
+        if (pending.isEmpty()) {
+            firstPendingAt = System.currentTimeMillis();
+        }
         for (Record record : records) {
-            writer.upsert(record, context);
-            callback.commit(List.of(record));
+            // in case of retry the records may be still pending
+            if (!alreadyPending.contains(record)) {
+                pending.add(record);
+            }
+        }
+        if (pending.size() >= batchSize || isLingerTimeElapsed()) {
+            flush(records);
+        }
+    }
+
+    /**
+     * Called by the runtime on the main loop after each read of the source, flushes the batch if
+     * the linger time elapsed.
+     */
+    @Override
+    public void commit() throws Exception {
+        checkFatalError();
+        if (!pending.isEmpty() && isLingerTimeElapsed()) {
+            flush(List.of());
+        }
+    }
+
+    private boolean isLingerTimeElapsed() {
+        return System.currentTimeMillis() - firstPendingAt >= lingerTimeMs;
+    }
+
+    private void checkFatalError() throws Exception {
+        if (fatalError != null) {
+            throw fatalError;
+        }
+    }
+
+    private void flush(List<Record> currentRecords) throws Exception {
+        List<Record> batch = new ArrayList<>(pending);
+        pending.clear();
+        List<CompletableFuture<?>> results = writer.upsertBatch(batch, Map.of());
+
+        List<Record> written = new ArrayList<>(batch.size());
+        Map<Record, Throwable> failed = new IdentityHashMap<>();
+        for (int i = 0; i < batch.size(); i++) {
+            try {
+                results.get(i).join();
+                written.add(batch.get(i));
+            } catch (CompletionException error) {
+                failed.put(batch.get(i), error.getCause());
+            }
+        }
+        // even a partial write makes the cached query results stale
+        CachingQueryStepDataSource.invalidate(datasourceConfiguration);
+        if (!written.isEmpty()) {
+            processed(written.size(), 0);
+            callback.commit(written);
+        }
+        if (failed.isEmpty()) {
+            return;
+        }
+
+        Set<Record> current = Collections.newSetFromMap(new IdentityHashMap<>());
+        current.addAll(currentRecords);
+        Throwable currentError = null;
+        for (Map.Entry<Record, Throwable> failure : failed.entrySet()) {
+            Record record = failure.getKey();
+            if (current.contains(record)) {
+                if (currentError == null) {
+                    currentError = failure.getValue();
+                }
+                continue;
+            }
+            // the record was accepted by a previous write, report its own error
+            boolean retry;
+            try {
+                retry = callback.fail(record, failure.getValue());
+            } catch (Exception error) {
+                log.error("Error writing a batch of {} records", batch.size(), error);
+                fatalError = error;
+                throw error;
+            }
+            if (retry) {
+                if (pending.isEmpty()) {
+                    firstPendingAt = System.currentTimeMillis();
+                }
+                pending.add(record);
+            }
+        }
+        if (currentError == null) {
+            return;
+        }
+        // the records of the current write failed, let the errors handler deal with them
+        if (currentError instanceof Exception e) {
+            throw e;
         }
+        throw new RuntimeException(currentError);
     }
 
     @Override
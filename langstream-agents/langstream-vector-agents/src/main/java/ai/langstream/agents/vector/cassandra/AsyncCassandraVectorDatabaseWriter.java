@@ -0,0 +1,358 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.langstream.agents.vector.cassandra;
+
+import ai.langstream.ai.agents.GenAIToolKitAgent;
+import ai.langstream.api.database.VectorDatabaseWriter;
+import ai.langstream.api.runner.code.Record;
+import com.datastax.oss.common.sink.config.TableConfig;
+import com.datastax.oss.driver.api.core.CqlIdentifier;
+import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.cql.BoundStatement;
+import com.datastax.oss.driver.api.core.cql.ColumnDefinition;
+import com.datastax.oss.driver.api.core.cql.ColumnDefinitions;
+import com.datastax.oss.driver.api.core.cql.PreparedStatement;
+import com.datastax.oss.driver.api.core.data.CqlVector;
+import com.datastax.oss.driver.api.core.metadata.schema.ColumnMetadata;
+import com.datastax.oss.driver.api.core.metadata.schema.TableMetadata;
+import com.datastax.oss.driver.api.core.type.CqlVectorType;
+import com.datastax.oss.driver.api.core.type.DataTypes;
+import com.datastax.oss.driver.api.core.type.codec.TypeCodec;
+import com.datastax.oss.streaming.ai.TransformContext;
+import com.datastax.oss.streaming.ai.datasource.CqlSessionFactory;
+import com.datastax.oss.streaming.ai.jstl.JstlEvaluator;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Collectors;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Writes the records with asynchronous prepared statements executed directly by the DataStax
+ * driver, keeping at most {@code max-concurrent-requests} requests in flight. The {@code mapping}
+ * has the same syntax as with the Cassandra sink, for instance {@code
+ * id=value.id,description=value.description}. Records with a null value are deleted, using the
+ * mapping of the primary key columns. The other options of the Cassandra sink, like the TTL or the
+ * timestamp of the writes, are not supported and fail the initialisation.
+ */
+@Slf4j
+class AsyncCassandraVectorDatabaseWriter implements VectorDatabaseWriter {
+
+    private static final int DEFAULT_MAX_CONCURRENT_REQUESTS = 500;
+
+    private static final Set<String> SUPPORTED_OPTIONS =
+            Set.of("datasource", "table", "mapping", "write-mode", "max-concurrent-requests");
+
+    private final Map<String, Object> datasourceConfig;
+    private CqlSession session;
+    private Semaphore inFlightRequests;
+    private PreparedStatement insert;
+    private List<JstlEvaluator<Object>> insertValues;
+    private PreparedStatement delete;
+    private List<JstlEvaluator<Object>> deleteValues;
+
+    AsyncCassandraVectorDatabaseWriter(Map<String, Object> datasourceConfig) {
+        this.datasourceConfig = datasourceConfig;
+    }
+
+    @Override
+    public void initialise(Map<String, Object> agentConfiguration) {
+        checkOptions(agentConfiguration);
+        String table = (String) agentConfiguration.get("table");
+        Map<String, String> mapping =
+                parseMapping(table, (String) agentConfiguration.get("mapping"));
+        int maxConcurrentRequests =
+                Integer.parseInt(
+                        agentConfiguration
+                                .getOrDefault(
+                                        "max-concurrent-requests", DEFAULT_MAX_CONCURRENT_REQUESTS)
+                                .toString());
+        inFlightRequests = new Semaphore(maxConcurrentRequests);
+
+        session = CqlSessionFactory.buildCqlSession(datasourceConfig);
+
+        List<String> terms = new ArrayList<>();
+        Map<String, JstlEvaluator<Object>> evaluators = new HashMap<>();
+        insertValues = new ArrayList<>();
+        mapping.forEach(
+                (column, field) -> {
+                    if (isFunction(field)) {
+                        // a CQL function, like now()
+                        terms.add(field);
+                    } else {
+                        JstlEvaluator<Object> evaluator =
+                                new JstlEvaluator<>(toExpression(field), Object.class);
+                        evaluators.put(column, evaluator);
+                        terms.add("?");
+                        insertValues.add(evaluator);
+                    }
+                });
+        insert =
+                session.prepare(
+                        "INSERT INTO "
+                                + table
+                                + " ("
+                                + String.join(",", mapping.keySet())
+                                + ") VALUES ("
+                                + String.join(",", terms)
+                                + ")");
+
+        TableMetadata tableMetadata = getTableMetadata(table);
+        List<String> primaryKey = new ArrayList<>();
+        deleteValues = new ArrayList<>();
+        for (ColumnMetadata column : tableMetadata.getPrimaryKey()) {
+            String name = column.getName().asCql(true);
+            JstlEvaluator<Object> evaluator = evaluators.get(name);
+            if (evaluator == null) {
+                // deletes are not supported without the full primary key
+                primaryKey = null;
+                break;
+            }
+            primaryKey.add(name);
+            deleteValues.add(evaluator);
+        }
+        if (primaryKey != null) {
+            delete =
+                    session.prepare(
+                            "DELETE FROM "
+                                    + table
+                                    + " WHERE "
+                                    + primaryKey.stream()
+                                            .map(c -> c + "=?")
+                                            .collect(Collectors.joining(" AND ")));
+        }
+    }
+
+    /** Rejects the options of the Cassandra sink that are not implemented by this writer. */
+    static void checkOptions(Map<String, Object> agentConfiguration) {
+        for (String option : agentConfiguration.keySet()) {
+            if (!SUPPORTED_OPTIONS.contains(option)) {
+                throw new IllegalArgumentException(
+                        "Option "
+                                + option
+                                + " is not supported with write-mode: async, the supported"
+                                + " options are "
+                                + SUPPORTED_OPTIONS.stream().sorted().toList());
+            }
+        }
+    }
+
+    @Override
+    public void upsert(Record record, Map<String, Object> context) throws Exception {
+        try {
+            upsertBatch(List.of(record), context).get(0).join();
+        } catch (CompletionException error) {
+            if (error.getCause() instanceof Exception e) {
+                throw e;
+            } else {
+                throw error;
+            }
+        }
+    }
+
+    @Override
+    public List<CompletableFuture<?>> upsertBatch(
+            List<Record> records, Map<String, Object> context) {
+        List<CompletableFuture<?>> results = new ArrayList<>(records.size());
+        for (Record record : records) {
+            results.add(execute(record));
+        }
+        return results;
+    }
+
+    private CompletableFuture<?> execute(Record record) {
+        BoundStatement statement;
+        try {
+            statement = bind(record);
+        } catch (Throwable error) {
+            log.warn("Error mapping record {}: {}", record, error.getMessage());
+            return CompletableFuture.failedFuture(error);
+        }
+        // this blocks the caller when there are too many requests in flight
+        try {
+            inFlightRequests.acquire();
+        } catch (InterruptedException error) {
+            Thread.currentThread().interrupt();
+            return CompletableFuture.failedFuture(error);
+        }
+        try {
+            return session.executeAsync(statement)
+                    .toCompletableFuture()
+                    .whenComplete(
+                            (result, error) -> {
+                                inFlightRequests.release();
+                                if (error != null) {
+                                    log.warn(
+                                            "Error writing record {}: {}\n   statement: {}",
+                                            record,
+                                            error.getMessage(),
+                                            statement.getPreparedStatement().getQuery());
+                                }
+                            });
+        } catch (Throwable error) {
+            inFlightRequests.release();
+            return CompletableFuture.failedFuture(error);
+        }
+    }
+
+    private BoundStatement bind(Record record) {
+        TransformContext transformContext =
+                GenAIToolKitAgent.recordToTransformContext(record, true);
+        PreparedStatement statement;
+        List<JstlEvaluator<Object>> values;
+        if (record.value() == null) {
+            if (delete == null) {
+                throw new IllegalArgumentException(
+                        "Cannot delete a record, the mapping does not contain the primary key");
+            }
+            statement = delete;
+            values = deleteValues;
+        } else {
+            statement = insert;
+            values = insertValues;
+        }
+        ColumnDefinitions variables = statement.getVariableDefinitions();
+        Object[] parameters = new Object[values.size()];
+        for (int i = 0; i < parameters.length; i++) {
+            parameters[i] = adaptValue(variables.get(i), values.get(i).evaluate(transformContext));
+        }
+        return statement.bind(parameters);
+    }
+
+    private static Object adaptValue(ColumnDefinition column, Object value) {
+        if (column.getType() instanceof CqlVectorType vectorType && value instanceof List) {
+            if (vectorType.getSubtype() != DataTypes.FLOAT) {
+                throw new IllegalArgumentException("Only VECTOR<FLOAT,x> is supported");
+            }
+            CqlVector.Builder<Float> builder = CqlVector.builder();
+            for (Object v : (List<Object>) value) {
+                if (v instanceof Number n) {
+                    builder.add(n.floatValue());
+                } else {
+                    builder.add(Float.parseFloat(v + ""));
+                }
+            }
+            return builder.build();
+        }
+        if ((value instanceof String || value instanceof Number)
+                && column.getType() != DataTypes.TEXT
+                && column.getType() != DataTypes.ASCII) {
+            // JSON values are parsed as strings, doubles and ints, convert them like the sink
+            // task does, for instance "1" to an INT column
+            TypeCodec<Object> codec = CqlSessionFactory.CODEC_REGISTRY.codecFor(column.getType());
+            if (!codec.accepts(value)) {
+                return codec.parse(value.toString());
+            }
+        }
+        return value;
+    }
+
+    private TableMetadata getTableMetadata(String table) {
+        int dot = table.indexOf('.');
+        CqlIdentifier keyspace =
+                dot > 0
+                        ? CqlIdentifier.fromCql(table.substring(0, dot))
+                        : session.getKeyspace()
+                                .orElseThrow(
+                                        () ->
+                                                new IllegalArgumentException(
+                                                        "The table must be qualified with the keyspace: "
+                                                                + table));
+        String tableName = dot > 0 ? table.substring(dot + 1) : table;
+        return session.getMetadata()
+                .getKeyspace(keyspace)
+                .flatMap(k -> k.getTable(CqlIdentifier.fromCql(tableName)))
+                .orElseThrow(() -> new IllegalArgumentException("Table " + table + " not found"));
+    }
+
+    /**
+     * Parses the mapping with the parser of the Cassandra sink, so that both write modes accept the
+     * same syntax.
+     *
+     * @return the field of each column, quoted as CQL identifiers
+     */
+    static Map<String, String> parseMapping(String table, String mapping) {
+        if (mapping == null || mapping.isBlank()) {
+            throw new IllegalArgumentException("The mapping is required");
+        }
+        int dot = table.indexOf('.');
+        String keyspaceName = dot > 0 ? table.substring(0, dot) : "";
+        String tableName = dot > 0 ? table.substring(dot + 1) : table;
+        TableConfig tableConfig =
+                new TableConfig(
+                        CassandraWriter.DUMMY_TOPIC,
+                        keyspaceName,
+                        tableName,
+                        Map.of(
+                                TableConfig.getTableSettingPath(
+                                        CassandraWriter.DUMMY_TOPIC,
+                                        keyspaceName,
+                                        tableName,
+                                        TableConfig.MAPPING_OPT),
+                                mapping),
+                        false);
+        Map<String, String> result = new LinkedHashMap<>();
+        tableConfig
+                .getMapping()
+                .forEach((column, field) -> result.put(column.asCql(true), field.asInternal()));
+        return result;
+    }
+
+    private static boolean isFunction(String field) {
+        return field.endsWith("()");
+    }
+
+    /**
+     * @return the expression that evaluates a field of the sink mapping against the record, for
+     *     instance {@code ${value['a']['b']}} for {@code value.a.b}
+     */
+    static String toExpression(String field) {
+        int dot = field.indexOf('.');
+        String root = dot < 0 ? field : field.substring(0, dot);
+        String path = dot < 0 ? "__self" : field.substring(dot + 1);
+        StringBuilder expression = new StringBuilder("${");
+        switch (root) {
+            case "key", "value" -> {
+                expression.append(root);
+                if (!path.equals("__self")) {
+                    for (String name : path.split("\\.")) {
+                        appendProperty(expression, name);
+                    }
+                }
+            }
+            case "header" -> appendProperty(expression.append("properties"), path);
+            default -> throw new IllegalArgumentException("Invalid field in the mapping: " + field);
+        }
+        return expression.append('}').toString();
+    }
+
+    private static void appendProperty(StringBuilder expression, String name) {
+        expression.append("['").append(name.replace("'", "\\'")).append("']");
+    }
+
+    @Override
+    public void close() {
+        if (session != null) {
+            session.close();
+        }
+    }
+}
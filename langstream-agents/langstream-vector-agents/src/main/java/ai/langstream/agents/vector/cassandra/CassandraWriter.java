@@ -26,13 +26,13 @@ import com.datastax.oss.common.sink.AbstractSinkTask;
 import com.datastax.oss.common.sink.config.CassandraSinkConfig;
 import com.datastax.oss.common.sink.util.SinkUtil;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
@@ -42,7 +42,7 @@ import org.apache.kafka.common.TopicPartition;
 @Slf4j
 public class CassandraWriter implements VectorDatabaseWriterProvider {
 
-    private static final String DUMMY_TOPIC = "langstreaminputtopic";
+    static final String DUMMY_TOPIC = "langstreaminputtopic";
 
     @Override
     public boolean supports(Map<String, Object> dataSourceConfig) {
@@ -61,6 +61,9 @@ public class CassandraWriter implements VectorDatabaseWriterProvider {
         private Map<TopicPartition, OffsetAndMetadata> failureOffsets;
         private final AbstractSinkTask processor = new SinkTaskProcessorImpl();
 
+        /** Set with write-mode: async, the records are written without the sink task. */
+        private AsyncCassandraVectorDatabaseWriter asyncWriter;
+
         public CassandraVectorDatabaseWriter(Map<String, Object> datasourceConfig) {
             log.debug(
                     "CassandraSinkTask starting with DataSource configuration: {}",
@@ -71,9 +74,22 @@ public class CassandraWriter implements VectorDatabaseWriterProvider {
 
         @Override
         public void initialise(Map<String, Object> agentConfiguration) {
+            String writeMode = (String) agentConfiguration.getOrDefault("write-mode", "sink");
+            if ("async".equals(writeMode)) {
+                asyncWriter = new AsyncCassandraVectorDatabaseWriter(datasourceConfig);
+                asyncWriter.initialise(agentConfiguration);
+                return;
+            }
             Map<String, String> configuration = new HashMap<>();
             agentConfiguration.forEach(
                     (k, v) -> {
+                        if ("write-mode".equals(k)) {
+                            return;
+                        }
+                        if ("max-concurrent-requests".equals(k)) {
+                            // the option of the sink
+                            k = "maxConcurrentRequests";
+                        }
                         if (v instanceof String || v instanceof Number || v instanceof Boolean) {
                             configuration.put(k, v.toString());
                         } else if (v == null) {
@@ -136,18 +152,14 @@ public class CassandraWriter implements VectorDatabaseWriterProvider {
             processor.start(configuration);
         }
 
-        private final AtomicReference<CompletableFuture<?>> currentRecordStatus =
-                new AtomicReference<>();
-
         @Override
         public void upsert(Record record, Map<String, Object> context) throws Exception {
-            // we must handle one record at a time
-            // so we block until the record is processed
-            CompletableFuture<?> handle = new CompletableFuture();
-            currentRecordStatus.set(handle);
-            processor.put(List.of(new LangStreamSinkRecordAdapter(record)));
+            if (asyncWriter != null) {
+                asyncWriter.upsert(record, context);
+                return;
+            }
             try {
-                handle.join();
+                upsertBatch(List.of(record), context).get(0).join();
             } catch (CompletionException error) {
                 if (error.getCause() instanceof Exception e) {
                     throw e;
@@ -157,8 +169,30 @@ public class CassandraWriter implements VectorDatabaseWriterProvider {
             }
         }
 
+        /**
+         * The sink task executes the statements of the batch concurrently, each record is completed
+         * by its own handle in {@link SinkTaskProcessorImpl}.
+         */
+        @Override
+        public List<CompletableFuture<?>> upsertBatch(
+                List<Record> records, Map<String, Object> context) {
+            if (asyncWriter != null) {
+                return asyncWriter.upsertBatch(records, context);
+            }
+            List<LangStreamSinkRecordAdapter> sinkRecords =
+                    records.stream().map(LangStreamSinkRecordAdapter::new).toList();
+            processor.put(new ArrayList<>(sinkRecords));
+            return sinkRecords.stream()
+                    .<CompletableFuture<?>>map(LangStreamSinkRecordAdapter::getHandle)
+                    .toList();
+        }
+
         @Override
         public void close() {
+            if (asyncWriter != null) {
+                asyncWriter.close();
+                return;
+            }
             processor.stop();
         }
 
@@ -175,8 +209,7 @@ public class CassandraWriter implements VectorDatabaseWriterProvider {
 
             @Override
             protected void handleSuccess(AbstractSinkRecord abstractRecord) {
-                Record record = ((LangStreamSinkRecordAdapter) abstractRecord).getRecord();
-                currentRecordStatus.get().complete(null);
+                ((LangStreamSinkRecordAdapter) abstractRecord).getHandle().complete(null);
             }
 
             @Override
@@ -196,7 +229,9 @@ public class CassandraWriter implements VectorDatabaseWriterProvider {
                 // This can happen in multiple invocations of this callback concurrently, so
                 // we perform these checks/updates in a synchronized block. Presumably failures
                 // don't occur that often, so we don't have to be very fancy here.
-                Record record = ((LangStreamSinkRecordAdapter) abstractRecord).getRecord();
+                LangStreamSinkRecordAdapter sinkRecord =
+                        (LangStreamSinkRecordAdapter) abstractRecord;
+                Record record = sinkRecord.getRecord();
                 CassandraSinkConfig.IgnoreErrorsPolicy ignoreErrors =
                         processor.getInstanceState().getConfig().getIgnoreErrors();
                 boolean driverFailure = cql != null;
@@ -213,9 +248,9 @@ public class CassandraWriter implements VectorDatabaseWriterProvider {
                 if (ignoreErrors == CassandraSinkConfig.IgnoreErrorsPolicy.NONE
                         || (ignoreErrors == CassandraSinkConfig.IgnoreErrorsPolicy.DRIVER
                                 && !driverFailure)) {
-                    currentRecordStatus.get().completeExceptionally(e);
+                    sinkRecord.getHandle().completeExceptionally(e);
                 } else {
-                    currentRecordStatus.get().complete(null);
+                    sinkRecord.getHandle().complete(null);
                 }
 
                 failCounter.run();
@@ -237,6 +272,7 @@ public class CassandraWriter implements VectorDatabaseWriterProvider {
         private static class LangStreamSinkRecordAdapter implements AbstractSinkRecord {
 
             @Getter private final Record record;
+            @Getter private final CompletableFuture<?> handle = new CompletableFuture<>();
 
             public LangStreamSinkRecordAdapter(Record record) {
                 this.record = record;
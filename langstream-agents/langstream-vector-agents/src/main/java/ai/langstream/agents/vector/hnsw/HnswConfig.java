@@ -0,0 +1,51 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.langstream.agents.vector.hnsw;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Data;
+
+@Data
+public final class HnswConfig {
+
+    /** The writers and the data sources with the same index name share the same index. */
+    @JsonProperty(value = "index-name", required = true)
+    private String indexName;
+
+    @JsonProperty(value = "dimensions", required = true)
+    private int dimensions;
+
+    /** One of cosine, dot-product or euclidean. */
+    @JsonProperty("metric")
+    private String metric = "cosine";
+
+    /** The directory where the index is persisted, if not set the index is kept in memory. */
+    @JsonProperty("path")
+    private String path;
+
+    /** Number of neighbours per node on the upper layers, the base layer has twice as many. */
+    @JsonProperty("m")
+    private int m = 16;
+
+    @JsonProperty("ef-construction")
+    private int efConstruction = 100;
+
+    @JsonProperty("ef-search")
+    private int efSearch = 50;
+
+    @JsonProperty("initial-capacity")
+    private int initialCapacity = 1024;
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.langstream.agents.vector.hnsw;
+
+import ai.langstream.ai.agents.datasource.DataSourceProvider;
+import com.datastax.oss.streaming.ai.datasource.QueryResultCursor;
+import com.datastax.oss.streaming.ai.datasource.QueryStepDataSource;
+import com.datastax.oss.streaming.ai.model.config.DataSourceConfig;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import lombok.Data;
+import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Queries an in-process {@link HnswIndex}. The query is a JSON document, like for Pinecone, with
+ * the parameters replacing the question marks:
+ *
+ * <p>{"vector": ?, "topK": 5, "filter": {"genre": "comedy"}, "includeValues": false}
+ *
+ * <p>Each result has the id, the similarity and the metadata of the vector.
+ */
+@Slf4j
+public class HnswDataSource implements DataSourceProvider {
+
+    static final ObjectMapper MAPPER =
+            new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    @Override
+    public boolean supports(Map<String, Object> dataSourceConfig) {
+        return "hnsw".equals(dataSourceConfig.get("service"));
+    }
+
+    @Override
+    public QueryStepDataSource createDataSourceImplementation(
+            Map<String, Object> dataSourceConfig) {
+        return new HnswQueryStepDataSource(MAPPER.convertValue(dataSourceConfig, HnswConfig.class));
+    }
+
+    private static class HnswQueryStepDataSource implements QueryStepDataSource {
+
+        private final HnswConfig config;
+        private HnswIndex index;
+
+        HnswQueryStepDataSource(HnswConfig config) {
+            this.config = config;
+        }
+
+        @Override
+        @SneakyThrows
+        public void initialize(DataSourceConfig dataSourceConfig) {
+            index = HnswIndex.acquire(config);
+        }
+
+        @Override
+        public List<Map<String, String>> fetchData(String query, List<Object> params) {
+            return fetchData(query, params, 0);
+        }
+
+        @Override
+        public CompletableFuture<List<Map<String, String>>> fetchDataAsync(
+                String query, List<Object> params, int maxResults) {
+            try {
+                return CompletableFuture.completedFuture(fetchData(query, params, maxResults));
+            } catch (Throwable error) {
+                return CompletableFuture.failedFuture(error);
+            }
+        }
+
+        private List<Map<String, String>> fetchData(
+                String query, List<Object> params, int maxResults) {
+            List<Map<String, String>> results = new ArrayList<>();
+            for (Map<String, Object> row : search(query, params, maxResults)) {
+                Map<String, String> result = new HashMap<>();
+                row.forEach((k, v) -> result.put(k, v != null ? v.toString() : null));
+                results.add(result);
+            }
+            return results;
+        }
+
+        @Override
+        public QueryResultCursor executeQuery(String query, List<Object> params, int maxResults) {
+            return QueryResultCursor.of(search(query, params, maxResults));
+        }
+
+        @SneakyThrows
+        private List<Map<String, Object>> search(
+                String query, List<Object> params, int maxResults) {
+            Query parsedQuery = MAPPER.readValue(interpolate(query, params), Query.class);
+            if (parsedQuery.vector == null) {
+                throw new IllegalArgumentException("The query must contain a vector");
+            }
+            float[] vector = new float[parsedQuery.vector.size()];
+            for (int i = 0; i < vector.length; i++) {
+                vector[i] = parsedQuery.vector.get(i);
+            }
+            int topK = maxResults > 0 ? Math.min(maxResults, parsedQuery.topK) : parsedQuery.topK;
+            List<HnswIndex.SearchResult> matches =
+                    index.search(vector, topK, parsedQuery.filter, parsedQuery.includeValues);
+            List<Map<String, Object>> results = new ArrayList<>(matches.size());
+            for (HnswIndex.SearchResult match : matches) {
+                Map<String, Object> row = new LinkedHashMap<>();
+                if (parsedQuery.includeMetadata && match.metadata() != null) {
+                    row.putAll(match.metadata());
+                }
+                row.put("id", match.id());
+                row.put("similarity", match.similarity());
+                if (match.vector() != null) {
+                    List<Float> values = new ArrayList<>(match.vector().length);
+                    for (float v : match.vector()) {
+                        values.add(v);
+                    }
+                    row.put("vector", values);
+                }
+                results.add(row);
+            }
+            return results;
+        }
+
+        @Override
+        @SneakyThrows
+        public void close() {
+            if (index != null) {
+                index.close();
+                index = null;
+            }
+        }
+    }
+
+    static String interpolate(String query, List<Object> params) throws Exception {
+        if (query == null || !query.contains("?")) {
+            return query;
+        }
+        StringBuilder result = new StringBuilder();
+        int start = 0;
+        for (Object value : params) {
+            int questionMark = query.indexOf('?', start);
+            if (questionMark < 0) {
+                break;
+            }
+            result.append(query, start, questionMark).append(MAPPER.writeValueAsString(value));
+            start = questionMark + 1;
+        }
+        return result.append(query.substring(start)).toString();
+    }
+
+    @Data
+    public static final class Query {
+        @JsonProperty("vector")
+        private List<Float> vector;
+
+        @JsonProperty("filter")
+        private Map<String, Object> filter;
+
+        @JsonProperty("topK")
+        private int topK = 1;
+
+        @JsonProperty("includeMetadata")
+        private boolean includeMetadata = true;
+
+        @JsonProperty("includeValues")
+        private boolean includeValues = false;
+    }
+}
@@ -0,0 +1,629 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.langstream.agents.vector.hnsw;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * An in-process Hierarchical Navigable Small World graph (Malkov and Yashunin) for approximate
+ * nearest neighbour search. The vectors are kept off-heap in a {@link VectorStorage}, the graph and
+ * the metadata on heap.
+ *
+ * <p>When a path is configured the vectors are memory mapped from {@code vectors.bin} and every
+ * upsert and delete is appended to {@code index.log}; the graph is rebuilt from the log when the
+ * index is opened. Updates and deletes leave a tombstone in the graph, the tombstones are still
+ * used to navigate but they are never returned. When the tombstones outnumber the live vectors (and
+ * the initial capacity), the index is compacted: the live vectors are copied to a new {@code
+ * vectors.bin} and {@code index.log}, and the graph is rebuilt.
+ *
+ * <p>The vectors are stored as they are written, with the cosine metric the norms are kept on heap
+ * to compute the similarity.
+ *
+ * <p>The instances are shared by index name in the JVM, so a vector-db-sink and a query-vector-db
+ * agent running in the same process see the same index.
+ */
+@Slf4j
+final class HnswIndex implements Closeable {
+
+    private static final ObjectMapper MAPPER =
+            new ObjectMapper().setSerializationInclusion(JsonInclude.Include.NON_NULL);
+
+    private static final Map<String, HnswIndex> OPEN_INDEXES = new HashMap<>();
+
+    private static final String VECTORS_FILE = "vectors.bin";
+    private static final String LOG_FILE = "index.log";
+    private static final String COMPACTION_SUFFIX = ".compact";
+
+    private final HnswConfig config;
+    private final Metric metric;
+    private final int m;
+    private final double levelMultiplier;
+    private final Path directory;
+    private VectorStorage vectors;
+    private BufferedWriter logWriter;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Random random = new Random(42);
+
+    private int[][][] links;
+    private String[] ids;
+    private Map<String, Object>[] metadata;
+    private float[] inverseNorms;
+    private final BitSet deleted = new BitSet();
+    private final Map<String, Integer> nodesById = new HashMap<>();
+    private int size;
+    private int entryPoint = -1;
+    private int maxLevel = -1;
+    private int references;
+
+    enum Metric {
+        COSINE,
+        DOT_PRODUCT,
+        EUCLIDEAN;
+
+        static Metric of(String name) {
+            return switch (name.toLowerCase()) {
+                case "cosine" -> COSINE;
+                case "dot-product", "dot" -> DOT_PRODUCT;
+                case "euclidean", "l2" -> EUCLIDEAN;
+                default -> throw new IllegalArgumentException("Unsupported metric " + name);
+            };
+        }
+    }
+
+    record SearchResult(
+            String id, float similarity, Map<String, Object> metadata, float[] vector) {}
+
+    private record Candidate(int node, float similarity) {}
+
+    private record LogEntry(String id, Integer node, Map<String, Object> metadata) {}
+
+    static HnswIndex acquire(HnswConfig config) throws IOException {
+        synchronized (OPEN_INDEXES) {
+            HnswIndex index = OPEN_INDEXES.get(config.getIndexName());
+            if (index == null) {
+                index = new HnswIndex(config);
+                OPEN_INDEXES.put(config.getIndexName(), index);
+            } else if (index.config.getDimensions() != config.getDimensions()
+                    || !Objects.equals(index.config.getPath(), config.getPath())) {
+                throw new IllegalArgumentException(
+                        "Index "
+                                + config.getIndexName()
+                                + " is already open with a different configuration");
+            }
+            index.references++;
+            return index;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private HnswIndex(HnswConfig config) throws IOException {
+        if (config.getDimensions() <= 0) {
+            throw new IllegalArgumentException("dimensions is required");
+        }
+        this.config = config;
+        this.metric = Metric.of(config.getMetric());
+        this.m = config.getM();
+        this.levelMultiplier = 1 / Math.log(Math.max(2, m));
+        int capacity = Math.max(1, config.getInitialCapacity());
+        this.links = new int[capacity][][];
+        this.ids = new String[capacity];
+        this.metadata = new Map[capacity];
+        this.inverseNorms = new float[capacity];
+        if (config.getPath() != null) {
+            directory = Path.of(config.getPath());
+            Files.createDirectories(directory);
+            recoverCompaction();
+            vectors =
+                    new VectorStorage(
+                            config.getDimensions(), directory.resolve(VECTORS_FILE), capacity);
+            Path logFile = directory.resolve(LOG_FILE);
+            if (Files.exists(logFile)) {
+                replay(logFile);
+            }
+            logWriter = openLog();
+        } else {
+            directory = null;
+            vectors = new VectorStorage(config.getDimensions(), null, capacity);
+            logWriter = null;
+        }
+        compactIfNeeded();
+    }
+
+    private BufferedWriter openLog() throws IOException {
+        return Files.newBufferedWriter(
+                directory.resolve(LOG_FILE),
+                StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Completes or discards a compaction interrupted by a crash. The compacted log is moved first,
+     * so if it is already in place the compacted vectors must follow it.
+     */
+    private void recoverCompaction() throws IOException {
+        Path compactedVectors = directory.resolve(VECTORS_FILE + COMPACTION_SUFFIX);
+        Path compactedLog = directory.resolve(LOG_FILE + COMPACTION_SUFFIX);
+        if (Files.exists(compactedLog)) {
+            Files.deleteIfExists(compactedLog);
+            Files.deleteIfExists(compactedVectors);
+        } else if (Files.exists(compactedVectors)) {
+            Files.move(
+                    compactedVectors,
+                    directory.resolve(VECTORS_FILE),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+
+    private void replay(Path logFile) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(logFile, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                LogEntry entry = MAPPER.readValue(line, LogEntry.class);
+                if (entry.node() == null) {
+                    markDeleted(entry.id());
+                } else {
+                    add(entry.id(), entry.node(), entry.metadata());
+                }
+            }
+        }
+        log.info("Loaded {} vectors of index {}", nodesById.size(), config.getIndexName());
+    }
+
+    void upsert(String id, float[] vector, Map<String, Object> metadata) throws IOException {
+        Objects.requireNonNull(id, "id is required");
+        lock.writeLock().lock();
+        try {
+            int node = size;
+            vectors.set(node, vector);
+            if (logWriter != null) {
+                logWriter.write(MAPPER.writeValueAsString(new LogEntry(id, node, metadata)));
+                logWriter.newLine();
+            }
+            add(id, node, metadata);
+            compactIfNeeded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void delete(String id) throws IOException {
+        lock.writeLock().lock();
+        try {
+            if (logWriter != null) {
+                logWriter.write(MAPPER.writeValueAsString(new LogEntry(id, null, null)));
+                logWriter.newLine();
+            }
+            markDeleted(id);
+            compactIfNeeded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** Makes the writes durable, when the index is persisted. */
+    void flush() throws IOException {
+        lock.writeLock().lock();
+        try {
+            if (logWriter != null) {
+                logWriter.flush();
+                vectors.force();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    int size() {
+        lock.readLock().lock();
+        try {
+            return nodesById.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param filter the metadata values the results must have, may be null
+     */
+    List<SearchResult> search(
+            float[] query, int k, Map<String, Object> filter, boolean includeVectors) {
+        if (query.length != config.getDimensions()) {
+            throw new IllegalArgumentException(
+                    "Expected a vector of "
+                            + config.getDimensions()
+                            + " dimensions, got "
+                            + query.length);
+        }
+        if (metric == Metric.COSINE) {
+            query = scale(query, inverseNorm(query));
+        }
+        lock.readLock().lock();
+        try {
+            if (entryPoint < 0 || k <= 0) {
+                return List.of();
+            }
+            int ef = Math.max(config.getEfSearch(), k);
+            while (true) {
+                List<Candidate> candidates = searchFromEntryPoint(query, ef);
+                List<SearchResult> results = new ArrayList<>(k);
+                for (Candidate candidate : candidates) {
+                    int node = candidate.node();
+                    if (deleted.get(node) || !matches(metadata[node], filter)) {
+                        continue;
+                    }
+                    results.add(
+                            new SearchResult(
+                                    ids[node],
+                                    toSimilarity(candidate.similarity()),
+                                    metadata[node],
+                                    includeVectors ? vectors.get(node) : null));
+                    if (results.size() == k) {
+                        return results;
+                    }
+                }
+                // tombstones and filters can leave fewer than k results, widen the search
+                if (ef >= size) {
+                    return results;
+                }
+                ef = Math.min(size, ef * 2);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private List<Candidate> searchFromEntryPoint(float[] query, int ef) {
+        Candidate entry = new Candidate(entryPoint, similarity(entryPoint, query));
+        for (int level = maxLevel; level > 0; level--) {
+            entry = searchLayer(query, List.of(entry), 1, level).get(0);
+        }
+        return searchLayer(query, List.of(entry), ef, 0);
+    }
+
+    private static boolean matches(Map<String, Object> metadata, Map<String, Object> filter) {
+        if (filter == null || filter.isEmpty()) {
+            return true;
+        }
+        if (metadata == null) {
+            return false;
+        }
+        for (Map.Entry<String, Object> condition : filter.entrySet()) {
+            Object value = metadata.get(condition.getKey());
+            if (value == null || !Objects.equals(value.toString(), condition.getValue() + "")) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void add(String id, int node, Map<String, Object> nodeMetadata) {
+        ensureCapacity(node + 1);
+        Integer previous = nodesById.put(id, node);
+        if (previous != null) {
+            deleted.set(previous);
+        }
+        ids[node] = id;
+        metadata[node] = nodeMetadata;
+        float[] vector = vectors.get(node);
+        inverseNorms[node] = inverseNorm(vector);
+        size = Math.max(size, node + 1);
+        insert(node, metric == Metric.COSINE ? scale(vector, inverseNorms[node]) : vector);
+    }
+
+    /** The vector of a node, normalized with the cosine metric. */
+    private float[] normalizedVector(int node) {
+        float[] vector = vectors.get(node);
+        return metric == Metric.COSINE ? scale(vector, inverseNorms[node]) : vector;
+    }
+
+    private void compactIfNeeded() throws IOException {
+        int tombstones = size - nodesById.size();
+        if (tombstones > Math.max(nodesById.size(), config.getInitialCapacity())) {
+            compact();
+        }
+    }
+
+    /**
+     * Copies the live vectors to a new storage and a new log, then rebuilds the graph from them.
+     * With a persisted index the new files are written next to the current ones and moved in place
+     * when complete, see {@link #recoverCompaction()}.
+     */
+    @SuppressWarnings("unchecked")
+    private void compact() throws IOException {
+        int[] live = nodesById.values().stream().mapToInt(Integer::intValue).sorted().toArray();
+        log.info(
+                "Compacting index {}, {} live vectors out of {}",
+                config.getIndexName(),
+                live.length,
+                size);
+        int capacity = Math.max(config.getInitialCapacity(), live.length);
+        String[] liveIds = new String[live.length];
+        Map<String, Object>[] liveMetadata = new Map[live.length];
+        VectorStorage compacted;
+        if (directory != null) {
+            Path compactedVectors = directory.resolve(VECTORS_FILE + COMPACTION_SUFFIX);
+            Path compactedLog = directory.resolve(LOG_FILE + COMPACTION_SUFFIX);
+            Files.deleteIfExists(compactedVectors);
+            try (VectorStorage storage =
+                            new VectorStorage(
+                                    config.getDimensions(),
+                                    compactedVectors,
+                                    config.getInitialCapacity());
+                    BufferedWriter writer =
+                            Files.newBufferedWriter(
+                                    compactedLog,
+                                    StandardCharsets.UTF_8,
+                                    StandardOpenOption.CREATE,
+                                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                for (int i = 0; i < live.length; i++) {
+                    int node = live[i];
+                    storage.set(i, vectors.get(node));
+                    writer.write(
+                            MAPPER.writeValueAsString(new LogEntry(ids[node], i, metadata[node])));
+                    writer.newLine();
+                    liveIds[i] = ids[node];
+                    liveMetadata[i] = metadata[node];
+                }
+            }
+            logWriter.close();
+            vectors.close();
+            Files.move(
+                    compactedLog,
+                    directory.resolve(LOG_FILE),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            Files.move(
+                    compactedVectors,
+                    directory.resolve(VECTORS_FILE),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            compacted =
+                    new VectorStorage(
+                            config.getDimensions(),
+                            directory.resolve(VECTORS_FILE),
+                            config.getInitialCapacity());
+            logWriter = openLog();
+        } else {
+            compacted =
+                    new VectorStorage(config.getDimensions(), null, config.getInitialCapacity());
+            for (int i = 0; i < live.length; i++) {
+                int node = live[i];
+                compacted.set(i, vectors.get(node));
+                liveIds[i] = ids[node];
+                liveMetadata[i] = metadata[node];
+            }
+            vectors.close();
+        }
+
+        vectors = compacted;
+        links = new int[capacity][][];
+        ids = new String[capacity];
+        metadata = new Map[capacity];
+        inverseNorms = new float[capacity];
+        deleted.clear();
+        nodesById.clear();
+        size = 0;
+        entryPoint = -1;
+        maxLevel = -1;
+        for (int i = 0; i < live.length; i++) {
+            add(liveIds[i], i, liveMetadata[i]);
+        }
+    }
+
+    private void markDeleted(String id) {
+        Integer node = nodesById.remove(id);
+        if (node != null) {
+            deleted.set(node);
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > links.length) {
+            int newCapacity = Math.max(capacity, links.length * 2);
+            links = Arrays.copyOf(links, newCapacity);
+            ids = Arrays.copyOf(ids, newCapacity);
+            metadata = Arrays.copyOf(metadata, newCapacity);
+            inverseNorms = Arrays.copyOf(inverseNorms, newCapacity);
+        }
+    }
+
+    private void insert(int node, float[] vector) {
+        int level = (int) (-Math.log(1 - random.nextDouble()) * levelMultiplier);
+        links[node] = new int[level + 1][];
+        Arrays.fill(links[node], new int[0]);
+        if (entryPoint < 0) {
+            entryPoint = node;
+            maxLevel = level;
+            return;
+        }
+
+        Candidate entry = new Candidate(entryPoint, similarity(entryPoint, vector));
+        for (int l = maxLevel; l > level; l--) {
+            entry = searchLayer(vector, List.of(entry), 1, l).get(0);
+        }
+        List<Candidate> entryPoints = List.of(entry);
+        for (int l = Math.min(level, maxLevel); l >= 0; l--) {
+            List<Candidate> found = searchLayer(vector, entryPoints, config.getEfConstruction(), l);
+            int maxConnections = maxConnections(l);
+            int[] neighbours =
+                    found.stream().limit(maxConnections).mapToInt(Candidate::node).toArray();
+            links[node][l] = neighbours;
+            for (int neighbour : neighbours) {
+                connect(neighbour, node, l);
+            }
+            entryPoints = found;
+        }
+        if (level > maxLevel) {
+            maxLevel = level;
+            entryPoint = node;
+        }
+    }
+
+    private int maxConnections(int level) {
+        return level == 0 ? 2 * m : m;
+    }
+
+    /** Adds a link from node to neighbour, keeping only the closest neighbours. */
+    private void connect(int node, int neighbour, int level) {
+        int[] current = links[node][level];
+        int maxConnections = maxConnections(level);
+        if (current.length < maxConnections) {
+            int[] updated = Arrays.copyOf(current, current.length + 1);
+            updated[current.length] = neighbour;
+            links[node][level] = updated;
+            return;
+        }
+        float[] vector = normalizedVector(node);
+        List<Candidate> candidates = new ArrayList<>(current.length + 1);
+        for (int n : current) {
+            candidates.add(new Candidate(n, similarity(n, vector)));
+        }
+        candidates.add(new Candidate(neighbour, similarity(neighbour, vector)));
+        candidates.sort(Comparator.comparing(Candidate::similarity).reversed());
+        links[node][level] =
+                candidates.stream().limit(maxConnections).mapToInt(Candidate::node).toArray();
+    }
+
+    /**
+     * @return the ef nodes closest to the query found from the entry points, the closest first
+     */
+    private List<Candidate> searchLayer(
+            float[] query, List<Candidate> entryPoints, int ef, int level) {
+        BitSet visited = new BitSet(size);
+        PriorityQueue<Candidate> candidates =
+                new PriorityQueue<>(Comparator.comparing(Candidate::similarity).reversed());
+        PriorityQueue<Candidate> results =
+                new PriorityQueue<>(Comparator.comparing(Candidate::similarity));
+        for (Candidate entry : entryPoints) {
+            if (!visited.get(entry.node())) {
+                visited.set(entry.node());
+                candidates.add(entry);
+                results.add(entry);
+                if (results.size() > ef) {
+                    results.poll();
+                }
+            }
+        }
+        while (!candidates.isEmpty()) {
+            Candidate current = candidates.poll();
+            if (results.size() >= ef && current.similarity() < results.peek().similarity()) {
+                break;
+            }
+            int[][] nodeLinks = links[current.node()];
+            if (level >= nodeLinks.length) {
+                continue;
+            }
+            for (int neighbour : nodeLinks[level]) {
+                if (visited.get(neighbour)) {
+                    continue;
+                }
+                visited.set(neighbour);
+                float similarity = similarity(neighbour, query);
+                if (results.size() < ef || similarity > results.peek().similarity()) {
+                    Candidate candidate = new Candidate(neighbour, similarity);
+                    candidates.add(candidate);
+                    results.add(candidate);
+                    if (results.size() > ef) {
+                        results.poll();
+                    }
+                }
+            }
+        }
+        List<Candidate> sorted = new ArrayList<>(results);
+        sorted.sort(Comparator.comparing(Candidate::similarity).reversed());
+        return sorted;
+    }
+
+    /** The higher the closer, for every metric. */
+    private float similarity(int node, float[] query) {
+        return switch (metric) {
+            case COSINE -> vectors.dotProduct(node, query) * inverseNorms[node];
+            case DOT_PRODUCT -> vectors.dotProduct(node, query);
+            case EUCLIDEAN -> -vectors.squaredDistance(node, query);
+        };
+    }
+
+    private float toSimilarity(float internal) {
+        if (metric == Metric.EUCLIDEAN) {
+            return (float) (1 / (1 + Math.sqrt(-internal)));
+        }
+        return internal;
+    }
+
+    private static float inverseNorm(float[] vector) {
+        double norm = 0;
+        for (float v : vector) {
+            norm += v * v;
+        }
+        return norm == 0 ? 1 : (float) (1 / Math.sqrt(norm));
+    }
+
+    private static float[] scale(float[] vector, float factor) {
+        float[] result = new float[vector.length];
+        for (int i = 0; i < vector.length; i++) {
+            result[i] = vector[i] * factor;
+        }
+        return result;
+    }
+
+    /** Releases a reference, the index is closed when it is not used anymore. */
+    @Override
+    public void close() throws IOException {
+        synchronized (OPEN_INDEXES) {
+            if (--references > 0) {
+                return;
+            }
+            OPEN_INDEXES.remove(config.getIndexName());
+        }
+        lock.writeLock().lock();
+        try {
+            if (logWriter != null) {
+                logWriter.close();
+            }
+            vectors.close();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+}
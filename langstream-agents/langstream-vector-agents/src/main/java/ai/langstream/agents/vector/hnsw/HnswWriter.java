@@ -0,0 +1,155 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.langstream.agents.vector.hnsw;
+
+import ai.langstream.ai.agents.GenAIToolKitAgent;
+import ai.langstream.api.database.VectorDatabaseWriter;
+import ai.langstream.api.database.VectorDatabaseWriterProvider;
+import ai.langstream.api.runner.code.Record;
+import com.datastax.oss.streaming.ai.TransformContext;
+import com.datastax.oss.streaming.ai.jstl.JstlEvaluator;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Writes to an in-process {@link HnswIndex}, with the same configuration as the Pinecone writer:
+ * vector.id, vector.vector and vector.metadata.* are expressions evaluated against the record. A
+ * record with a null value deletes the vector.
+ */
+@Slf4j
+public class HnswWriter implements VectorDatabaseWriterProvider {
+
+    @Override
+    public boolean supports(Map<String, Object> dataSourceConfig) {
+        return "hnsw".equals(dataSourceConfig.get("service"));
+    }
+
+    @Override
+    public VectorDatabaseWriter createImplementation(Map<String, Object> datasourceConfig) {
+        return new HnswVectorDatabaseWriter(
+                HnswDataSource.MAPPER.convertValue(datasourceConfig, HnswConfig.class));
+    }
+
+    private static class HnswVectorDatabaseWriter implements VectorDatabaseWriter {
+
+        private final HnswConfig config;
+        private HnswIndex index;
+        private JstlEvaluator<String> idFunction;
+        private JstlEvaluator<List> vectorFunction;
+        private final Map<String, JstlEvaluator<Object>> metadataFunctions = new HashMap<>();
+
+        HnswVectorDatabaseWriter(HnswConfig config) {
+            this.config = config;
+        }
+
+        @Override
+        public void initialise(Map<String, Object> agentConfiguration) throws Exception {
+            idFunction = buildEvaluator(agentConfiguration, "vector.id", String.class);
+            vectorFunction = buildEvaluator(agentConfiguration, "vector.vector", List.class);
+            if (idFunction == null || vectorFunction == null) {
+                throw new IllegalArgumentException("vector.id and vector.vector are required");
+            }
+            agentConfiguration.forEach(
+                    (key, value) -> {
+                        if (key.startsWith("vector.metadata.")) {
+                            metadataFunctions.put(
+                                    key.substring("vector.metadata.".length()),
+                                    buildEvaluator(agentConfiguration, key, Object.class));
+                        }
+                    });
+            index = HnswIndex.acquire(config);
+        }
+
+        @Override
+        public void upsert(Record record, Map<String, Object> context) throws Exception {
+            write(record);
+            index.flush();
+        }
+
+        /** Writes all the records and makes them durable at once. */
+        @Override
+        public List<CompletableFuture<?>> upsertBatch(
+                List<Record> records, Map<String, Object> context) {
+            List<CompletableFuture<?>> results = new ArrayList<>(records.size());
+            for (Record record : records) {
+                try {
+                    write(record);
+                    results.add(new CompletableFuture<>());
+                } catch (Throwable error) {
+                    results.add(CompletableFuture.failedFuture(error));
+                }
+            }
+            try {
+                index.flush();
+                results.forEach(result -> result.complete(null));
+            } catch (IOException error) {
+                results.forEach(result -> result.completeExceptionally(error));
+            }
+            return results;
+        }
+
+        private void write(Record record) throws IOException {
+            TransformContext transformContext =
+                    GenAIToolKitAgent.recordToTransformContext(record, true);
+            String id = idFunction.evaluate(transformContext);
+            if (record.value() == null) {
+                index.delete(id);
+                return;
+            }
+            List<?> vector = vectorFunction.evaluate(transformContext);
+            if (vector == null) {
+                throw new IllegalArgumentException("The vector of record " + id + " is null");
+            }
+            float[] values = new float[vector.size()];
+            for (int i = 0; i < values.length; i++) {
+                Object value = vector.get(i);
+                if (value instanceof Number n) {
+                    values[i] = n.floatValue();
+                } else if (value instanceof String s) {
+                    values[i] = Float.parseFloat(s);
+                } else {
+                    throw new IllegalArgumentException("only vectors of floats are supported");
+                }
+            }
+            Map<String, Object> metadata = new HashMap<>();
+            metadataFunctions.forEach(
+                    (key, function) -> metadata.put(key, function.evaluate(transformContext)));
+            index.upsert(id, values, metadata);
+        }
+
+        @Override
+        public void close() throws Exception {
+            if (index != null) {
+                index.close();
+                index = null;
+            }
+        }
+    }
+
+    private static <T> JstlEvaluator<T> buildEvaluator(
+            Map<String, Object> agentConfiguration, String param, Class<T> type) {
+        String expression = agentConfiguration.getOrDefault(param, "").toString();
+        if (expression.isEmpty()) {
+            return null;
+        }
+        return new JstlEvaluator<>("${" + expression + "}", type);
+    }
+}
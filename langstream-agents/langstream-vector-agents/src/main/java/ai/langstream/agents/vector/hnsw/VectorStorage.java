@@ -0,0 +1,147 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.langstream.agents.vector.hnsw;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Fixed size float vectors stored off-heap, one slot per node. The slots are split in segments of
+ * the same size, either direct buffers or regions of a memory mapped file. Growing the storage adds
+ * segments and never maps again the existing ones, so the storage is not limited by the 2GB of a
+ * single buffer. The mappings are released by the garbage collector after {@link #close()}.
+ */
+final class VectorStorage implements Closeable {
+
+    /** The maximum size of a segment. */
+    static final int MAX_SEGMENT_BYTES = 1 << 30;
+
+    private final int dimensions;
+    private final int bytesPerVector;
+    private final int slotsPerSegment;
+    private final FileChannel channel;
+    private final List<ByteBuffer> segments = new ArrayList<>();
+
+    VectorStorage(int dimensions, Path file, int slotsPerSegment) throws IOException {
+        this.dimensions = dimensions;
+        this.bytesPerVector = dimensions * Float.BYTES;
+        this.slotsPerSegment =
+                Math.max(1, Math.min(slotsPerSegment, MAX_SEGMENT_BYTES / bytesPerVector));
+        if (file != null) {
+            channel =
+                    FileChannel.open(
+                            file,
+                            StandardOpenOption.CREATE,
+                            StandardOpenOption.READ,
+                            StandardOpenOption.WRITE);
+            ensureCapacity((int) Math.min(Integer.MAX_VALUE, channel.size() / bytesPerVector));
+        } else {
+            channel = null;
+        }
+    }
+
+    private void ensureCapacity(int slots) throws IOException {
+        while ((long) segments.size() * slotsPerSegment < slots) {
+            long bytes = (long) slotsPerSegment * bytesPerVector;
+            ByteBuffer segment;
+            if (channel != null) {
+                // mapping beyond the end of the file grows the file
+                segment =
+                        channel.map(FileChannel.MapMode.READ_WRITE, segments.size() * bytes, bytes);
+            } else {
+                segment = ByteBuffer.allocateDirect((int) bytes);
+            }
+            segments.add(segment.order(ByteOrder.nativeOrder()));
+        }
+    }
+
+    private ByteBuffer segment(int slot) {
+        return segments.get(slot / slotsPerSegment);
+    }
+
+    private int offset(int slot) {
+        return (slot % slotsPerSegment) * bytesPerVector;
+    }
+
+    void set(int slot, float[] vector) throws IOException {
+        if (vector.length != dimensions) {
+            throw new IllegalArgumentException(
+                    "Expected a vector of " + dimensions + " dimensions, got " + vector.length);
+        }
+        ensureCapacity(slot + 1);
+        ByteBuffer segment = segment(slot);
+        int offset = offset(slot);
+        for (int i = 0; i < dimensions; i++) {
+            segment.putFloat(offset + i * Float.BYTES, vector[i]);
+        }
+    }
+
+    float[] get(int slot) {
+        float[] vector = new float[dimensions];
+        ByteBuffer segment = segment(slot);
+        int offset = offset(slot);
+        for (int i = 0; i < dimensions; i++) {
+            vector[i] = segment.getFloat(offset + i * Float.BYTES);
+        }
+        return vector;
+    }
+
+    float dotProduct(int slot, float[] query) {
+        ByteBuffer segment = segment(slot);
+        int offset = offset(slot);
+        float result = 0;
+        for (int i = 0; i < dimensions; i++) {
+            result += segment.getFloat(offset + i * Float.BYTES) * query[i];
+        }
+        return result;
+    }
+
+    float squaredDistance(int slot, float[] query) {
+        ByteBuffer segment = segment(slot);
+        int offset = offset(slot);
+        float result = 0;
+        for (int i = 0; i < dimensions; i++) {
+            float diff = segment.getFloat(offset + i * Float.BYTES) - query[i];
+            result += diff * diff;
+        }
+        return result;
+    }
+
+    void force() {
+        for (ByteBuffer segment : segments) {
+            if (segment instanceof MappedByteBuffer mapped) {
+                mapped.force();
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        force();
+        segments.clear();
+        if (channel != null) {
+            channel.close();
+        }
+    }
+}
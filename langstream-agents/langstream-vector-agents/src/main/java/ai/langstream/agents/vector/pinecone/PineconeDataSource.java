@@ -16,16 +16,21 @@
 package ai.langstream.agents.vector.pinecone;
 
 import ai.langstream.ai.agents.datasource.DataSourceProvider;
+import com.datastax.oss.streaming.ai.datasource.QueryResultCursor;
 import com.datastax.oss.streaming.ai.datasource.QueryStepDataSource;
 import com.datastax.oss.streaming.ai.model.config.DataSourceConfig;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.google.protobuf.ListValue;
 import com.google.protobuf.Struct;
 import com.google.protobuf.Value;
-import io.grpc.StatusRuntimeException;
+import io.grpc.CallOptions;
+import io.grpc.stub.StreamObserver;
 import io.pinecone.PineconeClient;
 import io.pinecone.PineconeClientConfig;
 import io.pinecone.PineconeConnection;
@@ -34,7 +39,9 @@ import io.pinecone.proto.QueryRequest;
 import io.pinecone.proto.QueryResponse;
 import io.pinecone.proto.QueryVector;
 import io.pinecone.proto.SparseValues;
+import io.pinecone.proto.VectorServiceGrpc;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
@@ -43,6 +50,11 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import lombok.Data;
 import lombok.SneakyThrows;
@@ -78,6 +90,9 @@ public class PineconeDataSource implements DataSourceProvider {
 
         @JsonProperty("server-side-timeout-sec")
         private int serverSideTimeoutSec = 10;
+
+        @JsonProperty("max-concurrent-requests")
+        private int maxConcurrentRequests = 16;
     }
 
     @Override
@@ -92,10 +107,17 @@ public class PineconeDataSource implements DataSourceProvider {
     private static class PinecodeQueryStepDataSource implements QueryStepDataSource {
 
         private final PineconeConfig clientConfig;
+        private final Map<String, QueryTemplate> templates = new ConcurrentHashMap<>();
+        private final Semaphore inFlightRequests;
+        private final HttpClient httpClient;
         private PineconeConnection connection;
+        private VectorServiceGrpc.VectorServiceStub asyncStub;
 
         public PinecodeQueryStepDataSource(PineconeConfig clientConfig) {
             this.clientConfig = clientConfig;
+            this.inFlightRequests = new Semaphore(clientConfig.getMaxConcurrentRequests());
+            this.httpClient =
+                    clientConfig.getEndpoint() != null ? HttpClient.newHttpClient() : null;
         }
 
         @Override
@@ -111,147 +133,217 @@ public class PineconeDataSource implements DataSourceProvider {
                     new PineconeConnectionConfig().withIndexName(clientConfig.getIndexName());
             if (clientConfig.getEndpoint() == null) {
                 connection = pineconeClient.connect(connectionConfig);
+                asyncStub = newAsyncStub(connection.getBlockingStub());
+            }
+        }
+
+        /**
+         * The channel of the blocking stub carries the api key, the message size limits are call
+         * options of the blocking stub and must be copied.
+         */
+        private static VectorServiceGrpc.VectorServiceStub newAsyncStub(
+                VectorServiceGrpc.VectorServiceBlockingStub blockingStub) {
+            VectorServiceGrpc.VectorServiceStub stub =
+                    VectorServiceGrpc.newStub(blockingStub.getChannel());
+            CallOptions callOptions = blockingStub.getCallOptions();
+            if (callOptions.getMaxInboundMessageSize() != null) {
+                stub = stub.withMaxInboundMessageSize(callOptions.getMaxInboundMessageSize());
+            }
+            if (callOptions.getMaxOutboundMessageSize() != null) {
+                stub = stub.withMaxOutboundMessageSize(callOptions.getMaxOutboundMessageSize());
             }
+            return stub;
         }
 
         @Override
         public List<Map<String, String>> fetchData(String query, List<Object> params) {
-            try {
-                Query parsedQuery;
-                try {
-                    log.info("Query {}", query);
-                    params.forEach(
-                            param ->
-                                    log.info(
-                                            "Param {} {}",
-                                            param,
-                                            param != null ? param.getClass() : null));
-                    // interpolate the query
-                    query = interpolate(query, params);
-                    log.info("Interpolated query {}", query);
-
-                    parsedQuery = MAPPER.readValue(query, Query.class);
-                } catch (Exception e) {
-                    throw new RuntimeException(e);
-                }
-                log.info("Parsed query: {}", parsedQuery);
-
-                QueryVector.Builder builder = QueryVector.newBuilder();
-
-                if (parsedQuery.vector != null) {
-                    builder.addAllValues(parsedQuery.vector);
-                }
-
-                if (parsedQuery.sparseVector != null) {
-                    builder.setSparseValues(
-                            SparseValues.newBuilder()
-                                    .addAllValues(parsedQuery.sparseVector.getValues())
-                                    .addAllIndices(parsedQuery.sparseVector.getIndices())
-                                    .build());
-                }
-
-                if (parsedQuery.filter != null && !parsedQuery.filter.isEmpty()) {
-                    builder.setFilter(buildFilter(parsedQuery.filter));
-                }
+            return fetchData(query, params, 0);
+        }
 
-                if (parsedQuery.namespace != null) {
-                    builder.setNamespace(parsedQuery.namespace);
+        private List<Map<String, String>> fetchData(
+                String query, List<Object> params, int maxResults) {
+            try {
+                return fetchDataAsync(query, params, maxResults).join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException runtimeException) {
+                    throw runtimeException;
                 }
+                throw new RuntimeException(e.getCause());
+            }
+        }
 
-                QueryVector queryVector = builder.build();
-                QueryRequest.Builder requestBuilder = QueryRequest.newBuilder();
-
-                if (parsedQuery.namespace != null) {
-                    requestBuilder.setNamespace(parsedQuery.namespace);
-                }
+        /** The limit is pushed down as the topK of the query. */
+        @Override
+        public QueryResultCursor executeQuery(String query, List<Object> params, int maxResults) {
+            return QueryResultCursor.of(fetchData(query, params, maxResults));
+        }
 
-                QueryRequest batchQueryRequest =
-                        requestBuilder
-                                .addQueries(queryVector)
-                                .setTopK(parsedQuery.topK)
-                                .setIncludeMetadata(parsedQuery.includeMetadata)
-                                .setIncludeValues(parsedQuery.includeValues)
-                                .build();
+        @Override
+        public CompletableFuture<List<Map<String, String>>> fetchDataAsync(
+                String query, List<Object> params) {
+            return fetchDataAsync(query, params, 0);
+        }
 
-                List<Map<String, String>> results;
+        /**
+         * Sends the query with the asynchronous stub, at most max-concurrent-requests queries are
+         * in flight: the caller blocks when the limit is reached. The limit lowers the topK of the
+         * query.
+         */
+        @Override
+        public CompletableFuture<List<Map<String, String>>> fetchDataAsync(
+                String query, List<Object> params, int maxResults) {
+            Query parsedQuery;
+            try {
+                parsedQuery = templates.computeIfAbsent(query, QueryTemplate::new).bind(params);
+            } catch (Exception e) {
+                return CompletableFuture.failedFuture(new RuntimeException(e));
+            }
+            if (maxResults > 0 && maxResults < parsedQuery.topK) {
+                parsedQuery.topK = maxResults;
+            }
+            if (log.isDebugEnabled()) {
+                log.debug("Parsed query: {}", parsedQuery);
+            }
+            QueryRequest batchQueryRequest = buildRequest(parsedQuery);
 
+            try {
+                inFlightRequests.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return CompletableFuture.failedFuture(new RuntimeException(e));
+            }
+            CompletableFuture<List<Map<String, String>>> result;
+            try {
                 if (clientConfig.getEndpoint() == null) {
-
-                    QueryResponse queryResponse =
-                            connection.getBlockingStub().query(batchQueryRequest);
-
-                    if (log.isDebugEnabled()) {
-                        log.debug("Query response: {}", queryResponse);
-                    }
-                    log.info("Query response: {}", queryResponse);
-
-                    results = new ArrayList<>();
-                    queryResponse
-                            .getResultsList()
-                            .forEach(
-                                    res ->
-                                            res.getMatchesList()
-                                                    .forEach(
-                                                            match -> {
-                                                                String id = match.getId();
-                                                                Map<String, String> row =
-                                                                        new HashMap<>();
-
-                                                                if (parsedQuery.includeMetadata) {
-                                                                    // put all the metadata
-                                                                    if (match.getMetadata()
-                                                                            != null) {
-                                                                        match.getMetadata()
-                                                                                .getFieldsMap()
-                                                                                .forEach(
-                                                                                        (key,
-                                                                                                value) -> {
-                                                                                            if (log
-                                                                                                    .isDebugEnabled()) {
-                                                                                                log
-                                                                                                        .debug(
-                                                                                                                "Key: {}, value: {} {}",
-                                                                                                                key,
-                                                                                                                value,
-                                                                                                                value
-                                                                                                                                != null
-                                                                                                                        ? value
-                                                                                                                                .getClass()
-                                                                                                                        : null);
-                                                                                            }
-                                                                                            Object
-                                                                                                    converted =
-                                                                                                            valueToObject(
-                                                                                                                    value);
-                                                                                            row.put(
-                                                                                                    key,
-                                                                                                    converted
-                                                                                                                    != null
-                                                                                                            ? converted
-                                                                                                                    .toString()
-                                                                                                            : null);
-                                                                                        });
-                                                                    }
-                                                                }
-                                                                row.put("id", id);
-                                                                results.add(row);
-                                                            }));
+                    result = query(batchQueryRequest).thenApply(r -> toRows(r, parsedQuery));
                 } else {
-                    HttpClient client = HttpClient.newHttpClient();
                     HttpRequest request =
                             HttpRequest.newBuilder(URI.create(clientConfig.getEndpoint()))
                                     .POST(
                                             HttpRequest.BodyPublishers.ofString(
                                                     batchQueryRequest.toString()))
                                     .build();
-                    String body = client.send(request, HttpResponse.BodyHandlers.ofString()).body();
-                    log.info("Mock result {}", body);
-                    results = MAPPER.readValue(body, new TypeReference<>() {});
+                    result =
+                            httpClient
+                                    .sendAsync(request, HttpResponse.BodyHandlers.ofString())
+                                    .thenApply(
+                                            response -> {
+                                                log.info("Mock result {}", response.body());
+                                                try {
+                                                    return MAPPER.readValue(
+                                                            response.body(),
+                                                            new TypeReference<>() {});
+                                                } catch (IOException e) {
+                                                    throw new UncheckedIOException(e);
+                                                }
+                                            });
                 }
-                return results;
-            } catch (IOException | StatusRuntimeException | InterruptedException e) {
-                throw new RuntimeException(e);
+            } catch (RuntimeException e) {
+                inFlightRequests.release();
+                return CompletableFuture.failedFuture(e);
             }
+            return result.whenComplete((r, e) -> inFlightRequests.release());
+        }
+
+        private CompletableFuture<QueryResponse> query(QueryRequest request) {
+            CompletableFuture<QueryResponse> result = new CompletableFuture<>();
+            // the deadline is per call
+            asyncStub
+                    .withDeadlineAfter(clientConfig.getServerSideTimeoutSec(), TimeUnit.SECONDS)
+                    .query(
+                            request,
+                            new StreamObserver<>() {
+                                @Override
+                                public void onNext(QueryResponse value) {
+                                    result.complete(value);
+                                }
+
+                                @Override
+                                public void onError(Throwable error) {
+                                    result.completeExceptionally(error);
+                                }
+
+                                @Override
+                                public void onCompleted() {}
+                            });
+            return result;
+        }
+
+        private QueryRequest buildRequest(Query parsedQuery) {
+            QueryVector.Builder builder = QueryVector.newBuilder();
+
+            if (parsedQuery.vector != null) {
+                builder.addAllValues(parsedQuery.vector);
+            }
+
+            if (parsedQuery.sparseVector != null) {
+                builder.setSparseValues(
+                        SparseValues.newBuilder()
+                                .addAllValues(parsedQuery.sparseVector.getValues())
+                                .addAllIndices(parsedQuery.sparseVector.getIndices())
+                                .build());
+            }
+
+            if (parsedQuery.filter != null && !parsedQuery.filter.isEmpty()) {
+                builder.setFilter(buildFilter(parsedQuery.filter));
+            }
+
+            if (parsedQuery.namespace != null) {
+                builder.setNamespace(parsedQuery.namespace);
+            }
+
+            QueryVector queryVector = builder.build();
+            QueryRequest.Builder requestBuilder = QueryRequest.newBuilder();
+
+            if (parsedQuery.namespace != null) {
+                requestBuilder.setNamespace(parsedQuery.namespace);
+            }
+
+            return requestBuilder
+                    .addQueries(queryVector)
+                    .setTopK(parsedQuery.topK)
+                    .setIncludeMetadata(parsedQuery.includeMetadata)
+                    .setIncludeValues(parsedQuery.includeValues)
+                    .build();
+        }
+
+        private static List<Map<String, String>> toRows(
+                QueryResponse queryResponse, Query parsedQuery) {
+            if (log.isDebugEnabled()) {
+                log.debug("Query response: {}", queryResponse);
+            }
+            List<Map<String, String>> results = new ArrayList<>();
+            queryResponse
+                    .getResultsList()
+                    .forEach(
+                            res ->
+                                    res.getMatchesList()
+                                            .forEach(
+                                                    match -> {
+                                                        Map<String, String> row = new HashMap<>();
+                                                        if (parsedQuery.includeMetadata
+                                                                && match.getMetadata() != null) {
+                                                            // put all the metadata
+                                                            match.getMetadata()
+                                                                    .getFieldsMap()
+                                                                    .forEach(
+                                                                            (key, value) -> {
+                                                                                Object converted =
+                                                                                        valueToObject(
+                                                                                                value);
+                                                                                row.put(
+                                                                                        key,
+                                                                                        converted
+                                                                                                        != null
+                                                                                                ? converted
+                                                                                                        .toString()
+                                                                                                : null);
+                                                                            });
+                                                        }
+                                                        row.put("id", match.getId());
+                                                        results.add(row);
+                                                    }));
+            return results;
         }
 
         static String interpolate(String query, List<Object> array) {
@@ -309,6 +401,72 @@ public class PineconeDataSource implements DataSourceProvider {
         }
     }
 
+    /**
+     * A query with the parameters replaced by placeholders, parsed once. Binding the parameters
+     * copies the JSON tree instead of formatting and parsing the whole query again. If the query
+     * cannot be parsed with the placeholders, for instance because there is a question mark in a
+     * string, the parameters are interpolated in the text for each call like before.
+     */
+    static final class QueryTemplate {
+        private static final String PLACEHOLDER = "\u0000param:";
+
+        private final String query;
+        private final JsonNode template;
+
+        QueryTemplate(String query) {
+            this.query = query;
+            JsonNode parsed = null;
+            if (query != null) {
+                StringBuilder withPlaceholders = new StringBuilder();
+                int parameter = 0;
+                for (int i = 0; i < query.length(); i++) {
+                    char c = query.charAt(i);
+                    if (c == '?') {
+                        withPlaceholders
+                                .append("\"")
+                                .append(PLACEHOLDER.replace("\u0000", "\\u0000"))
+                                .append(parameter++)
+                                .append('"');
+                    } else {
+                        withPlaceholders.append(c);
+                    }
+                }
+                try {
+                    parsed = MAPPER.readTree(withPlaceholders.toString());
+                } catch (IOException e) {
+                    log.debug("Cannot parse query template {}", query, e);
+                }
+            }
+            this.template = parsed;
+        }
+
+        Query bind(List<Object> params) throws IOException {
+            if (template == null) {
+                return MAPPER.readValue(
+                        PinecodeQueryStepDataSource.interpolate(query, params), Query.class);
+            }
+            return MAPPER.treeToValue(bind(template, params), Query.class);
+        }
+
+        private static JsonNode bind(JsonNode node, List<Object> params) {
+            if (node.isTextual() && node.textValue().startsWith(PLACEHOLDER)) {
+                int index = Integer.parseInt(node.textValue().substring(PLACEHOLDER.length()));
+                return index < params.size() ? MAPPER.valueToTree(params.get(index)) : node;
+            } else if (node.isObject()) {
+                ObjectNode copy = MAPPER.createObjectNode();
+                node.fields()
+                        .forEachRemaining(e -> copy.set(e.getKey(), bind(e.getValue(), params)));
+                return copy;
+            } else if (node.isArray()) {
+                ArrayNode copy = MAPPER.createArrayNode();
+                node.forEach(e -> copy.add(bind(e, params)));
+                return copy;
+            }
+            // the value nodes are immutable
+            return node;
+        }
+    }
+
     /**
      * JSON model for Pinecone querys.
      *
@@ -31,9 +31,12 @@ import io.pinecone.PineconeConnectionConfig;
 import io.pinecone.proto.UpsertRequest;
 import io.pinecone.proto.UpsertResponse;
 import io.pinecone.proto.Vector;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 import lombok.extern.slf4j.Slf4j;
 
@@ -55,6 +58,9 @@ public class PineconeWriter implements VectorDatabaseWriterProvider {
 
     private static class PineconeVectorDatabaseWriter implements VectorDatabaseWriter {
 
+        // Pinecone recommends to upsert at most 100 vectors per request
+        private static final int MAX_VECTORS_PER_REQUEST = 100;
+
         private PineconeConnection connection;
         private JstlEvaluator idFunction;
         private JstlEvaluator namespaceFunction;
@@ -99,7 +105,72 @@ public class PineconeWriter implements VectorDatabaseWriterProvider {
 
         @Override
         public void upsert(Record record, Map<String, Object> context) {
+            NamespacedVector vector = toVector(record);
+            upsert(vector.namespace(), List.of(vector.vector()));
+        }
+
+        /**
+         * Upserts the vectors with as few requests as possible: an UpsertRequest targets a single
+         * namespace, so the vectors are grouped by namespace and sent in chunks of {@link
+         * #MAX_VECTORS_PER_REQUEST}. If a request fails all the records of the request fail.
+         */
+        @Override
+        public List<CompletableFuture<?>> upsertBatch(
+                List<Record> records, Map<String, Object> context) {
+            List<CompletableFuture<?>> results = new ArrayList<>(records.size());
+            Map<String, List<Integer>> recordsByNamespace = new LinkedHashMap<>();
+            List<Vector> vectors = new ArrayList<>(records.size());
+            for (int i = 0; i < records.size(); i++) {
+                CompletableFuture<?> result = new CompletableFuture<>();
+                results.add(result);
+                try {
+                    NamespacedVector vector = toVector(records.get(i));
+                    vectors.add(vector.vector());
+                    recordsByNamespace
+                            .computeIfAbsent(vector.namespace(), k -> new ArrayList<>())
+                            .add(i);
+                } catch (Throwable error) {
+                    vectors.add(null);
+                    result.completeExceptionally(error);
+                }
+            }
+
+            recordsByNamespace.forEach(
+                    (namespace, indexes) -> {
+                        for (int start = 0;
+                                start < indexes.size();
+                                start += MAX_VECTORS_PER_REQUEST) {
+                            List<Integer> chunk =
+                                    indexes.subList(
+                                            start,
+                                            Math.min(
+                                                    indexes.size(),
+                                                    start + MAX_VECTORS_PER_REQUEST));
+                            try {
+                                upsert(namespace, chunk.stream().map(vectors::get).toList());
+                                chunk.forEach(i -> results.get(i).complete(null));
+                            } catch (Throwable error) {
+                                chunk.forEach(i -> results.get(i).completeExceptionally(error));
+                            }
+                        }
+                    });
+            return results;
+        }
+
+        private void upsert(String namespace, List<Vector> vectors) {
+            UpsertRequest.Builder builder = UpsertRequest.newBuilder().addAllVectors(vectors);
+
+            if (namespace != null) {
+                builder.setNamespace(namespace);
+            }
+            UpsertRequest upsertRequest = builder.build();
 
+            UpsertResponse upsertResponse = connection.getBlockingStub().upsert(upsertRequest);
+
+            log.info("Result {}", upsertResponse);
+        }
+
+        private NamespacedVector toVector(Record record) {
             TransformContext transformContext =
                     GenAIToolKitAgent.recordToTransformContext(record, true);
             String id = idFunction != null ? (String) idFunction.evaluate(transformContext) : null;
@@ -154,18 +225,10 @@ public class PineconeWriter implements VectorDatabaseWriterProvider {
                             .addAllValues(vectorFloat)
                             .setMetadata(metadataStruct)
                             .build();
-
-            UpsertRequest.Builder builder = UpsertRequest.newBuilder().addVectors(v1);
-
-            if (namespace != null) {
-                builder.setNamespace(namespace);
-            }
-            UpsertRequest upsertRequest = builder.build();
-
-            UpsertResponse upsertResponse = connection.getBlockingStub().upsert(upsertRequest);
-
-            log.info("Result {}", upsertResponse);
+            return new NamespacedVector(namespace, v1);
         }
+
+        private record NamespacedVector(String namespace, Vector vector) {}
     }
 
     private static JstlEvaluator buildEvaluator(
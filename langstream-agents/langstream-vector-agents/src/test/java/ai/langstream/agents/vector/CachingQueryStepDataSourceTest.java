@@ -0,0 +1,197 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.langstream.agents.vector;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import ai.langstream.api.runner.code.AgentCodeRegistry;
+import ai.langstream.api.runner.code.AgentProcessor;
+import ai.langstream.api.runner.code.Record;
+import ai.langstream.api.runner.code.SimpleRecord;
+import com.datastax.oss.streaming.ai.datasource.QueryStepDataSource;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+class CachingQueryStepDataSourceTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @Test
+    void testSimilarVectorsShareTheEntry() {
+        AtomicInteger queries = new AtomicInteger();
+        CachingQueryStepDataSource cache =
+                new CachingQueryStepDataSource(
+                        countingDataSource(queries), Map.of("service", "test-1"), 10, 60, 0.001);
+        String query = "{\"vector\": ?, \"filter\": {\"genre\": ?}}";
+
+        cache.fetchData(query, List.of(List.of(0.1f, 0.2f), "comedy"));
+        cache.fetchData(query, List.of(List.of(0.10002f, 0.19998f), "comedy"));
+        cache.fetchData(query, List.of(new float[] {0.1f, 0.2f}, "comedy"));
+        assertEquals(1, queries.get());
+
+        cache.fetchData(query, List.of(List.of(0.1f, 0.3f), "comedy"));
+        cache.fetchData(query, List.of(List.of(0.1f, 0.2f), "drama"));
+        assertEquals(3, queries.get());
+        assertEquals(2, cache.getHits());
+        assertEquals(3, cache.getMisses());
+    }
+
+    @Test
+    void testBoundsAndInvalidation() {
+        AtomicInteger queries = new AtomicInteger();
+        Map<String, Object> datasource = Map.of("service", "test-2");
+        CachingQueryStepDataSource cache =
+                new CachingQueryStepDataSource(countingDataSource(queries), datasource, 2, 60, 0);
+        for (int i = 0; i < 3; i++) {
+            cache.fetchData("select ?", List.of(i));
+        }
+        assertEquals(2, cache.size());
+        cache.fetchData("select ?", List.of(2));
+        assertEquals(3, queries.get());
+
+        CachingQueryStepDataSource.invalidate(Map.of("service", "other"));
+        cache.fetchData("select ?", List.of(2));
+        assertEquals(3, queries.get());
+
+        CachingQueryStepDataSource.invalidate(new HashMap<>(datasource));
+        cache.fetchData("select ?", List.of(2));
+        assertEquals(4, queries.get());
+    }
+
+    @Test
+    void testSinkInvalidatesTheQueryAgent() throws Exception {
+        Map<String, Object> datasource = new HashMap<>();
+        datasource.put("service", "hnsw");
+        datasource.put("index-name", "cache-invalidation");
+        datasource.put("dimensions", 2);
+
+        VectorDBSinkAgent sink =
+                (VectorDBSinkAgent)
+                        new AgentCodeRegistry().getAgentCode("vector-db-sink").agentCode();
+        Map<String, Object> sinkConfiguration = new HashMap<>();
+        sinkConfiguration.put("datasource", datasource);
+        sinkConfiguration.put("vector.id", "key.id");
+        sinkConfiguration.put("vector.vector", "value.embeddings");
+        sink.init(sinkConfiguration);
+        sink.start();
+        sink.setCommitCallback(records -> {});
+        sink.write(List.of(record("1")));
+
+        QueryVectorDBAgent agent =
+                (QueryVectorDBAgent)
+                        new AgentCodeRegistry().getAgentCode("query-vector-db").agentCode();
+        Map<String, Object> configuration = new HashMap<>();
+        configuration.put("datasource", new HashMap<>(datasource));
+        configuration.put("query", "{\"vector\": ?, \"topK\": 10}");
+        configuration.put("fields", List.of("value.embeddings"));
+        configuration.put("output-field", "value.related");
+        configuration.put("cache", Map.of("max-size", 10, "ttl-seconds", 60));
+        agent.init(configuration);
+        agent.start();
+
+        assertEquals(1, related(process(agent, record("q"))).size());
+        assertEquals(1, related(process(agent, record("q"))).size());
+
+        sink.write(List.of(record("2")));
+        assertEquals(2, related(process(agent, record("q"))).size());
+
+        agent.close();
+        sink.close();
+    }
+
+    @Test
+    void testOnlyFirstQueriesAreCached() throws Exception {
+        Map<String, Object> datasource = new HashMap<>();
+        datasource.put("service", "hnsw");
+        datasource.put("index-name", "cache-only-first");
+        datasource.put("dimensions", 2);
+
+        VectorDBSinkAgent sink =
+                (VectorDBSinkAgent)
+                        new AgentCodeRegistry().getAgentCode("vector-db-sink").agentCode();
+        Map<String, Object> sinkConfiguration = new HashMap<>();
+        sinkConfiguration.put("datasource", datasource);
+        sinkConfiguration.put("vector.id", "key.id");
+        sinkConfiguration.put("vector.vector", "value.embeddings");
+        sink.init(sinkConfiguration);
+        sink.start();
+        sink.setCommitCallback(records -> {});
+        sink.write(List.of(record("1"), record("2")));
+
+        QueryVectorDBAgent agent =
+                (QueryVectorDBAgent)
+                        new AgentCodeRegistry().getAgentCode("query-vector-db").agentCode();
+        Map<String, Object> configuration = new HashMap<>();
+        configuration.put("datasource", new HashMap<>(datasource));
+        configuration.put("query", "{\"vector\": ?, \"topK\": 10}");
+        configuration.put("fields", List.of("value.embeddings"));
+        configuration.put("output-field", "value.related");
+        configuration.put("only-first", true);
+        configuration.put("cache", Map.of("max-size", 10, "ttl-seconds", 60));
+        agent.init(configuration);
+        agent.start();
+
+        assertTrue(firstRelated(process(agent, record("q"))).containsKey("id"));
+        assertTrue(firstRelated(process(agent, record("q"))).containsKey("id"));
+        Map<?, ?> cache = (Map<?, ?>) agent.buildAdditionalInfo().get("cache");
+        assertEquals(1L, cache.get("hits"));
+        assertEquals(1L, cache.get("misses"));
+
+        agent.close();
+        sink.close();
+    }
+
+    private static List<Record> process(QueryVectorDBAgent agent, Record record) {
+        List<AgentProcessor.SourceRecordAndResult> results = new ArrayList<>();
+        agent.process(List.of(record), results::add);
+        assertEquals(1, results.size());
+        assertNull(results.get(0).error());
+        return results.get(0).resultRecords();
+    }
+
+    private static Map<?, ?> firstRelated(List<Record> results) throws Exception {
+        Map<String, Object> value = MAPPER.readValue(results.get(0).value().toString(), Map.class);
+        return (Map<?, ?>) value.get("related");
+    }
+
+    private static List<?> related(List<Record> results) throws Exception {
+        Map<String, Object> value = MAPPER.readValue(results.get(0).value().toString(), Map.class);
+        return (List<?>) value.get("related");
+    }
+
+    private static Record record(String id) throws Exception {
+        return SimpleRecord.of(
+                "{\"id\": \"" + id + "\"}",
+                MAPPER.writeValueAsString(Map.of("embeddings", List.of(0.5f, 0.5f))));
+    }
+
+    private static QueryStepDataSource countingDataSource(AtomicInteger queries) {
+        return new QueryStepDataSource() {
+            @Override
+            public List<Map<String, String>> fetchData(String query, List<Object> params) {
+                queries.incrementAndGet();
+                return List.of(Map.of("id", String.valueOf(params.get(0))));
+            }
+        };
+    }
+}
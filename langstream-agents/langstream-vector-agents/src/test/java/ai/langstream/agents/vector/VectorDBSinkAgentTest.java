@@ -0,0 +1,215 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.langstream.agents.vector;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import ai.langstream.api.database.VectorDatabaseWriter;
+import ai.langstream.api.database.VectorDatabaseWriterProvider;
+import ai.langstream.api.runner.code.AgentSink;
+import ai.langstream.api.runner.code.Record;
+import ai.langstream.api.runner.code.SimpleRecord;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class VectorDBSinkAgentTest {
+
+    static final List<List<Record>> BATCHES = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    void clear() {
+        BATCHES.clear();
+    }
+
+    @Test
+    void testBatchSize() throws Exception {
+        List<Record> committed = new ArrayList<>();
+        VectorDBSinkAgent agent = createAgent(3, 60000, committed);
+
+        agent.write(List.of(SimpleRecord.of(null, "a")));
+        agent.write(List.of(SimpleRecord.of(null, "b")));
+        agent.commit();
+        assertTrue(committed.isEmpty());
+
+        agent.write(List.of(SimpleRecord.of(null, "c")));
+        assertEquals(1, BATCHES.size());
+        assertEquals(3, BATCHES.get(0).size());
+        assertEquals(BATCHES.get(0), committed);
+        agent.close();
+    }
+
+    @Test
+    void testLingerTime() throws Exception {
+        List<Record> committed = new ArrayList<>();
+        VectorDBSinkAgent agent = createAgent(100, 0, committed);
+
+        Record record = SimpleRecord.of(null, "a");
+        agent.write(List.of(record));
+        agent.commit();
+        assertEquals(List.of(record), committed);
+        agent.close();
+    }
+
+    @Test
+    void testDefaultFlushesEachWrite() throws Exception {
+        List<Record> committed = new ArrayList<>();
+        VectorDBSinkAgent agent = createAgent(null, null, committed);
+
+        List<Record> records = List.of(SimpleRecord.of(null, "a"), SimpleRecord.of(null, "b"));
+        agent.write(records);
+        assertEquals(List.of(records), BATCHES);
+        assertEquals(records, committed);
+        agent.close();
+    }
+
+    @Test
+    void testFailedRecordsAreNotCommitted() throws Exception {
+        List<Record> committed = new ArrayList<>();
+        VectorDBSinkAgent agent = createAgent(null, null, committed);
+
+        Record good = SimpleRecord.of(null, "a");
+        Record bad = SimpleRecord.of(null, "fail");
+        IllegalArgumentException error =
+                assertThrows(IllegalArgumentException.class, () -> agent.write(List.of(good, bad)));
+        assertEquals("cannot write fail", error.getMessage());
+        assertEquals(List.of(good), committed);
+
+        // the errors handler can retry the record
+        agent.write(List.of(good));
+        assertEquals(List.of(good, good), committed);
+        agent.close();
+    }
+
+    @Test
+    void testFailedRecordsOfPreviousWritesAreReportedOneByOne() throws Exception {
+        List<Record> committed = new ArrayList<>();
+        Map<Record, Throwable> failed = new HashMap<>();
+        VectorDBSinkAgent agent =
+                createAgent(
+                        3,
+                        60000,
+                        new AgentSink.CommitCallback() {
+                            @Override
+                            public void commit(List<Record> records) {
+                                committed.addAll(records);
+                            }
+
+                            @Override
+                            public boolean fail(Record record, Throwable error) {
+                                // retry once, then skip
+                                return failed.put(record, error) == null;
+                            }
+                        });
+
+        Record a = SimpleRecord.of(null, "a");
+        Record bad = SimpleRecord.of(null, "fail");
+        Record c = SimpleRecord.of(null, "c");
+        agent.write(List.of(a));
+        agent.write(List.of(bad));
+        agent.write(List.of(c));
+        assertEquals(List.of(a, c), committed);
+        assertEquals("cannot write fail", failed.get(bad).getMessage());
+
+        // the failed record is written again with the next batch
+        Record d = SimpleRecord.of(null, "d");
+        Record e = SimpleRecord.of(null, "e");
+        agent.write(List.of(d));
+        agent.write(List.of(e));
+        assertEquals(List.of(bad, d, e), BATCHES.get(1));
+        assertEquals(List.of(a, c, d, e), committed);
+        agent.close();
+    }
+
+    @Test
+    void testFailedRecordsOfPreviousWritesWithoutErrorsHandling() throws Exception {
+        List<Record> committed = new ArrayList<>();
+        VectorDBSinkAgent agent = createAgent(2, 60000, committed);
+
+        agent.write(List.of(SimpleRecord.of(null, "fail")));
+        assertThrows(
+                IllegalArgumentException.class,
+                () -> agent.write(List.of(SimpleRecord.of(null, "b"))));
+        assertEquals(1, committed.size());
+        // the agent cannot go on
+        assertThrows(
+                IllegalArgumentException.class,
+                () -> agent.write(List.of(SimpleRecord.of(null, "c"))));
+        agent.close();
+    }
+
+    private static VectorDBSinkAgent createAgent(
+            Integer batchSize, Integer lingerTimeMs, List<Record> committed) throws Exception {
+        return createAgent(batchSize, lingerTimeMs, committed::addAll);
+    }
+
+    private static VectorDBSinkAgent createAgent(
+            Integer batchSize, Integer lingerTimeMs, AgentSink.CommitCallback callback)
+            throws Exception {
+        VectorDBSinkAgent agent = new VectorDBSinkAgent();
+        Map<String, Object> configuration = new HashMap<>();
+        configuration.put("datasource", Map.of("service", "mock"));
+        if (batchSize != null) {
+            configuration.put("batch-size", batchSize);
+        }
+        if (lingerTimeMs != null) {
+            configuration.put("linger-time-ms", lingerTimeMs);
+        }
+        agent.init(configuration);
+        agent.setCommitCallback(callback);
+        agent.start();
+        return agent;
+    }
+
+    public static class MockWriterProvider implements VectorDatabaseWriterProvider {
+        @Override
+        public boolean supports(Map<String, Object> dataSourceConfig) {
+            return "mock".equals(dataSourceConfig.get("service"));
+        }
+
+        @Override
+        public VectorDatabaseWriter createImplementation(Map<String, Object> datasourceConfig) {
+            return new VectorDatabaseWriter() {
+                @Override
+                public void upsert(Record record, Map<String, Object> context) {
+                    throw new UnsupportedOperationException();
+                }
+
+                @Override
+                public List<CompletableFuture<?>> upsertBatch(
+                        List<Record> records, Map<String, Object> context) {
+                    BATCHES.add(records);
+                    return records.stream()
+                            .<CompletableFuture<?>>map(
+                                    r ->
+                                            "fail".equals(r.value())
+                                                    ? CompletableFuture.failedFuture(
+                                                            new IllegalArgumentException(
+                                                                    "cannot write fail"))
+                                                    : CompletableFuture.completedFuture(null))
+                            .toList();
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.langstream.agents.vector.cassandra;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+class AsyncCassandraVectorDatabaseWriterTest {
+
+    @Test
+    void testParseMapping() {
+        Map<String, String> mapping =
+                AsyncCassandraVectorDatabaseWriter.parseMapping(
+                        "vsearch.products",
+                        "id=key.id, description=value.description, whole=value, ts=now()");
+        assertEquals(List.of("id", "description", "whole", "ts"), List.copyOf(mapping.keySet()));
+        assertEquals(
+                List.of("key.id", "value.description", "value.__self", "now()"),
+                List.copyOf(mapping.values()));
+
+        // same syntax as the sink, JSTL is not supported
+        assertThrows(
+                Exception.class,
+                () ->
+                        AsyncCassandraVectorDatabaseWriter.parseMapping(
+                                "products", "name=fn:concat(value.a, value.b)"));
+    }
+
+    @Test
+    void testToExpression() {
+        assertEquals("${value}", AsyncCassandraVectorDatabaseWriter.toExpression("value.__self"));
+        assertEquals("${key}", AsyncCassandraVectorDatabaseWriter.toExpression("key.__self"));
+        assertEquals(
+                "${value['a']['b']}", AsyncCassandraVectorDatabaseWriter.toExpression("value.a.b"));
+        assertEquals(
+                "${properties['my.header']}",
+                AsyncCassandraVectorDatabaseWriter.toExpression("header.my.header"));
+    }
+
+    @Test
+    void testUnsupportedOptions() {
+        AsyncCassandraVectorDatabaseWriter.checkOptions(
+                Map.of(
+                        "datasource", Map.of(),
+                        "table", "vsearch.products",
+                        "mapping", "id=value.id",
+                        "write-mode", "async",
+                        "max-concurrent-requests", 10));
+
+        // the options of the Cassandra sink are not silently ignored
+        IllegalArgumentException error =
+                assertThrows(
+                        IllegalArgumentException.class,
+                        () ->
+                                new AsyncCassandraVectorDatabaseWriter(Map.of())
+                                        .initialise(
+                                                Map.of(
+                                                        "table",
+                                                        "vsearch.products",
+                                                        "mapping",
+                                                        "id=value.id",
+                                                        "write-mode",
+                                                        "async",
+                                                        "ttl",
+                                                        "3600")));
+        assertTrue(error.getMessage().contains("ttl"), error.getMessage());
+    }
+}
@@ -91,6 +91,68 @@ public class CassandraWriterTest {
         assertEquals(1, execute.all().size());
     }
 
+    @Test
+    void testWriteAsync() throws Exception {
+        CqlSession session =
+                CqlSession.builder()
+                        .addContactPoint(this.cassandra.getContactPoint())
+                        .withLocalDatacenter(this.cassandra.getLocalDatacenter())
+                        .build();
+
+        session.execute(
+                "CREATE KEYSPACE IF NOT EXISTS vsearch WITH REPLICATION = { 'class' : 'SimpleStrategy', 'replication_factor' : '1' };");
+        session.execute(
+                "CREATE TABLE vsearch.products (id int PRIMARY KEY,name TEXT,description TEXT);");
+
+        Map<String, Object> datasourceConfig =
+                Map.of(
+                        "service",
+                        "cassandra",
+                        "loadBalancing-localDc",
+                        cassandra.getLocalDatacenter(),
+                        "contact-points",
+                        cassandra.getContactPoint().getHostString(),
+                        "port",
+                        cassandra.getContactPoint().getPort());
+
+        VectorDBSinkAgent agent =
+                (VectorDBSinkAgent)
+                        new AgentCodeRegistry().getAgentCode("vector-db-sink").agentCode();
+        Map<String, Object> configuration = new HashMap<>();
+        configuration.put("datasource", datasourceConfig);
+
+        configuration.put("table", "vsearch.products");
+        configuration.put("mapping", "id=key.id,description=value.description,name=value.name");
+        configuration.put("write-mode", "async");
+        configuration.put("max-concurrent-requests", 2);
+        configuration.put("batch-size", 10);
+
+        agent.init(configuration);
+        agent.start();
+        List<Record> committed = new ArrayList<>();
+        agent.setCommitCallback(committed::addAll);
+
+        List<Record> records = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            Map<String, Object> value =
+                    Map.of("description", "test-description", "name", "test-name");
+            SimpleRecord record =
+                    SimpleRecord.of(
+                            "{\"id\":" + i + "}", new ObjectMapper().writeValueAsString(value));
+            records.add(record);
+            agent.write(List.of(record));
+        }
+
+        assertEquals(records, committed);
+
+        // a null value deletes the row
+        agent.write(List.of(SimpleRecord.of("{\"id\":0}", null)));
+        agent.close();
+
+        ResultSet execute = session.execute("SELECT * FROM vsearch.products");
+        assertEquals(9, execute.all().size());
+    }
+
     @Test
     @Disabled
     void testWriteAstra() throws Exception {
@@ -0,0 +1,296 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.langstream.agents.vector.datasource.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import ai.langstream.agents.vector.QueryVectorDBAgent;
+import ai.langstream.agents.vector.VectorDBSinkAgent;
+import ai.langstream.agents.vector.hnsw.HnswDataSource;
+import ai.langstream.api.runner.code.AgentCodeRegistry;
+import ai.langstream.api.runner.code.AgentProcessor;
+import ai.langstream.api.runner.code.Record;
+import ai.langstream.api.runner.code.SimpleRecord;
+import com.datastax.oss.streaming.ai.datasource.QueryStepDataSource;
+import com.datastax.oss.streaming.ai.model.config.DataSourceConfig;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class HnswDataSourceTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final int DIMENSIONS = 16;
+
+    @Test
+    void testRecall() throws Exception {
+        Map<String, Object> datasource = datasource("recall", null);
+        Random random = new Random(1);
+        List<float[]> vectors = new ArrayList<>();
+        VectorDBSinkAgent sink = createSink(datasource);
+        for (int i = 0; i < 2000; i++) {
+            float[] vector = randomVector(random);
+            vectors.add(vector);
+            sink.write(List.of(record(i, vector, "doc " + i)));
+        }
+
+        QueryStepDataSource dataSource = createDataSource(datasource);
+        int found = 0;
+        int queries = 50;
+        for (int q = 0; q < queries; q++) {
+            float[] query = randomVector(random);
+            Set<String> expected =
+                    IntStream.range(0, vectors.size())
+                            .boxed()
+                            .sorted(
+                                    Comparator.comparingDouble(
+                                            (Integer i) -> -cosine(vectors.get(i), query)))
+                            .limit(10)
+                            .map(String::valueOf)
+                            .collect(Collectors.toSet());
+            List<Map<String, String>> results =
+                    dataSource.fetchData("{\"vector\": ?, \"topK\": 10}", List.of(toList(query)));
+            assertEquals(10, results.size());
+            Set<String> ids = new HashSet<>();
+            results.forEach(r -> ids.add(r.get("id")));
+            ids.retainAll(expected);
+            found += ids.size();
+        }
+        double recall = found / (queries * 10.0);
+        assertTrue(recall > 0.9, "recall is " + recall);
+
+        dataSource.close();
+        sink.close();
+    }
+
+    @Test
+    void testFilterAndDelete() throws Exception {
+        Map<String, Object> datasource = datasource("filter", null);
+        VectorDBSinkAgent sink = createSink(datasource);
+        Random random = new Random(2);
+        for (int i = 0; i < 100; i++) {
+            sink.write(List.of(record(i, randomVector(random), i % 2 == 0 ? "even" : "odd")));
+        }
+        QueryStepDataSource dataSource = createDataSource(datasource);
+        List<Map<String, String>> results =
+                dataSource.fetchData(
+                        "{\"vector\": ?, \"topK\": 20, \"filter\": {\"text\": \"odd\"}}",
+                        List.of(toList(randomVector(random))));
+        assertEquals(20, results.size());
+        results.forEach(r -> assertEquals("odd", r.get("text")));
+
+        float[] vector = randomVector(random);
+        sink.write(List.of(record(1000, vector, "new")));
+        String query = "{\"vector\": ?, \"topK\": 1}";
+        assertEquals("1000", dataSource.fetchData(query, List.of(toList(vector))).get(0).get("id"));
+
+        sink.write(List.of(SimpleRecord.of("{\"id\": 1000}", null)));
+        assertTrue(
+                dataSource.fetchData(query, List.of(toList(vector))).stream()
+                        .noneMatch(r -> r.get("id").equals("1000")));
+
+        dataSource.close();
+        sink.close();
+    }
+
+    @Test
+    void testPersistence(@TempDir Path directory) throws Exception {
+        Map<String, Object> datasource = datasource("persistent", directory.toString());
+        VectorDBSinkAgent sink = createSink(datasource);
+        Random random = new Random(3);
+        List<float[]> vectors = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            float[] vector = randomVector(random);
+            vectors.add(vector);
+            sink.write(List.of(record(i, vector, "doc " + i)));
+        }
+        sink.write(List.of(record(7, vectors.get(8), "updated")));
+        sink.close();
+
+        QueryStepDataSource dataSource = createDataSource(datasource);
+        List<Map<String, String>> results =
+                dataSource.fetchData(
+                        "{\"vector\": ?, \"topK\": 2}", List.of(toList(vectors.get(8))));
+        assertEquals(
+                Set.of("7", "8"),
+                results.stream().map(r -> r.get("id")).collect(Collectors.toSet()));
+        assertEquals(
+                "doc 3",
+                dataSource
+                        .fetchData("{\"vector\": ?, \"topK\": 1}", List.of(toList(vectors.get(3))))
+                        .get(0)
+                        .get("text"));
+        dataSource.close();
+    }
+
+    @Test
+    void testCompactionAndOriginalValues(@TempDir Path directory) throws Exception {
+        Map<String, Object> datasource = datasource("compaction", directory.toString());
+        datasource.put("initial-capacity", 8);
+        VectorDBSinkAgent sink = createSink(datasource);
+        Random random = new Random(5);
+        List<float[]> vectors = new ArrayList<>();
+        for (int update = 0; update < 5; update++) {
+            vectors.clear();
+            for (int i = 0; i < 20; i++) {
+                // not normalized, the original values are returned with the cosine metric
+                float[] vector = randomVector(random);
+                for (int d = 0; d < DIMENSIONS; d++) {
+                    vector[d] *= 3;
+                }
+                vectors.add(vector);
+                sink.write(List.of(record(i, vector, "doc " + i + " v" + update)));
+            }
+        }
+        sink.close();
+
+        // 100 upserts of 20 vectors, the tombstones are compacted away
+        long logEntries = Files.readAllLines(directory.resolve("index.log")).size();
+        assertTrue(logEntries < 60, "log entries: " + logEntries);
+
+        QueryStepDataSource dataSource = createDataSource(datasource);
+        for (int i = 0; i < 20; i++) {
+            List<Map<String, String>> results =
+                    dataSource.fetchData(
+                            "{\"vector\": ?, \"topK\": 1, \"includeValues\": true}",
+                            List.of(toList(vectors.get(i))));
+            assertEquals(String.valueOf(i), results.get(0).get("id"));
+            assertEquals("doc " + i + " v4", results.get(0).get("text"));
+            assertEquals(
+                    toList(vectors.get(i)).toString(),
+                    String.valueOf(results.get(0).get("vector")));
+        }
+        dataSource.close();
+    }
+
+    @Test
+    void testQueryVectorDBAgent() throws Exception {
+        Map<String, Object> datasource = datasource("agent", null);
+        VectorDBSinkAgent sink = createSink(datasource);
+        float[] vector = randomVector(new Random(4));
+        sink.write(List.of(record(1, vector, "the text")));
+
+        QueryVectorDBAgent agent =
+                (QueryVectorDBAgent)
+                        new AgentCodeRegistry().getAgentCode("query-vector-db").agentCode();
+        Map<String, Object> configuration = new HashMap<>();
+        configuration.put("datasource", datasource);
+        configuration.put("query", "{\"vector\": ?, \"topK\": 1}");
+        configuration.put("fields", List.of("value.embeddings"));
+        configuration.put("output-field", "value.related");
+        configuration.put("only-first", true);
+        agent.init(configuration);
+        agent.start();
+
+        List<AgentProcessor.SourceRecordAndResult> processed = new ArrayList<>();
+        agent.process(
+                List.of(
+                        SimpleRecord.of(
+                                null,
+                                MAPPER.writeValueAsString(Map.of("embeddings", toList(vector))))),
+                processed::add);
+        assertNull(processed.get(0).error());
+        List<Record> results = processed.get(0).resultRecords();
+        Map<String, Object> value = MAPPER.readValue(results.get(0).value().toString(), Map.class);
+        Map<String, Object> related = (Map<String, Object>) value.get("related");
+        assertEquals("1", related.get("id"));
+        assertEquals("the text", related.get("text"));
+
+        agent.close();
+        sink.close();
+    }
+
+    private static Map<String, Object> datasource(String name, String path) {
+        Map<String, Object> datasource = new HashMap<>();
+        datasource.put("service", "hnsw");
+        datasource.put("index-name", name);
+        datasource.put("dimensions", DIMENSIONS);
+        if (path != null) {
+            datasource.put("path", path);
+        }
+        return datasource;
+    }
+
+    private static VectorDBSinkAgent createSink(Map<String, Object> datasource) throws Exception {
+        VectorDBSinkAgent agent =
+                (VectorDBSinkAgent)
+                        new AgentCodeRegistry().getAgentCode("vector-db-sink").agentCode();
+        Map<String, Object> configuration = new HashMap<>();
+        configuration.put("datasource", datasource);
+        configuration.put("vector.id", "key.id");
+        configuration.put("vector.vector", "value.embeddings");
+        configuration.put("vector.metadata.text", "value.text");
+        agent.init(configuration);
+        agent.start();
+        agent.setCommitCallback(records -> {});
+        return agent;
+    }
+
+    private static QueryStepDataSource createDataSource(Map<String, Object> datasource) {
+        QueryStepDataSource dataSource =
+                new HnswDataSource().createDataSourceImplementation(datasource);
+        dataSource.initialize(new DataSourceConfig());
+        return dataSource;
+    }
+
+    private static Record record(int id, float[] vector, String text) throws Exception {
+        return SimpleRecord.of(
+                "{\"id\": \"" + id + "\"}",
+                MAPPER.writeValueAsString(Map.of("embeddings", toList(vector), "text", text)));
+    }
+
+    private static float[] randomVector(Random random) {
+        float[] vector = new float[DIMENSIONS];
+        for (int i = 0; i < DIMENSIONS; i++) {
+            vector[i] = random.nextFloat() * 2 - 1;
+        }
+        return vector;
+    }
+
+    private static List<Float> toList(float[] vector) {
+        List<Float> result = new ArrayList<>(vector.length);
+        for (float v : vector) {
+            result.add(v);
+        }
+        return result;
+    }
+
+    private static double cosine(float[] a, float[] b) {
+        double dot = 0;
+        double normA = 0;
+        double normB = 0;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+            normA += a[i] * a[i];
+            normB += b[i] * b[i];
+        }
+        return dot / Math.sqrt(normA * normB);
+    }
+}
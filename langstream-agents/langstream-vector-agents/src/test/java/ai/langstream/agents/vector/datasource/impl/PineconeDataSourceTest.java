@@ -15,10 +15,24 @@
  */
 package ai.langstream.agents.vector.datasource.impl;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
 import ai.langstream.agents.vector.pinecone.PineconeDataSource;
+import com.datastax.oss.streaming.ai.datasource.QueryResultCursor;
 import com.datastax.oss.streaming.ai.datasource.QueryStepDataSource;
+import com.sun.net.httpserver.HttpServer;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 import lombok.extern.slf4j.Slf4j;
 import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
@@ -77,4 +91,132 @@ class PineconeDataSourceTest {
         List<Map<String, String>> results = implementation.fetchData(query, params);
         log.info("Results: {}", results);
     }
+
+    @Test
+    void testConcurrentQueries() throws Exception {
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        Queue<String> requests = new ConcurrentLinkedQueue<>();
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext(
+                "/query",
+                exchange -> {
+                    int current = inFlight.incrementAndGet();
+                    maxInFlight.accumulateAndGet(current, Math::max);
+                    try {
+                        requests.add(
+                                new String(
+                                        exchange.getRequestBody().readAllBytes(),
+                                        StandardCharsets.UTF_8));
+                        Thread.sleep(200);
+                        byte[] response = "[{\"id\": \"1\"}]".getBytes(StandardCharsets.UTF_8);
+                        exchange.sendResponseHeaders(200, response.length);
+                        try (OutputStream out = exchange.getResponseBody()) {
+                            out.write(response);
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        inFlight.decrementAndGet();
+                    }
+                });
+        server.start();
+        try {
+            PineconeDataSource dataSource = new PineconeDataSource();
+            Map<String, Object> config =
+                    Map.of(
+                            "api-key", "xxxxxxxx-xxxx-xxxx-xxxx-xxxxxxxxxxxx",
+                            "environment", "asia-southeast1-gcp-free",
+                            "project-name", "032e3d0",
+                            "index-name", "example-index",
+                            "endpoint",
+                                    "http://localhost:" + server.getAddress().getPort() + "/query",
+                            "max-concurrent-requests", 3);
+            QueryStepDataSource implementation = dataSource.createDataSourceImplementation(config);
+            implementation.initialize(null);
+
+            String query =
+                    """
+                    {
+                          "vector": ?,
+                          "topK": 5,
+                          "filter": {"genre": ?}
+                    }
+                    """;
+            List<CompletableFuture<List<Map<String, String>>>> results = new ArrayList<>();
+            for (int i = 0; i < 9; i++) {
+                results.add(
+                        implementation.fetchDataAsync(
+                                query, List.of(List.of(0.1f, 0.2f), "genre-" + i)));
+            }
+            for (CompletableFuture<List<Map<String, String>>> result : results) {
+                assertEquals(List.of(Map.of("id", "1")), result.join());
+            }
+            assertTrue(maxInFlight.get() > 1, "max in flight " + maxInFlight.get());
+            assertTrue(maxInFlight.get() <= 3, "max in flight " + maxInFlight.get());
+            assertEquals(9, requests.size());
+            for (int i = 0; i < 9; i++) {
+                String genre = "genre-" + i;
+                assertTrue(requests.stream().anyMatch(r -> r.contains(genre)), genre);
+            }
+            implementation.close();
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void testLimitIsPushedDownAsTopK() throws Exception {
+        Queue<String> requests = new ConcurrentLinkedQueue<>();
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext(
+                "/query",
+                exchange -> {
+                    requests.add(
+                            new String(
+                                    exchange.getRequestBody().readAllBytes(),
+                                    StandardCharsets.UTF_8));
+                    byte[] response = "[{\"id\": \"1\"}]".getBytes(StandardCharsets.UTF_8);
+                    exchange.sendResponseHeaders(200, response.length);
+                    try (OutputStream out = exchange.getResponseBody()) {
+                        out.write(response);
+                    }
+                });
+        server.start();
+        try {
+            PineconeDataSource dataSource = new PineconeDataSource();
+            Map<String, Object> config =
+                    Map.of(
+                            "api-key", "xxxxxxxx-xxxx-xxxx-xxxx-xxxxxxxxxxxx",
+                            "environment", "asia-southeast1-gcp-free",
+                            "project-name", "032e3d0",
+                            "index-name", "example-index",
+                            "endpoint",
+                                    "http://localhost:" + server.getAddress().getPort() + "/query");
+            QueryStepDataSource implementation = dataSource.createDataSourceImplementation(config);
+            implementation.initialize(null);
+
+            String query =
+                    """
+                    {
+                          "vector": ?,
+                          "topK": 5
+                    }
+                    """;
+            List<Object> params = List.of(List.of(0.1f, 0.2f));
+            implementation.fetchDataAsync(query, params, 1).join();
+            assertTrue(requests.remove().contains("top_k: 1"));
+            // the limit never raises the topK of the query
+            implementation.fetchDataAsync(query, params, 10).join();
+            assertTrue(requests.remove().contains("top_k: 5"));
+            try (QueryResultCursor cursor = implementation.executeQuery(query, params, 2)) {
+                assertTrue(cursor.next());
+            }
+            assertTrue(requests.remove().contains("top_k: 2"));
+            implementation.close();
+        } finally {
+            server.stop(0);
+        }
+    }
 }
@@ -16,7 +16,10 @@
 package ai.langstream.api.database;
 
 import ai.langstream.api.runner.code.Record;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * This is the interface for writing to a vector database. this interface is really simple by
@@ -35,5 +38,31 @@ public interface VectorDatabaseWriter {
      */
     void upsert(Record record, Map<String, Object> context) throws Exception;
 
+    /**
+     * Update a batch of records. The default implementation upserts the records one at a time,
+     * implementations should override it in order to send the records with fewer requests or
+     * concurrently.
+     *
+     * @param records the records
+     * @param context additional context
+     * @return a future for each record, in the same order as the records, completed when the record
+     *     has been written or exceptionally if the record could not be written
+     */
+    default List<CompletableFuture<?>> upsertBatch(
+            List<Record> records, Map<String, Object> context) {
+        List<CompletableFuture<?>> results = new ArrayList<>(records.size());
+        for (Record record : records) {
+            CompletableFuture<?> result = new CompletableFuture<>();
+            try {
+                upsert(record, context);
+                result.complete(null);
+            } catch (Throwable error) {
+                result.completeExceptionally(error);
+            }
+            results.add(result);
+        }
+        return results;
+    }
+
     default void close() throws Exception {}
 }
@@ -36,6 +36,28 @@ public interface AgentSink extends AgentCode {
 
     interface CommitCallback {
         void commit(List<Record> records);
+
+        /**
+         * Reports that the sink could not write a record accepted by a previous call to {@link
+         * AgentSink#write(List)}, for instance because it was buffered and written later in a
+         * batch. The errors handler of the agent is applied to the record, as if the write of this
+         * record failed.
+         *
+         * <p>The default implementation does not handle the errors per record, it throws the error
+         * and the sink must fail.
+         *
+         * @param record the record that could not be written
+         * @param error the error
+         * @return true if the sink must write the record again, false if the record has been
+         *     skipped or sent to the dead letter queue
+         * @throws Exception if the error is fatal for the agent
+         */
+        default boolean fail(Record record, Throwable error) throws Exception {
+            if (error instanceof Exception exception) {
+                throw exception;
+            }
+            throw new RuntimeException(error);
+        }
     }
 
     void setCommitCallback(CommitCallback callback);
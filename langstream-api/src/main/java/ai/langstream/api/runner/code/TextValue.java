@@ -0,0 +1,111 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.langstream.api.runner.code;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A text record value that keeps both its UTF-8 encoded and its decoded form. Each form is computed
+ * at most once, the first time it is requested, so a value created from bytes that flows through a
+ * chain of text agents is decoded once and a value created from a String is encoded once when it
+ * reaches a sink.
+ *
+ * <p>The array returned by {@link #bytes()} is shared and must not be modified.
+ */
+public final class TextValue implements CharSequence {
+
+    private volatile byte[] bytes;
+    private volatile String text;
+
+    private TextValue(byte[] bytes, String text) {
+        this.bytes = bytes;
+        this.text = text;
+    }
+
+    public static TextValue of(byte[] bytes) {
+        if (bytes == null) {
+            throw new IllegalArgumentException("bytes cannot be null");
+        }
+        return new TextValue(bytes, null);
+    }
+
+    public static TextValue of(String text) {
+        if (text == null) {
+            throw new IllegalArgumentException("text cannot be null");
+        }
+        return new TextValue(null, text);
+    }
+
+    /**
+     * @return the decoded text
+     */
+    public String text() {
+        String result = text;
+        if (result == null) {
+            result = new String(bytes, StandardCharsets.UTF_8);
+            text = result;
+        }
+        return result;
+    }
+
+    /**
+     * @return the UTF-8 encoded text
+     */
+    public byte[] bytes() {
+        byte[] result = bytes;
+        if (result == null) {
+            result = text.getBytes(StandardCharsets.UTF_8);
+            bytes = result;
+        }
+        return result;
+    }
+
+    @Override
+    public int length() {
+        return text().length();
+    }
+
+    @Override
+    public char charAt(int index) {
+        return text().charAt(index);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return text().subSequence(start, end);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof TextValue other)) {
+            return false;
+        }
+        return text().equals(other.text());
+    }
+
+    @Override
+    public int hashCode() {
+        return text().hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return text();
+    }
+}
@@ -213,6 +213,18 @@ public class GenAIToolKitFunctionAgentProvider extends AbstractAgentProvider {
                                             originalConfiguration,
                                             "only-first",
                                             null);
+                                    optionalField(
+                                            step,
+                                            agentConfiguration,
+                                            originalConfiguration,
+                                            "typed-results",
+                                            null);
+                                    optionalField(
+                                            step,
+                                            agentConfiguration,
+                                            originalConfiguration,
+                                            "max-results",
+                                            null);
                                 }
                             },
                     "ai-chat-completions",
@@ -316,6 +328,12 @@ public class GenAIToolKitFunctionAgentProvider extends AbstractAgentProvider {
                                             originalConfiguration,
                                             "user",
                                             null);
+                                    optionalField(
+                                            step,
+                                            agentConfiguration,
+                                            originalConfiguration,
+                                            "cache",
+                                            null);
                                 }
                             });
 
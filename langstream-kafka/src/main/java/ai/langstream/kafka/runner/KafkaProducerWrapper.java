@@ -20,6 +20,7 @@ import static org.apache.kafka.clients.producer.ProducerConfig.VALUE_SERIALIZER_
 
 import ai.langstream.api.runner.code.Header;
 import ai.langstream.api.runner.code.Record;
+import ai.langstream.api.runner.code.TextValue;
 import ai.langstream.api.runner.topics.TopicProducer;
 import io.confluent.kafka.serializers.KafkaAvroSerializer;
 import java.util.ArrayList;
@@ -60,7 +61,8 @@ class KafkaProducerWrapper implements TopicProducer {
                     Float.class, new FloatSerializer(),
                     Double.class, new DoubleSerializer(),
                     byte[].class, new ByteArraySerializer(),
-                    UUID.class, new UUIDSerializer());
+                    UUID.class, new UUIDSerializer(),
+                    TextValue.class, new TextValueSerializer());
 
     final Map<Class<?>, Serializer<?>> keySerializers = new ConcurrentHashMap<>(BASE_SERIALIZERS);
     final Map<Class<?>, Serializer<?>> valueSerializers = new ConcurrentHashMap<>(BASE_SERIALIZERS);
@@ -150,7 +152,7 @@ class KafkaProducerWrapper implements TopicProducer {
             Object key = null;
             if (r.key() != null) {
                 if (forcedKeySerializer) {
-                    key = r.key();
+                    key = unwrapText(r.key());
                 } else {
                     if (keySerializer == null) {
                         keySerializer = getSerializer(r.key().getClass(), keySerializers, true);
@@ -161,7 +163,7 @@ class KafkaProducerWrapper implements TopicProducer {
             Object value = null;
             if (r.value() != null) {
                 if (forcedValueSerializer) {
-                    value = r.value();
+                    value = unwrapText(r.value());
                 } else {
                     if (valueSerializer == null) {
                         valueSerializer =
@@ -193,6 +195,22 @@ class KafkaProducerWrapper implements TopicProducer {
         totalIn.addAndGet(records.size());
     }
 
+    private static Object unwrapText(Object value) {
+        // a configured serializer doesn't know about TextValue
+        if (value instanceof TextValue textValue) {
+            return textValue.text();
+        }
+        return value;
+    }
+
+    /** Writes the UTF-8 form of a {@link TextValue}, encoding the text only if needed. */
+    private static class TextValueSerializer implements Serializer<TextValue> {
+        @Override
+        public byte[] serialize(String topic, TextValue data) {
+            return data == null ? null : data.bytes();
+        }
+    }
+
     private Serializer<?> getSerializer(
             Class<?> r, Map<Class<?>, Serializer<?>> serializerMap, Boolean isKey) {
         Serializer<?> result = serializerMap.get(r);
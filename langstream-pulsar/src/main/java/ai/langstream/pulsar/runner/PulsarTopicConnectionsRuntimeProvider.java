@@ -18,6 +18,7 @@ package ai.langstream.pulsar.runner;
 import ai.langstream.api.model.StreamingCluster;
 import ai.langstream.api.runner.code.Header;
 import ai.langstream.api.runner.code.Record;
+import ai.langstream.api.runner.code.TextValue;
 import ai.langstream.api.runner.topics.OffsetPerPartition;
 import ai.langstream.api.runner.topics.TopicAdmin;
 import ai.langstream.api.runner.topics.TopicConnectionsRuntime;
@@ -348,6 +349,9 @@ public class PulsarTopicConnectionsRuntimeProvider implements TopicConnectionsRu
                         if (value instanceof byte[]) {
                             return (K) value;
                         }
+                        if (value instanceof TextValue textValue) {
+                            return (K) textValue.bytes();
+                        }
                         return (K) value.toString().getBytes(StandardCharsets.UTF_8);
                     case STRING:
                         return (K) value.toString();
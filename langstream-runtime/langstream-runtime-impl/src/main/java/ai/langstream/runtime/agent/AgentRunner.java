@@ -407,10 +407,30 @@ public class AgentRunner {
         sink.start();
         function.start();
 
+        AtomicReference<Exception> fatalError = new AtomicReference<>();
+
         SourceRecordTracker sourceRecordTracker = new SourceRecordTracker(source);
-        sink.setCommitCallback(sourceRecordTracker);
+        sink.setCommitCallback(
+                new AgentSink.CommitCallback() {
+                    @Override
+                    public void commit(List<Record> records) {
+                        sourceRecordTracker.commit(records);
+                    }
 
-        AtomicReference<Exception> fatalError = new AtomicReference<>();
+                    @Override
+                    public boolean fail(Record record, Throwable error) throws Exception {
+                        // a record buffered by the sink and written after the call to write()
+                        Record sourceRecord = sourceRecordTracker.sourceRecordFor(record);
+                        return handleSinkErrors(
+                                sourceRecord != null ? sourceRecord : record,
+                                List.of(record),
+                                error,
+                                errorsHandler,
+                                sourceRecordTracker,
+                                source,
+                                fatalError);
+                    }
+                });
 
         List<Record> records = source.read();
         while ((maxLoops < 0) || (maxLoops-- > 0)) {
@@ -503,42 +523,63 @@ public class AgentRunner {
                 sink.write(forTheSink);
                 return;
             } catch (Throwable error) {
-                // handle error
-                ErrorsHandler.ErrorsProcessingOutcome action =
-                        errorsHandler.handleErrors(sourceRecord, error);
-                switch (action) {
-                    case SKIP -> {
-                        // skip (the whole batch)
-                        log.error(
-                                "Unrecoverable error while processing the records, skipping",
-                                error);
-                        sourceRecordTracker.commit(forTheSink);
-                        return;
-                    }
-                    case RETRY -> {
-                        log.error("Retryable error while processing the records, retrying", error);
-                        // retry (the whole batch)
-                    }
-                    case FAIL -> {
-                        log.error(
-                                "Unrecoverable error while processing some the records, failing",
-                                error);
-                        PermanentFailureException permanentFailureException =
-                                new PermanentFailureException(error);
-                        source.permanentFailure(sourceRecord, permanentFailureException);
-                        if (errorsHandler.failProcessingOnPermanentErrors()) {
-                            log.error("Failing processing on permanent error");
-                            setFatalError(permanentFailureException, fatalError);
-                        } else {
-                            // in case the source does not throw an exception we mark the record as
-                            // "skipped"
-                            sourceRecordTracker.commit(forTheSink);
-                        }
-                        return;
-                    }
-                    default -> throw new IllegalStateException("Unexpected value: " + action);
+                if (!handleSinkErrors(
+                        sourceRecord,
+                        forTheSink,
+                        error,
+                        errorsHandler,
+                        sourceRecordTracker,
+                        source,
+                        fatalError)) {
+                    return;
+                }
+                // retry (the whole batch)
+            }
+        }
+    }
+
+    /**
+     * Applies the errors handler to records that the sink failed to write.
+     *
+     * @return true if the records must be written again
+     */
+    private static boolean handleSinkErrors(
+            Record sourceRecord,
+            List<Record> sinkRecords,
+            Throwable error,
+            ErrorsHandler errorsHandler,
+            SourceRecordTracker sourceRecordTracker,
+            AgentSource source,
+            AtomicReference<Exception> fatalError)
+            throws Exception {
+        ErrorsHandler.ErrorsProcessingOutcome action =
+                errorsHandler.handleErrors(sourceRecord, error);
+        switch (action) {
+            case SKIP -> {
+                log.error("Unrecoverable error while processing the records, skipping", error);
+                sourceRecordTracker.commit(sinkRecords);
+                return false;
+            }
+            case RETRY -> {
+                log.error("Retryable error while processing the records, retrying", error);
+                return true;
+            }
+            case FAIL -> {
+                log.error("Unrecoverable error while processing some the records, failing", error);
+                PermanentFailureException permanentFailureException =
+                        new PermanentFailureException(error);
+                source.permanentFailure(sourceRecord, permanentFailureException);
+                if (errorsHandler.failProcessingOnPermanentErrors()) {
+                    log.error("Failing processing on permanent error");
+                    setFatalError(permanentFailureException, fatalError);
+                } else {
+                    // in case the source does not throw an exception we mark the record as
+                    // "skipped"
+                    sourceRecordTracker.commit(sinkRecords);
                 }
+                return false;
             }
+            default -> throw new IllegalStateException("Unexpected value: " + action);
         }
     }
 
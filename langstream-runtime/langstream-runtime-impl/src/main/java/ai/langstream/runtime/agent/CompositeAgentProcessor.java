@@ -24,12 +24,20 @@ import ai.langstream.api.runner.code.AgentSource;
 import ai.langstream.api.runner.code.AgentStatusResponse;
 import ai.langstream.api.runner.code.Record;
 import ai.langstream.api.runner.code.RecordSink;
+import ai.langstream.api.runner.code.SingleRecordAgentProcessor;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import lombok.extern.slf4j.Slf4j;
 
-/** This is a special processor that executes a pipeline of Agents in memory. */
+/**
+ * This is a special processor that executes a pipeline of Agents in memory. The records go through
+ * the processors one stage at a time, each processor receives all the records of the batch that
+ * reached it, and every source record is emitted once, when its processing is complete.
+ */
+@Slf4j
 public class CompositeAgentProcessor extends AbstractAgentCode implements AgentProcessor {
 
     private static final ObjectMapper MAPPER = new ObjectMapper();
@@ -40,6 +48,10 @@ public class CompositeAgentProcessor extends AbstractAgentCode implements AgentP
 
     private AgentCodeRegistry agentCodeRegistry;
 
+    // when all the processors are synchronous the stages and their buffers are reused
+    private Stage[] stages;
+    private final AtomicBoolean stagesInUse = new AtomicBoolean();
+
     public void configureAgentCodeRegistry(AgentCodeRegistry agentCodeRegistry) {
         this.agentCodeRegistry = agentCodeRegistry;
     }
@@ -142,34 +154,6 @@ public class CompositeAgentProcessor extends AbstractAgentCode implements AgentP
         }
     }
 
-    private void invokeProcessor(
-            int index, Record currentRecord, Record initialSourceRecord, RecordSink finalSink) {
-        AgentProcessor processor = processors.get(index);
-        try {
-            processor.process(
-                    List.of(currentRecord),
-                    (SourceRecordAndResult recordAndResult) -> {
-                        if (recordAndResult.resultRecords().isEmpty()
-                                || index == processors.size() - 1) {
-                            finalSink.emit(
-                                    new SourceRecordAndResult(
-                                            initialSourceRecord,
-                                            recordAndResult.resultRecords(),
-                                            null));
-                            processed(0, recordAndResult.resultRecords().size());
-                            return;
-                        }
-                        // we know that all the records have been generated starting from the
-                        // "initialSourceRecord"
-                        for (Record record : recordAndResult.resultRecords()) {
-                            invokeProcessor(index + 1, record, initialSourceRecord, finalSink);
-                        }
-                    });
-        } catch (Throwable error) {
-            finalSink.emit(new SourceRecordAndResult(initialSourceRecord, null, error));
-        }
-    }
-
     @Override
     public void process(List<Record> records, RecordSink sink) {
         processed(records.size(), 0);
@@ -179,8 +163,266 @@ public class CompositeAgentProcessor extends AbstractAgentCode implements AgentP
             }
             return;
         }
-        for (Record record : records) {
-            invokeProcessor(0, record, record, sink);
+        boolean concurrent = false;
+        for (AgentProcessor processor : processors) {
+            concurrent |= !isSynchronous(processor);
+        }
+        // a retry can call process() again from the sink, while the stages are in use
+        boolean reuse = !concurrent && stagesInUse.compareAndSet(false, true);
+        try {
+            Stage first = stage(0, reuse);
+            for (Record record : records) {
+                first.add(record, new Execution(record, sink, concurrent));
+            }
+            first.run();
+        } finally {
+            if (reuse) {
+                for (Stage stage : stages) {
+                    stage.reset();
+                }
+                stagesInUse.set(false);
+            }
+        }
+    }
+
+    private Stage stage(int index, boolean reuse) {
+        if (!reuse) {
+            return new Stage(index, false);
+        }
+        if (stages == null || stages.length != processors.size()) {
+            stages = new Stage[processors.size()];
+            for (int i = 0; i < stages.length; i++) {
+                stages[i] = new Stage(i, true);
+            }
+        }
+        return stages[index];
+    }
+
+    /**
+     * A {@link SingleRecordAgentProcessor} emits all its results from process(), in the calling
+     * thread, so its stage doesn't need any synchronization.
+     */
+    private static boolean isSynchronous(AgentProcessor processor) {
+        return processor instanceof SingleRecordAgentProcessor;
+    }
+
+    /**
+     * Tracks a source record through the pipeline. A processor can turn a record into many, so the
+     * execution completes when all the records derived from the source record have left the
+     * pipeline, and then the source record is emitted once, with all the results or with the first
+     * error.
+     */
+    private final class Execution {
+        private final Record sourceRecord;
+        private final RecordSink sink;
+        // false if all the processors are synchronous
+        private final boolean concurrent;
+        private int pending = 1;
+        private List<Record> results = List.of();
+        private boolean resultsCopied;
+        private Throwable error;
+
+        Execution(Record sourceRecord, RecordSink sink, boolean concurrent) {
+            this.sourceRecord = sourceRecord;
+            this.sink = sink;
+            this.concurrent = concurrent;
+        }
+
+        void forked(int count) {
+            if (concurrent) {
+                synchronized (this) {
+                    pending += count - 1;
+                }
+            } else {
+                pending += count - 1;
+            }
+        }
+
+        void completed(List<Record> resultRecords, Throwable error) {
+            boolean done;
+            if (concurrent) {
+                synchronized (this) {
+                    done = add(resultRecords, error);
+                }
+            } else {
+                done = add(resultRecords, error);
+            }
+            if (!done) {
+                return;
+            }
+            if (this.error != null) {
+                sink.emit(new SourceRecordAndResult(sourceRecord, null, this.error));
+            } else {
+                processed(0, results.size());
+                sink.emit(new SourceRecordAndResult(sourceRecord, results, null));
+            }
+        }
+
+        private boolean add(List<Record> resultRecords, Throwable error) {
+            if (error != null) {
+                if (this.error == null) {
+                    this.error = error;
+                }
+            } else if (results.isEmpty()) {
+                results = resultRecords;
+            } else if (!resultRecords.isEmpty()) {
+                if (!resultsCopied) {
+                    results = new ArrayList<>(results);
+                    resultsCopied = true;
+                }
+                results.addAll(resultRecords);
+            }
+            return --pending == 0;
+        }
+    }
+
+    /**
+     * A batch of records for one processor. The records that the processor emits while it is
+     * processing the batch are collected and passed to the next processor as a single batch, the
+     * ones emitted later by an asynchronous processor are passed on as soon as they arrive.
+     */
+    private final class Stage implements RecordSink {
+        private final int index;
+        private final boolean last;
+        private final boolean synchronous;
+        private final boolean reused;
+        private final List<Record> records = new ArrayList<>();
+        private final List<Execution> executions = new ArrayList<>();
+        // the processors usually emit the results in the order of the records
+        private int cursor;
+        private boolean running = true;
+        private Stage next;
+
+        Stage(int index, boolean reused) {
+            this.index = index;
+            this.reused = reused;
+            this.last = index == processors.size() - 1;
+            this.synchronous = isSynchronous(processors.get(index));
+        }
+
+        void reset() {
+            records.clear();
+            executions.clear();
+            cursor = 0;
+            running = true;
+            next = null;
+        }
+
+        void add(Record record, Execution execution) {
+            records.add(record);
+            executions.add(execution);
+        }
+
+        void run() {
+            try {
+                processors.get(index).process(records, this);
+            } catch (Throwable error) {
+                failPending(error);
+            }
+            Stage collected;
+            if (synchronous) {
+                running = false;
+                collected = next;
+            } else {
+                synchronized (this) {
+                    running = false;
+                    collected = next;
+                }
+            }
+            next = null;
+            if (collected != null) {
+                collected.run();
+            }
+        }
+
+        private void failPending(Throwable error) {
+            List<Execution> failed = new ArrayList<>();
+            synchronized (this) {
+                for (int i = 0; i < executions.size(); i++) {
+                    Execution execution = executions.set(i, null);
+                    if (execution != null) {
+                        failed.add(execution);
+                    }
+                }
+            }
+            for (Execution execution : failed) {
+                execution.completed(List.of(), error);
+            }
+        }
+
+        /** Finds the execution of a record, the processors emit the instances they received. */
+        private Execution take(Record sourceRecord) {
+            int size = records.size();
+            for (int n = 0, i = cursor; n < size; n++, i = i + 1 == size ? 0 : i + 1) {
+                if (records.get(i) == sourceRecord && executions.get(i) != null) {
+                    cursor = i + 1 == size ? 0 : i + 1;
+                    return executions.set(i, null);
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Queues the results for the next processor.
+         *
+         * @return the stage to run now, or null if the results will run with the current batch
+         */
+        private Stage forward(Execution execution, List<Record> resultRecords) {
+            if (resultRecords.size() > 1) {
+                execution.forked(resultRecords.size());
+            }
+            Stage target;
+            if (running) {
+                if (next == null) {
+                    next = stage(index + 1, reused);
+                }
+                target = next;
+            } else {
+                target = new Stage(index + 1, false);
+            }
+            for (Record record : resultRecords) {
+                target.add(record, execution);
+            }
+            return target == next ? null : target;
+        }
+
+        @Override
+        public void emit(SourceRecordAndResult recordAndResult) {
+            List<Record> resultRecords = recordAndResult.resultRecords();
+            boolean forward = recordAndResult.error() == null && !resultRecords.isEmpty() && !last;
+            Execution execution;
+            Stage target = null;
+            if (synchronous) {
+                execution = take(recordAndResult.sourceRecord());
+                if (execution != null && forward) {
+                    target = forward(execution, resultRecords);
+                }
+            } else {
+                synchronized (this) {
+                    execution = take(recordAndResult.sourceRecord());
+                    if (execution != null && forward) {
+                        target = forward(execution, resultRecords);
+                    }
+                }
+            }
+            if (execution == null) {
+                // the result can't be matched to its source record, so fail what the processor
+                // still owes instead of waiting forever for the executions of the batch
+                log.error(
+                        "Processor {} emitted a result for an unknown record {}",
+                        index,
+                        recordAndResult.sourceRecord());
+                failPending(
+                        new IllegalStateException(
+                                "Processor "
+                                        + index
+                                        + " emitted a result for a record that is not in the batch"
+                                        + " or was already completed"));
+            } else if (!forward) {
+                execution.completed(resultRecords, recordAndResult.error());
+            } else if (target != null) {
+                target.run();
+            }
         }
     }
 
@@ -89,6 +89,14 @@ class SourceRecordTracker implements AgentSink.CommitCallback {
         sinkRecords.forEach(sinkToSourceMapping::remove);
     }
 
+    /**
+     * @return the source record that produced the sink record, null if it is unknown or already
+     *     committed
+     */
+    public Record sourceRecordFor(Record sinkRecord) {
+        return sinkToSourceMapping.get(sinkRecord);
+    }
+
     public synchronized void track(List<AgentProcessor.SourceRecordAndResult> sinkRecords) {
 
         // map each sink record to the original source record
@@ -27,6 +27,7 @@ import ai.langstream.api.runner.code.Record;
 import ai.langstream.api.runner.code.SimpleRecord;
 import ai.langstream.api.runner.code.SingleRecordAgentProcessor;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -150,6 +151,68 @@ class AgentRunnerTest {
         source.expectUncommitted(0);
     }
 
+    @Test
+    void sinkBatchFailureWithSkip() throws Exception {
+        SimpleSource source =
+                new SimpleSource(
+                        2,
+                        List.of(
+                                SimpleRecord.of("key", "fail-me"),
+                                SimpleRecord.of("key", "process-me")));
+        BatchingSink sink = new BatchingSink(2, Set.of("fail-me"), 1);
+        SimpleAgentProcessor processor = new SimpleAgentProcessor(Set.of());
+        StandardErrorsHandler errorHandler =
+                new StandardErrorsHandler(Map.of("retries", 0, "onFailure", "skip"));
+        AgentContext context = mock(AgentContext.class);
+        AgentRunner.runMainLoop(source, processor, sink, context, errorHandler, 5);
+        // the record accepted by the first write failed with the batch and has been skipped
+        sink.expectWritten(List.of("process-me"));
+        sink.expectAttempts("fail-me", 1);
+        source.expectUncommitted(0);
+    }
+
+    @Test
+    void sinkBatchFailureWithRetry() throws Exception {
+        SimpleSource source =
+                new SimpleSource(
+                        2,
+                        List.of(
+                                SimpleRecord.of("key", "fail-me"),
+                                SimpleRecord.of("key", "process-me")));
+        BatchingSink sink = new BatchingSink(2, Set.of("fail-me"), 1);
+        SimpleAgentProcessor processor = new SimpleAgentProcessor(Set.of());
+        StandardErrorsHandler errorHandler =
+                new StandardErrorsHandler(Map.of("retries", 3, "onFailure", "fail"));
+        AgentContext context = mock(AgentContext.class);
+        AgentRunner.runMainLoop(source, processor, sink, context, errorHandler, 5);
+        // the failed record is written again by the sink on the next commit
+        sink.expectWritten(List.of("process-me", "fail-me"));
+        sink.expectAttempts("fail-me", 2);
+        source.expectUncommitted(0);
+    }
+
+    @Test
+    void sinkBatchFailureWithFail() {
+        SimpleSource source =
+                new SimpleSource(
+                        2,
+                        List.of(
+                                SimpleRecord.of("key", "fail-me"),
+                                SimpleRecord.of("key", "process-me")));
+        BatchingSink sink = new BatchingSink(2, Set.of("fail-me"), 1);
+        SimpleAgentProcessor processor = new SimpleAgentProcessor(Set.of());
+        StandardErrorsHandler errorHandler =
+                new StandardErrorsHandler(Map.of("retries", 0, "onFailure", "fail"));
+        AgentContext context = mock(AgentContext.class);
+        assertThrows(
+                AgentRunner.PermanentFailureException.class,
+                () -> AgentRunner.runMainLoop(source, processor, sink, context, errorHandler, 5));
+        sink.expectWritten(List.of("process-me"));
+        sink.expectAttempts("fail-me", 1);
+        // the source records are committed in order, the written record follows the failed one
+        source.expectUncommitted(2);
+    }
+
     private static class SimpleSink extends AbstractAgentCode implements AgentSink {
 
         CommitCallback callback;
@@ -165,6 +228,85 @@ class AgentRunnerTest {
         }
     }
 
+    /**
+     * Buffers the records and writes them when the batch is full or on commit(), like the sinks
+     * that batch the writes. The failures of the records accepted by previous writes are reported
+     * with {@link CommitCallback#fail(Record, Throwable)}.
+     */
+    private static class BatchingSink extends AbstractAgentCode implements AgentSink {
+
+        final int batchSize;
+        final Set<String> failOnContent;
+        final Map<String, Integer> attempts = new HashMap<>();
+        final List<String> written = new ArrayList<>();
+        final List<Record> pending = new ArrayList<>();
+        int failures;
+        CommitCallback callback;
+
+        BatchingSink(int batchSize, Set<String> failOnContent, int failures) {
+            this.batchSize = batchSize;
+            this.failOnContent = failOnContent;
+            this.failures = failures;
+        }
+
+        @Override
+        public void write(List<Record> records) throws Exception {
+            pending.addAll(records);
+            if (pending.size() >= batchSize) {
+                flush();
+            }
+        }
+
+        @Override
+        public boolean handlesCommit() {
+            return true;
+        }
+
+        @Override
+        public void commit() throws Exception {
+            if (!pending.isEmpty()) {
+                flush();
+            }
+        }
+
+        private void flush() throws Exception {
+            List<Record> batch = new ArrayList<>(pending);
+            pending.clear();
+            List<Record> ok = new ArrayList<>();
+            List<Record> failed = new ArrayList<>();
+            for (Record record : batch) {
+                String value = (String) record.value();
+                attempts.merge(value, 1, Integer::sum);
+                if (failOnContent.contains(value) && failures > 0) {
+                    failures--;
+                    failed.add(record);
+                } else {
+                    written.add(value);
+                    ok.add(record);
+                }
+            }
+            callback.commit(ok);
+            for (Record record : failed) {
+                if (callback.fail(record, new RuntimeException("Failed on " + record.value()))) {
+                    pending.add(record);
+                }
+            }
+        }
+
+        @Override
+        public void setCommitCallback(CommitCallback callback) {
+            this.callback = callback;
+        }
+
+        void expectWritten(List<String> values) {
+            assertEquals(values, written);
+        }
+
+        void expectAttempts(String value, int count) {
+            assertEquals(count, attempts.get(value));
+        }
+    }
+
     private static class SimpleSource extends AbstractAgentCode implements AgentSource {
 
         final List<Record> records;
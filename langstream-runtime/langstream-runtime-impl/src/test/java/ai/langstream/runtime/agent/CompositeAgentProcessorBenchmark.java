@@ -0,0 +1,153 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.langstream.runtime.agent;
+
+import ai.langstream.api.runner.code.Record;
+import ai.langstream.api.runner.code.SimpleRecord;
+import ai.langstream.api.runner.code.SingleRecordAgentProcessor;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.UnaryOperator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs a batch of documents through a composite agent with a 6 steps text pipeline: trim,
+ * lowercase, collapse the double spaces, split the sentences, drop the short ones and add a length
+ * header. The steps are cheap, so the time is dominated by the overhead of the composite agent. Run
+ * it from the IDE or with the test classpath: {@code java -cp ...
+ * ai.langstream.runtime.agent.CompositeAgentProcessorBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CompositeAgentProcessorBenchmark {
+
+    private static final String DOCUMENT =
+            "  The Vector of a   Document is computed by an Embedding Model.  Each chunk is"
+                    + " stored. Short one. The Retrieval Augmented Generation pipeline reads"
+                    + " the chunks back.  ";
+
+    @Param({"1", "100"})
+    public int batchSize;
+
+    private CompositeAgentProcessor composite;
+    private List<Record> records;
+
+    @Setup
+    public void setup() throws Exception {
+        composite = new CompositeAgentProcessor();
+        composite.init(Map.of());
+        composite
+                .getProcessors()
+                .addAll(
+                        List.of(
+                                new MapValue(String::trim),
+                                new MapValue(String::toLowerCase),
+                                new MapValue(s -> s.replace("  ", " ")),
+                                new SplitSentences(),
+                                new DropShort(),
+                                new AddLength()));
+        records = new ArrayList<>();
+        for (int i = 0; i < batchSize; i++) {
+            records.add(SimpleRecord.of("doc-" + i, DOCUMENT));
+        }
+    }
+
+    @Benchmark
+    public void process(Blackhole blackhole) {
+        composite.process(records, blackhole::consume);
+    }
+
+    private static class MapValue extends SingleRecordAgentProcessor {
+        private final UnaryOperator<String> function;
+
+        MapValue(UnaryOperator<String> function) {
+            this.function = function;
+        }
+
+        @Override
+        public List<Record> processRecord(Record record) {
+            return List.of(
+                    SimpleRecord.copyFrom(record)
+                            .value(function.apply((String) record.value()))
+                            .build());
+        }
+    }
+
+    private static class SplitSentences extends SingleRecordAgentProcessor {
+        @Override
+        public List<Record> processRecord(Record record) {
+            String value = (String) record.value();
+            List<Record> result = new ArrayList<>();
+            int start = 0;
+            int end;
+            while ((end = value.indexOf(". ", start)) >= 0) {
+                result.add(
+                        SimpleRecord.copyFrom(record).value(value.substring(start, end)).build());
+                start = end + 2;
+            }
+            result.add(SimpleRecord.copyFrom(record).value(value.substring(start)).build());
+            return result;
+        }
+    }
+
+    private static class DropShort extends SingleRecordAgentProcessor {
+        @Override
+        public List<Record> processRecord(Record record) {
+            return ((String) record.value()).length() < 20 ? List.of() : List.of(record);
+        }
+    }
+
+    private static class AddLength extends SingleRecordAgentProcessor {
+        @Override
+        public List<Record> processRecord(Record record) {
+            String value = (String) record.value();
+            return List.of(
+                    SimpleRecord.copyFrom(record)
+                            .headers(
+                                    List.of(
+                                            SimpleRecord.SimpleHeader.of(
+                                                    "length", String.valueOf(value.length()))))
+                            .build());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(
+                        new OptionsBuilder()
+                                .include(CompositeAgentProcessorBenchmark.class.getSimpleName())
+                                .build())
+                .run();
+    }
+}
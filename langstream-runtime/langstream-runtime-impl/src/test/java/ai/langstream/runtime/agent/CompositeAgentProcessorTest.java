@@ -0,0 +1,193 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.langstream.runtime.agent;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import ai.langstream.api.runner.code.AbstractAgentCode;
+import ai.langstream.api.runner.code.AgentProcessor;
+import ai.langstream.api.runner.code.Record;
+import ai.langstream.api.runner.code.RecordSink;
+import ai.langstream.api.runner.code.SimpleRecord;
+import ai.langstream.api.runner.code.SingleRecordAgentProcessor;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+class CompositeAgentProcessorTest {
+
+    @Test
+    void testFanOut() throws Exception {
+        BatchRecorder recorder = new BatchRecorder();
+        CompositeAgentProcessor composite = composite(new SplitWords(), recorder, new Uppercase());
+        List<AgentProcessor.SourceRecordAndResult> emitted = new ArrayList<>();
+        Record first = SimpleRecord.of(null, "a b c");
+        Record second = SimpleRecord.of(null, "d e");
+        composite.process(List.of(first, second), emitted::add);
+
+        // each source record is emitted once, with all its results
+        assertEquals(2, emitted.size());
+        assertSame(first, emitted.get(0).sourceRecord());
+        assertEquals(List.of("A", "B", "C"), values(emitted.get(0)));
+        assertSame(second, emitted.get(1).sourceRecord());
+        assertEquals(List.of("D", "E"), values(emitted.get(1)));
+        // the split records of the whole batch are processed together
+        assertEquals(List.of(5), recorder.batchSizes);
+    }
+
+    @Test
+    void testErrorInOneBranch() throws Exception {
+        CompositeAgentProcessor composite = composite(new SplitWords(), new Uppercase());
+        List<AgentProcessor.SourceRecordAndResult> emitted = new ArrayList<>();
+        composite.process(List.of(SimpleRecord.of(null, "a fail-me c")), emitted::add);
+
+        assertEquals(1, emitted.size());
+        assertEquals("fail-me", emitted.get(0).error().getMessage());
+        assertEquals(List.of(), emitted.get(0).resultRecords());
+    }
+
+    @Test
+    void testFilteredRecord() throws Exception {
+        CompositeAgentProcessor composite = composite(new SplitWords(), new Uppercase());
+        List<AgentProcessor.SourceRecordAndResult> emitted = new ArrayList<>();
+        composite.process(List.of(SimpleRecord.of(null, "")), emitted::add);
+
+        assertEquals(1, emitted.size());
+        assertNull(emitted.get(0).error());
+        assertEquals(List.of(), emitted.get(0).resultRecords());
+    }
+
+    @Test
+    void testAsyncProcessor() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            CompositeAgentProcessor composite =
+                    composite(new SplitWords(), new AsyncProcessor(executor), new Uppercase());
+            List<AgentProcessor.SourceRecordAndResult> emitted = new CopyOnWriteArrayList<>();
+            composite.process(List.of(SimpleRecord.of(null, "a b")), emitted::add);
+            executor.shutdown();
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+
+            assertEquals(1, emitted.size());
+            assertEquals(List.of("A", "B"), values(emitted.get(0)));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void testResultForUnknownRecord() throws Exception {
+        CompositeAgentProcessor composite = composite(new CopySourceRecord(), new Uppercase());
+        List<AgentProcessor.SourceRecordAndResult> emitted = new ArrayList<>();
+        Record first = SimpleRecord.of(null, "a");
+        Record second = SimpleRecord.of(null, "b");
+        composite.process(List.of(first, second), emitted::add);
+
+        // the executions of the batch fail instead of never completing
+        assertEquals(2, emitted.size());
+        assertSame(first, emitted.get(0).sourceRecord());
+        assertInstanceOf(IllegalStateException.class, emitted.get(0).error());
+        assertSame(second, emitted.get(1).sourceRecord());
+        assertInstanceOf(IllegalStateException.class, emitted.get(1).error());
+    }
+
+    private static CompositeAgentProcessor composite(AgentProcessor... processors)
+            throws Exception {
+        CompositeAgentProcessor composite = new CompositeAgentProcessor();
+        composite.init(Map.of());
+        composite.getProcessors().addAll(List.of(processors));
+        return composite;
+    }
+
+    private static List<Object> values(AgentProcessor.SourceRecordAndResult result) {
+        return result.resultRecords().stream().map(Record::value).toList();
+    }
+
+    private static class SplitWords extends SingleRecordAgentProcessor {
+        @Override
+        public List<Record> processRecord(Record record) {
+            String value = (String) record.value();
+            if (value.isEmpty()) {
+                return List.of();
+            }
+            List<Record> result = new ArrayList<>();
+            for (String word : value.split(" ")) {
+                result.add(SimpleRecord.copyFrom(record).value(word).build());
+            }
+            return result;
+        }
+    }
+
+    private static class Uppercase extends SingleRecordAgentProcessor {
+        @Override
+        public List<Record> processRecord(Record record) {
+            String value = (String) record.value();
+            if (value.equals("fail-me")) {
+                throw new IllegalStateException(value);
+            }
+            return List.of(SimpleRecord.copyFrom(record).value(value.toUpperCase()).build());
+        }
+    }
+
+    /** Emits a copy of the record as source record, instead of the instance it received. */
+    private static class CopySourceRecord extends AbstractAgentCode implements AgentProcessor {
+        @Override
+        public void process(List<Record> records, RecordSink recordSink) {
+            for (Record record : records) {
+                Record copy = SimpleRecord.copyFrom(record).build();
+                recordSink.emit(new SourceRecordAndResult(copy, List.of(copy), null));
+            }
+        }
+    }
+
+    private static class BatchRecorder extends AbstractAgentCode implements AgentProcessor {
+        final List<Integer> batchSizes = new ArrayList<>();
+
+        @Override
+        public void process(List<Record> records, RecordSink recordSink) {
+            batchSizes.add(records.size());
+            for (Record record : records) {
+                recordSink.emit(new SourceRecordAndResult(record, List.of(record), null));
+            }
+        }
+    }
+
+    private static class AsyncProcessor extends AbstractAgentCode implements AgentProcessor {
+        final ExecutorService executor;
+
+        AsyncProcessor(ExecutorService executor) {
+            this.executor = executor;
+        }
+
+        @Override
+        public void process(List<Record> records, RecordSink recordSink) {
+            for (Record record : records) {
+                executor.submit(
+                        () ->
+                                recordSink.emit(
+                                        new SourceRecordAndResult(record, List.of(record), null)));
+            }
+        }
+    }
+}